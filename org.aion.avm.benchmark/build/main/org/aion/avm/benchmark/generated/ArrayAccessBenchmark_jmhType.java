@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class ArrayAccessBenchmark_jmhType extends ArrayAccessBenchmark_jmhType_B3 {
+}
+
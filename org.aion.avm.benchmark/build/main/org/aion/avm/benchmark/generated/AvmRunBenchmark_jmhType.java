@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class AvmRunBenchmark_jmhType extends AvmRunBenchmark_jmhType_B3 {
+}
+
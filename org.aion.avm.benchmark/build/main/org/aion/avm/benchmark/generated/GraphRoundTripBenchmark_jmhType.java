@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class GraphRoundTripBenchmark_jmhType extends GraphRoundTripBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class InstrumentationLookupBenchmark_jmhType extends InstrumentationLookupBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class LoadFromGraphBenchmark_jmhType extends LoadFromGraphBenchmark_jmhType_B3 {
+}
+
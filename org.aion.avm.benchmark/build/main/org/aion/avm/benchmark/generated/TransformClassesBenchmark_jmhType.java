@@ -0,0 +1,4 @@
+package org.aion.avm.benchmark.generated;
+public class TransformClassesBenchmark_jmhType extends TransformClassesBenchmark_jmhType_B3 {
+}
+
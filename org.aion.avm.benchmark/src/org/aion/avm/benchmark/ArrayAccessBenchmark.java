@@ -0,0 +1,159 @@
+package org.aion.avm.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import i.CommonInstrumentation;
+import i.IInstrumentation;
+import i.InstrumentationCarrierThread;
+import i.InstrumentationHelpers;
+import i.InternedClasses;
+import i.PackageConstants;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.DAppLoader;
+import org.aion.avm.core.dappreading.JarBuilder;
+import org.aion.avm.core.persistence.LoadedDApp;
+import org.aion.kernel.TestingKernel;
+import org.aion.types.AionAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the array-heavy workloads of the ArrayBenchmarkContract, either as a deployed DApp (calling its transformed methods against
+ * its loaded graph, as a call would, but without the rest of the transaction) or directly on the JVM, as the baseline the array wrappers
+ * are trying to approach.
+ * Each op makes CALLS_PER_OP calls on a worker thread:  an InstrumentationCarrierThread for the DApp (as the AVM's executor threads are)
+ * and a plain thread for the raw JVM (so both pay the same handoff).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ArrayAccessBenchmark {
+    public enum Target {
+        AVM,
+        RAW_JVM,
+    }
+
+    private static final int CALLS_PER_OP = 100;
+    // Far more than the calls of a single op need.
+    private static final long FRAME_ENERGY = 10_000_000_000L;
+
+    @Param
+    public Target target;
+
+    private ExecutorService worker;
+    private LoadedDApp dapp;
+    private IInstrumentation instrumentation;
+    private int nextHashCode;
+    private Method hashBytes;
+    private Method multiplyMatrices;
+    private Method hashNodes;
+
+    @Setup
+    public void setup() throws Exception {
+        if (Target.AVM == this.target) {
+            TestingKernel kernel = BenchmarkSupport.newKernel();
+            AvmImpl avm = BenchmarkSupport.newAvm(1);
+            byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ArrayBenchmarkContract.class);
+            AionAddress contract = BenchmarkSupport.deployContract(avm, kernel, jar);
+            avm.shutdown();
+            this.dapp = DAppLoader.loadFromGraph(kernel.getTransformedCode(contract), false);
+            Class<?> contractClass = this.dapp.loader.loadClass(PackageConstants.kUserDotPrefix + ArrayBenchmarkContract.class.getName());
+            this.hashBytes = contractClass.getMethod("avm_hashBytes");
+            this.multiplyMatrices = contractClass.getMethod("avm_multiplyMatrices");
+            this.hashNodes = contractClass.getMethod("avm_hashNodes");
+
+            this.worker = Executors.newSingleThreadExecutor((runnable) -> new InstrumentationCarrierThread("Carrier") {
+                @Override
+                public void run() {
+                    runnable.run();
+                }});
+            this.instrumentation = new CommonInstrumentation();
+            byte[] rawGraphData = kernel.getObjectGraph(contract);
+            this.nextHashCode = this.worker.submit(() -> {
+                InstrumentationHelpers.attachThread(this.instrumentation);
+                InstrumentationHelpers.pushNewStackFrame(this.dapp.runtimeSetup, this.dapp.loader, FRAME_ENERGY, 1, new InternedClasses());
+                try {
+                    return this.dapp.loadEntireGraph(new InternedClasses(), rawGraphData);
+                } finally {
+                    InstrumentationHelpers.popExistingStackFrame(this.dapp.runtimeSetup);
+                }
+            }).get();
+        } else {
+            this.worker = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "Plain"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (Target.AVM == this.target) {
+            this.worker.submit(() -> InstrumentationHelpers.detachThread(this.instrumentation)).get();
+        }
+        this.worker.shutdown();
+    }
+
+    @Benchmark
+    public int hashBytes() throws Exception {
+        return (Target.AVM == this.target)
+                ? callInFrame(this.hashBytes)
+                : callRaw(ArrayBenchmarkContract::hashBytes);
+    }
+
+    @Benchmark
+    public int multiplyMatrices() throws Exception {
+        return (Target.AVM == this.target)
+                ? callInFrame(this.multiplyMatrices)
+                : callRaw(ArrayBenchmarkContract::multiplyMatrices);
+    }
+
+    @Benchmark
+    public int hashNodes() throws Exception {
+        return (Target.AVM == this.target)
+                ? callInFrame(this.hashNodes)
+                : callRaw(ArrayBenchmarkContract::hashNodes);
+    }
+
+
+    private int callInFrame(Method method) throws Exception {
+        return this.worker.submit(() -> {
+            // Each op gets its own frame, so it never runs out of energy and the dirty instances it records start empty.
+            InstrumentationHelpers.pushNewStackFrame(this.dapp.runtimeSetup, this.dapp.loader, FRAME_ENERGY, this.nextHashCode, new InternedClasses());
+            try {
+                int result = 0;
+                for (int i = 0; i < CALLS_PER_OP; ++i) {
+                    result += (Integer) method.invoke(null);
+                }
+                return result;
+            } finally {
+                InstrumentationHelpers.popExistingStackFrame(this.dapp.runtimeSetup);
+            }
+        }).get();
+    }
+
+    private int callRaw(IntSupplier workload) throws Exception {
+        return this.worker.submit(() -> {
+            int result = 0;
+            for (int i = 0; i < CALLS_PER_OP; ++i) {
+                result += workload.getAsInt();
+            }
+            return result;
+        }).get();
+    }
+}
@@ -0,0 +1,95 @@
+package org.aion.avm.benchmark;
+
+
+/**
+ * The DApp deployed by the ArrayAccessBenchmark.
+ * Each of its workloads is dominated by the accesses to a kind of array in its graph:  bytes (as in hashing), nested int arrays (as in
+ * matrix code) and arrays of user objects (hashing each of them).
+ * Since the class is also usable without transformation, the benchmark can compare it directly to the raw JVM.
+ */
+public class ArrayBenchmarkContract {
+    public static final int BYTES_SIZE = 4096;
+    public static final int MATRIX_SIZE = 16;
+    public static final int NODE_COUNT = 1024;
+
+    private static final byte[] bytes = new byte[BYTES_SIZE];
+    private static final int[][] left = new int[MATRIX_SIZE][MATRIX_SIZE];
+    private static final int[][] right = new int[MATRIX_SIZE][MATRIX_SIZE];
+    private static final int[][] product = new int[MATRIX_SIZE][MATRIX_SIZE];
+    private static final Node[] nodes = new Node[NODE_COUNT];
+    static {
+        for (int i = 0; i < BYTES_SIZE; ++i) {
+            bytes[i] = (byte) i;
+        }
+        for (int i = 0; i < MATRIX_SIZE; ++i) {
+            for (int j = 0; j < MATRIX_SIZE; ++j) {
+                left[i][j] = i + j;
+                right[i][j] = i - j;
+            }
+        }
+        for (int i = 0; i < NODE_COUNT; ++i) {
+            nodes[i] = new Node(i);
+        }
+    }
+
+    public static byte[] main() {
+        return null;
+    }
+
+    /**
+     * An FNV-1a hash of the bytes, which then replaces the first bytes (so this reads and writes the array).
+     */
+    public static int hashBytes() {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < BYTES_SIZE; ++i) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        for (int i = 0; i < 4; ++i) {
+            bytes[i] = (byte) (hash >> (8 * i));
+        }
+        return hash;
+    }
+
+    /**
+     * Multiplies the left and right matrices into the product.
+     */
+    public static int multiplyMatrices() {
+        for (int i = 0; i < MATRIX_SIZE; ++i) {
+            int[] leftRow = left[i];
+            int[] productRow = product[i];
+            for (int j = 0; j < MATRIX_SIZE; ++j) {
+                int sum = 0;
+                for (int k = 0; k < MATRIX_SIZE; ++k) {
+                    sum += leftRow[k] * right[k][j];
+                }
+                productRow[j] = sum;
+            }
+        }
+        return product[MATRIX_SIZE - 1][MATRIX_SIZE - 1];
+    }
+
+    /**
+     * Combines the hash codes of the nodes, then rotates them by one (so this reads and writes the array).
+     */
+    public static int hashNodes() {
+        int hash = 0;
+        for (int i = 0; i < NODE_COUNT; ++i) {
+            hash = (31 * hash) + nodes[i].hashCode() + nodes[i].value;
+        }
+        Node first = nodes[0];
+        for (int i = 1; i < NODE_COUNT; ++i) {
+            nodes[i - 1] = nodes[i];
+        }
+        nodes[NODE_COUNT - 1] = first;
+        return hash;
+    }
+
+
+    public static class Node {
+        public final int value;
+
+        public Node(int value) {
+            this.value = value;
+        }
+    }
+}
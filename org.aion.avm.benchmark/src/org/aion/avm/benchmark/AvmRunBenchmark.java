@@ -0,0 +1,82 @@
+package org.aion.avm.benchmark;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.aion.avm.core.AvmImpl;
+import org.aion.kernel.TestingKernel;
+import org.aion.kernel.TestingTransaction;
+import org.aion.types.AionAddress;
+import org.aion.vm.api.interfaces.TransactionResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures AvmImpl.run on blocks of calls into BenchmarkContract, for each executor thread count:
+ * -CONFLICT_FREE:  every transaction has its own sender and calls its own DApp so they can all run concurrently.
+ * -CONFLICT_HEAVY:  every transaction has its own sender but they all call the same DApp so they must be run one after the other.
+ * The score is the time to run an entire block (of TRANSACTIONS_PER_BLOCK transactions).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AvmRunBenchmark {
+    public static final int TRANSACTIONS_PER_BLOCK = 64;
+
+    public enum BlockShape {
+        CONFLICT_FREE,
+        CONFLICT_HEAVY,
+    }
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threadCount;
+
+    @Param({"CONFLICT_FREE", "CONFLICT_HEAVY"})
+    public BlockShape blockShape;
+
+    private AvmImpl avm;
+    private TestingKernel kernel;
+    private AionAddress[] senders;
+    private AionAddress[] contracts;
+
+    @Setup
+    public void setup() {
+        this.avm = BenchmarkSupport.newAvm(this.threadCount);
+        this.kernel = BenchmarkSupport.newKernel();
+        int contractCount = (BlockShape.CONFLICT_FREE == this.blockShape)
+                ? TRANSACTIONS_PER_BLOCK
+                : 1;
+        this.contracts = BenchmarkSupport.deployContracts(this.avm, this.kernel, contractCount);
+        this.senders = BenchmarkSupport.createSenders(this.kernel, TRANSACTIONS_PER_BLOCK);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.avm.shutdown();
+    }
+
+    @Benchmark
+    public TransactionResult[] runBlock() {
+        TestingTransaction[] transactions = new TestingTransaction[TRANSACTIONS_PER_BLOCK];
+        for (int i = 0; i < TRANSACTIONS_PER_BLOCK; ++i) {
+            AionAddress sender = this.senders[i];
+            AionAddress contract = this.contracts[i % this.contracts.length];
+            transactions[i] = TestingTransaction.call(sender, contract, this.kernel.getNonce(sender), BigInteger.ZERO, new byte[0], BenchmarkSupport.CALL_ENERGY_LIMIT, BenchmarkSupport.ENERGY_PRICE);
+        }
+        return BenchmarkSupport.runBlock(this.avm, this.kernel, transactions);
+    }
+}
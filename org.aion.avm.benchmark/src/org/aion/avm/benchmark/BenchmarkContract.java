@@ -0,0 +1,36 @@
+package org.aion.avm.benchmark;
+
+import org.aion.avm.userlib.AionMap;
+
+
+/**
+ * The DApp deployed by all the benchmarks.
+ * Its graph is a map of GRAPH_SIZE small arrays, built when it is deployed, so that it is worth serializing.  Each call scrambles one of
+ * these arrays, in place, so that it does some real work and has to write its graph back.
+ */
+public class BenchmarkContract {
+    public static final int GRAPH_SIZE = 256;
+    private static final int VALUE_SIZE = 32;
+    private static final int ROUNDS = 16;
+
+    private static final AionMap<Integer, byte[]> values = new AionMap<>();
+    private static int callCount;
+    static {
+        for (int i = 0; i < GRAPH_SIZE; ++i) {
+            byte[] value = new byte[VALUE_SIZE];
+            value[0] = (byte) i;
+            values.put(i, value);
+        }
+    }
+
+    public static byte[] main() {
+        byte[] value = values.get(callCount % GRAPH_SIZE);
+        for (int round = 0; round < ROUNDS; ++round) {
+            for (int i = 0; i < VALUE_SIZE; ++i) {
+                value[i] = (byte) ((31 * value[i]) + value[(i + 1) % VALUE_SIZE] + round);
+            }
+        }
+        callCount += 1;
+        return value;
+    }
+}
@@ -0,0 +1,103 @@
+package org.aion.avm.benchmark;
+
+import java.math.BigInteger;
+
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.dappreading.JarBuilder;
+import org.aion.avm.core.util.CodeAndArguments;
+import org.aion.avm.core.util.Helpers;
+import org.aion.avm.tooling.StandardCapabilities;
+import org.aion.kernel.AvmTransactionResult;
+import org.aion.kernel.TestingBlock;
+import org.aion.kernel.TestingKernel;
+import org.aion.kernel.TestingTransaction;
+import org.aion.types.AionAddress;
+import org.aion.vm.api.interfaces.SimpleFuture;
+import org.aion.vm.api.interfaces.TransactionResult;
+
+
+/**
+ * The setup shared by the benchmarks:  building the BenchmarkContract JAR and deploying it (or any other DApp) into a TestingKernel.
+ */
+public class BenchmarkSupport {
+    public static final long DEPLOY_ENERGY_LIMIT = 100_000_000L;
+    public static final long CALL_ENERGY_LIMIT = 10_000_000L;
+    public static final long ENERGY_PRICE = 1L;
+
+    public static byte[] buildContractJar() {
+        return JarBuilder.buildJarForMainAndClassesAndUserlib(BenchmarkContract.class);
+    }
+
+    public static TestingKernel newKernel() {
+        TestingBlock block = new TestingBlock(new byte[32], 1, Helpers.randomAddress(), System.currentTimeMillis(), new byte[0]);
+        return new TestingKernel(block);
+    }
+
+    public static AvmImpl newAvm(int threadCount) {
+        AvmConfiguration configuration = new AvmConfiguration();
+        configuration.threadCount = threadCount;
+        return CommonAvmFactory.buildAvmInstanceForConfiguration(new StandardCapabilities(), configuration);
+    }
+
+    /**
+     * Deploys the given number of instances of BenchmarkContract, from the premined account, in a single block.
+     *
+     * @return The addresses of the deployed DApps.
+     */
+    public static AionAddress[] deployContracts(AvmImpl avm, TestingKernel kernel, int count) {
+        byte[] createData = new CodeAndArguments(buildContractJar(), new byte[0]).encodeToBytes();
+        AionAddress deployer = TestingKernel.PREMINED_ADDRESS;
+        BigInteger nonce = kernel.getNonce(deployer);
+        TestingTransaction[] transactions = new TestingTransaction[count];
+        for (int i = 0; i < count; ++i) {
+            transactions[i] = TestingTransaction.create(deployer, nonce.add(BigInteger.valueOf(i)), BigInteger.ZERO, createData, DEPLOY_ENERGY_LIMIT, ENERGY_PRICE);
+        }
+        TransactionResult[] results = runBlock(avm, kernel, transactions);
+        AionAddress[] contracts = new AionAddress[count];
+        for (int i = 0; i < count; ++i) {
+            contracts[i] = new AionAddress(results[i].getReturnData());
+        }
+        return contracts;
+    }
+
+    /**
+     * Deploys a single DApp, from the premined account.
+     *
+     * @return The address of the deployed DApp.
+     */
+    public static AionAddress deployContract(AvmImpl avm, TestingKernel kernel, byte[] jar) {
+        byte[] createData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        TestingTransaction create = TestingTransaction.create(TestingKernel.PREMINED_ADDRESS, kernel.getNonce(TestingKernel.PREMINED_ADDRESS), BigInteger.ZERO, createData, DEPLOY_ENERGY_LIMIT, ENERGY_PRICE);
+        return new AionAddress(runBlock(avm, kernel, new TestingTransaction[] {create})[0].getReturnData());
+    }
+
+    /**
+     * Creates the given number of funded accounts, so that they can send transactions without conflicting on the sender.
+     */
+    public static AionAddress[] createSenders(TestingKernel kernel, int count) {
+        AionAddress[] senders = new AionAddress[count];
+        for (int i = 0; i < count; ++i) {
+            senders[i] = Helpers.randomAddress();
+            kernel.adjustBalance(senders[i], TestingKernel.PREMINED_AMOUNT);
+        }
+        return senders;
+    }
+
+    /**
+     * Runs a block of transactions, failing if any of them didn't succeed (the benchmark would be meaningless if they failed).
+     */
+    public static TransactionResult[] runBlock(AvmImpl avm, TestingKernel kernel, TestingTransaction[] transactions) {
+        TransactionResult[] results = new TransactionResult[transactions.length];
+        int i = 0;
+        for (SimpleFuture<TransactionResult> future : avm.run(kernel, transactions)) {
+            results[i] = future.get();
+            if (AvmTransactionResult.Code.SUCCESS != results[i].getResultCode()) {
+                throw new IllegalStateException("Benchmark transaction " + i + " failed: " + results[i].getResultCode());
+            }
+            i += 1;
+        }
+        return results;
+    }
+}
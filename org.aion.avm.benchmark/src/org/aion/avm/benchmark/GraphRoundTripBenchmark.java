@@ -0,0 +1,85 @@
+package org.aion.avm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import i.CommonInstrumentation;
+import i.IInstrumentation;
+import i.InstrumentationHelpers;
+import i.InternedClasses;
+import org.aion.avm.StorageFees;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.DAppLoader;
+import org.aion.avm.core.persistence.LoadedDApp;
+import org.aion.kernel.TestingKernel;
+import org.aion.types.AionAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the Serializer and Deserializer on the graph of a deployed BenchmarkContract, through the LoadedDApp which drives them, both
+ * separately and as the round-trip a top-level call makes.
+ * Note that the state is per-thread since the graph is read into, and written from, the statics of a DApp which is attached to the thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GraphRoundTripBenchmark {
+    // Neither serialization nor deserialization bills, but the frame needs some energy.
+    private static final long FRAME_ENERGY = 1_000_000_000L;
+
+    private byte[] rawGraphData;
+    private LoadedDApp dapp;
+    private IInstrumentation instrumentation;
+    private int nextHashCode;
+
+    @Setup
+    public void setup() throws IOException {
+        TestingKernel kernel = BenchmarkSupport.newKernel();
+        AvmImpl avm = BenchmarkSupport.newAvm(1);
+        AionAddress contract = BenchmarkSupport.deployContracts(avm, kernel, 1)[0];
+        avm.shutdown();
+        this.rawGraphData = kernel.getObjectGraph(contract);
+        this.dapp = DAppLoader.loadFromGraph(kernel.getTransformedCode(contract), false);
+
+        this.instrumentation = new CommonInstrumentation();
+        InstrumentationHelpers.attachThread(this.instrumentation);
+        InstrumentationHelpers.pushNewStackFrame(this.dapp.runtimeSetup, this.dapp.loader, FRAME_ENERGY, 1, new InternedClasses());
+        this.nextHashCode = this.dapp.loadEntireGraph(new InternedClasses(), this.rawGraphData);
+    }
+
+    @TearDown
+    public void tearDown() {
+        InstrumentationHelpers.popExistingStackFrame(this.dapp.runtimeSetup);
+        InstrumentationHelpers.detachThread(this.instrumentation);
+    }
+
+    @Benchmark
+    public int deserialize() {
+        return this.dapp.loadEntireGraph(new InternedClasses(), this.rawGraphData);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return this.dapp.saveEntireGraph(this.nextHashCode, StorageFees.MAX_GRAPH_SIZE);
+    }
+
+    @Benchmark
+    public byte[] roundTrip() {
+        int nextHashCode = this.dapp.loadEntireGraph(new InternedClasses(), this.rawGraphData);
+        return this.dapp.saveEntireGraph(nextHashCode, StorageFees.MAX_GRAPH_SIZE);
+    }
+}
@@ -0,0 +1,130 @@
+package org.aion.avm.benchmark;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import i.CommonInstrumentation;
+import i.IInstrumentation;
+import i.IRuntimeSetup;
+import i.InstrumentationCarrierThread;
+import i.InstrumentationHelpers;
+import i.InternedClasses;
+import org.aion.avm.core.NodeEnvironment;
+import org.aion.avm.core.classloading.AvmClassLoader;
+import org.aion.avm.core.util.Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares the cost of the shadow JDK finding the instrumentation of the current thread when that thread is an InstrumentationCarrierThread
+ * (as the AVM's executor threads are) and when it must look it up in the ThreadLocal, on loops of the String and BigInteger calls which
+ * contracts make most often.
+ * Since JMH runs the benchmark on its own threads, each loop is handed off to a single worker thread of the kind being measured, where it
+ * runs in a new frame (the handoff and the frame cost the same either way, and are amortized over CALLS_PER_INVOCATION).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InstrumentationLookupBenchmark {
+    public enum ThreadKind {
+        CARRIER,
+        THREAD_LOCAL,
+    }
+
+    public enum Workload {
+        STRING,
+        BIG_INTEGER,
+    }
+
+    private static final int CALLS_PER_INVOCATION = 10_000;
+    // Far more than a single loop needs.
+    private static final long FRAME_ENERGY = 100_000_000_000L;
+
+    @Param
+    public ThreadKind threadKind;
+
+    @Param
+    public Workload workload;
+
+    private ExecutorService worker;
+    private AvmClassLoader loader;
+    private IRuntimeSetup runtimeSetup;
+    private IInstrumentation instrumentation;
+
+    @Setup
+    public void setup() throws Exception {
+        Map<String, byte[]> classAndHelper = Helpers.mapIncludingHelperBytecode(Collections.emptyMap(), Helpers.loadDefaultHelperBytecode());
+        this.loader = NodeEnvironment.singleton.createInvocationClassLoader(classAndHelper);
+        this.runtimeSetup = Helpers.getSetupForLoader(this.loader);
+        this.instrumentation = new CommonInstrumentation();
+
+        ThreadFactory factory = (ThreadKind.CARRIER == this.threadKind)
+                ? (runnable) -> new InstrumentationCarrierThread("Carrier") {
+                    @Override
+                    public void run() {
+                        runnable.run();
+                    }}
+                : (runnable) -> new Thread(runnable, "Plain");
+        this.worker = Executors.newSingleThreadExecutor(factory);
+        this.worker.submit(() -> InstrumentationHelpers.attachThread(this.instrumentation)).get();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.worker.submit(() -> InstrumentationHelpers.detachThread(this.instrumentation)).get();
+        this.worker.shutdown();
+    }
+
+    @Benchmark
+    public int shadowCalls() throws InterruptedException, ExecutionException {
+        return this.worker.submit(() -> {
+            InstrumentationHelpers.pushNewStackFrame(this.runtimeSetup, this.loader, FRAME_ENERGY, 1, new InternedClasses());
+            try {
+                return (Workload.STRING == this.workload)
+                        ? stringCalls()
+                        : bigIntegerCalls();
+            } finally {
+                InstrumentationHelpers.popExistingStackFrame(this.runtimeSetup);
+            }
+        }).get();
+    }
+
+
+    private static int stringCalls() {
+        s.java.lang.String string = new s.java.lang.String("instrumentation");
+        int checksum = 0;
+        for (int i = 0; i < CALLS_PER_INVOCATION; ++i) {
+            s.java.lang.String copy = new s.java.lang.String(string);
+            checksum += copy.avm_charAt(i % copy.avm_length()) + copy.avm_hashCode();
+        }
+        return checksum;
+    }
+
+    private static int bigIntegerCalls() {
+        s.java.math.BigInteger modulus = s.java.math.BigInteger.avm_valueOf(1_000_000_007L);
+        s.java.math.BigInteger accumulator = s.java.math.BigInteger.avm_valueOf(1L);
+        for (int i = 0; i < CALLS_PER_INVOCATION; ++i) {
+            accumulator = accumulator.avm_multiply(s.java.math.BigInteger.avm_valueOf(i + 2)).avm_add(accumulator).avm_mod(modulus);
+        }
+        return accumulator.avm_hashCode();
+    }
+}
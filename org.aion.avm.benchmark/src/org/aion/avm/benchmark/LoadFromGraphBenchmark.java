@@ -0,0 +1,49 @@
+package org.aion.avm.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.DAppLoader;
+import org.aion.avm.core.persistence.LoadedDApp;
+import org.aion.kernel.TestingKernel;
+import org.aion.types.AionAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures loading a deployed DApp from the transformed code stored in the kernel:  decoding the code and defining its classes in a new
+ * class loader (this is the cost of a miss in the DApp cache).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoadFromGraphBenchmark {
+    private byte[] transformedCode;
+
+    @Setup
+    public void setup() {
+        TestingKernel kernel = BenchmarkSupport.newKernel();
+        AvmImpl avm = BenchmarkSupport.newAvm(1);
+        AionAddress contract = BenchmarkSupport.deployContracts(avm, kernel, 1)[0];
+        avm.shutdown();
+        this.transformedCode = kernel.getTransformedCode(contract);
+    }
+
+    @Benchmark
+    public LoadedDApp loadFromGraph() throws IOException {
+        return DAppLoader.loadFromGraph(this.transformedCode, false);
+    }
+}
@@ -0,0 +1,44 @@
+package org.aion.avm.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.aion.avm.core.DAppCreator;
+import org.aion.avm.core.NodeEnvironment;
+import org.aion.avm.core.types.RawDappModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Measures the deployment-time transformation of the classes of a DApp (BenchmarkContract and the userlib classes bundled with it).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransformClassesBenchmark {
+    private RawDappModule rawDapp;
+
+    @Setup
+    public void setup() {
+        // (the transformation reads the shadow JDK from the NodeEnvironment so we don't want to measure its initialization)
+        NodeEnvironment.singleton.getClass();
+        this.rawDapp = RawDappModule.readFromJar(BenchmarkSupport.buildContractJar(), false);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> transformClasses() {
+        return DAppCreator.transformClasses(this.rawDapp.classes, this.rawDapp.classHierarchyForest, this.rawDapp.classHierarchy, this.rawDapp.classRenamer, false);
+    }
+}
@@ -4,6 +4,7 @@ module org.aion.avm.core {
     exports org.aion.avm.core.types;
     exports org.aion.avm.core.util;
     exports org.aion.avm.core.classloading;
+    exports org.aion.avm.core.profiling;
     exports org.aion.kernel;
     exports org.aion.parallel;
 
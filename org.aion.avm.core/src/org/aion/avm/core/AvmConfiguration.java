@@ -11,6 +11,9 @@ public class AvmConfiguration {
      * The number of threads to start for running the incoming transactions.
      * A lower number will reduce maximum throughput but a higher number will increase the number of aborts experienced as a result
      * of data hazards.  The transaction restarts caused by these aborts may reduce throughput on such highly connected blocks.
+     * This is the maximum:  each block only wakes as many of these threads as its transactions could use, backing off further if the
+     * previous block experienced many aborts.
+     * The aborts and contention of each block are reported by AvmInternal.getBlockMetrics(), to help tune this.
      */
     public int threadCount;
     /**
@@ -30,6 +33,41 @@ public class AvmConfiguration {
      * Enabling this is only really useful when actively modifying the concurrent executor.
      */
     public boolean enableVerboseConcurrentExecutor;
+    /**
+     * If set to true, a top-level call will only re-encode the objects in its DApp's graph which were modified (as reported by the write
+     * barrier injected into the DApp code), copying the stored encoding of every other object when the graph is written back.
+     * The resulting graph, and hence the billing, is identical to the full re-encoding so this only changes the cost of saving the graph.
+     * DApps deployed before the write barrier existed, and calls involving reentrance, always fall back to the full re-encoding.
+     */
+    public boolean enableIncrementalGraphPersistence;
+    /**
+     * If set to true, a top-level call will only populate the objects in its DApp's graph when they are first accessed, instead of
+     * populating the entire graph before the call starts.  This also implies the incremental graph persistence, described above, so that
+     * objects never accessed don't need to be populated in order to write the graph back.
+     * The billing is unchanged since the entire graph is still read from storage.
+     * Only the graphs of DApps which store them with an index (see GraphIndex) are loaded this way:  older DApps are loaded eagerly.
+     */
+    public boolean enableLazyGraphLoading;
+    /**
+     * If set to true, the balance, nonce, transformed code and object graph of the sender and recipient of every transaction in a block
+     * are read from the kernel in one parallel pass before the block starts, into a cache which the executor threads read through.
+     * Writes pass straight through to the kernel and invalidate what they affect so this only changes where the reads are served from.
+     */
+    public boolean enableStatePrefetch;
+    /**
+     * If set to true, every block reads through a thread-safe cache of the state it reads from the kernel, so that a transaction which
+     * is aborted and retried, or a later transaction reading the same state, doesn't read it from the kernel again.
+     * Writes pass straight through to the kernel and invalidate exactly what they affect.  This is implied by enableStatePrefetch.
+     * The hits and misses of the cache are reported by AvmInternal.getBlockMetrics().
+     */
+    public boolean enableBlockStateCache;
+    /**
+     * The capacity of the cache of loaded DApps, kept between calls so that their code doesn't need to be reloaded and redefined.
+     * This is the estimated memory, in bytes, the cached DApps can retain (see LoadedDApp.getCacheWeight()):  the least-recently used
+     * DApps are evicted once it is exceeded.  0 disables the cache.
+     * The hits, misses and evictions of the cache are reported by AvmInternal.getDAppCacheStatistics(), to help tune this.
+     */
+    public long dappCacheCapacity;
 
     public AvmConfiguration() {
         // 4 threads is generally a safe, yet useful, number.
@@ -39,5 +77,13 @@ public class AvmConfiguration {
         // By default, none of our verbose options are enabled.
         this.enableVerboseContractErrors = false;
         this.enableVerboseConcurrentExecutor = false;
+        // Incremental graph persistence and lazy graph loading are still opt-in.
+        this.enableIncrementalGraphPersistence = false;
+        this.enableLazyGraphLoading = false;
+        // Prefetching is opt-in since it reads state the block may never use (a DApp which fails early doesn't need its graph).
+        this.enableStatePrefetch = false;
+        this.enableBlockStateCache = false;
+        // 64 MiB holds a few hundred typical DApps.
+        this.dappCacheCapacity = 64L * 1024L * 1024L;
     }
 }
@@ -5,22 +5,24 @@ import org.aion.avm.core.util.Helpers;
 import org.aion.kernel.*;
 
 import java.io.IOException;
-import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.function.Predicate;
 
 import org.aion.avm.core.persistence.LoadedDApp;
 import org.aion.avm.core.util.ByteArrayWrapper;
-import org.aion.avm.core.util.SoftCache;
+import org.aion.avm.core.util.WeightedLruCache;
 import i.IInstrumentation;
 import i.IInstrumentationFactory;
+import i.InstrumentationCarrierThread;
 import i.InstrumentationHelpers;
 import i.JvmError;
 import i.RuntimeAssertionError;
 import org.aion.kernel.AvmTransactionResult.Code;
 import org.aion.parallel.AddressResourceMonitor;
+import org.aion.parallel.TransactionDependencyGraph;
 import org.aion.parallel.TransactionTask;
 import org.aion.vm.api.interfaces.KernelInterface;
 import org.aion.vm.api.interfaces.SimpleFuture;
@@ -42,19 +44,26 @@ public class AvmImpl implements AvmInternal {
 
     // Long-lived state which is book-ended by the startup/shutdown calls.
     private static AvmImpl currentAvm;  // (only here for testing - makes sure that we properly clean these up between invocations)
-    private SoftCache<ByteArrayWrapper, LoadedDApp> hotCache;
+    private WeightedLruCache<ByteArrayWrapper, LoadedDApp> hotCache;
     private HandoffMonitor handoff;
 
     // Short-lived state which is reset for each batch of transaction request.
     private AddressResourceMonitor resourceMonitor;
+    private BlockMetricsCollector metricsCollector;
+    private volatile BlockCachingKernel currentBlockCache;
 
     // Used in the case of a fatal JvmError in the background threads.  A shutdown() is the only option from this point.
     private AvmFailedException backgroundFatalError;
 
     private final int threadCount;
+    private final long dappCacheCapacity;
     private final boolean preserveDebuggability;
     private final boolean enableVerboseContractErrors;
     private final boolean enableVerboseConcurrentExecutor;
+    private final boolean enableIncrementalGraphPersistence;
+    private final boolean enableLazyGraphLoading;
+    private final boolean enableStatePrefetch;
+    private final boolean enableBlockStateCache;
 
     public AvmImpl(IInstrumentationFactory instrumentationFactory, IExternalCapabilities capabilities, AvmConfiguration configuration) {
         this.instrumentationFactory = instrumentationFactory;
@@ -64,13 +73,21 @@ public class AvmImpl implements AvmInternal {
             throw new IllegalArgumentException("Thread count must be a positive integer");
         }
         this.threadCount = configuration.threadCount;
+        if (configuration.dappCacheCapacity < 0L) {
+            throw new IllegalArgumentException("DApp cache capacity cannot be negative");
+        }
+        this.dappCacheCapacity = configuration.dappCacheCapacity;
         this.preserveDebuggability = configuration.preserveDebuggability;
         this.enableVerboseContractErrors = configuration.enableVerboseContractErrors;
         this.enableVerboseConcurrentExecutor = configuration.enableVerboseConcurrentExecutor;
+        this.enableIncrementalGraphPersistence = configuration.enableIncrementalGraphPersistence;
+        this.enableLazyGraphLoading = configuration.enableLazyGraphLoading;
+        this.enableStatePrefetch = configuration.enableStatePrefetch;
+        this.enableBlockStateCache = configuration.enableBlockStateCache;
         this.internalLogger = new InternalLogger(System.err);
     }
 
-    private class AvmExecutorThread extends Thread{
+    private class AvmExecutorThread extends InstrumentationCarrierThread {
 
         AvmExecutorThread(String name){
             super(name);
@@ -105,6 +122,7 @@ public class AvmImpl implements AvmInternal {
                             // this is the point where that is "handled".
                             // Note that this is safe to do here since the instrumentation isn't exposed to any other threads.
                             instrumentation.clearAbortState();
+                            AvmImpl.this.metricsCollector.recordAbort(incomingTask.getIndex());
                             
                             if (AvmImpl.this.enableVerboseConcurrentExecutor) {
                                 System.out.println(this.getName() + " abort  " + incomingTask.getIndex() + " counter " + (++abortCounter));
@@ -143,11 +161,14 @@ public class AvmImpl implements AvmInternal {
         AvmImpl.currentAvm = this;
         
         RuntimeAssertionError.assertTrue(null == this.hotCache);
-        this.hotCache = new SoftCache<>();
+        this.hotCache = new WeightedLruCache<>(this.dappCacheCapacity, LoadedDApp::getCacheWeight);
 
         RuntimeAssertionError.assertTrue(null == this.resourceMonitor);
         this.resourceMonitor = new AddressResourceMonitor();
 
+        RuntimeAssertionError.assertTrue(null == this.metricsCollector);
+        this.metricsCollector = new BlockMetricsCollector();
+
         Set<Thread> executorThreads = new HashSet<>();
         for (int i = 0; i < this.threadCount; i++){
             executorThreads.add(new AvmExecutorThread("AVM Executor Thread " + i));
@@ -163,24 +184,80 @@ public class AvmImpl implements AvmInternal {
         if (null != this.backgroundFatalError) {
             throw this.backgroundFatalError;
         }
-        // Clear the states of resources
-        this.resourceMonitor.clear();
+        BlockCachingKernel blockCache = createBlockCache(kernel);
+        KernelInterface blockKernel = (null != blockCache) ? blockCache : kernel;
+        TransactionTask[] tasks = createTasks(blockKernel, transactions);
+        // Tasks sharing a sender or destination are run one after the other, instead of relying on aborts to resolve these conflicts.
+        // (only the addresses discovered at runtime, by cross-calls, are still resolved speculatively)
+        TransactionDependencyGraph dependencyGraph = TransactionDependencyGraph.fromTasks(tasks);
+        return this.handoff.sendTransactionsAsynchronously(tasks, dependencyGraph, () -> startBlock(blockKernel, blockCache, dependencyGraph, tasks));
+    }
 
-        // Clear the hot cache
-        if (transactions.length > 0) {
-            long currentBlockNum = kernel.getBlockNumber();
-            validateCodeCache(currentBlockNum);
+    @Override
+    public void runPipelined(KernelInterface kernel, TransactionInterface[] transactions, ITransactionResultCallback callback) throws IllegalStateException {
+        if (null != this.backgroundFatalError) {
+            throw this.backgroundFatalError;
         }
-        
+        BlockCachingKernel blockCache = createBlockCache(kernel);
+        KernelInterface blockKernel = (null != blockCache) ? blockCache : kernel;
+        TransactionTask[] tasks = createTasks(blockKernel, transactions);
+        TransactionDependencyGraph dependencyGraph = TransactionDependencyGraph.fromTasks(tasks);
+        this.handoff.submitTransactions(tasks, dependencyGraph, () -> startBlock(blockKernel, blockCache, dependencyGraph, tasks), callback);
+    }
+
+    private TransactionTask[] createTasks(KernelInterface kernel, TransactionInterface[] transactions) {
         // Filter these transactions into the safe kind we use internally (the type passed in may not be well-formed).
         AvmTransaction[] safeTransactions = checkTransactions(transactions);
-        // Create tasks for these new transactions and send them off to be asynchronously executed.
+        // Create tasks for these new transactions so they can be sent off to be asynchronously executed.
         TransactionTask[] tasks = new TransactionTask[transactions.length];
         for (int i = 0; i < transactions.length; i++){
             tasks[i] = new TransactionTask(kernel, safeTransactions[i], i, safeTransactions[i].senderAddress);
         }
+        return tasks;
+    }
+
+    private BlockCachingKernel createBlockCache(KernelInterface kernel) {
+        // Prefetching needs somewhere to put what it reads, so it implies the cache.
+        return (this.enableBlockStateCache || this.enableStatePrefetch)
+                ? new BlockCachingKernel(kernel)
+                : null;
+    }
+
+    private int startBlock(KernelInterface kernel, BlockCachingKernel blockCache, TransactionDependencyGraph dependencyGraph, TransactionTask[] tasks) {
+        // Called by the HandoffMonitor once every task of the previous block has completed (so nothing is using the per-block state).
+        // (this isn't called under the HandoffMonitor's lock so the IO of the prefetch doesn't hold up the delivery of the previous block)
+        int transactionCount = tasks.length;
+        // Clear the states of resources (we only need the abort rate of the previous block to decide how many threads to use on this one).
+        this.resourceMonitor.clear();
+        double previousAbortRate = this.metricsCollector.getAbortRate();
+        this.metricsCollector.reset(transactionCount);
+        this.currentBlockCache = blockCache;
+
+        // Clear the hot cache
+        if (transactionCount > 0) {
+            long currentBlockNum = kernel.getBlockNumber();
+            validateCodeCache(currentBlockNum);
+        }
+
+        // The previous block has finished writing to the kernel so this is where we can warm the cache of this block.
+        if ((null != blockCache) && this.enableStatePrefetch) {
+            Set<AionAddress> addresses = new LinkedHashSet<>();
+            for (TransactionTask task : tasks) {
+                addresses.add(task.getTransaction().senderAddress);
+                addresses.add(task.getTransaction().destinationAddress);
+            }
+            blockCache.prefetch(addresses);
+        }
+        return chooseActiveThreadCount(dependencyGraph, previousAbortRate);
+    }
 
-        return this.handoff.sendTransactionsAsynchronously(tasks);
+    private int chooseActiveThreadCount(TransactionDependencyGraph dependencyGraph, double previousAbortRate) {
+        // There is no point waking more threads than there are tasks which could run at once.
+        int count = Math.min(this.threadCount, dependencyGraph.estimateWidth());
+        // The graph can't see the conflicts caused by cross-calls so, if the previous block spent its time aborting, back off in proportion.
+        // (this recovers as soon as a block runs without aborts)
+        count = (int) Math.ceil(count / (1.0 + previousAbortRate));
+        return Math.max(1, count);
     }
 
     private AvmTransaction[] checkTransactions(TransactionInterface[] transactions) {
@@ -383,19 +460,24 @@ public class AvmImpl implements AvmInternal {
             if ((null != stateToResume) && (null != thisTransactionKernel.getTransformedCode(recipient))) {
                 dapp = stateToResume.dApp;
                 // Call directly and don't interact with DApp cache (we are reentering the state, not the origin of it).
-                DAppExecutor.call(this.capabilities, thisTransactionKernel, this, dapp, stateToResume, task, tx, result, this.enableVerboseContractErrors);
+                DAppExecutor.call(this.capabilities, thisTransactionKernel, this, dapp, stateToResume, task, tx, result, this.enableVerboseContractErrors, this.enableIncrementalGraphPersistence, this.enableLazyGraphLoading);
             } else {
                 // If we didn't find it there (that is only for reentrant calls so it is rarely found in the stack), try the hot DApp cache.
                 ByteArrayWrapper addressWrapper = new ByteArrayWrapper(recipient.toByteArray());
-                LoadedDApp dappInHotCache = this.hotCache.checkout(addressWrapper);
-                //'parentKernel.getTransformedCode(recipient) != null' means this recipient's DApp is not self-destructed.
-                if (thisTransactionKernel.getTransformedCode(recipient) != null) {
-                    dapp = dappInHotCache;
+                byte[] transformedCode = thisTransactionKernel.getTransformedCode(recipient);
+                //'transformedCode != null' means this recipient's DApp is not self-destructed.
+                if (null != transformedCode) {
+                    dapp = this.hotCache.checkout(addressWrapper);
+                } else {
+                    // This isn't a DApp (or no longer is) so just make sure we aren't caching a stale copy of it.
+                    this.hotCache.discard(addressWrapper);
                 }
                 if (null == dapp) {
                     // If we didn't find it there, just load it.
                     try {
-                        dapp = DAppLoader.loadFromGraph(thisTransactionKernel.getTransformedCode(recipient), this.preserveDebuggability);
+                        long loadStartNanos = System.nanoTime();
+                        dapp = DAppLoader.loadFromGraph(transformedCode, this.preserveDebuggability);
+                        this.metricsCollector.recordLoadTime(System.nanoTime() - loadStartNanos);
 
                         // If the dapp is freshly loaded, we set the block num
                         if (null != dapp){
@@ -407,8 +489,9 @@ public class AvmImpl implements AvmInternal {
                     }
                 }
                 // Run the call and, if successful, check this into the hot DApp cache.
+                // (if another thread was concurrently using this DApp, it had to load its own instance, so both are pooled in the cache)
                 if (null != dapp) {
-                    DAppExecutor.call(this.capabilities, thisTransactionKernel, this, dapp, stateToResume, task, tx, result, this.enableVerboseContractErrors);
+                    DAppExecutor.call(this.capabilities, thisTransactionKernel, this, dapp, stateToResume, task, tx, result, this.enableVerboseContractErrors, this.enableIncrementalGraphPersistence, this.enableLazyGraphLoading);
                     if (AvmTransactionResult.Code.SUCCESS == result.getResultCode()) {
                         dapp.cleanForCache();
                         this.hotCache.checkin(addressWrapper, dapp);
@@ -435,8 +518,27 @@ public class AvmImpl implements AvmInternal {
         return resourceMonitor;
     }
 
+    @Override
+    public BlockMetricsCollector getMetricsCollector() {
+        return this.metricsCollector;
+    }
+
+    @Override
+    public BlockMetrics getBlockMetrics() {
+        return this.metricsCollector.snapshot(this.resourceMonitor, this.currentBlockCache);
+    }
+
+    @Override
+    public WeightedLruCache.Statistics getDAppCacheStatistics() {
+        // The cache only exists while the AVM is running.
+        WeightedLruCache<ByteArrayWrapper, LoadedDApp> cache = this.hotCache;
+        return (null != cache)
+                ? cache.getStatistics()
+                : new WeightedLruCache.Statistics(this.dappCacheCapacity, 0, 0L, 0L, 0L, 0L);
+    }
+
     private void validateCodeCache(long blockNum){
-        Predicate<SoftReference<LoadedDApp>> condition = (v) -> null != v.get() && v.get().getLoadedBlockNum() >= blockNum;
+        Predicate<LoadedDApp> condition = (v) -> v.getLoadedBlockNum() >= blockNum;
         this.hotCache.removeValueIf(condition);
     }
 }
@@ -1,5 +1,6 @@
 package org.aion.avm.core;
 
+import org.aion.avm.core.util.WeightedLruCache;
 import org.aion.kernel.AvmTransactionResult;
 import org.aion.parallel.AddressResourceMonitor;
 import org.aion.parallel.TransactionTask;
@@ -23,10 +24,48 @@ public interface AvmInternal extends VirtualMachine {
      */
     AvmTransactionResult runInternalTransaction(KernelInterface parentKernel, TransactionTask task, AvmTransaction tx);
 
+    /**
+     * Submits a block of transactions, delivering their results to the given callback instead of returning futures.
+     * Unlike run(), this can be called again before the results of the previous block have been delivered:  each block is started as soon
+     * as all the transactions of the previous block have committed, so the caller can submit the next block while the previous is finishing.
+     * Note that the given kernel must already reflect the state of the previous blocks, once they commit (typically, it is the same kernel).
+     * This can't be mixed with run():  the results of all blocks submitted this way must be delivered before calling run().
+     *
+     * @param kernel The kernel to run the transactions against.
+     * @param transactions The transactions of the block.
+     * @param callback Receives the results of the transactions, in order, on the AVM's executor threads.
+     * @throws IllegalStateException If the AVM has been shut down.
+     */
+    void runPipelined(KernelInterface kernel, TransactionInterface[] transactions, ITransactionResultCallback callback) throws IllegalStateException;
+
     /**
      * Get the address resource monitor using by the current AVM.
      *
      * @return The address resource monitor.
      */
     AddressResourceMonitor getResourceMonitor();
+
+    /**
+     * Get the collector of the metrics of the current block, used by the executor threads to record where their time went.
+     *
+     * @return The block metrics collector.
+     */
+    BlockMetricsCollector getMetricsCollector();
+
+    /**
+     * Get the metrics collected so far for the most recent block of transactions to start running (from either run() or runPipelined()).
+     * These are only complete once all the results of that block have been consumed.
+     * Collecting these is cheap enough that it is always enabled.
+     *
+     * @return A snapshot of the metrics of the most recent block.
+     */
+    BlockMetrics getBlockMetrics();
+
+    /**
+     * Get the counters of the cache of loaded DApps, since the AVM was started.
+     * The hit rate of this cache can be tuned with AvmConfiguration.dappCacheCapacity.
+     *
+     * @return A snapshot of the cache's counters (all zero if the AVM is not running).
+     */
+    WeightedLruCache.Statistics getDAppCacheStatistics();
 }
\ No newline at end of file
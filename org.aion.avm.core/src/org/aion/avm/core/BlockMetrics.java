@@ -0,0 +1,129 @@
+package org.aion.avm.core;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.aion.types.AionAddress;
+
+
+/**
+ * An immutable snapshot of the metrics collected by the concurrent executor while running a block of transactions (that is, one call to
+ * run()).  These are intended to describe how much contention the block experienced, in order to tune AvmConfiguration.threadCount.
+ *
+ * All times are in nanoseconds and are summed across all executor threads, so they can exceed the wall-clock time of the block.
+ */
+public final class BlockMetrics {
+    private final int[] abortCounts;
+    private final Map<AionAddress, Long> addressWaitNanos;
+    private final long commitWaitNanos;
+    private final long loadNanos;
+    private final long executeNanos;
+    private final long saveNanos;
+    private final long stateCacheHits;
+    private final long stateCacheMisses;
+
+    public BlockMetrics(int[] abortCounts, Map<AionAddress, Long> addressWaitNanos, long commitWaitNanos, long loadNanos, long executeNanos, long saveNanos, long stateCacheHits, long stateCacheMisses) {
+        this.abortCounts = abortCounts.clone();
+        this.addressWaitNanos = Collections.unmodifiableMap(addressWaitNanos);
+        this.commitWaitNanos = commitWaitNanos;
+        this.loadNanos = loadNanos;
+        this.executeNanos = executeNanos;
+        this.saveNanos = saveNanos;
+        this.stateCacheHits = stateCacheHits;
+        this.stateCacheMisses = stateCacheMisses;
+    }
+
+    /**
+     * @return The number of transactions in the block.
+     */
+    public int getTransactionCount() {
+        return this.abortCounts.length;
+    }
+
+    /**
+     * @return The total number of times a transaction in the block was aborted (and hence retried).
+     */
+    public int getTotalAbortCount() {
+        int total = 0;
+        for (int count : this.abortCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param transactionIndex The index of a transaction within the block.
+     * @return The number of times that transaction was aborted (and hence retried).
+     */
+    public int getAbortCount(int transactionIndex) {
+        return this.abortCounts[transactionIndex];
+    }
+
+    /**
+     * Note that only addresses where some transaction actually had to wait are included.
+     *
+     * @return The time spent waiting to acquire each address.
+     */
+    public Map<AionAddress, Long> getAddressWaitNanos() {
+        return this.addressWaitNanos;
+    }
+
+    /**
+     * @return The time spent waiting for the transactions before each transaction to commit.
+     */
+    public long getCommitWaitNanos() {
+        return this.commitWaitNanos;
+    }
+
+    /**
+     * @return The time spent loading DApp code and graphs (including transforming the code of new deployments).
+     */
+    public long getLoadNanos() {
+        return this.loadNanos;
+    }
+
+    /**
+     * @return The time spent running DApp code (main() or, when deploying, the class initializers).
+     */
+    public long getExecuteNanos() {
+        return this.executeNanos;
+    }
+
+    /**
+     * @return The time spent saving DApp graphs.
+     */
+    public long getSaveNanos() {
+        return this.saveNanos;
+    }
+
+    /**
+     * Note that this is always 0 unless AvmConfiguration.enableBlockStateCache (or enableStatePrefetch) is set.
+     *
+     * @return The number of reads of the kernel's state which were served from the block's state cache.
+     */
+    public long getStateCacheHits() {
+        return this.stateCacheHits;
+    }
+
+    /**
+     * Note that this is always 0 unless AvmConfiguration.enableBlockStateCache (or enableStatePrefetch) is set.
+     *
+     * @return The number of reads of the kernel's state which missed the block's state cache (including those made by the prefetch).
+     */
+    public long getStateCacheMisses() {
+        return this.stateCacheMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockMetrics(transactions: " + getTransactionCount()
+                + ", aborts: " + getTotalAbortCount()
+                + ", contended addresses: " + this.addressWaitNanos.size()
+                + ", commitWait: " + this.commitWaitNanos / 1000 + " \u00B5s"
+                + ", load: " + this.loadNanos / 1000 + " \u00B5s"
+                + ", execute: " + this.executeNanos / 1000 + " \u00B5s"
+                + ", save: " + this.saveNanos / 1000 + " \u00B5s"
+                + ", state cache hits: " + this.stateCacheHits
+                + ", state cache misses: " + this.stateCacheMisses + ")";
+    }
+}
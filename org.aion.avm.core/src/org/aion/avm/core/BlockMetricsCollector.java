@@ -0,0 +1,91 @@
+package org.aion.avm.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.aion.kernel.BlockCachingKernel;
+import org.aion.parallel.AddressResourceMonitor;
+
+
+/**
+ * Collects the BlockMetrics of the current block from the executor threads.
+ * This is always enabled so it only uses uncontended atomic counters and is only told about durations which were already measured.
+ *
+ * The contention on addresses and commits is collected by the AddressResourceMonitor, since that is where the waiting happens, and the
+ * hits and misses of the state cache are counted by the BlockCachingKernel of the block, since that is where the reads happen.  Both are
+ * combined with these counters when a snapshot is requested.
+ */
+public class BlockMetricsCollector {
+    private volatile AtomicIntegerArray abortCounts;
+    private final LongAdder loadNanos;
+    private final LongAdder executeNanos;
+    private final LongAdder saveNanos;
+
+    public BlockMetricsCollector() {
+        this.abortCounts = new AtomicIntegerArray(0);
+        this.loadNanos = new LongAdder();
+        this.executeNanos = new LongAdder();
+        this.saveNanos = new LongAdder();
+    }
+
+    /**
+     * Resets the collector for a new block.
+     * Note that no executor thread can be running a transaction while this is called.
+     *
+     * @param transactionCount The number of transactions in the new block.
+     */
+    public void reset(int transactionCount) {
+        this.abortCounts = new AtomicIntegerArray(transactionCount);
+        this.loadNanos.reset();
+        this.executeNanos.reset();
+        this.saveNanos.reset();
+    }
+
+    public void recordAbort(int transactionIndex) {
+        this.abortCounts.incrementAndGet(transactionIndex);
+    }
+
+    /**
+     * @return The average number of aborts per transaction in the current block (0 if there were no transactions).
+     */
+    public double getAbortRate() {
+        AtomicIntegerArray abortCounts = this.abortCounts;
+        long total = 0L;
+        for (int i = 0; i < abortCounts.length(); ++i) {
+            total += abortCounts.get(i);
+        }
+        return (abortCounts.length() > 0)
+                ? (double) total / abortCounts.length()
+                : 0.0;
+    }
+
+    public void recordLoadTime(long nanos) {
+        this.loadNanos.add(nanos);
+    }
+
+    public void recordExecuteTime(long nanos) {
+        this.executeNanos.add(nanos);
+    }
+
+    public void recordSaveTime(long nanos) {
+        this.saveNanos.add(nanos);
+    }
+
+    /**
+     * Creates a snapshot of the metrics collected so far in the current block.
+     *
+     * @param resourceMonitor The monitor which collected the contention of the current block.
+     * @param blockCache The state cache of the current block (null if it doesn't have one).
+     * @return The snapshot.
+     */
+    public BlockMetrics snapshot(AddressResourceMonitor resourceMonitor, BlockCachingKernel blockCache) {
+        AtomicIntegerArray abortCounts = this.abortCounts;
+        int[] counts = new int[abortCounts.length()];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = abortCounts.get(i);
+        }
+        long stateCacheHits = (null != blockCache) ? blockCache.getHitCount() : 0L;
+        long stateCacheMisses = (null != blockCache) ? blockCache.getMissCount() : 0L;
+        return new BlockMetrics(counts, resourceMonitor.getAcquireWaitNanosByAddress(), resourceMonitor.getCommitWaitNanos(), this.loadNanos.sum(), this.executeNanos.sum(), this.saveNanos.sum(), stateCacheHits, stateCacheMisses);
+    }
+}
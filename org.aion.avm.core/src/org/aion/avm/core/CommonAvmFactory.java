@@ -3,6 +3,7 @@ package org.aion.avm.core;
 import i.CommonInstrumentation;
 import i.IInstrumentation;
 import i.IInstrumentationFactory;
+import org.aion.avm.core.profiling.ProfilingInstrumentationFactory;
 
 
 /**
@@ -22,6 +23,20 @@ public class CommonAvmFactory {
         return NodeEnvironment.singleton.buildAvmInstance(factory, capabilities, configuration);
     }
 
+    /**
+     * Creates an AVM instance, as buildAvmInstanceForConfiguration does, which also profiles every DApp it runs.
+     * The profile is read from the given factory (see ExecutionProfile).  This is much slower than a normal instance so it is only for
+     * diagnosis.
+     * 
+     * @param capabilities The external capabilities which this AVM instance can use.
+     * @param configuration The configuration to use when assembling the AVM instance.
+     * @param profilingFactory The factory whose profile the AVM instance will record into.
+     * @return An AVM instance.
+     */
+    public static AvmImpl buildProfilingAvmInstanceForConfiguration(IExternalCapabilities capabilities, AvmConfiguration configuration, ProfilingInstrumentationFactory profilingFactory) {
+        return NodeEnvironment.singleton.buildAvmInstance(profilingFactory, capabilities, configuration);
+    }
+
 
     private static class CommonInstrumentationFactory implements IInstrumentationFactory {
         @Override
@@ -19,6 +19,7 @@ import org.aion.avm.core.miscvisitors.StrictFPVisitor;
 import org.aion.avm.core.miscvisitors.UserClassMappingVisitor;
 import org.aion.avm.core.persistence.AutomaticGraphVisitor;
 import org.aion.avm.core.persistence.LoadedDApp;
+import org.aion.avm.core.profiling.ProfilingInstrumentation;
 import org.aion.avm.core.rejection.MainMethodChecker;
 import org.aion.avm.core.rejection.RejectedClassException;
 import org.aion.avm.core.rejection.RejectionClassVisitor;
@@ -42,11 +43,17 @@ import org.aion.parallel.TransactionTask;
 import org.aion.vm.api.interfaces.KernelInterface;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 
 public class DAppCreator {
+    // The constant pool tag of a field reference (JVMS 4.4).
+    private static final int CONSTANT_FIELDREF_TAG = 9;
+
     /**
      * Returns the sizes of all the user-space classes
      *
@@ -90,6 +97,22 @@ public class DAppCreator {
      * @return the transformed classes and any generated classes (names specified in .-style)
      */
     public static Map<String, byte[]> transformClasses(Map<String, byte[]> inputClasses, Forest<String, ClassInfo> oldPreRenameForest, ClassHierarchy classHierarchy, ClassRenamer classRenamer, boolean preserveDebuggability) {
+        return transformClasses(inputClasses, oldPreRenameForest, classHierarchy, classRenamer, preserveDebuggability, true);
+    }
+
+    /**
+     * Transforms the classes as transformClasses(inputClasses, oldPreRenameForest, classHierarchy, classRenamer, preserveDebuggability)
+     * does but allows the classes to be transformed one after the other, on the calling thread, instead of in parallel.
+     * The result is the same either way:  this only exists so that tests can verify that.
+     *
+     * @param inputClasses The class of DApp (names specified in .-style)
+     * @param oldPreRenameForest The pre-rename forest of user-defined classes in the DApp (/-style).
+     * @param classHierarchy The class hierarchy of all classes in the system (.-style).
+     * @param preserveDebuggability Whether or not debug mode is enabled.
+     * @param parallel True if the classes should be spread across the fork-join pool.
+     * @return the transformed classes and any generated classes (names specified in .-style)
+     */
+    public static Map<String, byte[]> transformClasses(Map<String, byte[]> inputClasses, Forest<String, ClassInfo> oldPreRenameForest, ClassHierarchy classHierarchy, ClassRenamer classRenamer, boolean preserveDebuggability, boolean parallel) {
         // Before anything, pass the list of classes through the verifier.
         // (this will throw UncaughtException, on verification failure).
         Verifier.verifyUntrustedClasses(inputClasses);
@@ -99,7 +122,8 @@ public class DAppCreator {
         ConstantClassBuilder.ConstantClassInfo constantClass = ConstantClassBuilder.buildConstantClassBytecodeForClasses(PackageConstants.kConstantClassName, safeClasses.values());
         
         // merge the generated classes and processed classes, assuming the package spaces do not conflict.
-        Map<String, byte[]> processedClasses = new HashMap<>();
+        // (the classes are transformed concurrently so this must be safe to populate from several threads)
+        Map<String, byte[]> processedClasses = new ConcurrentHashMap<>();
         
         // Start by adding the constant class.
         processedClasses.put(PackageConstants.kConstantClassName, constantClass.bytecode);
@@ -112,12 +136,32 @@ public class DAppCreator {
             processedClasses.put(classDotName, bytecode);
         };
         Map<String, Integer> postRenameObjectSizes = computeAllPostRenameObjectSizes(oldPreRenameForest, preserveDebuggability);
+        // The persistence methods are generated for any user class which only has user-defined superclasses (other than Object).
+        Set<String> classesForGeneratedPersistence = AutomaticGraphVisitor.findClassesForGeneratedPersistence(safeClasses);
+
+        /*
+         * The last pass deals with static fields in interfaces, so we need to know all of the user-defined interfaces up-front.
+         * Note that all fields in interfaces are defined as static.
+         */
+        Set<String> preRenameUserClassesAndInterfaces = classHierarchy.getPreRenameUserDefinedClassesAndInterfaces();
+        Set<String> userInterfaceSlashNames = new HashSet<>();
 
-        Map<String, byte[]> transformedClasses = new HashMap<>();
+        for (String preRenameUserClassOrInterface : preRenameUserClassesAndInterfaces) {
+            // We set ArrayType to null because we never expect to see arrays here!
+            if (classHierarchy.postRenameTypeIsInterface(classRenamer.toPostRename(preRenameUserClassOrInterface, ArrayType.NOT_ARRAY))) {
+                userInterfaceSlashNames.add(PackageConstants.kUserSlashPrefix + Helpers.fulllyQualifiedNameToInternalName(preRenameUserClassOrInterface));
+            }
+        }
+        String javaLangObjectSlashName = PackageConstants.kShadowSlashPrefix + "java/lang/Object";
 
         int parsingOptions = preserveDebuggability ? ClassReader.EXPAND_FRAMES : ClassReader.EXPAND_FRAMES | ClassReader.SKIP_DEBUG;
 
-        for (String name : safeClasses.keySet()) {
+        // Each class is transformed independently (the visitors and the shared, read-only, inputs have no other state) so we spread the
+        // classes across the fork-join pool.  Each output only depends on its input class, so this is deterministic regardless of scheduling.
+        Stream<String> classNames = parallel
+                ? safeClasses.keySet().parallelStream()
+                : safeClasses.keySet().stream();
+        classNames.forEach((name) -> {
             // Note that transformClasses requires that the input class names by the .-style names.
             RuntimeAssertionError.assertTrue(-1 == name.indexOf("/"));
 
@@ -132,48 +176,46 @@ public class DAppCreator {
                     .addNextVisitor(new ClassShadowing(PackageConstants.kShadowSlashPrefix))
                     .addNextVisitor(new StackWatcherClassAdapter())
                     .addNextVisitor(new ExceptionWrapping(generatedClassesSink, classHierarchy))
-                    .addNextVisitor(new AutomaticGraphVisitor())
+                    .addNextVisitor(new AutomaticGraphVisitor(classesForGeneratedPersistence))
                     .addNextVisitor(new StrictFPVisitor())
                     .addWriter(new TypeAwareClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, classHierarchy, classRenamer))
                     .build()
                     .runAndGetBytecode();
+            // The array wrapping needs its own pass since it analyzes each method, which requires the frames and maxs computed above.
             bytecode = new ClassToolchain.Builder(bytecode, parsingOptions)
                     .addNextVisitor(new ArrayWrappingClassAdapterRef(classHierarchy))
                     .addNextVisitor(new ArrayWrappingClassAdapter())
                     .addWriter(new TypeAwareClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, classHierarchy, classRenamer))
                     .build()
                     .runAndGetBytecode();
-            transformedClasses.put(name, bytecode);
-        }
-
-        /*
-         * Another pass to deal with static fields in interfaces.
-         * Note that all fields in interfaces are defined as static.
-         */
-
-        // We grab all of the user-defined interfaces.
-        Set<String> preRenameUserClassesAndInterfaces = classHierarchy.getPreRenameUserDefinedClassesAndInterfaces();
-        Set<String> userInterfaceSlashNames = new HashSet<>();
-
-        for (String preRenameUserClassOrInterface : preRenameUserClassesAndInterfaces) {
-            // We set ArrayType to null because we never expect to see arrays here!
-            if (classHierarchy.postRenameTypeIsInterface(classRenamer.toPostRename(preRenameUserClassOrInterface, ArrayType.NOT_ARRAY))) {
-                userInterfaceSlashNames.add(PackageConstants.kUserSlashPrefix + Helpers.fulllyQualifiedNameToInternalName(preRenameUserClassOrInterface));
+            // The interface field mapping moves the <clinit> of interfaces as it was written above, so it also needs its own pass.
+            // However, it only changes interfaces and classes accessing their fields so we skip this pass for all other classes.
+            if (needsInterfaceFieldMapping(bytecode, userInterfaceSlashNames)) {
+                bytecode = new ClassToolchain.Builder(bytecode, parsingOptions)
+                        .addNextVisitor(new InterfaceFieldMappingVisitor(generatedClassesSink, userInterfaceSlashNames, javaLangObjectSlashName))
+                        .addWriter(new TypeAwareClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, classHierarchy, classRenamer))
+                        .build()
+                        .runAndGetBytecode();
             }
-        }
+            processedClasses.put(name, bytecode);
+        });
 
-        String javaLangObjectSlashName = PackageConstants.kShadowSlashPrefix + "java/lang/Object";
-        for (String name : transformedClasses.keySet()) {
-            byte[] bytecode = new ClassToolchain.Builder(transformedClasses.get(name), parsingOptions)
-                    .addNextVisitor(new InterfaceFieldMappingVisitor(generatedClassesSink, userInterfaceSlashNames, javaLangObjectSlashName))
-                    .addWriter(new TypeAwareClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, classHierarchy, classRenamer))
-                    .build()
-                    .runAndGetBytecode();
+        return new HashMap<>(processedClasses);
+    }
 
-            processedClasses.put(name, bytecode);
+    private static boolean needsInterfaceFieldMapping(byte[] bytecode, Set<String> userInterfaceSlashNames) {
+        ClassReader reader = new ClassReader(bytecode);
+        boolean needsMapping = (0 != (Opcodes.ACC_INTERFACE & reader.getAccess()));
+        // Any access to an interface field is through a Fieldref in the constant pool, so we only need to scan that (slot 0 is unused).
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; !needsMapping && (i < reader.getItemCount()); ++i) {
+            int offset = reader.getItem(i);
+            // (the second slot of a long or double constant has no offset)
+            if ((0 != offset) && (CONSTANT_FIELDREF_TAG == reader.b[offset - 1])) {
+                needsMapping = userInterfaceSlashNames.contains(reader.readClass(offset, buffer));
+            }
         }
-
-        return processedClasses;
+        return needsMapping;
     }
 
     public static void create(IExternalCapabilities capabilities, KernelInterface kernel, AvmInternal avm, TransactionTask task, AvmTransaction tx, AvmTransactionResult result, boolean preserveDebuggability, boolean verboseErrors) {
@@ -215,26 +257,31 @@ public class DAppCreator {
             ClassHierarchyForest dappClassesForest = rawDapp.classHierarchyForest;
 
             // transform
+            BlockMetricsCollector metrics = avm.getMetricsCollector();
+            long loadStartNanos = System.nanoTime();
             Map<String, byte[]> transformedClasses = transformClasses(rawDapp.classes, dappClassesForest, rawDapp.classHierarchy, rawDapp.classRenamer, preserveDebuggability);
             TransformedDappModule transformedDapp = TransformedDappModule.fromTransformedClasses(transformedClasses, rawDapp.mainClass);
 
             dapp = DAppLoader.fromTransformed(transformedDapp, preserveDebuggability);
+            metrics.recordLoadTime(System.nanoTime() - loadStartNanos);
             
             // We start the nextHashCode at 1.
             int nextHashCode = 1;
             InstrumentationHelpers.pushNewStackFrame(dapp.runtimeSetup, dapp.loader, tx.energyLimit - result.getEnergyUsed(), nextHashCode, new InternedClasses());
+            ProfilingInstrumentation.nameCurrentFrame(dappAddress);
             // (we pass a null reentrant state since we haven't finished initializing yet - nobody can call into us).
             IBlockchainRuntime previousRuntime = dapp.attachBlockchainRuntime(new BlockchainRuntimeImpl(capabilities, kernel, avm, null, task, tx, codeAndArguments.arguments, dapp.runtimeSetup));
 
             // We have just created this dApp, there should be no previous runtime associated with it.
             RuntimeAssertionError.assertTrue(previousRuntime == null);
 
-            IInstrumentation threadInstrumentation = IInstrumentation.attachedThreadInstrumentation.get();
+            IInstrumentation threadInstrumentation = IInstrumentation.getCurrentThreadInstrumentation();
             threadInstrumentation.chargeEnergy(BillingRules.getDeploymentFee(rawDapp.numberOfClasses, rawDapp.bytecodeSize));
 
             // Create the immortal version of the transformed DApp code by stripping the <clinit>.
-            Map<String, byte[]> immortalClasses = new HashMap<>();
-            for (Map.Entry<String, byte[]> elt : transformedClasses.entrySet()) {
+            // (like the transformation, each class is independent so this is spread across the fork-join pool)
+            Map<String, byte[]> immortalClasses = new ConcurrentHashMap<>();
+            transformedClasses.entrySet().parallelStream().forEach((elt) -> {
                 String className = elt.getKey();
                 byte[] transformedClass = elt.getValue();
                 byte[] immortalClass = new ClassToolchain.Builder(transformedClass, 0)
@@ -243,23 +290,27 @@ public class DAppCreator {
                         .build()
                         .runAndGetBytecode();
                 immortalClasses.put(className, immortalClass);
-            }
+            });
             ImmortalDappModule immortalDapp = ImmortalDappModule.fromImmortalClasses(immortalClasses, transformedDapp.mainClass);
 
             // store deployed code
             kernel.putCode(dappAddress, codeAndArguments.code);
-            // store transformed dapp
-            byte[] immortalDappJar = immortalDapp.createJar(dappAddress, kernel.getBlockTimestamp());
-            kernel.setTransformedCode(dappAddress, immortalDappJar);
+            // store transformed dapp (as a code bundle, so that it is cheap to load)
+            byte[] immortalDappBundle = immortalDapp.createBundle();
+            kernel.setTransformedCode(dappAddress, immortalDappBundle);
 
             // Force the classes in the dapp to initialize so that the <clinit> is run (since we already saved the version without).
+            long executeStartNanos = System.nanoTime();
             dapp.forceInitializeAllClasses();
+            long saveStartNanos = System.nanoTime();
+            metrics.recordExecuteTime(saveStartNanos - executeStartNanos);
 
             // Save back the state before we return.
             byte[] rawGraphData = dapp.saveEntireGraph(threadInstrumentation.peekNextHashCode(), StorageFees.MAX_GRAPH_SIZE);
             // Bill for writing this size.
             threadInstrumentation.chargeEnergy(StorageFees.WRITE_PRICE_PER_BYTE * rawGraphData.length);
             kernel.putObjectGraph(dappAddress, rawGraphData);
+            metrics.recordSaveTime(System.nanoTime() - saveStartNanos);
 
             long refund = 0;
             long energyUsed = tx.energyLimit - threadInstrumentation.energyLeft();
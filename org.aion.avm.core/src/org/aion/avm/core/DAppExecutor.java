@@ -1,10 +1,13 @@
 package org.aion.avm.core;
 
+import java.util.Arrays;
+
 import org.aion.types.AionAddress;
 import org.aion.avm.RuntimeMethodFeeSchedule;
 import org.aion.avm.StorageFees;
 import org.aion.avm.core.persistence.LoadedDApp;
 import org.aion.avm.core.persistence.ReentrantGraph;
+import org.aion.avm.core.profiling.ProfilingInstrumentation;
 import org.aion.avm.core.util.Helpers;
 import i.*;
 import org.aion.kernel.AvmTransactionResult;
@@ -20,7 +23,7 @@ public class DAppExecutor {
 
     public static void call(IExternalCapabilities capabilities, KernelInterface kernel, AvmInternal avm, LoadedDApp dapp,
                             ReentrantDAppStack.ReentrantState stateToResume, TransactionTask task,
-                            AvmTransaction tx, AvmTransactionResult result, boolean verboseErrors) {
+                            AvmTransaction tx, AvmTransactionResult result, boolean verboseErrors, boolean enableIncrementalGraphPersistence, boolean enableLazyGraphLoading) {
         AionAddress dappAddress = tx.destinationAddress;
         
         // If this is a reentrant call, we need to serialize the graph of the parent frame.  This is required to both copy-back our changes but also
@@ -30,7 +33,7 @@ public class DAppExecutor {
                 : null;
         
         // Note that the instrumentation is just a per-thread access to the state stack - we can grab it at any time as it never changes for this thread.
-        IInstrumentation threadInstrumentation = IInstrumentation.attachedThreadInstrumentation.get();
+        IInstrumentation threadInstrumentation = IInstrumentation.getCurrentThreadInstrumentation();
         
         // We need to get the interned classes before load the graph since it might need to instantiate class references.
         InternedClasses initialClassWrappers = (null != stateToResume)
@@ -41,7 +44,24 @@ public class DAppExecutor {
         byte[] rawGraphData = (null != callerState)
                 ? callerState.rawState
                 : kernel.getObjectGraph(dappAddress);
-        int nextHashCode = dapp.loadEntireGraph(initialClassWrappers, rawGraphData);
+        // Incremental persistence relies on the write barrier reporting all changes to the loaded graph so it is only possible at the top-level
+        // (reentrant calls write the callee's changes directly into the caller's objects).  The same is true of lazy loading, which implies
+        // incremental persistence (so that the save doesn't need to populate every stub).
+        boolean isLazyLoad = enableLazyGraphLoading && (null == stateToResume);
+        boolean isIncrementalSave = (enableIncrementalGraphPersistence || enableLazyGraphLoading) && (null == stateToResume);
+        BlockMetricsCollector metrics = avm.getMetricsCollector();
+        long loadStartNanos = System.nanoTime();
+        int nextHashCode = 0;
+        if (null != callerState) {
+            nextHashCode = dapp.loadCallerGraph(initialClassWrappers, rawGraphData);
+        } else if (isLazyLoad) {
+            nextHashCode = dapp.loadGraphLazily(initialClassWrappers, rawGraphData);
+        } else if (isIncrementalSave) {
+            nextHashCode = dapp.loadEntireGraphForIncrementalSave(initialClassWrappers, rawGraphData);
+        } else {
+            nextHashCode = dapp.loadEntireGraph(initialClassWrappers, rawGraphData);
+        }
+        metrics.recordLoadTime(System.nanoTime() - loadStartNanos);
         
         // Note that we need to store the state of this invocation on the reentrant stack in case there is another call into the same app.
         // This is required so that the call() mechanism can access it to save/reload its ContractEnvironmentState and so that the underlying
@@ -51,6 +71,7 @@ public class DAppExecutor {
         task.getReentrantDAppStack().pushState(thisState);
         
         InstrumentationHelpers.pushNewStackFrame(dapp.runtimeSetup, dapp.loader, tx.energyLimit - result.getEnergyUsed(), nextHashCode, initialClassWrappers);
+        ProfilingInstrumentation.nameCurrentFrame(dappAddress);
         IBlockchainRuntime previousRuntime = dapp.attachBlockchainRuntime(new BlockchainRuntimeImpl(capabilities, kernel, avm, thisState, task, tx, tx.data, dapp.runtimeSetup));
 
         try {
@@ -59,7 +80,10 @@ public class DAppExecutor {
             threadInstrumentation.chargeEnergy(StorageFees.READ_PRICE_PER_BYTE * rawGraphData.length);
             
             // Call the main within the DApp.
+            long executeStartNanos = System.nanoTime();
             byte[] ret = dapp.callMain();
+            long saveStartNanos = System.nanoTime();
+            metrics.recordExecuteTime(saveStartNanos - executeStartNanos);
 
             // Save back the state before we return.
             if (null != stateToResume) {
@@ -73,11 +97,17 @@ public class DAppExecutor {
                 stateToResume.updateNextHashCode(updatedNextHashCode);
             } else {
                 // We are at the "top" so write this back to disk.
-                byte[] postCallGraphData = dapp.saveEntireGraph(threadInstrumentation.peekNextHashCode(), StorageFees.MAX_GRAPH_SIZE);
-                // Bill for writing this size.
+                byte[] postCallGraphData = isIncrementalSave
+                        ? dapp.saveGraphIncrementally(threadInstrumentation.peekNextHashCode(), StorageFees.MAX_GRAPH_SIZE, threadInstrumentation.getDirtyLoadedInstances())
+                        : dapp.saveEntireGraph(threadInstrumentation.peekNextHashCode(), StorageFees.MAX_GRAPH_SIZE);
+                // Bill for writing this size (note that this is the same, either way).
                 threadInstrumentation.chargeEnergy(StorageFees.WRITE_PRICE_PER_BYTE * postCallGraphData.length);
-                kernel.putObjectGraph(dappAddress, postCallGraphData);
+                // If nothing changed, there is no reason to write the graph back.
+                if (!isIncrementalSave || !Arrays.equals(rawGraphData, postCallGraphData)) {
+                    kernel.putObjectGraph(dappAddress, postCallGraphData);
+                }
             }
+            metrics.recordSaveTime(System.nanoTime() - saveStartNanos);
 
             result.setResultCode(AvmTransactionResult.Code.SUCCESS);
             result.setReturnData(ret);
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.aion.avm.core.classloading.AvmClassLoader;
+import org.aion.avm.core.persistence.GraphIndex;
 import org.aion.avm.core.persistence.LoadedDApp;
 import org.aion.avm.core.types.ImmortalDappModule;
 import org.aion.avm.core.types.TransformedDappModule;
@@ -21,21 +22,21 @@ public class DAppLoader {
     /**
      * Called to load an immortal DApp from the code storage provided by the kernel.
      * 
-     * @param immortalDappJar The contract jar.
+     * @param immortalDappCode The contract code bundle (or jar, for DApps deployed before code bundles existed).
      * @return The DApp instance, or NULL if not exist
      * @throws IOException If there was a failure decoding the code from the kernel.
      */
-    public static LoadedDApp loadFromGraph(byte[] immortalDappJar, boolean preserveDebuggability) throws IOException {
+    public static LoadedDApp loadFromGraph(byte[] immortalDappCode, boolean preserveDebuggability) throws IOException {
         // normal account or account with no code?
-        if (immortalDappJar == null || immortalDappJar.length == 0) {
+        if (immortalDappCode == null || immortalDappCode.length == 0) {
             return null;
         }
 
         // parse the code
-        ImmortalDappModule app = ImmortalDappModule.readFromJar(immortalDappJar);
+        ImmortalDappModule app = ImmortalDappModule.readFromStoredCode(immortalDappCode);
         
         // We now need all the classes which will loaded within the class loader for this DApp (includes Helper and userlib classes we add).
-        Map<String, byte[]> allClasses = Helpers.mapIncludingHelperBytecode(app.classes, Helpers.loadDefaultHelperBytecode());
+        Map<String, byte[]> allClasses = Helpers.mapIncludingDefaultHelperBytecode(app.classes);
         
         // Construct the per-contract class loader.
         AvmClassLoader classLoader = NodeEnvironment.singleton.createInvocationClassLoader(allClasses);
@@ -46,7 +47,7 @@ public class DAppLoader {
 
         // We now have all the information to describe the LoadedDApp.
         SplitClasses splitClasses = SplitClasses.splitAllSavedClasses(aphabeticalContractClasses);
-        return new LoadedDApp(classLoader, splitClasses.sortedUserClasses, splitClasses.constantClass, app.mainClass, preserveDebuggability);
+        return new LoadedDApp(classLoader, splitClasses.sortedUserClasses, splitClasses.constantClass, app.mainClass, preserveDebuggability, app.hasWriteBarriers, app.graphFormatVersion);
     }
 
     /**
@@ -57,7 +58,7 @@ public class DAppLoader {
      */
     public static LoadedDApp fromTransformed(TransformedDappModule app, boolean preserveDebuggability) {
         // We now need all the classes which will loaded within the class loader for this DApp (includes Helper and userlib classes we add).
-        Map<String, byte[]> allClasses = Helpers.mapIncludingHelperBytecode(app.classes, Helpers.loadDefaultHelperBytecode());
+        Map<String, byte[]> allClasses = Helpers.mapIncludingDefaultHelperBytecode(app.classes);
         
         // Construct the per-contract class loader.
         AvmClassLoader classLoader = NodeEnvironment.singleton.createInvocationClassLoader(allClasses);
@@ -68,17 +69,18 @@ public class DAppLoader {
 
         // We now have all the information to describe the LoadedDApp.
         SplitClasses splitClasses = SplitClasses.splitAllSavedClasses(aphabeticalContractClasses);
-        return new LoadedDApp(classLoader, splitClasses.sortedUserClasses, splitClasses.constantClass, app.mainClass, preserveDebuggability);
+        // Freshly transformed code always has the write barrier and is being deployed, so its graph will be stored in the current format.
+        return new LoadedDApp(classLoader, splitClasses.sortedUserClasses, splitClasses.constantClass, app.mainClass, preserveDebuggability, true, GraphIndex.CURRENT_FORMAT_VERSION);
     }
 
 
     private static class SplitClasses {
-        public static SplitClasses splitAllSavedClasses(List<Class<?>> classes) {
-            Class<?>[] sortedUserClasses = classes.stream()
+        public static SplitClasses splitAllSavedClasses(List<Class<?>> alphabeticalClasses) {
+            // (these are already sorted so we only need to filter them)
+            Class<?>[] sortedUserClasses = alphabeticalClasses.stream()
                     .filter((c) -> !PackageConstants.kConstantClassName.equals(c.getName()))
-                    .sorted((f1, f2) -> f1.getName().compareTo(f2.getName()))
                     .toArray(Class[]::new);
-            Class<?> constantClass = classes.stream()
+            Class<?> constantClass = alphabeticalClasses.stream()
                     .filter((c) -> PackageConstants.kConstantClassName.equals(c.getName()))
                     .toArray(Class[]::new)[0];
             return new SplitClasses(sortedUserClasses, constantClass);
@@ -2,67 +2,144 @@ package org.aion.avm.core;
 
 import i.RuntimeAssertionError;
 import org.aion.kernel.AvmTransactionResult;
+import org.aion.parallel.TransactionDependencyGraph;
 import org.aion.parallel.TransactionTask;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
 import org.aion.vm.api.interfaces.SimpleFuture;
 import org.aion.vm.api.interfaces.TransactionResult;
 
 
 /**
  * Used by the AvmImpl to manage communication between its internal execution thread and the external calling thread.
- * This just provides monitor-protected blocking input/output variables, exception handling, and a safe way to shutdown.
+ * This just provides lock-protected blocking input/output variables, exception handling, and a safe way to shutdown.
+ * Tasks are only handed out once the tasks they depend on (see {@link TransactionDependencyGraph}) have completed, lowest index first.
+ * Handing out the lowest index first means that the lowest task which hasn't yet committed is always running or about to be, so the
+ * executor threads waiting to commit after it can't starve it.
  * Note that once an instance of this has been shutdown, it can't be started back up.
- * 
+ *
+ * Each block can limit how many of the executor threads are active:  the rest stay idle until a later block needs them.  The threads
+ * waiting for a task, the idle threads and the external thread waiting for results all wait on different conditions and a newly ready
+ * task only wakes a single waiting executor, so a small block doesn't pay for waking threads it won't use.
+ *
+ * Blocks can be submitted while earlier blocks are still running (see submitTransactions()):  they are queued and each one starts as soon
+ * as every task of the block before it has completed, on whichever executor thread completed the last of them.  The results of all blocks
+ * are delivered to their callbacks in order, by the executor threads, as they complete.  The blocking futures returned by
+ * sendTransactionsAsynchronously() are built on this same mechanism but still require their block to be fully consumed before the next
+ * block is sent.
+ * The startAction of a block is run outside the lock (it may read from the kernel) so the results of the previous block can still be
+ * delivered, and later blocks submitted, while it runs.  Its tasks are only handed out once it has returned.
+ *
  * NOTE:  This currently assumes only one external thread is interacting with it at any given time.  This means that
  * attempting to send transactions from multiple threads or shutdown with one thread while running a transaction on another
  * would result in undefined behaviour.
  */
 public class HandoffMonitor {
+    private final ReentrantLock lock;
+    // Signalled when a task is ready (waited on by active executor threads).
+    private final Condition taskReady;
+    // Signalled when the number of active executor threads changes (waited on by idle executor threads).
+    private final Condition activeThreadCountChanged;
+    // Signalled when a result is available or something went wrong (waited on by the external thread).
+    private final Condition resultsChanged;
+
     private Set<Thread> internalThreads;
-    private TransactionTask[] incomingTransactionTasks;
+    // Each executor thread is active only if its ordinal is less than the activeThreadCount.
+    private final Map<Thread, Integer> threadOrdinals;
+    private int activeThreadCount;
 
+    // The block whose tasks are currently being handed out (null if there is none), the blocks submitted after it and the blocks which have
+    // started but whose results haven't all been delivered (including the running block).
+    private Batch runningBatch;
+    private final Queue<Batch> waitingBatches;
+    private final Queue<Batch> deliveringBatches;
+    // True while some executor thread is delivering results (only one thread delivers at a time, so that they are delivered in order).
+    private boolean isDelivering;
+
+    // The tasks which are ready to run, ordered by index.
     private Queue<TransactionTask> taskQueue;
 
+    // The results delivered to the blocking futures of the current block (null when there is no such block).
     private AvmTransactionResult[] outgoingResults;
     private Throwable backgroundThrowable;
-    //private int nextTransactionIndex;
 
     public HandoffMonitor(Set<Thread> threadSet) {
+        this.lock = new ReentrantLock();
+        this.taskReady = this.lock.newCondition();
+        this.activeThreadCountChanged = this.lock.newCondition();
+        this.resultsChanged = this.lock.newCondition();
         this.internalThreads = threadSet;
-        this.taskQueue = new LinkedList<>();
+        this.threadOrdinals = new HashMap<>();
+        for (Thread thread : threadSet) {
+            this.threadOrdinals.put(thread, this.threadOrdinals.size());
+        }
+        this.activeThreadCount = threadSet.size();
+        this.waitingBatches = new LinkedList<>();
+        this.deliveringBatches = new LinkedList<>();
+        this.taskQueue = new PriorityQueue<>();
+    }
+
+    /**
+     * Called by the external thread.
+     * Called to send new transactions to the internal thread, where none of them depend on each other.
+     *
+     * @param tasks The tasks for each transaction to run.
+     * @return The result of the transactions in the given tasks as a corresponding array of asynchronous futures.
+     */
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionTask[] tasks) {
+        return sendTransactionsAsynchronously(tasks, TransactionDependencyGraph.withoutDependencies(tasks), getThreadCount());
     }
 
     /**
      * Called by the external thread.
      * Called to send new transactions to the internal thread.
-     * 
+     *
      * @param tasks The tasks for each transaction to run.
+     * @param dependencyGraph The dependencies between these tasks, which determine when each task can be handed out.
+     * @param activeThreadCount The number of executor threads which should run these tasks (the rest will stay idle).
      * @return The result of the transactions in the given tasks as a corresponding array of asynchronous futures.
      */
-    public synchronized SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionTask[] tasks) {
-        // We lock-step these, so there can't already be a transaction in the hand-off.
-        RuntimeAssertionError.assertTrue(this.taskQueue.isEmpty());
-        RuntimeAssertionError.assertTrue(null == this.outgoingResults);
-        RuntimeAssertionError.assertTrue(tasks.length > 0);
-        // Also, we can't have already been shut down.
-        if (null == this.internalThreads) {
-            throw new IllegalStateException("Thread already stopped");
-        }
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionTask[] tasks, TransactionDependencyGraph dependencyGraph, int activeThreadCount) {
+        return sendTransactionsAsynchronously(tasks, dependencyGraph, () -> activeThreadCount);
+    }
 
-        this.incomingTransactionTasks = new TransactionTask[tasks.length];
+    /**
+     * Called by the external thread.
+     * Called to send new transactions to the internal thread.  The results of any previous block must have been consumed, first.
+     *
+     * @param tasks The tasks for each transaction to run.
+     * @param dependencyGraph The dependencies between these tasks, which determine when each task can be handed out.
+     * @param startAction Called when the block starts (before any of its tasks are handed out, and not under the monitor's lock) to prepare
+     * for it, returning the number of executor threads which should run these tasks (the rest will stay idle).
+     * @return The result of the transactions in the given tasks as a corresponding array of asynchronous futures.
+     */
+    public SimpleFuture<TransactionResult>[] sendTransactionsAsynchronously(TransactionTask[] tasks, TransactionDependencyGraph dependencyGraph, IntSupplier startAction) {
+        Batch startingBatch = null;
+        this.lock.lock();
+        try {
+            // We lock-step these, so there can't already be a transaction in the hand-off.
+            RuntimeAssertionError.assertTrue(null == this.runningBatch);
+            RuntimeAssertionError.assertTrue(this.deliveringBatches.isEmpty());
+            RuntimeAssertionError.assertTrue(null == this.outgoingResults);
 
-        // Enqueue the new tasks and wake up the background thread.
-        for (int i = 0; i < tasks.length; ++i ) {
-            this.incomingTransactionTasks[i] = tasks[i];
-            this.taskQueue.add(tasks[i]);
+            this.outgoingResults = new AvmTransactionResult[tasks.length];
+            startingBatch = submitBatch(new Batch(tasks, dependencyGraph, startAction, new FutureResultsCallback()));
+        } finally {
+            this.lock.unlock();
         }
+        finishStartingBatch(startingBatch);
 
-        this.outgoingResults = new AvmTransactionResult[tasks.length];
-        this.notifyAll();
-        
         // Return the future result, which will do the waiting for us.
         ResultWaitFuture[] results = new ResultWaitFuture[tasks.length];
         for (int i = 0; i < results.length; ++i ) {
@@ -71,112 +148,206 @@ public class HandoffMonitor {
         return results;
     }
 
-    public synchronized AvmTransactionResult blockingConsumeResult(int index) {
-        // Wait until we have the result or something went wrong.
-        while ((null == this.outgoingResults[index]) && (null == this.backgroundThrowable)) {
-            // Otherwise, wait until state changes.
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // We don't use interruption.
-                RuntimeAssertionError.unexpected(e);
+    /**
+     * Called by the external thread.
+     * Submits new transactions to the internal thread, even if previously submitted blocks are still running.  The block is started once
+     * every task of the blocks submitted before it has completed.
+     *
+     * @param tasks The tasks for each transaction to run.
+     * @param dependencyGraph The dependencies between these tasks, which determine when each task can be handed out.
+     * @param startAction Called when the block starts (before any of its tasks are handed out, and not under the monitor's lock) to prepare
+     * for it, returning the number of executor threads which should run these tasks (the rest will stay idle).
+     * @param callback Receives the results of these tasks, in order.
+     */
+    public void submitTransactions(TransactionTask[] tasks, TransactionDependencyGraph dependencyGraph, IntSupplier startAction, ITransactionResultCallback callback) {
+        Batch startingBatch = null;
+        this.lock.lock();
+        try {
+            // We can't mix this with the blocking futures since those need to be consumed before the next block.
+            RuntimeAssertionError.assertTrue(null == this.outgoingResults);
+            startingBatch = submitBatch(new Batch(tasks, dependencyGraph, startAction, callback));
+        } finally {
+            this.lock.unlock();
+        }
+        finishStartingBatch(startingBatch);
+    }
+
+    public AvmTransactionResult blockingConsumeResult(int index) {
+        this.lock.lock();
+        try {
+            // Wait until we have the result or something went wrong.
+            while ((null == this.outgoingResults[index]) && (null == this.backgroundThrowable)) {
+                // Otherwise, wait until state changes.
+                awaitUninterruptibly(this.resultsChanged);
+            }
+
+            // Throw an exception, if there is one.
+            handleThrowable();
+
+            // Consume the result and return it.
+            AvmTransactionResult result = this.outgoingResults[index];
+            this.outgoingResults[index] = null;
+            // If this is the last one in the list, drop it.
+            // (note that this assumes the the results are consumed in-order - this requirement exists in more fundamental parts of the system, though).
+            if ((index + 1) == this.outgoingResults.length) {
+                this.outgoingResults = null;
             }
+            return result;
+        } finally {
+            this.lock.unlock();
         }
-        
-        // Throw an exception, if there is one.
-        handleThrowable();
-        
-        // Consume the result and return it.
-        AvmTransactionResult result = this.outgoingResults[index];
-        result.getSideEffects().merge(incomingTransactionTasks[index].popSideEffects());
-        RuntimeAssertionError.assertTrue(incomingTransactionTasks[index].isSideEffectsStackEmpty());
-        this.incomingTransactionTasks[index] = null;
-        this.outgoingResults[index] = null;
-        // If this is the last one in the list, drop it.
-        // (note that this assumes the the results are consumed in-order - this requirement exists in more fundamental parts of the system, though).
-        if ((index + 1) == this.outgoingResults.length) {
-            this.incomingTransactionTasks = null;
-            this.outgoingResults = null;
-        }
-        return result;
     }
 
     /**
      * Called by the internal thread.
      * The main blocking point for the internal thread.  It passes in the result from the last transaction it just completed
      * and then waits until a new transaction comes in or a shutdown is requested.
-     * 
+     * If this completes the results which are next in line to be delivered, this thread delivers them before looking for the next transaction.
+     *
      * @param previousResult The result of the previous transaction returned by this call.
      * @return The next transaction to run or null if we should shut down.
      */
-    public synchronized TransactionTask blockingPollForTransaction(AvmTransactionResult previousResult, TransactionTask previousTask) {
-        // We may have been given these transactions as a list but we hand them out to the caller individually.
-        
-        // First, write-back any results that we have and notify anyone listening for that, on the front.
+    public TransactionTask blockingPollForTransaction(AvmTransactionResult previousResult, TransactionTask previousTask) {
+        // First, write-back any results that we have.
+        // Since that task has completed, any tasks which were only waiting for it are now ready (as is the next block, if this was the last).
         if (null != previousResult) {
-            this.outgoingResults[previousTask.getIndex()] = previousResult;
-        }
-        this.notifyAll();
-        
-        // This means that we only actually block when the incoming transactions are null (we make it null when we consume the last element and it becomes non-null when new data enqueued).
-        while ((null != this.internalThreads) && (this.taskQueue.isEmpty())) {
+            Batch startingBatch = null;
+            this.lock.lock();
             try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // We don't use interruption.
-                RuntimeAssertionError.unexpected(e);
+                Batch batch = this.runningBatch;
+                int index = previousTask.getIndex();
+                RuntimeAssertionError.assertTrue(previousTask == batch.tasks[index]);
+                RuntimeAssertionError.assertTrue(null == batch.results[index]);
+                batch.results[index] = previousResult;
+                batch.completedCount += 1;
+                enqueueReadyTasks(batch.dependencyGraph.completeTask(previousTask));
+                if (batch.completedCount == batch.tasks.length) {
+                    this.runningBatch = null;
+                    if (!this.waitingBatches.isEmpty()) {
+                        startingBatch = startNextBatch();
+                    }
+                }
+            } finally {
+                this.lock.unlock();
+            }
+            // We deliver first so that the last results of the previous block don't wait for the next block to be prepared.
+            try {
+                deliverResults();
+            } finally {
+                try {
+                    finishStartingBatch(startingBatch);
+                } catch (RuntimeException | Error e) {
+                    // The block was rolled back so, unlike the blocks still waiting, its callback won't be told by setBackgroundThrowable().
+                    startingBatch.callback.executionFailed(e);
+                    throw e;
+                }
             }
         }
-        
-        // Unless this was a shutdown request, get the next transaction.
-        TransactionTask nextTask = null;
-        if (null != this.internalThreads) {
-            // Make sure that we don't already have a response for the transaction we want to hand out.
-            RuntimeAssertionError.assertTrue(null == this.outgoingResults[this.taskQueue.peek().getIndex()]);
 
-            nextTask = this.taskQueue.poll();
+        // We may have been given these transactions as a list but we hand them out to the caller individually.
+        this.lock.lock();
+        try {
+            // We only actually block when no task is ready (either because there are no more tasks or because the remaining ones are waiting on
+            // running tasks) or when this thread isn't needed for the current block.
+            int ordinal = this.threadOrdinals.get(Thread.currentThread());
+            while ((null != this.internalThreads) && (this.taskQueue.isEmpty() || (ordinal >= this.activeThreadCount))) {
+                if (ordinal >= this.activeThreadCount) {
+                    // If we were woken for a task, pass that on to a thread which can run it.
+                    if (!this.taskQueue.isEmpty()) {
+                        this.taskReady.signal();
+                    }
+                    awaitUninterruptibly(this.activeThreadCountChanged);
+                } else {
+                    awaitUninterruptibly(this.taskReady);
+                }
+            }
+
+            // Unless this was a shutdown request, get the next transaction.
+            TransactionTask nextTask = null;
+            if (null != this.internalThreads) {
+                // Make sure that we don't already have a response for the transaction we want to hand out.
+                RuntimeAssertionError.assertTrue(null == this.runningBatch.results[this.taskQueue.peek().getIndex()]);
+
+                nextTask = this.taskQueue.poll();
+            }
+            return nextTask;
+        } finally {
+            this.lock.unlock();
         }
-        return nextTask;
     }
 
     /**
      * Called by the internal thread.
      * This is called if something goes wrong while running the transaction on the internal thread to communicate this problem to the external.
-     * 
+     * The callbacks of any blocks whose results haven't all been delivered are also told, since those results will never arrive.
+     *
      * @param throwable The exception (expected to be RuntimeException or Error).
      */
-    public synchronized void setBackgroundThrowable(Throwable throwable) {
-        // This will terminate anything the foreground is doing so notify them.
-        this.backgroundThrowable = throwable;
-        this.notifyAll();
+    public void setBackgroundThrowable(Throwable throwable) {
+        List<ITransactionResultCallback> abandonedCallbacks = new ArrayList<>();
+        this.lock.lock();
+        try {
+            // This will terminate anything the foreground is doing so notify them.
+            this.backgroundThrowable = throwable;
+            this.resultsChanged.signalAll();
+            for (Batch batch : this.deliveringBatches) {
+                abandonedCallbacks.add(batch.callback);
+            }
+            for (Batch batch : this.waitingBatches) {
+                abandonedCallbacks.add(batch.callback);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        // (we call these outside the lock since they are outside code)
+        for (ITransactionResultCallback callback : abandonedCallbacks) {
+            callback.executionFailed(throwable);
+        }
     }
 
     /**
      * Called by the external thread.
      * Requests all the internal executor threads start.
      */
-    public synchronized void startExecutorThreads(){
-        for (Thread t: this.internalThreads){
-            t.start();
+    public void startExecutorThreads(){
+        this.lock.lock();
+        try {
+            for (Thread t: this.internalThreads){
+                t.start();
+            }
+        } finally {
+            this.lock.unlock();
         }
     }
 
+    /**
+     * @return The total number of executor threads (active or idle).
+     */
+    public int getThreadCount() {
+        return this.threadOrdinals.size();
+    }
+
     /**
      * Called by the external thread.
      * Requests that the internal thread stop.  Only returns once the internal thread has terminated.
+     * Note that any submitted blocks which haven't yet started are dropped.
      */
     public void stopAndWaitForShutdown() {
         // (called by the foreground thread)
         // Stop the thread and wait for it to join.
         Set<Thread> backgroundThreads = null;
-        synchronized (this) {
+        this.lock.lock();
+        try {
             backgroundThreads = this.internalThreads;
             this.internalThreads = null;
-            this.notifyAll();
+            this.taskReady.signalAll();
+            this.activeThreadCountChanged.signalAll();
+        } finally {
+            this.lock.unlock();
         }
-        
+
         // Join on the thread and throw any exceptions left over.
-        // (note that we can't join under monitor since the thread needs the monitor to exit).
+        // (note that we can't join under lock since the thread needs the lock to exit).
         try {
             for (Thread t : backgroundThreads){
                 t.join();
@@ -189,11 +360,168 @@ public class HandoffMonitor {
     }
 
 
+    private Batch submitBatch(Batch batch) {
+        // (called under lock)
+        RuntimeAssertionError.assertTrue(batch.tasks.length > 0);
+        // We can't have already been shut down.
+        if (null == this.internalThreads) {
+            throw new IllegalStateException("Thread already stopped");
+        }
+        this.waitingBatches.add(batch);
+        return (null == this.runningBatch)
+                ? startNextBatch()
+                : null;
+    }
+
+    private Batch startNextBatch() {
+        // (called under lock, once every task of the previous block has completed)
+        // The batch becomes the running batch here, so nothing else can start another, but the caller must then pass it to
+        // finishStartingBatch(), after releasing the lock, before any of its tasks are handed out.
+        RuntimeAssertionError.assertTrue(null == this.runningBatch);
+        RuntimeAssertionError.assertTrue(this.taskQueue.isEmpty());
+        Batch batch = this.waitingBatches.remove();
+        this.runningBatch = batch;
+        this.deliveringBatches.add(batch);
+        return batch;
+    }
+
+    private void finishStartingBatch(Batch batch) {
+        // (called outside the lock, with the batch returned by startNextBatch() or null if there was none)
+        if (null != batch) {
+            // The start action may do IO so we run it without the lock, leaving the executor threads free to deliver and the external
+            // thread free to submit (none of the tasks of either block can be running, so nothing else uses the per-block state).
+            // If it fails, the block is rolled back before the exception reaches our caller, so it doesn't stay running without any tasks
+            // (which would hold back every block submitted after it).
+            int activeThreadCount = 0;
+            boolean didStart = false;
+            try {
+                activeThreadCount = batch.startAction.getAsInt();
+                RuntimeAssertionError.assertTrue((activeThreadCount > 0) && (activeThreadCount <= this.threadOrdinals.size()));
+                didStart = true;
+            } finally {
+                if (!didStart) {
+                    rollBackStartingBatch(batch);
+                }
+            }
+
+            this.lock.lock();
+            try {
+                RuntimeAssertionError.assertTrue(batch == this.runningBatch);
+                // Wake any threads which are changing between active and idle, so they move to the right condition.
+                if (activeThreadCount != this.activeThreadCount) {
+                    this.activeThreadCount = activeThreadCount;
+                    this.activeThreadCountChanged.signalAll();
+                    this.taskReady.signalAll();
+                }
+
+                // Enqueue the tasks which are already ready and wake up the background threads (the rest are enqueued as their dependencies complete).
+                enqueueReadyTasks(batch.dependencyGraph.getInitiallyReadyTasks());
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    private void rollBackStartingBatch(Batch batch) {
+        // (called outside the lock, with the batch passed to finishStartingBatch() whose start action failed)
+        this.lock.lock();
+        try {
+            RuntimeAssertionError.assertTrue(batch == this.runningBatch);
+            // None of its tasks were handed out so it is as though it had never been submitted (any blocks waiting behind it start with the
+            // next submission).
+            this.runningBatch = null;
+            this.deliveringBatches.remove(batch);
+            if (batch.callback instanceof FutureResultsCallback) {
+                this.outgoingResults = null;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void deliverResults() {
+        // Only one thread delivers at a time:  if another thread already is, it will see our result before it stops.
+        this.lock.lock();
+        try {
+            if (this.isDelivering) {
+                return;
+            }
+            this.isDelivering = true;
+        } finally {
+            this.lock.unlock();
+        }
+
+        boolean isDone = false;
+        try {
+            while (!isDone) {
+                Batch batch = null;
+                int index = 0;
+                AvmTransactionResult result = null;
+                this.lock.lock();
+                try {
+                    batch = this.deliveringBatches.peek();
+                    if ((null != batch) && (null != batch.results[batch.nextToDeliver])) {
+                        index = batch.nextToDeliver;
+                        result = batch.results[index];
+                        batch.nextToDeliver += 1;
+                        if (batch.nextToDeliver == batch.tasks.length) {
+                            this.deliveringBatches.remove();
+                        }
+                    } else {
+                        // Nothing more is ready to deliver so let the next thread with a result do it.
+                        this.isDelivering = false;
+                        isDone = true;
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+
+                if (!isDone) {
+                    // (we deliver outside the lock since the callback is outside code)
+                    TransactionTask task = batch.tasks[index];
+                    result.getSideEffects().merge(task.popSideEffects());
+                    RuntimeAssertionError.assertTrue(task.isSideEffectsStackEmpty());
+                    batch.callback.resultAvailable(index, result);
+                    if ((index + 1) == batch.tasks.length) {
+                        batch.callback.blockCompleted();
+                    }
+                }
+            }
+        } finally {
+            // If a callback failed, we need to make sure that we don't leave the delivery claimed.
+            if (!isDone) {
+                this.lock.lock();
+                try {
+                    this.isDelivering = false;
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void enqueueReadyTasks(List<TransactionTask> readyTasks) {
+        // Each ready task only needs one executor thread so we only wake one for each.
+        for (TransactionTask task : readyTasks) {
+            this.taskQueue.add(task);
+            this.taskReady.signal();
+        }
+    }
+
+    private static void awaitUninterruptibly(Condition condition) {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            // We don't use interruption.
+            RuntimeAssertionError.unexpected(e);
+        }
+    }
+
     /**
      * Called by the external thread.
      */
     private void handleThrowable() {
-        // WARNING:  This is not always called under monitor but this should be safe so long as backgroundThrowable saturates to non-null.
+        // WARNING:  This is not always called under lock but this should be safe so long as backgroundThrowable saturates to non-null.
         if (null != this.backgroundThrowable) {
             // Only RuntimeExceptions and Errors can actually be handled here.
             try {
@@ -210,6 +538,55 @@ public class HandoffMonitor {
     }
 
 
+    /**
+     * A block of tasks, submitted together.
+     * The fields describing its progress are only accessed under lock.
+     */
+    private static class Batch {
+        public final TransactionTask[] tasks;
+        public final TransactionDependencyGraph dependencyGraph;
+        public final IntSupplier startAction;
+        public final ITransactionResultCallback callback;
+        // The results which have completed but not yet been delivered.
+        public final AvmTransactionResult[] results;
+        public int completedCount;
+        public int nextToDeliver;
+
+        public Batch(TransactionTask[] tasks, TransactionDependencyGraph dependencyGraph, IntSupplier startAction, ITransactionResultCallback callback) {
+            this.tasks = tasks;
+            this.dependencyGraph = dependencyGraph;
+            this.startAction = startAction;
+            this.callback = callback;
+            this.results = new AvmTransactionResult[tasks.length];
+        }
+    }
+
+
+    /**
+     * Delivers the results of a block sent by sendTransactionsAsynchronously() to where its futures will find them.
+     */
+    private class FutureResultsCallback implements ITransactionResultCallback {
+        @Override
+        public void resultAvailable(int transactionIndex, TransactionResult result) {
+            HandoffMonitor.this.lock.lock();
+            try {
+                HandoffMonitor.this.outgoingResults[transactionIndex] = (AvmTransactionResult) result;
+                HandoffMonitor.this.resultsChanged.signalAll();
+            } finally {
+                HandoffMonitor.this.lock.unlock();
+            }
+        }
+        @Override
+        public void blockCompleted() {
+            // The futures only care about the individual results.
+        }
+        @Override
+        public void executionFailed(Throwable throwable) {
+            // The futures will see the backgroundThrowable.
+        }
+    }
+
+
     private class ResultWaitFuture implements SimpleFuture<TransactionResult> {
         private final int index;
         // We will cache the result.
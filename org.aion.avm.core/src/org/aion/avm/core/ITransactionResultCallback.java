@@ -0,0 +1,35 @@
+package org.aion.avm.core;
+
+import org.aion.vm.api.interfaces.TransactionResult;
+
+
+/**
+ * Receives the results of a block of transactions submitted through the pipelined interface (AvmInternal.runPipelined()).
+ *
+ * The results of each block are delivered in transaction order and blocks are delivered in the order they were submitted.  The calls are
+ * made on the AVM's executor threads (never more than one at a time) so an implementation should return quickly:  while it runs, the
+ * thread calling it isn't running transactions.
+ */
+public interface ITransactionResultCallback {
+    /**
+     * Called when the result of a transaction is available, meaning that its changes have been committed to the kernel the block was
+     * submitted with.
+     *
+     * @param transactionIndex The index of the transaction within its block.
+     * @param result The result of the transaction.
+     */
+    void resultAvailable(int transactionIndex, TransactionResult result);
+
+    /**
+     * Called after the last result of the block has been delivered.
+     */
+    void blockCompleted();
+
+    /**
+     * Called if the AVM failed with a fatal error before all the results of the block were delivered (they never will be).
+     * The AVM must be shut down after this.
+     *
+     * @param throwable The fatal error.
+     */
+    void executionFailed(Throwable throwable);
+}
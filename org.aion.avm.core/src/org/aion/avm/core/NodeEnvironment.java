@@ -11,6 +11,8 @@ import i.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -26,8 +28,14 @@ import p.avm.Result;
  * eagerly loading the shadow JDK in order to run their <clinit> methods.
  */
 public class NodeEnvironment {
+    /**
+     * The system property naming the file where the state derived from the runtime classes is saved, so that the next process can start
+     * from it instead of deriving it again (see NodeEnvironmentSnapshot).  If this isn't set, nothing is saved.
+     */
+    public static final String SNAPSHOT_PATH_PROPERTY = "org.aion.avm.core.nodeEnvironmentSnapshot";
+
     // NOTE:  This is only temporarily a singleton and will probably see its relationship inverted, in the future:  becoming the Avm factory.
-    public static final NodeEnvironment singleton = new NodeEnvironment();
+    public static final NodeEnvironment singleton = new NodeEnvironment(System.getProperty(SNAPSHOT_PATH_PROPERTY));
 
     private final AvmSharedClassLoader sharedClassLoader;
     // Note that the constant map is a map of constant hashcodes to constant instances.  This is just provided so that reference deserialization
@@ -51,8 +59,14 @@ public class NodeEnvironment {
     // The full class hierarchy; we only ever give away deep copies of this object!
     private ClassHierarchy classHierarchy;
 
-    private NodeEnvironment() {
-        Map<String, byte[]> generatedShadowJDK = CommonGenerators.generateShadowJDK();
+    private NodeEnvironment(String snapshotPath) {
+        // If we have a snapshot from a previous run on this same runtime, we can skip deriving anything it contains.
+        // (the runtime is identified by the jars containing both the shadow JDK and our generators)
+        Path snapshotFile = (null != snapshotPath) ? Paths.get(snapshotPath) : null;
+        byte[] runtimeHash = (null != snapshotFile) ? NodeEnvironmentSnapshot.hashRuntimeJars(s.java.lang.Object.class, NodeEnvironment.class) : null;
+        NodeEnvironmentSnapshot snapshot = (null != runtimeHash) ? NodeEnvironmentSnapshot.readIfValid(snapshotFile, runtimeHash) : null;
+
+        Map<String, byte[]> generatedShadowJDK = (null != snapshot) ? snapshot.generatedShadowJDK : CommonGenerators.generateShadowJDK();
         this.sharedClassLoader = new AvmSharedClassLoader(generatedShadowJDK);
         try {
             this.shadowApiClasses = new Class<?>[] {
@@ -175,8 +189,21 @@ public class NodeEnvironment {
         this.constantMap = Collections.unmodifiableMap(ConstantsHolder.getConstants());
         RuntimeAssertionError.assertTrue(this.constantMap.size() == 34);
 
-        // create the object size look-up maps
-        Map<String, Integer> rtObjectSizeMap = computeRuntimeObjectSizes(generatedShadowJDK);
+        // create the object size look-up maps and the full class hierarchy
+        Map<String, Integer> rtObjectSizeMap;
+        Set<ClassInformation> rtClassInfos;
+        if (null != snapshot) {
+            rtObjectSizeMap = snapshot.runtimeObjectSizes;
+            rtClassInfos = snapshot.runtimeClassInfos;
+        } else {
+            LoadedJar runtimeJar = createRuntimeJar();
+            rtObjectSizeMap = computeRuntimeObjectSizes(runtimeJar, generatedShadowJDK);
+            rtClassInfos = new ClassInformationFactory().fromPostRenameJar(runtimeJar);
+        }
+        this.classHierarchy = new ClassHierarchyBuilder()
+            .addPostRenameNonUserDefinedClasses(rtClassInfos)
+            .build();
+
         this.shadowObjectSizeMap = new HashMap<>();
         this.apiObjectSizeMap = new HashMap<>();
         this.preRenameRuntimeObjectSizeMap = new HashMap<>();
@@ -196,7 +223,17 @@ public class NodeEnvironment {
         this.preRenameRuntimeObjectSizeMap.putAll(shadowObjectSizeMap);
         this.postRenameRuntimeObjectSizeMap.putAll(apiObjectSizeMap);
 
-        this.shadowClassSlashNameMethodDescriptorMap = Collections.unmodifiableMap(getShadowClassSlashNameMethodDescriptorMap());
+        Map<String, List<String>> methodDescriptorMap = (null != snapshot) ? snapshot.methodDescriptors : getShadowClassSlashNameMethodDescriptorMap();
+        this.shadowClassSlashNameMethodDescriptorMap = Collections.unmodifiableMap(methodDescriptorMap);
+
+        if ((null != runtimeHash) && (null == snapshot)) {
+            // We had to derive everything so save it for the next process.
+            try {
+                new NodeEnvironmentSnapshot(generatedShadowJDK, rtObjectSizeMap, rtClassInfos, methodDescriptorMap).write(snapshotFile, runtimeHash);
+            } catch (IOException e) {
+                // The snapshot is only an optimization so failing to write it just means the next process needs to derive everything again.
+            }
+        }
     }
 
     // This is an example of the more "factory-like" nature of the NodeEnvironment.
@@ -353,6 +390,14 @@ public class NodeEnvironment {
                 throw RuntimeAssertionError.unreachable("Nobody should be calling this");
             }
             @Override
+            public void markLoadedInstanceDirty(int readIndex) {
+                throw RuntimeAssertionError.unreachable("Nobody should be calling this");
+            }
+            @Override
+            public java.util.BitSet getDirtyLoadedInstances() {
+                throw RuntimeAssertionError.unreachable("Nobody should be calling this");
+            }
+            @Override
             public boolean isLoadedByCurrentClassLoader(java.lang.Class userClass) {
                 throw RuntimeAssertionError.unreachable("Not expected here.");
             }
@@ -392,14 +437,11 @@ public class NodeEnvironment {
     }
 
     /**
-     * Computes the object size of shadow java.base classes
+     * Creates a fake jar from the API and shadow classes.
      *
-     * @return a mapping between class name and object size
-     * <p>
-     * Class name is in the JVM internal name format, see {@link org.aion.avm.core.util.Helpers#fulllyQualifiedNameToInternalName(String)}
+     * @return The jar of runtime classes, with java.lang.Object as its main class
      */
-    protected Map<String, Integer> computeRuntimeObjectSizes(Map<String, byte[]> generatedShadowJDK) {
-        // create a fake jar from API and shadow classes
+    private LoadedJar createRuntimeJar() {
         Map<String, byte[]> classBytesByQualifiedNames = new HashMap<>();
         String mainClassName = "java.lang.Object";
 
@@ -415,21 +457,21 @@ public class NodeEnvironment {
                 RuntimeAssertionError.unexpected(e);
             }
         }
-        LoadedJar runtimeJar = new LoadedJar(classBytesByQualifiedNames, mainClassName);
+        return new LoadedJar(classBytesByQualifiedNames, mainClassName);
+    }
 
+    /**
+     * Computes the object size of shadow java.base classes
+     *
+     * @return a mapping between class name and object size
+     * <p>
+     * Class name is in the JVM internal name format, see {@link org.aion.avm.core.util.Helpers#fulllyQualifiedNameToInternalName(String)}
+     */
+    protected Map<String, Integer> computeRuntimeObjectSizes(LoadedJar runtimeJar, Map<String, byte[]> generatedShadowJDK) {
         // get the forest and prune it to include only the "java.lang.Object" and "java.lang.Throwable" derived classes, as shown in the forest
         ClassHierarchyForest rtClassesForest = null;
         try {
             rtClassesForest = ClassHierarchyForest.createForestFrom(runtimeJar);
-
-            // Construct the full class hierarchy.
-            ClassInformationFactory classInfoFactory = new ClassInformationFactory();
-            Set<ClassInformation> classInfos = classInfoFactory.fromPostRenameJar(runtimeJar);
-
-            this.classHierarchy = new ClassHierarchyBuilder()
-                .addPostRenameNonUserDefinedClasses(classInfos)
-                .build();
-
         } catch (IOException e) {
             // If the RT jar being something we can't process, our installation is clearly corrupt.
             throw RuntimeAssertionError.unexpected(e);
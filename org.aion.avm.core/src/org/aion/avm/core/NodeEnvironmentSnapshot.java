@@ -0,0 +1,284 @@
+package org.aion.avm.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.aion.avm.core.types.ClassInformation;
+
+import i.RuntimeAssertionError;
+
+
+/**
+ * The state derived by NodeEnvironment from the runtime classes (the generated shadow JDK, the runtime object sizes, the class information
+ * of the runtime classes and the method descriptors of the shadow JCL), in a form which can be saved to disk and reloaded by the next
+ * process, instead of being computed again.
+ *
+ * Since this is only derived from the classes we ship, a snapshot is only valid for the exact runtime it was created from:  it records a
+ * hash of the jars the runtime classes were loaded from and is ignored if they change.  If the runtime isn't loaded from jars (as in a
+ * development build), there is nothing to validate against so no snapshot is used.
+ * The contents are also covered by their own SHA-256, so a snapshot which was damaged on disk is ignored (and re-written) instead of being
+ * trusted just because it was written by the same runtime.
+ *
+ * Note that this can't capture the loaded and initialized classes, themselves, since those only exist in the JVM.
+ */
+public final class NodeEnvironmentSnapshot {
+    private static final int SNAPSHOT_MAGIC = 0x41564D4E;   // "AVMN"
+    // Increment this whenever the format, or the way any of the contents are derived, changes.
+    private static final int SNAPSHOT_VERSION = 2;
+
+    public final Map<String, byte[]> generatedShadowJDK;
+    public final Map<String, Integer> runtimeObjectSizes;
+    public final Set<ClassInformation> runtimeClassInfos;
+    public final Map<String, List<String>> methodDescriptors;
+
+    public NodeEnvironmentSnapshot(Map<String, byte[]> generatedShadowJDK, Map<String, Integer> runtimeObjectSizes, Set<ClassInformation> runtimeClassInfos, Map<String, List<String>> methodDescriptors) {
+        this.generatedShadowJDK = generatedShadowJDK;
+        this.runtimeObjectSizes = runtimeObjectSizes;
+        this.runtimeClassInfos = runtimeClassInfos;
+        this.methodDescriptors = methodDescriptors;
+    }
+
+    /**
+     * Computes the hash which identifies the runtime, from the jars the given classes were loaded from.
+     *
+     * @param runtimeClasses Classes from each part of the runtime which the snapshot is derived from.
+     * @return The SHA-256 of the jars, or null if any of the classes wasn't loaded from a jar file.
+     */
+    public static byte[] hashRuntimeJars(Class<?>... runtimeClasses) {
+        // Several of the classes may come from the same jar so we de-duplicate them and hash them in a stable order.
+        Set<Path> jars = new TreeSet<>();
+        for (Class<?> clazz : runtimeClasses) {
+            CodeSource source = clazz.getProtectionDomain().getCodeSource();
+            URL location = (null != source) ? source.getLocation() : null;
+            if (null == location) {
+                return null;
+            }
+            Path path;
+            try {
+                path = Paths.get(location.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // Not something on the file system.
+                return null;
+            }
+            if (!Files.isRegularFile(path)) {
+                return null;
+            }
+            jars.add(path);
+        }
+
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        for (Path jar : jars) {
+            try (InputStream stream = Files.newInputStream(jar)) {
+                int read = stream.read(buffer);
+                while (read >= 0) {
+                    digest.update(buffer, 0, read);
+                    read = stream.read(buffer);
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Reads the snapshot at the given path, if it exists, is intact and was created from the same runtime.
+     *
+     * @param path The location of the snapshot.
+     * @param runtimeHash The hash of the current runtime (from hashRuntimeJars()).
+     * @return The snapshot or null, if there is no valid snapshot for this runtime at path.
+     */
+    public static NodeEnvironmentSnapshot readIfValid(Path path, byte[] runtimeHash) {
+        RuntimeAssertionError.assertTrue(null != runtimeHash);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((SNAPSHOT_MAGIC != stream.readInt()) || (SNAPSHOT_VERSION != stream.readInt())) {
+                return null;
+            }
+            byte[] savedHash = new byte[stream.readInt()];
+            stream.readFully(savedHash);
+            if (!Arrays.equals(runtimeHash, savedHash)) {
+                // The runtime changed since this was written so it is stale.
+                return null;
+            }
+            byte[] savedDigest = new byte[stream.readInt()];
+            stream.readFully(savedDigest);
+            int bodyLength = stream.readInt();
+            if ((bodyLength < 0) || (bodyLength > Files.size(path))) {
+                return null;
+            }
+            byte[] body = new byte[bodyLength];
+            stream.readFully(body);
+            if ((-1 != stream.read()) || !MessageDigest.isEqual(savedDigest, newSha256().digest(body))) {
+                // The contents aren't what was written.
+                return null;
+            }
+            return readBody(new DataInputStream(new ByteArrayInputStream(body)));
+        } catch (IOException | RuntimeException e) {
+            // A truncated or otherwise corrupt snapshot is treated as missing (it will just be re-written).
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot to the given path, replacing any existing snapshot.
+     * The snapshot is written to a temporary file and moved into place so that a concurrently starting process never reads a partial
+     * snapshot.
+     *
+     * @param path The location of the snapshot.
+     * @param runtimeHash The hash of the current runtime (from hashRuntimeJars()).
+     * @throws IOException If the snapshot couldn't be written.
+     */
+    public void write(Path path, byte[] runtimeHash) throws IOException {
+        RuntimeAssertionError.assertTrue(null != runtimeHash);
+        // The body is serialized first, since its digest precedes it.
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        try (DataOutputStream bodyStream = new DataOutputStream(bodyBytes)) {
+            writeBody(bodyStream);
+        }
+        byte[] body = bodyBytes.toByteArray();
+        byte[] bodyDigest = newSha256().digest(body);
+
+        Path absolutePath = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolutePath.getParent(), absolutePath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                stream.writeInt(SNAPSHOT_MAGIC);
+                stream.writeInt(SNAPSHOT_VERSION);
+                stream.writeInt(runtimeHash.length);
+                stream.write(runtimeHash);
+                stream.writeInt(bodyDigest.length);
+                stream.write(bodyDigest);
+                stream.writeInt(body.length);
+                stream.write(body);
+            }
+            Files.move(temporary, absolutePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+
+    private static NodeEnvironmentSnapshot readBody(DataInputStream stream) throws IOException {
+        int shadowClassCount = stream.readInt();
+        Map<String, byte[]> generatedShadowJDK = new HashMap<>();
+        for (int i = 0; i < shadowClassCount; ++i) {
+            String name = stream.readUTF();
+            byte[] bytecode = new byte[stream.readInt()];
+            stream.readFully(bytecode);
+            generatedShadowJDK.put(name, bytecode);
+        }
+
+        int sizeCount = stream.readInt();
+        Map<String, Integer> runtimeObjectSizes = new HashMap<>();
+        for (int i = 0; i < sizeCount; ++i) {
+            String name = stream.readUTF();
+            runtimeObjectSizes.put(name, stream.readInt());
+        }
+
+        int classInfoCount = stream.readInt();
+        Set<ClassInformation> runtimeClassInfos = new HashSet<>();
+        for (int i = 0; i < classInfoCount; ++i) {
+            boolean isInterface = stream.readBoolean();
+            String dotName = stream.readUTF();
+            String superClassDotName = stream.readBoolean() ? stream.readUTF() : null;
+            String[] superInterfaceDotNames = new String[stream.readInt()];
+            for (int j = 0; j < superInterfaceDotNames.length; ++j) {
+                superInterfaceDotNames[j] = stream.readUTF();
+            }
+            runtimeClassInfos.add(ClassInformation.postRenameInfoFor(isInterface, dotName, superClassDotName, superInterfaceDotNames));
+        }
+
+        int descriptorClassCount = stream.readInt();
+        Map<String, List<String>> methodDescriptors = new HashMap<>();
+        for (int i = 0; i < descriptorClassCount; ++i) {
+            String name = stream.readUTF();
+            int descriptorCount = stream.readInt();
+            List<String> descriptors = new ArrayList<>(descriptorCount);
+            for (int j = 0; j < descriptorCount; ++j) {
+                descriptors.add(stream.readUTF());
+            }
+            methodDescriptors.put(name, Collections.unmodifiableList(descriptors));
+        }
+
+        // Anything after the contents means this isn't something we wrote.
+        return (-1 == stream.read())
+                ? new NodeEnvironmentSnapshot(generatedShadowJDK, runtimeObjectSizes, runtimeClassInfos, methodDescriptors)
+                : null;
+    }
+
+    private void writeBody(DataOutputStream stream) throws IOException {
+        stream.writeInt(this.generatedShadowJDK.size());
+        for (Map.Entry<String, byte[]> elt : this.generatedShadowJDK.entrySet()) {
+            stream.writeUTF(elt.getKey());
+            stream.writeInt(elt.getValue().length);
+            stream.write(elt.getValue());
+        }
+
+        stream.writeInt(this.runtimeObjectSizes.size());
+        for (Map.Entry<String, Integer> elt : this.runtimeObjectSizes.entrySet()) {
+            stream.writeUTF(elt.getKey());
+            stream.writeInt(elt.getValue());
+        }
+
+        stream.writeInt(this.runtimeClassInfos.size());
+        for (ClassInformation info : this.runtimeClassInfos) {
+            stream.writeBoolean(info.isInterface);
+            stream.writeUTF(info.dotName);
+            stream.writeBoolean(null != info.superClassDotName);
+            if (null != info.superClassDotName) {
+                stream.writeUTF(info.superClassDotName);
+            }
+            String[] superInterfaceDotNames = info.getInterfaces();
+            stream.writeInt(superInterfaceDotNames.length);
+            for (String superInterfaceDotName : superInterfaceDotNames) {
+                stream.writeUTF(superInterfaceDotName);
+            }
+        }
+
+        stream.writeInt(this.methodDescriptors.size());
+        for (Map.Entry<String, List<String>> elt : this.methodDescriptors.entrySet()) {
+            stream.writeUTF(elt.getKey());
+            stream.writeInt(elt.getValue().size());
+            for (String descriptor : elt.getValue()) {
+                stream.writeUTF(descriptor);
+            }
+        }
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required of every Java platform.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+}
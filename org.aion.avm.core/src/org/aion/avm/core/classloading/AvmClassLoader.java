@@ -158,4 +158,22 @@ public class AvmClassLoader extends ClassLoader {
     public byte[] getUserClassBytecode(String className){
         return this.bytecodeMap.get(className);
     }
+
+    /**
+     * @return The total size of the bytecode this loader was given to define (not including the array wrappers it generates).
+     */
+    public long getBytecodeSize() {
+        long size = 0L;
+        for (byte[] bytecode : this.bytecodeMap.values()) {
+            size += bytecode.length;
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of classes this loader has defined so far (including generated array wrappers).
+     */
+    public int getDefinedClassCount() {
+        return this.cache.size();
+    }
 }
@@ -54,14 +54,15 @@ public class LoadedJar {
     private static LoadedJar safeLoadFromBytes(ByteArrayInputStream byteReader) throws IOException, SizeException {
         Map<String, byte[]> classBytesByQualifiedNames = new HashMap<>();
         String mainClassName = null;
+        Attributes mainAttributes = new Attributes();
         
         boolean verify = true;
         try (JarInputStream jarReader = new JarInputStream(byteReader, verify)) {
             
             Manifest manifest = jarReader.getManifest();
             if (null != manifest) {
-                Attributes mainAttributes = manifest.getMainAttributes();
-                if (null != mainAttributes) {
+                if (null != manifest.getMainAttributes()) {
+                    mainAttributes = manifest.getMainAttributes();
                     mainClassName = mainAttributes.getValue(Attributes.Name.MAIN_CLASS);
                 }
             }
@@ -90,16 +91,23 @@ public class LoadedJar {
                 }
             }
         }
-        return new LoadedJar(classBytesByQualifiedNames, mainClassName);
+        return new LoadedJar(classBytesByQualifiedNames, mainClassName, mainAttributes);
     }
 
 
     public final Map<String, byte[]> classBytesByQualifiedNames;
     public final String mainClassName;
+    // All of the main attributes from the manifest (empty if there was no manifest).
+    public final Attributes mainAttributes;
 
     public LoadedJar(Map<String, byte[]> classBytesByQualifiedNames, String mainClassName) {
+        this(classBytesByQualifiedNames, mainClassName, new Attributes());
+    }
+
+    public LoadedJar(Map<String, byte[]> classBytesByQualifiedNames, String mainClassName, Attributes mainAttributes) {
         this.classBytesByQualifiedNames = Collections.unmodifiableMap(classBytesByQualifiedNames);
         this.mainClassName = mainClassName;
+        this.mainAttributes = mainAttributes;
     }
 
 
@@ -0,0 +1,302 @@
+package org.aion.avm.core.instrument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import i.RuntimeAssertionError;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+
+/**
+ * Reduces the number of energy charges BlockInstrumentationVisitor injects into a method, without changing what any execution of the
+ * method is charged:  every path still pays exactly the sum of the fees of the blocks it runs, as computed from the BytecodeFeeScheduler.
+ *
+ * This is done by re-distributing the fees of the blocks (setting some to 0, so they get no charge) in 2 cases:
+ * -straight-line blocks:  a block which can only be entered by falling through from the block before it is charged as part of that block,
+ * as long as nothing between the 2 charges could throw (otherwise, a caught exception would be charged differently).  Such blocks are
+ * typically split by labels only used to delimit try blocks.
+ * -counted loops:  a loop of the shape javac emits for "for (int i = ...; i < bound; i++)", where the bound is a constant or a local which
+ * the loop doesn't write and the body is straight-line code which can't throw, is charged once, on entry, for all of its iterations.  The
+ * number of iterations is computed at runtime (see CountedLoop).
+ *
+ * The only observable difference is when an out-of-energy failure is detected:  it can be raised earlier, but only ahead of code which has no
+ * effect outside of the frame's locals and stack, and the transaction is charged its entire energy limit either way.
+ */
+public class BlockFeeOptimizer {
+    /**
+     * Re-distributes the energy costs of the given blocks (which must have been built from the given method and already have their costs
+     * set).
+     *
+     * @param method The method the blocks were built from.
+     * @param blocks The blocks of the method, in order.
+     * @return The counted loops found, keyed by the index of their header block (their bulk charge must be emitted right before the labels
+     * which precede it).
+     */
+    public static Map<Integer, CountedLoop> optimize(MethodNode method, List<BasicBlock> blocks) {
+        Map<Integer, CountedLoop> loops = new HashMap<>();
+        if (!blocks.isEmpty()) {
+            BlockFeeOptimizer optimizer = new BlockFeeOptimizer(method, blocks);
+            optimizer.findCountedLoops(loops);
+            optimizer.mergeStraightLineBlocks();
+        }
+        return loops;
+    }
+
+
+    private final List<BasicBlock> blocks;
+    // The first and last instruction of each block.
+    private final List<AbstractInsnNode> firstInstructions;
+    private final List<AbstractInsnNode> lastInstructions;
+    // The number of jumps, switch cases and exception handlers which target each label.
+    private final Map<LabelNode, Integer> targetCounts;
+
+    private BlockFeeOptimizer(MethodNode method, List<BasicBlock> blocks) {
+        this.blocks = blocks;
+        this.firstInstructions = new ArrayList<>();
+        this.lastInstructions = new ArrayList<>();
+        this.targetCounts = new HashMap<>();
+
+        // BlockBuildingMethodVisitor puts every instruction in exactly one block, in order, so we can find the instructions of each block by counting.
+        int blockIndex = 0;
+        int opcodeIndex = 0;
+        for (AbstractInsnNode node = method.instructions.getFirst(); null != node; node = node.getNext()) {
+            // (labels, frames and line numbers have no opcode)
+            if (node.getOpcode() >= 0) {
+                BasicBlock block = blocks.get(blockIndex);
+                RuntimeAssertionError.assertTrue(node.getOpcode() == block.opcodeSequence.get(opcodeIndex));
+                if (0 == opcodeIndex) {
+                    this.firstInstructions.add(node);
+                }
+                opcodeIndex += 1;
+                if (block.opcodeSequence.size() == opcodeIndex) {
+                    this.lastInstructions.add(node);
+                    blockIndex += 1;
+                    opcodeIndex = 0;
+                }
+                if (node instanceof JumpInsnNode) {
+                    countTarget(((JumpInsnNode) node).label);
+                } else if (node instanceof TableSwitchInsnNode) {
+                    countTarget(((TableSwitchInsnNode) node).dflt);
+                    ((TableSwitchInsnNode) node).labels.forEach(this::countTarget);
+                } else if (node instanceof LookupSwitchInsnNode) {
+                    countTarget(((LookupSwitchInsnNode) node).dflt);
+                    ((LookupSwitchInsnNode) node).labels.forEach(this::countTarget);
+                }
+            }
+        }
+        RuntimeAssertionError.assertTrue(blocks.size() == blockIndex);
+        for (TryCatchBlockNode tryCatch : method.tryCatchBlocks) {
+            countTarget(tryCatch.handler);
+        }
+    }
+
+    private void countTarget(LabelNode label) {
+        this.targetCounts.merge(label, 1, Integer::sum);
+    }
+
+    private void findCountedLoops(Map<Integer, CountedLoop> loops) {
+        // The header of a counted loop is a block of its own:  ILOAD counter, <load bound>, IF_ICMPGE exit.
+        for (int headerIndex = 0; headerIndex < this.blocks.size(); ++headerIndex) {
+            List<Integer> header = this.blocks.get(headerIndex).opcodeSequence;
+            if ((3 == header.size()) && (Opcodes.ILOAD == header.get(0)) && (Opcodes.IF_ICMPGE == header.get(2))) {
+                CountedLoop loop = matchCountedLoop(headerIndex);
+                if (null != loop) {
+                    loops.put(headerIndex, loop);
+                }
+            }
+        }
+    }
+
+    private CountedLoop matchCountedLoop(int headerIndex) {
+        AbstractInsnNode counterLoad = this.firstInstructions.get(headerIndex);
+        AbstractInsnNode boundLoad = counterLoad.getNext();
+        int counterVar = ((VarInsnNode) counterLoad).var;
+        int boundVar = -1;
+        int boundConstant = 0;
+        if (Opcodes.ILOAD == boundLoad.getOpcode()) {
+            boundVar = ((VarInsnNode) boundLoad).var;
+        } else if ((boundLoad.getOpcode() >= Opcodes.ICONST_M1) && (boundLoad.getOpcode() <= Opcodes.ICONST_5)) {
+            boundConstant = boundLoad.getOpcode() - Opcodes.ICONST_0;
+        } else if ((Opcodes.BIPUSH == boundLoad.getOpcode()) || (Opcodes.SIPUSH == boundLoad.getOpcode())) {
+            boundConstant = ((IntInsnNode) boundLoad).operand;
+        } else if ((Opcodes.LDC == boundLoad.getOpcode()) && (((LdcInsnNode) boundLoad).cst instanceof Integer)) {
+            boundConstant = (Integer) ((LdcInsnNode) boundLoad).cst;
+        } else {
+            return null;
+        }
+
+        // The loop must only be entered by falling into the header, which must only be jumped to by the back-edge.
+        AbstractInsnNode previous = this.firstInstructions.get(headerIndex).getPrevious();
+        LabelNode headLabel = null;
+        while ((null != previous) && (previous.getOpcode() < 0)) {
+            if (previous instanceof LabelNode) {
+                Integer count = this.targetCounts.get(previous);
+                if (null != count) {
+                    if ((null != headLabel) || (1 != count)) {
+                        return null;
+                    }
+                    headLabel = (LabelNode) previous;
+                }
+            }
+            previous = previous.getPrevious();
+        }
+        if ((null == headLabel) || ((null != previous) && !canFallThrough(previous))) {
+            return null;
+        }
+
+        // The body is straight-line code, which can't throw, ending in "IINC counter 1; GOTO head".
+        int backEdgeIndex = headerIndex + 1;
+        while ((backEdgeIndex < this.blocks.size()) && cannotThrow(this.lastInstructions.get(backEdgeIndex))) {
+            backEdgeIndex += 1;
+        }
+        if (backEdgeIndex == this.blocks.size()) {
+            return null;
+        }
+        AbstractInsnNode backEdge = this.lastInstructions.get(backEdgeIndex);
+        AbstractInsnNode increment = backEdge.getPrevious();
+        while (increment.getOpcode() < 0) {
+            increment = increment.getPrevious();
+        }
+        boolean isLoop = (Opcodes.GOTO == backEdge.getOpcode())
+                && (headLabel == ((JumpInsnNode) backEdge).label)
+                && (Opcodes.IINC == increment.getOpcode())
+                && (counterVar == ((IincInsnNode) increment).var)
+                && (1 == ((IincInsnNode) increment).incr);
+        if (!isLoop) {
+            return null;
+        }
+        long bodyCost = 0L;
+        for (int bodyIndex = headerIndex + 1; bodyIndex <= backEdgeIndex; ++bodyIndex) {
+            if (hasTargetedLabelBefore(bodyIndex)) {
+                return null;
+            }
+            bodyCost += this.blocks.get(bodyIndex).getEnergyCost();
+        }
+        for (AbstractInsnNode node = this.firstInstructions.get(headerIndex + 1); node != backEdge; node = node.getNext()) {
+            boolean isAllowed = (node.getOpcode() < 0)
+                    || (increment == node)
+                    || (cannotThrow(node) && !writesLocal(node, counterVar) && !writesLocal(node, boundVar));
+            if (!isAllowed) {
+                return null;
+            }
+        }
+
+        long headerCost = this.blocks.get(headerIndex).getEnergyCost();
+        for (int index = headerIndex; index <= backEdgeIndex; ++index) {
+            this.blocks.get(index).setEnergyCost(0L);
+        }
+        return new CountedLoop(counterVar, boundVar, boundConstant, headerCost + bodyCost, headerCost);
+    }
+
+    private void mergeStraightLineBlocks() {
+        int chargingIndex = 0;
+        boolean canMergeNext = cannotThrow(0);
+        for (int index = 1; index < this.blocks.size(); ++index) {
+            // cannotThrow() also means that the last instruction falls through so, if nothing can jump here, this block always runs next.
+            if (canMergeNext && !hasTargetedLabelBefore(index)) {
+                BasicBlock chargingBlock = this.blocks.get(chargingIndex);
+                BasicBlock block = this.blocks.get(index);
+                chargingBlock.setEnergyCost(chargingBlock.getEnergyCost() + block.getEnergyCost());
+                block.setEnergyCost(0L);
+                canMergeNext = cannotThrow(index);
+            } else {
+                chargingIndex = index;
+                canMergeNext = cannotThrow(index);
+            }
+        }
+    }
+
+    private boolean hasTargetedLabelBefore(int blockIndex) {
+        for (AbstractInsnNode node = this.firstInstructions.get(blockIndex).getPrevious(); (null != node) && (node.getOpcode() < 0); node = node.getPrevious()) {
+            if ((node instanceof LabelNode) && this.targetCounts.containsKey(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean cannotThrow(int blockIndex) {
+        AbstractInsnNode last = this.lastInstructions.get(blockIndex);
+        for (AbstractInsnNode node = this.firstInstructions.get(blockIndex); ; node = node.getNext()) {
+            if ((node.getOpcode() >= 0) && !cannotThrow(node)) {
+                return false;
+            }
+            if (last == node) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Note that none of the instructions which can't throw are jumps, switches, returns or athrow, so they also always fall through.
+     */
+    private static boolean cannotThrow(AbstractInsnNode node) {
+        int opcode = node.getOpcode();
+        boolean cannotThrow;
+        if (Opcodes.LDC == opcode) {
+            // Only the numeric constants are plain loads (the others will be rewritten into calls or field reads).
+            Object constant = ((LdcInsnNode) node).cst;
+            cannotThrow = (constant instanceof Integer) || (constant instanceof Long) || (constant instanceof Float) || (constant instanceof Double);
+        } else {
+            cannotThrow = ((opcode >= Opcodes.NOP) && (opcode <= Opcodes.SIPUSH))
+                    || ((opcode >= Opcodes.ILOAD) && (opcode <= Opcodes.ALOAD))
+                    || ((opcode >= Opcodes.ISTORE) && (opcode <= Opcodes.ASTORE))
+                    // (stack manipulation and arithmetic, except the integer division and remainder, which can throw ArithmeticException)
+                    || ((opcode >= Opcodes.POP) && (opcode <= Opcodes.DCMPG)
+                            && (Opcodes.IDIV != opcode) && (Opcodes.LDIV != opcode) && (Opcodes.IREM != opcode) && (Opcodes.LREM != opcode));
+        }
+        return cannotThrow;
+    }
+
+    private static boolean canFallThrough(AbstractInsnNode node) {
+        int opcode = node.getOpcode();
+        return !((Opcodes.GOTO == opcode) || (Opcodes.ATHROW == opcode) || (Opcodes.TABLESWITCH == opcode) || (Opcodes.LOOKUPSWITCH == opcode)
+                || ((opcode >= Opcodes.IRETURN) && (opcode <= Opcodes.RETURN)));
+    }
+
+    private static boolean writesLocal(AbstractInsnNode node, int var) {
+        boolean writes = false;
+        if (node instanceof IincInsnNode) {
+            writes = (var == ((IincInsnNode) node).var);
+        } else if ((node.getOpcode() >= Opcodes.ISTORE) && (node.getOpcode() <= Opcodes.ASTORE)) {
+            writes = (var == ((VarInsnNode) node).var);
+        }
+        return writes;
+    }
+
+
+    /**
+     * Describes a counted loop which is charged in bulk, on entry:  (max(0, bound - counter) * iterationCost) + exitCost.
+     * This is what the per-block charges would add up to since, each time the header passes, the header and the body run once and then the
+     * header runs one last time when it exits.
+     */
+    public static final class CountedLoop {
+        public final int counterVar;
+        // The local holding the bound, or -1 if it is the constant in boundConstant.
+        public final int boundVar;
+        public final int boundConstant;
+        public final long iterationCost;
+        public final long exitCost;
+
+        public CountedLoop(int counterVar, int boundVar, int boundConstant, long iterationCost, long exitCost) {
+            this.counterVar = counterVar;
+            this.boundVar = boundVar;
+            this.boundConstant = boundConstant;
+            this.iterationCost = iterationCost;
+            this.exitCost = exitCost;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.aion.avm.core.instrument;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import i.Helper;
 import i.RuntimeAssertionError;
@@ -25,15 +27,26 @@ import org.objectweb.asm.Opcodes;
  * dimension array.
  * A maximum limit of 3 will be imposed later on arrays (in ArrayWrappingClassGenerator)
  * Note that this was adapted from the ClassRewriter.MethodInstrumentationVisitor.
+ * 
+ * Counted loops (see BlockFeeOptimizer) are charged in bulk:  when we reach the first label before the header block of the loop, we inject
+ * the computation of its cost and the call to the energy accounting helper right before it, so that it is only run when falling into the
+ * loop (the back-edge jumps to one of these labels).
  */
 public class BlockInstrumentationVisitor extends MethodVisitor {
     private final List<BasicBlock> blocks;
+    private final Map<Integer, BlockFeeOptimizer.CountedLoop> countedLoopsByHeaderIndex;
     private boolean scanningToNewBlockStart;
     private int nextBlockIndexToWrite;
+    private int lastLoopChargeIndex;
 
     public BlockInstrumentationVisitor(MethodVisitor target, List<BasicBlock> blocks) {
+        this(target, blocks, Collections.emptyMap());
+    }
+
+    public BlockInstrumentationVisitor(MethodVisitor target, List<BasicBlock> blocks, Map<Integer, BlockFeeOptimizer.CountedLoop> countedLoopsByHeaderIndex) {
         super(Opcodes.ASM6, target);
         this.blocks = blocks;
+        this.countedLoopsByHeaderIndex = countedLoopsByHeaderIndex;
     }
 
     @Override
@@ -41,6 +54,7 @@ public class BlockInstrumentationVisitor extends MethodVisitor {
         // We initialize the state machine.
         this.scanningToNewBlockStart = true;
         this.nextBlockIndexToWrite = 0;
+        this.lastLoopChargeIndex = -1;
         // We also need to tell the writer to advance.
         super.visitCode();
     }
@@ -93,6 +107,11 @@ public class BlockInstrumentationVisitor extends MethodVisitor {
         // The label means that we found a new block (although there might be several labels before it actually starts)
         // so enter the state machine mode where we are looking for that beginning of a block.
         this.scanningToNewBlockStart = true;
+        BlockFeeOptimizer.CountedLoop loop = this.countedLoopsByHeaderIndex.get(this.nextBlockIndexToWrite);
+        if ((null != loop) && (this.lastLoopChargeIndex != this.nextBlockIndexToWrite)) {
+            injectLoopCharge(loop);
+            this.lastLoopChargeIndex = this.nextBlockIndexToWrite;
+        }
         super.visitLabel(label);
     }
     @Override
@@ -135,6 +154,34 @@ public class BlockInstrumentationVisitor extends MethodVisitor {
     public void visitMaxs(int maxStack, int maxLocals) {
         super.visitMaxs(maxStack, maxLocals);
     }
+    /**
+     * Injects the bulk charge for a counted loop:  (max(0, bound - counter) * iterationCost) + exitCost.
+     * The subtraction is done in long, so it can't overflow, and the max is computed without a branch, so we don't need a new frame.
+     */
+    private void injectLoopCharge(BlockFeeOptimizer.CountedLoop loop) {
+        if (loop.boundVar >= 0) {
+            super.visitVarInsn(Opcodes.ILOAD, loop.boundVar);
+        } else {
+            super.visitLdcInsn(Integer.valueOf(loop.boundConstant));
+        }
+        super.visitInsn(Opcodes.I2L);
+        super.visitVarInsn(Opcodes.ILOAD, loop.counterVar);
+        super.visitInsn(Opcodes.I2L);
+        super.visitInsn(Opcodes.LSUB);
+        // (x & ~(x >> 63)) is 0 for negative x and x, otherwise.
+        super.visitInsn(Opcodes.DUP2);
+        super.visitIntInsn(Opcodes.BIPUSH, 63);
+        super.visitInsn(Opcodes.LSHR);
+        super.visitLdcInsn(Long.valueOf(-1L));
+        super.visitInsn(Opcodes.LXOR);
+        super.visitInsn(Opcodes.LAND);
+        super.visitLdcInsn(Long.valueOf(loop.iterationCost));
+        super.visitInsn(Opcodes.LMUL);
+        super.visitLdcInsn(Long.valueOf(loop.exitCost));
+        super.visitInsn(Opcodes.LADD);
+        super.visitMethodInsn(Opcodes.INVOKESTATIC, Helper.RUNTIME_HELPER_NAME, "chargeEnergy", "(J)V", false);
+    }
+
     /**
      * Common state machine advancing call.  Called at every instruction to see if we need to inject and/or advance
      * the state machine.
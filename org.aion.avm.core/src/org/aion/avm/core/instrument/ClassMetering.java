@@ -6,17 +6,28 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
 import i.RuntimeAssertionError;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public class ClassMetering extends ClassToolchain.ToolChainClassVisitor {
     private Map<String, Integer> objectSizes;
     private final BytecodeFeeScheduler bytecodeFeeScheduler;
+    private final boolean optimizeCharges;
 
     public ClassMetering(Map<String, Integer> objectSizes) {
+        this(objectSizes, true);
+    }
+
+    /**
+     * @param objectSizes The sizes of the classes which can be allocated (null if allocations aren't to be billed).
+     * @param optimizeCharges True if the BlockFeeOptimizer should be used to reduce the number of charges (the fees are the same, either way).
+     */
+    public ClassMetering(Map<String, Integer> objectSizes, boolean optimizeCharges) {
         super(Opcodes.ASM6);
 
         this.objectSizes = objectSizes;
+        this.optimizeCharges = optimizeCharges;
         
         // Note that we construct the fee scheduler, internally.
         this.bytecodeFeeScheduler = new BytecodeFeeScheduler();
@@ -49,8 +60,13 @@ public class ClassMetering extends ClassToolchain.ToolChainClassVisitor {
                     block.setEnergyCost(feeForBlock);
                 }
 
+                // Merge the straight-line blocks and hoist the charges out of the counted loops, where we can.
+                Map<Integer, BlockFeeOptimizer.CountedLoop> countedLoops = ClassMetering.this.optimizeCharges
+                        ? BlockFeeOptimizer.optimize(this, blocks)
+                        : Collections.emptyMap();
+
                 // We can now build the arraywrapper over the real visitor, and accept it in order to add the instrumentation.
-                BlockInstrumentationVisitor instrumentingVisitor = new BlockInstrumentationVisitor(realVisitor, blocks);
+                BlockInstrumentationVisitor instrumentingVisitor = new BlockInstrumentationVisitor(realVisitor, blocks, countedLoops);
                 this.accept(instrumentingVisitor);
             }
         };
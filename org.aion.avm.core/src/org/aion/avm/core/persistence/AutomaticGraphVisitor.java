@@ -1,10 +1,23 @@
 package org.aion.avm.core.persistence;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.aion.avm.core.ClassToolchain;
+import org.aion.avm.core.util.Helpers;
+import i.IObjectDeserializer;
+import i.IObjectSerializer;
 import i.RuntimeAssertionError;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
@@ -16,10 +29,14 @@ import org.objectweb.asm.tree.analysis.Frame;
  * Specifically, this means the following transformations:
  * 1)  Add a special constructor, which cannot already be present, just calling its superclass counterpart.
  * 2)  Remove "final" from all fields (at least instance fields - we may be able to treat static fields differently).
- * 3)  Prepend all PUTFIELD/GETFIELD instructions with a call to "lazyLoad()" on the receiver object (unless "this" in a constructor).
+ * 3)  Prepend all GETFIELD instructions with a call to "lazyLoad()" and all PUTFIELD instructions with a call to the "markDirty()" write
+ *  barrier on the receiver object (unless "this" in a constructor).
+ * 4)  For classes whose entire superclass chain was defined by the user, generate serializeSelf()/deserializeSelf() overrides which
+ *  read/write the declared instance fields directly, in the same order as the reflective "automatically*Root" walk in the persistence
+ *  layer, so the persisted graph is unchanged but the per-instance reflection and type dispatch is avoided.
  * 
- * Note that this transformation doesn't depend on the persistence model being applied.  So long as "lazyLoad()" is a safe no-op,
- * there is no harm in enabling this without the corresponding persistence logic.
+ * Note that this transformation doesn't depend on the persistence model being applied.  So long as "lazyLoad()" is a safe no-op and
+ * "markDirty()" only records the modification, there is no harm in enabling this without the corresponding persistence logic.
  * This should probably be put late in the pipeline since these transformations are substantial, and could change energy and stack
  * accounting in pretty large ways for what are essentially our own implementation details.
  */
@@ -28,13 +45,62 @@ public class AutomaticGraphVisitor extends ClassToolchain.ToolChainClassVisitor
     private static final String INIT_NAME = "<init>";
     // The special constructor takes (Void ignore, int readIndex).
     private static final String SPECIAL_CONSTRUCTOR_DESCRIPTOR = "(Ljava/lang/Void;I)V";
+    private static final String SHADOW_OBJECT_NAME = Helpers.fulllyQualifiedNameToInternalName(s.java.lang.Object.class.getName());
+    private static final String SERIALIZER_NAME = Helpers.fulllyQualifiedNameToInternalName(IObjectSerializer.class.getName());
+    private static final String DESERIALIZER_NAME = Helpers.fulllyQualifiedNameToInternalName(IObjectDeserializer.class.getName());
+    private static final String SERIALIZE_SELF_NAME = "serializeSelf";
+    private static final String SERIALIZE_SELF_DESCRIPTOR = "(Ljava/lang/Class;L" + SERIALIZER_NAME + ";)V";
+    private static final String DESERIALIZE_SELF_NAME = "deserializeSelf";
+    private static final String DESERIALIZE_SELF_DESCRIPTOR = "(Ljava/lang/Class;L" + DESERIALIZER_NAME + ";)V";
+
+    /**
+     * Determines which of the given user classes can have their serializeSelf()/deserializeSelf() generated:  those which aren't interfaces
+     * and whose superclass is either the shadow Object or another such class.
+     * Classes extending shadow JDK classes (exceptions and enums, for example) interleave the state of that superclass with the automatic
+     * walk of their own fields, so those are left to the reflective implementation.
+     * 
+     * @param renamedUserClasses The user classes, after renaming (.-style names).
+     * @return The /-style names of the classes which should have their persistence methods generated.
+     */
+    public static Set<String> findClassesForGeneratedPersistence(Map<String, byte[]> renamedUserClasses) {
+        Map<String, String> superClasses = new HashMap<>();
+        for (byte[] bytecode : renamedUserClasses.values()) {
+            ClassReader reader = new ClassReader(bytecode);
+            if (0 == (Opcodes.ACC_INTERFACE & reader.getAccess())) {
+                superClasses.put(reader.getClassName(), reader.getSuperName());
+            }
+        }
+        Set<String> eligible = new HashSet<>();
+        for (String className : superClasses.keySet()) {
+            // Walk up until we reach the shadow Object (eligible) or something which isn't a user class (not eligible).
+            String walk = className;
+            while (superClasses.containsKey(walk)) {
+                walk = superClasses.get(walk);
+            }
+            if (SHADOW_OBJECT_NAME.equals(walk)) {
+                eligible.add(className);
+            }
+        }
+        return eligible;
+    }
+
+    // The /-style names of the classes which should have their persistence methods generated (empty if none should).
+    private final Set<String> classesForGeneratedPersistence;
+    // The instance fields declared by the class, in the order they were visited.
+    private final List<String[]> instanceFields;
 
     private boolean isInterface;
     private String className;
     private String superClassName;
 
     public AutomaticGraphVisitor() {
+        this(new HashSet<>());
+    }
+
+    public AutomaticGraphVisitor(Set<String> classesForGeneratedPersistence) {
         super(Opcodes.ASM6);
+        this.classesForGeneratedPersistence = classesForGeneratedPersistence;
+        this.instanceFields = new ArrayList<>();
     }
 
     @Override
@@ -53,6 +119,10 @@ public class AutomaticGraphVisitor extends ClassToolchain.ToolChainClassVisitor
         // Filter out the "final" from all fields.
         // (note that we may way to skip this, for statics, and exclude them from the serialization system).
         int newAccess = (~Opcodes.ACC_FINAL) & access; 
+        // We need to know the instance fields in case we are generating the persistence methods.
+        if (0 == (Opcodes.ACC_STATIC & access)) {
+            this.instanceFields.add(new String[] {name, descriptor});
+        }
         return super.visitField(newAccess, name, descriptor, signature, value);
     }
 
@@ -110,7 +180,116 @@ public class AutomaticGraphVisitor extends ClassToolchain.ToolChainClassVisitor
             methodVisitor.visitInsn(Opcodes.RETURN);
             methodVisitor.visitMaxs(4, 4);
             methodVisitor.visitEnd();
+            
+            if (this.classesForGeneratedPersistence.contains(this.className)) {
+                // The persistence layer reads/writes instance fields sorted by name.
+                this.instanceFields.sort((f1, f2) -> f1[0].compareTo(f2[0]));
+                generateSerializeSelf();
+                generateDeserializeSelf();
+            }
         }
         super.visitEnd();
     }
+
+
+    private void generateSerializeSelf() {
+        // Note that we don't route this through our own visitMethod since the persistence layer only calls this on a populated instance and
+        // reading the state of the object isn't a modification.
+        MethodVisitor methodVisitor = super.visitMethod(Opcodes.ACC_PUBLIC, SERIALIZE_SELF_NAME, SERIALIZE_SELF_DESCRIPTOR, null, null);
+        methodVisitor.visitCode();
+        callSuperclassImplementation(methodVisitor, SERIALIZE_SELF_NAME, SERIALIZE_SELF_DESCRIPTOR);
+        for (String[] field : this.instanceFields) {
+            String name = field[0];
+            String descriptor = field[1];
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+            methodVisitor.visitFieldInsn(Opcodes.GETFIELD, this.className, name, descriptor);
+            String valueDescriptor = isPrimitive(descriptor)
+                    ? descriptor
+                    : "Ljava/lang/Object;";
+            methodVisitor.visitMethodInsn(Opcodes.INVOKEINTERFACE, SERIALIZER_NAME, "write" + accessorSuffix(descriptor), "(" + valueDescriptor + ")V", true);
+        }
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitMaxs(4, 3);
+        methodVisitor.visitEnd();
+    }
+
+    private void generateDeserializeSelf() {
+        // Note that we don't route this through our own visitMethod since populating an instance from storage isn't a modification (and the
+        // instance may be a stub, at this point).
+        MethodVisitor methodVisitor = super.visitMethod(Opcodes.ACC_PUBLIC, DESERIALIZE_SELF_NAME, DESERIALIZE_SELF_DESCRIPTOR, null, null);
+        methodVisitor.visitCode();
+        callSuperclassImplementation(methodVisitor, DESERIALIZE_SELF_NAME, DESERIALIZE_SELF_DESCRIPTOR);
+        for (String[] field : this.instanceFields) {
+            String name = field[0];
+            String descriptor = field[1];
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+            methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+            if (isPrimitive(descriptor)) {
+                methodVisitor.visitMethodInsn(Opcodes.INVOKEINTERFACE, DESERIALIZER_NAME, "read" + accessorSuffix(descriptor), "()" + descriptor, true);
+            } else {
+                methodVisitor.visitMethodInsn(Opcodes.INVOKEINTERFACE, DESERIALIZER_NAME, "readObject", "()Ljava/lang/Object;", true);
+                methodVisitor.visitTypeInsn(Opcodes.CHECKCAST, Type.getType(descriptor).getInternalName());
+            }
+            methodVisitor.visitFieldInsn(Opcodes.PUTFIELD, this.className, name, descriptor);
+        }
+        methodVisitor.visitInsn(Opcodes.RETURN);
+        methodVisitor.visitMaxs(4, 3);
+        methodVisitor.visitEnd();
+    }
+
+    private void callSuperclassImplementation(MethodVisitor methodVisitor, String name, String descriptor) {
+        // The superclass chain handles the hashCode and the fields of our superclasses, but it must not automatically walk the fields we
+        // handle (or those handled by a subclass, which would have passed in its own class) so we tell it that we are the first "real"
+        // implementation:  firstRealImplementation = (null != firstRealImplementation) ? firstRealImplementation : <this class>.
+        Label hasRealImplementation = new Label();
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitJumpInsn(Opcodes.IFNONNULL, hasRealImplementation);
+        methodVisitor.visitLdcInsn(Type.getObjectType(this.className));
+        methodVisitor.visitVarInsn(Opcodes.ASTORE, 1);
+        methodVisitor.visitLabel(hasRealImplementation);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 0);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 1);
+        methodVisitor.visitVarInsn(Opcodes.ALOAD, 2);
+        methodVisitor.visitMethodInsn(Opcodes.INVOKESPECIAL, this.superClassName, name, descriptor, false);
+    }
+
+    private static boolean isPrimitive(String descriptor) {
+        char first = descriptor.charAt(0);
+        return ('L' != first) && ('[' != first);
+    }
+
+    private static String accessorSuffix(String descriptor) {
+        String suffix = null;
+        switch (descriptor.charAt(0)) {
+            case 'Z':
+                suffix = "Boolean";
+                break;
+            case 'B':
+                suffix = "Byte";
+                break;
+            case 'S':
+                suffix = "Short";
+                break;
+            case 'C':
+                suffix = "Char";
+                break;
+            case 'I':
+                suffix = "Int";
+                break;
+            case 'F':
+                suffix = "Float";
+                break;
+            case 'J':
+                suffix = "Long";
+                break;
+            case 'D':
+                suffix = "Double";
+                break;
+            default:
+                suffix = "Object";
+                break;
+        }
+        return suffix;
+    }
 }
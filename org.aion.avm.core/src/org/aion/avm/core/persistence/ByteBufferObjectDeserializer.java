@@ -16,13 +16,27 @@ public class ByteBufferObjectDeserializer implements IObjectDeserializer {
     private final IPersistenceNameMapper classNameMapper;
     // Note that this will be null if this is our pre-pass where we are merely walking through the buffer to find the instance types.
     private final List<Object> instanceList;
+    // Note that this will be null unless the caller wants to record the layout of the instances (see LoadedGraphImage).
+    private final IGraphLayoutRecorder layoutRecorder;
+    // Note that this will be null unless we are reading a graph in the dictionary format, in which case class names are read as indices.
+    private final ClassNameDictionary classNameDictionary;
 
     public ByteBufferObjectDeserializer(ByteBuffer buffer, List<Object> instanceList, SortedFieldCache cache, IGlobalResolver resolver, IPersistenceNameMapper classNameMapper) {
+        this(buffer, instanceList, cache, resolver, classNameMapper, null, null);
+    }
+
+    public ByteBufferObjectDeserializer(ByteBuffer buffer, List<Object> instanceList, SortedFieldCache cache, IGlobalResolver resolver, IPersistenceNameMapper classNameMapper, IGraphLayoutRecorder layoutRecorder) {
+        this(buffer, instanceList, cache, resolver, classNameMapper, layoutRecorder, null);
+    }
+
+    public ByteBufferObjectDeserializer(ByteBuffer buffer, List<Object> instanceList, SortedFieldCache cache, IGlobalResolver resolver, IPersistenceNameMapper classNameMapper, IGraphLayoutRecorder layoutRecorder, ClassNameDictionary classNameDictionary) {
         this.buffer = buffer;
         this.cache = cache;
         this.resolver = resolver;
         this.classNameMapper = classNameMapper;
         this.instanceList = instanceList;
+        this.layoutRecorder = layoutRecorder;
+        this.classNameDictionary = classNameDictionary;
     }
 
     @Override
@@ -81,6 +95,9 @@ public class ByteBufferObjectDeserializer implements IObjectDeserializer {
                 break;
             }
             case ReferenceConstants.REF_CLASS: {
+                if (null != this.layoutRecorder) {
+                    this.layoutRecorder.recordClassReference();
+                }
                 String internalClassName = internalReadClassName();
                 result = (null != this.instanceList)
                         ? this.resolver.getClassObjectForInternalName(internalClassName)
@@ -95,6 +112,9 @@ public class ByteBufferObjectDeserializer implements IObjectDeserializer {
                 break;
             }
             case ReferenceConstants.REF_NORMAL: {
+                if (null != this.layoutRecorder) {
+                    this.layoutRecorder.recordReference(this.buffer.position(), this.buffer.getInt(this.buffer.position()));
+                }
                 int instanceIndex = this.buffer.getInt();
                 result = (null != this.instanceList)
                         ? this.instanceList.get(instanceIndex)
@@ -112,6 +132,40 @@ public class ByteBufferObjectDeserializer implements IObjectDeserializer {
         return internalReadClassName();
     }
 
+    /**
+     * Advances the cursor past the class name of an instance without decoding it (for callers which already know the instance's class).
+     */
+    public void skipClassName() {
+        if (null != this.classNameDictionary) {
+            ClassNameDictionary.readVarint(this.buffer);
+        } else {
+            int length = (0xff & this.buffer.get());
+            RuntimeAssertionError.assertTrue(length > 0);
+            this.buffer.position(this.buffer.position() + length);
+        }
+    }
+
+    /**
+     * Called before reading the class name of an instance so that its location can be recorded in the layout.
+     * Note that this does nothing at the end of the buffer, since there is no instance to begin.
+     * 
+     * @param readIndex The readIndex of the instance about to be read.
+     */
+    public void beginInstance(int readIndex) {
+        if ((null != this.layoutRecorder) && this.buffer.hasRemaining()) {
+            this.layoutRecorder.beginInstance(readIndex, this.buffer.position());
+        }
+    }
+
+    /**
+     * Called after an instance has been read so that its location can be recorded in the layout.
+     */
+    public void endInstance() {
+        if (null != this.layoutRecorder) {
+            this.layoutRecorder.endInstance(this.buffer.position());
+        }
+    }
+
     @Override
     public void automaticallyDeserializeFromRoot(Class<?> rootClass, Object instance) {
         // This is called after any rootClass instance variables have been deserialized.
@@ -171,12 +225,18 @@ public class ByteBufferObjectDeserializer implements IObjectDeserializer {
     }
 
     private String internalReadClassName() {
+        String storageClassName = (null != this.classNameDictionary)
+                ? this.classNameDictionary.getName(ClassNameDictionary.readVarint(this.buffer))
+                : internalReadUtf8ClassName();
+        return this.classNameMapper.getInternalClassName(storageClassName);
+    }
+
+    private String internalReadUtf8ClassName() {
         // We limit class names to 255 UTF-8 bytes so read the length byte.
         int length = (0xff & this.buffer.get());
         RuntimeAssertionError.assertTrue(length > 0);
         byte[] utf8 = new byte[length];
         this.buffer.get(utf8);
-        String storageClassName = new String(utf8, StandardCharsets.UTF_8);
-        return this.classNameMapper.getInternalClassName(storageClassName);
+        return new String(utf8, StandardCharsets.UTF_8);
     }
 }
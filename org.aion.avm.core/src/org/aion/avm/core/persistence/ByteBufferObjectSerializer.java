@@ -16,13 +16,21 @@ public class ByteBufferObjectSerializer implements IObjectSerializer {
     private final IGlobalResolver resolver;
     private final IPersistenceNameMapper classNameMapper;
     private final InstanceIndexMapper instanceMapper;
+    // Note that this will be null unless we are writing a graph which may use the dictionary format, in which case class names are written
+    // as indices into its dictionary.
+    private final GraphIndex.Builder dictionaryIndexBuilder;
 
     public ByteBufferObjectSerializer(ByteBuffer buffer, Queue<Object> out_ToProcessQueue, SortedFieldCache cache, IGlobalResolver resolver, IPersistenceNameMapper classNameMapper) {
+        this(buffer, out_ToProcessQueue, cache, resolver, classNameMapper, null);
+    }
+
+    public ByteBufferObjectSerializer(ByteBuffer buffer, Queue<Object> out_ToProcessQueue, SortedFieldCache cache, IGlobalResolver resolver, IPersistenceNameMapper classNameMapper, GraphIndex.Builder dictionaryIndexBuilder) {
         this.buffer = buffer;
         this.cache = cache;
         this.resolver = resolver;
         this.classNameMapper = classNameMapper;
         this.instanceMapper = new InstanceIndexMapper(out_ToProcessQueue);
+        this.dictionaryIndexBuilder = dictionaryIndexBuilder;
     }
 
     @Override
@@ -103,6 +111,52 @@ public class ByteBufferObjectSerializer implements IObjectSerializer {
         internalWriteClassName(internalClassName);
     }
 
+    /**
+     * Determines if the encoding of the instance at readIndex in the image is still valid in the graph we are writing.
+     * Any class name can be written differently if either graph uses a dictionary (whose indices are assigned on each save), so only
+     * instances which reference no classes can be copied between them (we re-write the class name of the instance, itself).
+     * 
+     * @param image The image of the graph, as loaded.
+     * @param readIndex The readIndex of the instance (which must have been read).
+     * @return True if writeInstanceFromImage() can be used for the instance.
+     */
+    public boolean canWriteInstanceFromImage(LoadedGraphImage image, int readIndex) {
+        return !image.hasClassReferences(readIndex)
+                || ((null == this.dictionaryIndexBuilder) && !image.hasClassNameDictionary());
+    }
+
+    /**
+     * Writes the instance at readIndex by copying its encoding from the image of the loaded graph, instead of asking it to serialize itself.
+     * The only parts of the encoding which may have changed are its class name, which we write again, and the index of each of its instance
+     * references, since those are assigned in traversal order, so we patch those in-place (in the order they were encoded, so the traversal
+     * proceeds exactly as serializeSelf would).
+     * 
+     * @param image The image of the graph, as loaded.
+     * @param readIndex The readIndex of the instance to write (the caller must have checked that it can be reused).
+     */
+    public void writeInstanceFromImage(LoadedGraphImage image, int readIndex) {
+        internalWriteClassName(image.getInstance(readIndex).getClass().getName());
+        int start = image.getClassNameEnd(readIndex);
+        int outputStart = this.buffer.position();
+        this.buffer.put(image.getRawGraphData(), start, image.getInstanceEnd(readIndex) - start);
+        int endReference = image.getEndReference(readIndex);
+        for (int reference = image.getFirstReference(readIndex); reference < endReference; ++reference) {
+            int instanceIndex = this.instanceMapper.getIndexForInstance(image.getReferenceTarget(reference));
+            this.buffer.putInt(outputStart + (image.getReferenceOffset(reference) - start), instanceIndex);
+        }
+    }
+
+    /**
+     * Adds the given instance, about to be written at the current position, to the index of the graph.
+     * 
+     * @param indexBuilder The index being built for the graph.
+     * @param instance The instance about to be written.
+     */
+    public void recordInstanceInIndex(GraphIndex.Builder indexBuilder, Object instance) {
+        String storageName = this.classNameMapper.getStorageClassName(instance.getClass().getName());
+        indexBuilder.addInstance(storageName, this.buffer.position());
+    }
+
     @Override
     public void automaticallySerializeToRoot(Class<?> rootClass, Object instance) {
         // This is called after any root information has been serialized, including class name and root instance variables.
@@ -163,6 +217,14 @@ public class ByteBufferObjectSerializer implements IObjectSerializer {
 
     private void internalWriteClassName(String internalClassName) {
         String storageName = this.classNameMapper.getStorageClassName(internalClassName);
+        if (null != this.dictionaryIndexBuilder) {
+            ClassNameDictionary.writeVarint(this.buffer, this.dictionaryIndexBuilder.addPayloadClassName(storageName, this.buffer.position()));
+        } else {
+            internalWriteUtf8ClassName(storageName);
+        }
+    }
+
+    private void internalWriteUtf8ClassName(String storageName) {
         byte[] utf8 = storageName.getBytes(StandardCharsets.UTF_8);
         // We limit class names to 255 UTF-8 bytes so read the length byte.
         RuntimeAssertionError.assertTrue(utf8.length > 0);
@@ -0,0 +1,179 @@
+package org.aion.avm.core.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import i.RuntimeAssertionError;
+
+
+/**
+ * The table of storage class names used by a graph in the dictionary format (see GraphIndex).  Each distinct class name is written once,
+ * at the beginning of the payload, and every class name within the graph (the class of each instance and any class reference) is
+ * written as the varint index of its entry in this table, instead of as its full UTF-8 name.
+ *
+ * The table is rebuilt each time the graph is saved, with the entries in the order the serializer first writes each name, so it only
+ * contains the classes the saved graph actually references.  Since the table isn't free, the serializer also accounts for what the
+ * names it wrote would have cost inline (see getPayloadSavings()) so the graph can be stored without a dictionary when that is smaller.
+ *
+ * The encoding of the table is:
+ * -varint:  the number of entries
+ * -for each entry:  the length-prefixed UTF-8 storage class name (limited to 255 bytes, as with the legacy format)
+ */
+public class ClassNameDictionary {
+    // Varints are unsigned LEB128:  7 bits per byte, low bits first, with the high bit set on every byte but the last.
+    private static final int VARINT_PAYLOAD_MASK = 0x7f;
+    private static final int VARINT_CONTINUATION_BIT = 0x80;
+
+    /**
+     * Reads a dictionary from the current position of the given buffer, leaving the buffer positioned after it.
+     *
+     * @param buffer The buffer containing the dictionary.
+     * @return The dictionary.
+     */
+    public static ClassNameDictionary readFrom(ByteBuffer buffer) {
+        ClassNameDictionary dictionary = new ClassNameDictionary();
+        int count = readVarint(buffer);
+        for (int i = 0; i < count; ++i) {
+            int length = (0xff & buffer.get());
+            RuntimeAssertionError.assertTrue(length > 0);
+            byte[] utf8 = new byte[length];
+            buffer.get(utf8);
+            dictionary.addName(new String(utf8, StandardCharsets.UTF_8), utf8);
+        }
+        return dictionary;
+    }
+
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        RuntimeAssertionError.assertTrue(value >= 0);
+        int remaining = value;
+        while (remaining > VARINT_PAYLOAD_MASK) {
+            buffer.put((byte) ((remaining & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte next = 0;
+        do {
+            // An int needs at most 5 bytes.
+            RuntimeAssertionError.assertTrue(shift < Integer.SIZE);
+            next = buffer.get();
+            value |= (next & VARINT_PAYLOAD_MASK) << shift;
+            shift += 7;
+        } while (0 != (next & VARINT_CONTINUATION_BIT));
+        return value;
+    }
+
+    public static int getVarintLength(int value) {
+        RuntimeAssertionError.assertTrue(value >= 0);
+        int length = 1;
+        for (int remaining = value >>> 7; remaining > 0; remaining >>>= 7) {
+            length += 1;
+        }
+        return length;
+    }
+
+
+    private final Map<String, Integer> indices;
+    private final List<String> names;
+    private final List<byte[]> utf8Names;
+    // The bytes saved by writing the class names of the payload as indices, instead of inline (not counting the table itself).
+    private int payloadSavings;
+
+    public ClassNameDictionary() {
+        this.indices = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.utf8Names = new ArrayList<>();
+    }
+
+    /**
+     * Finds the index of the given storage class name, adding it to the end of the dictionary if it isn't already there.
+     *
+     * @param storageClassName The class name, as it is stored.
+     * @return The index of the name within the dictionary.
+     */
+    public int getOrAddIndex(String storageClassName) {
+        Integer index = this.indices.get(storageClassName);
+        if (null == index) {
+            byte[] utf8 = storageClassName.getBytes(StandardCharsets.UTF_8);
+            // We limit class names to 255 UTF-8 bytes so we can use a single length byte.
+            RuntimeAssertionError.assertTrue(utf8.length > 0);
+            RuntimeAssertionError.assertTrue(utf8.length <= 255);
+            index = addName(storageClassName, utf8);
+        }
+        return index;
+    }
+
+    /**
+     * Finds the index of the given storage class name, as getOrAddIndex(), when it is about to be written in the payload, accounting
+     * for the bytes this saves over writing the name inline.
+     *
+     * @param storageClassName The class name, as it is stored.
+     * @return The index of the name within the dictionary.
+     */
+    public int getOrAddIndexForPayload(String storageClassName) {
+        int index = getOrAddIndex(storageClassName);
+        this.payloadSavings += Byte.BYTES + this.utf8Names.get(index).length - getVarintLength(index);
+        return index;
+    }
+
+    /**
+     * @return The number of bytes saved by writing the class names of the payload as indices, instead of inline (the cost of the table
+     * itself, from getEncodedLength(), isn't included).
+     */
+    public int getPayloadSavings() {
+        return this.payloadSavings;
+    }
+
+    /**
+     * @return The UTF-8 encoding of the name at index (which must not be modified).
+     */
+    public byte[] getUtf8Name(int index) {
+        return this.utf8Names.get(index);
+    }
+
+    public String getName(int index) {
+        return this.names.get(index);
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * @return The number of bytes writeTo will write.
+     */
+    public int getEncodedLength() {
+        int length = getVarintLength(this.names.size());
+        for (byte[] utf8 : this.utf8Names) {
+            length += Byte.BYTES + utf8.length;
+        }
+        return length;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        writeVarint(buffer, this.names.size());
+        for (byte[] utf8 : this.utf8Names) {
+            buffer.put((byte) utf8.length);
+            buffer.put(utf8);
+        }
+    }
+
+
+    private int addName(String name, byte[] utf8) {
+        int index = this.names.size();
+        Integer previous = this.indices.put(name, index);
+        // A name can only appear once in the dictionary.
+        RuntimeAssertionError.assertTrue(null == previous);
+        this.names.add(name);
+        this.utf8Names.add(utf8);
+        return index;
+    }
+}
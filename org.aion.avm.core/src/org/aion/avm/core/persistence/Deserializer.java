@@ -14,37 +14,80 @@ import i.RuntimeAssertionError;
 
 public class Deserializer {
     public static int deserializeEntireGraphAndNextHashCode(ByteBuffer inputBuffer, List<Object> existingObjectIndex, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, Class<?>[] sortedRoots, Class<?> constantClass) {
-        // We define the storage as big-endian.
-        RuntimeAssertionError.assertTrue(ByteOrder.BIG_ENDIAN == inputBuffer.order());
+        return deserializeEntireGraphAndNextHashCode(inputBuffer, existingObjectIndex, resolver, cache, classNameMapper, sortedRoots, constantClass, null, null);
+    }
+
+    /**
+     * Deserializes the graph, as the above, but also populates an image of the loaded graph in imageBuilder.
+     * Note that this can only be used when loading a graph into new objects (existingObjectIndex must be null) since the image describes
+     * the instances by their readIndex.
+     * 
+     * @param out_instances If imageBuilder is non-null, the loaded instances are added to this list, in readIndex order.
+     * @param imageBuilder If non-null, receives the location of every instance and instance reference.
+     */
+    public static int deserializeEntireGraphAndNextHashCode(ByteBuffer inputBuffer, List<Object> existingObjectIndex, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, Class<?>[] sortedRoots, Class<?> constantClass, List<Object> out_instances, LoadedGraphImage.Builder imageBuilder) {
+        RuntimeAssertionError.assertTrue((null == imageBuilder) || ((null == existingObjectIndex) && (null != out_instances)));
+        List<Object> instanceList = new ArrayList<>();
+        int nextHashCode = internalDeserializeStaticsAndCreateInstances(inputBuffer, existingObjectIndex, resolver, cache, classNameMapper, sortedRoots, constantClass, instanceList, imageBuilder);
         
-        // Deserialization requires that we walk the input data twice, since we need to create all the instances on the first pass and attach them all on the second.
-        // So, we skip the hashcode on the first pass.
-        inputBuffer.getInt();
-        // Create the pre-pass deserializer, just to walk consistently.
-        ByteBufferObjectDeserializer prePassDeserializer = new ByteBufferObjectDeserializer(inputBuffer, null, cache, resolver, classNameMapper);
-        // Now, we need walk the statics, but only to advance the cursor through the buffer (since we will read the same data, but just won't be able to find the instances).
-        deserializeClassStatics(prePassDeserializer, cache, sortedRoots, constantClass);
+        // We can now use the real deserializer to populate all instance fields and connections (the buffer is positioned after the statics).
+        ByteBufferObjectDeserializer objectDeserializer = new ByteBufferObjectDeserializer(inputBuffer, instanceList, cache, resolver, classNameMapper);
+        populateAllInstancesFromBuffer(objectDeserializer, instanceList, cache);
         
-        // Now, walk the rest of the data, deserializing each object, but this is just to find out the instance types and advance through the buffer, consistently.
-        List<Object> instanceList = createAllInstancesFromBuffer(prePassDeserializer, existingObjectIndex, cache, classNameMapper);
+        if (null != out_instances) {
+            out_instances.addAll(instanceList);
+        }
+        return nextHashCode;
+    }
+
+    /**
+     * Deserializes the class statics of a graph in the indexed format, creating every instance described by its index, but doesn't
+     * populate the instances.  Unlike the legacy format, this requires no pass over the instance data since the index describes them.
+     * The instances can then be populated with populateIndexedInstances or lazily.
+     * 
+     * @param inputBuffer The buffer containing the graph, positioned at the beginning of the payload (after the header has been read).
+     * @param index The index read from the header of the graph.
+     * @param out_instances Receives the created instances, in readIndex order.
+     * @return The nextHashCode serialized within the graph.
+     */
+    public static int deserializeIndexedStaticsAndCreateInstances(ByteBuffer inputBuffer, GraphIndex index, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, Class<?>[] sortedRoots, Class<?> constantClass, List<Object> out_instances) {
+        // We define the storage as big-endian.
+        RuntimeAssertionError.assertTrue(ByteOrder.BIG_ENDIAN == inputBuffer.order());
+        RuntimeAssertionError.assertTrue(index.getPayloadStart() == inputBuffer.position());
         
-        // Now, we have enough information to build the graph.
-        // Reset the buffer and read it again.
-        inputBuffer.rewind();
+        // We only need to resolve each class once.
+        int classCount = index.getClassCount();
+        Class<?>[] classes = new Class<?>[classCount];
+        for (int i = 0; i < classCount; ++i) {
+            classes[i] = cache.getClassForInternalName(classNameMapper.getInternalClassName(index.getStorageClassName(i)));
+        }
+        int instanceCount = index.getInstanceCount();
+        for (int readIndex = 0; readIndex < instanceCount; ++readIndex) {
+            out_instances.add(cache.getNewInstance(classes[index.getInstanceClass(readIndex)], readIndex));
+        }
         
+        // Now that all the instances exist, the statics can be connected to them.
         int nextHashCode = inputBuffer.getInt();
-        // Create te real deserializer (this one has the instance list for building the connections from that index).
-        ByteBufferObjectDeserializer objectDeserializer = new ByteBufferObjectDeserializer(inputBuffer, instanceList, cache, resolver, classNameMapper);
-        
-        // Next, we deserialize all the class statics for the user's classes.
+        ByteBufferObjectDeserializer objectDeserializer = new ByteBufferObjectDeserializer(inputBuffer, out_instances, cache, resolver, classNameMapper, null, index.getClassNameDictionary());
         deserializeClassStatics(objectDeserializer, cache, sortedRoots, constantClass);
-        
-        // We can now use the real deserializer to populate all instance fields and connections.
-        populateAllInstancesFromBuffer(objectDeserializer, instanceList, cache);
-        
         return nextHashCode;
     }
 
+    /**
+     * Populates every instance of a graph in the indexed format, in a single pass.
+     * 
+     * @param inputBuffer The buffer containing the graph, positioned after the class statics.
+     * @param instances The instances created by deserializeIndexedStaticsAndCreateInstances.
+     * @param layoutRecorder If non-null, receives the location of every instance reference.
+     * @param classNameDictionary The dictionary from the payload of the graph (null if it isn't in the dictionary format).
+     */
+    public static void populateIndexedInstances(ByteBuffer inputBuffer, List<Object> instances, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, IGraphLayoutRecorder layoutRecorder, ClassNameDictionary classNameDictionary) {
+        ByteBufferObjectDeserializer objectDeserializer = new ByteBufferObjectDeserializer(inputBuffer, instances, cache, resolver, classNameMapper, layoutRecorder, classNameDictionary);
+        populateAllInstancesFromBuffer(objectDeserializer, instances, cache);
+        // The index describes the entire graph so we must have consumed all of it.
+        RuntimeAssertionError.assertTrue(!inputBuffer.hasRemaining());
+    }
+
     public static void cleanClassStatics(SortedFieldCache cache, Class<?>[] sortedRoots, Class<?> constantClass) {
         cleanOneClass(cache, constantClass);
         for (Class<?> clazz : sortedRoots) {
@@ -83,6 +126,36 @@ public class Deserializer {
         }
     }
 
+    private static int internalDeserializeStaticsAndCreateInstances(ByteBuffer inputBuffer, List<Object> existingObjectIndex, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, Class<?>[] sortedRoots, Class<?> constantClass, List<Object> out_instances, LoadedGraphImage.Builder imageBuilder) {
+        // We define the storage as big-endian.
+        RuntimeAssertionError.assertTrue(ByteOrder.BIG_ENDIAN == inputBuffer.order());
+        
+        // Deserialization requires that we walk the input data twice, since we need to create all the instances on the first pass and attach them all on the second.
+        // So, we skip the hashcode on the first pass.
+        inputBuffer.getInt();
+        // Create the pre-pass deserializer, just to walk consistently (this is also where we record the image, if one was requested).
+        ByteBufferObjectDeserializer prePassDeserializer = new ByteBufferObjectDeserializer(inputBuffer, null, cache, resolver, classNameMapper, imageBuilder);
+        // Now, we need walk the statics, but only to advance the cursor through the buffer (since we will read the same data, but just won't be able to find the instances).
+        deserializeClassStatics(prePassDeserializer, cache, sortedRoots, constantClass);
+        
+        // Now, walk the rest of the data, deserializing each object, but this is just to find out the instance types and advance through the buffer, consistently.
+        List<Object> instanceList = createAllInstancesFromBuffer(prePassDeserializer, existingObjectIndex, cache, classNameMapper);
+        
+        // Now, we have enough information to build the graph.
+        // Reset the buffer and read it again.
+        inputBuffer.rewind();
+        
+        int nextHashCode = inputBuffer.getInt();
+        // Create te real deserializer (this one has the instance list for building the connections from that index).
+        ByteBufferObjectDeserializer objectDeserializer = new ByteBufferObjectDeserializer(inputBuffer, instanceList, cache, resolver, classNameMapper);
+        
+        // Next, we deserialize all the class statics for the user's classes.
+        deserializeClassStatics(objectDeserializer, cache, sortedRoots, constantClass);
+        
+        out_instances.addAll(instanceList);
+        return nextHashCode;
+    }
+
     private static void deserializeClassStatics(ByteBufferObjectDeserializer objectDeserializer, SortedFieldCache cache, Class<?>[] sortedRoots, Class<?> constantClass) {
         // First, we serialize the constants.
         deserializeConstantClass(objectDeserializer, cache, constantClass);
@@ -123,6 +196,8 @@ public class Deserializer {
                 // We only expect the error when reading the class name, so only check it there (other cases would be errors).
                 String internalClassName = null;
                 try {
+                    // (the image, if we are building one, needs to know where each instance starts and ends)
+                    objectDeserializer.beginInstance(readIndex);
                     internalClassName = objectDeserializer.readClassName();
                 } catch (BufferUnderflowException done) {
                     // This was expected - means we fell off the end of the buffer.
@@ -135,6 +210,7 @@ public class Deserializer {
                             ? existingObjectIndex.get(readIndex)
                             : cache.getNewInstance(internalClassName, isDeserializingIntoCallerObjects ? -1 : readIndex);
                     deserializeSelfMethod.invoke(instance, null, objectDeserializer);
+                    objectDeserializer.endInstance();
                     instanceList.add(instance);
                     readIndex += 1;
                 }
@@ -151,11 +227,16 @@ public class Deserializer {
         
         // We walk the entire instanceList, assuming that it is the full content of the storage.
         try {
+            int readIndex = 0;
             for (Object instance : instanceList) {
+                // (the layout, if we are recording one, needs to know where each instance starts and ends)
+                objectDeserializer.beginInstance(readIndex);
                 // Read the class name, but just to advance the cursor.
                 objectDeserializer.readClassName();
                 // Now, deserialize the instance.
                 deserializeSelfMethod.invoke(instance, null, objectDeserializer);
+                objectDeserializer.endInstance();
+                readIndex += 1;
             }
         } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
             // Reflection errors can't happen since we set this up so we could access it.
@@ -0,0 +1,367 @@
+package org.aion.avm.core.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import i.OutOfEnergyException;
+import i.RuntimeAssertionError;
+
+
+/**
+ * The header of a graph stored in the indexed format, describing the instances in the graph which follows it.
+ * This allows the deserializer to create every instance before reading any of them, and to find any one instance without reading those
+ * before it, so a graph can be loaded in a single pass (or lazily, instance-by-instance).
+ *
+ * The graph which follows the header (the "payload") is exactly what the legacy format stores, so the header is purely an index over it.
+ * The layout of the header is:
+ * -byte:  the format version (INDEXED_FORMAT_VERSION)
+ * -int:  the total length of the header, in bytes (so the payload can be found without parsing the header)
+ * -int:  the number of distinct classes of instances in the graph
+ * -for each class:  the length-prefixed UTF-8 storage class name (the same encoding as the class names within the payload)
+ * -int:  the number of instances in the graph
+ * -for each instance:  an int index into the class table and an int offset of the instance, relative to the start of the payload
+ *
+ * The dictionary format uses the same header, except that it has no class table of its own:  the payload begins with a
+ * ClassNameDictionary and the class index of each instance refers to that.  Within the rest of the payload, each class name is then written
+ * as the varint index of its dictionary entry, instead of its full UTF-8 name, so graphs with many instances of the same few classes are
+ * much smaller.
+ * The dictionary is rebuilt on every save, so it only names the classes the saved graph references, but it still costs more than it saves
+ * in small graphs.  This is why a DApp deployed with the dictionary format only stores its graph that way when it is smaller than the
+ * indexed format, otherwise storing that instead (the version byte of each graph says which was used).
+ *
+ * The header (and dictionary) are stored along with the payload so, as with any other graph, the entire graph is billed and limited to
+ * the maximum graph size.
+ */
+public class GraphIndex {
+    /**
+     * The original format:  just the payload, with no header.  Instances can only be found by walking the entire graph.
+     */
+    public static final int LEGACY_FORMAT_VERSION = 1;
+    /**
+     * The payload preceded by a GraphIndex header.
+     */
+    public static final int INDEXED_FORMAT_VERSION = 2;
+    /**
+     * The GraphIndex header followed by a payload which starts with a ClassNameDictionary, referenced by every class name after it.
+     */
+    public static final int DICTIONARY_FORMAT_VERSION = 3;
+    /**
+     * The format used for newly-deployed DApps (existing DApps continue to use the format they were deployed with).
+     * Note that a DApp in this format stores each graph in whichever of the dictionary or indexed formats is smaller.
+     */
+    public static final int CURRENT_FORMAT_VERSION = DICTIONARY_FORMAT_VERSION;
+
+    /**
+     * Reads the header from the beginning of the given buffer, leaving the buffer positioned at the beginning of the payload.
+     *
+     * @param buffer The buffer containing the entire graph.
+     * @return The index described by the header.
+     */
+    public static GraphIndex readHeader(ByteBuffer buffer) {
+        RuntimeAssertionError.assertTrue(ByteOrder.BIG_ENDIAN == buffer.order());
+        RuntimeAssertionError.assertTrue(0 == buffer.position());
+        byte version = buffer.get();
+        RuntimeAssertionError.assertTrue((INDEXED_FORMAT_VERSION == version) || (DICTIONARY_FORMAT_VERSION == version));
+        int headerLength = buffer.getInt();
+
+        String[] storageClassNames = null;
+        if (INDEXED_FORMAT_VERSION == version) {
+            int classCount = buffer.getInt();
+            storageClassNames = new String[classCount];
+            for (int i = 0; i < classCount; ++i) {
+                int length = (0xff & buffer.get());
+                byte[] utf8 = new byte[length];
+                buffer.get(utf8);
+                storageClassNames[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+        }
+
+        int instanceCount = buffer.getInt();
+        int[] instanceClasses = new int[instanceCount];
+        int[] instanceOffsets = new int[instanceCount];
+        for (int i = 0; i < instanceCount; ++i) {
+            instanceClasses[i] = buffer.getInt();
+            instanceOffsets[i] = headerLength + buffer.getInt();
+        }
+        RuntimeAssertionError.assertTrue(headerLength == buffer.position());
+
+        // In the dictionary format, the class names are at the beginning of the payload.
+        ClassNameDictionary classNameDictionary = null;
+        if (DICTIONARY_FORMAT_VERSION == version) {
+            classNameDictionary = ClassNameDictionary.readFrom(buffer);
+            storageClassNames = new String[classNameDictionary.size()];
+            for (int i = 0; i < storageClassNames.length; ++i) {
+                storageClassNames[i] = classNameDictionary.getName(i);
+            }
+        }
+        return new GraphIndex(storageClassNames, classNameDictionary, instanceClasses, instanceOffsets, buffer.position(), buffer.limit());
+    }
+
+
+    private final String[] storageClassNames;
+    private final ClassNameDictionary classNameDictionary;
+    private final int[] instanceClasses;
+    private final int[] instanceOffsets;
+    private final int payloadStart;
+    private final int payloadEnd;
+
+    private GraphIndex(String[] storageClassNames, ClassNameDictionary classNameDictionary, int[] instanceClasses, int[] instanceOffsets, int payloadStart, int payloadEnd) {
+        this.storageClassNames = storageClassNames;
+        this.classNameDictionary = classNameDictionary;
+        this.instanceClasses = instanceClasses;
+        this.instanceOffsets = instanceOffsets;
+        this.payloadStart = payloadStart;
+        this.payloadEnd = payloadEnd;
+    }
+
+    public int getClassCount() {
+        return this.storageClassNames.length;
+    }
+
+    public String getStorageClassName(int classIndex) {
+        return this.storageClassNames[classIndex];
+    }
+
+    /**
+     * @return The dictionary of class names used within the payload (null if the graph isn't in the dictionary format).
+     */
+    public ClassNameDictionary getClassNameDictionary() {
+        return this.classNameDictionary;
+    }
+
+    public int getInstanceCount() {
+        return this.instanceOffsets.length;
+    }
+
+    public int getInstanceClass(int readIndex) {
+        return this.instanceClasses[readIndex];
+    }
+
+    /**
+     * @return The offset of the first byte of the instance (its class name), within the entire graph.
+     */
+    public int getInstanceStart(int readIndex) {
+        return this.instanceOffsets[readIndex];
+    }
+
+    /**
+     * @return The offset of the first byte after the instance, within the entire graph.
+     */
+    public int getInstanceEnd(int readIndex) {
+        return (readIndex + 1 < this.instanceOffsets.length)
+                ? this.instanceOffsets[readIndex + 1]
+                : this.payloadEnd;
+    }
+
+    /**
+     * @return The offset of the first byte of the class statics (after the dictionary, in the dictionary format), within the entire graph.
+     */
+    public int getPayloadStart() {
+        return this.payloadStart;
+    }
+
+
+    /**
+     * Populated by the Serializer, as it writes the payload, and then used to prepend the header to it.
+     *
+     * When building a graph which may use the dictionary format, the payload is written against a new ClassNameDictionary (see
+     * addPayloadClassName()) and the location of each class name is recorded.  If the dictionary turns out not to be smaller, those class
+     * names are expanded back to their UTF-8 names, building the graph in the indexed format instead.
+     */
+    public static class Builder {
+        private final Map<String, Integer> classIndices = new HashMap<>();
+        private final List<byte[]> utf8ClassNames = new ArrayList<>();
+        // Note that these will be null unless we are allowed to build a graph in the dictionary format.
+        private final ClassNameDictionary classNameDictionary;
+        private final List<Integer> dictionaryClassIndices;
+        private int instanceCount;
+        private int[] instanceClasses = new int[16];
+        private int[] instanceOffsets = new int[16];
+        // The payload offset and dictionary index of every class name written against the dictionary, in payload order.
+        private int classNameCount;
+        private int[] classNameOffsets;
+        private int[] classNameIndices;
+
+        /**
+         * Creates a builder for a graph in the indexed format.
+         */
+        public Builder() {
+            this(false);
+        }
+
+        /**
+         * @param isDictionaryAllowed True if the graph should use the dictionary format, when that is smaller than the indexed format.
+         */
+        public Builder(boolean isDictionaryAllowed) {
+            this.classNameDictionary = isDictionaryAllowed
+                    ? new ClassNameDictionary()
+                    : null;
+            this.dictionaryClassIndices = isDictionaryAllowed
+                    ? new ArrayList<>()
+                    : null;
+            this.classNameOffsets = isDictionaryAllowed
+                    ? new int[16]
+                    : null;
+            this.classNameIndices = isDictionaryAllowed
+                    ? new int[16]
+                    : null;
+        }
+
+        /**
+         * @return True if the payload must be written against the dictionary, via addPayloadClassName().
+         */
+        public boolean isDictionaryAllowed() {
+            return (null != this.classNameDictionary);
+        }
+
+        /**
+         * Called as each instance is written.
+         *
+         * @param storageClassName The class name of the instance, as written in the payload.
+         * @param payloadOffset The offset of the instance within the payload.
+         */
+        public void addInstance(String storageClassName, int payloadOffset) {
+            Integer classIndex = this.classIndices.get(storageClassName);
+            if (null == classIndex) {
+                classIndex = this.utf8ClassNames.size();
+                this.classIndices.put(storageClassName, classIndex);
+                this.utf8ClassNames.add(storageClassName.getBytes(StandardCharsets.UTF_8));
+                if (null != this.classNameDictionary) {
+                    this.dictionaryClassIndices.add(this.classNameDictionary.getOrAddIndex(storageClassName));
+                }
+            }
+            if (this.instanceCount == this.instanceOffsets.length) {
+                this.instanceClasses = Arrays.copyOf(this.instanceClasses, 2 * this.instanceCount);
+                this.instanceOffsets = Arrays.copyOf(this.instanceOffsets, 2 * this.instanceCount);
+            }
+            this.instanceClasses[this.instanceCount] = classIndex;
+            this.instanceOffsets[this.instanceCount] = payloadOffset;
+            this.instanceCount += 1;
+        }
+
+        /**
+         * Called as each class name is written in the payload, when the dictionary is allowed.
+         *
+         * @param storageClassName The class name, as stored.
+         * @param payloadOffset The offset within the payload where its dictionary index will be written.
+         * @return The dictionary index to write, as a varint.
+         */
+        public int addPayloadClassName(String storageClassName, int payloadOffset) {
+            int index = this.classNameDictionary.getOrAddIndexForPayload(storageClassName);
+            if (this.classNameCount == this.classNameOffsets.length) {
+                this.classNameOffsets = Arrays.copyOf(this.classNameOffsets, 2 * this.classNameCount);
+                this.classNameIndices = Arrays.copyOf(this.classNameIndices, 2 * this.classNameCount);
+            }
+            this.classNameOffsets[this.classNameCount] = payloadOffset;
+            this.classNameIndices[this.classNameCount] = index;
+            this.classNameCount += 1;
+            return index;
+        }
+
+        /**
+         * Creates the entire graph:  the header describing the instances added to the receiver followed by the payload.
+         *
+         * If the dictionary is allowed and the graph is smaller in the dictionary format, the dictionary is written between the header and
+         * the payload we were given.  Otherwise, the class names of the payload are expanded, building the graph in the indexed format.
+         * 
+         * @param payload The buffer containing the payload, from 0 to its current position.
+         * @param maximumSizeInBytes The size limit on the entire graph (the same limit the payload was written against).
+         * @return The entire graph, in the indexed or dictionary format.
+         * @throws OutOfEnergyException The entire graph is larger than maximumSizeInBytes.
+         */
+        public byte[] buildGraph(ByteBuffer payload, int maximumSizeInBytes) {
+            int instanceTableLength = Integer.BYTES + (this.instanceCount * 2 * Integer.BYTES);
+            int classTableLength = Integer.BYTES;
+            for (byte[] utf8 : this.utf8ClassNames) {
+                classTableLength += Byte.BYTES + utf8.length;
+            }
+            int indexedHeaderLength = Byte.BYTES + Integer.BYTES + classTableLength + instanceTableLength;
+            int dictionaryHeaderLength = Byte.BYTES + Integer.BYTES + instanceTableLength;
+            // The class names of the payload are only written against the dictionary, when it is allowed, so it is the indexed format
+            // which needs to account for what they would cost inline.
+            int dictionaryLength = 0;
+            int expandedPayloadLength = payload.position();
+            if (null != this.classNameDictionary) {
+                dictionaryLength = this.classNameDictionary.getEncodedLength();
+                expandedPayloadLength += this.classNameDictionary.getPayloadSavings();
+            }
+            boolean isDictionaryFormat = (null != this.classNameDictionary)
+                    && ((dictionaryHeaderLength + dictionaryLength + payload.position()) < (indexedHeaderLength + expandedPayloadLength));
+            int graphLength = isDictionaryFormat
+                    ? (dictionaryHeaderLength + dictionaryLength + payload.position())
+                    : (indexedHeaderLength + expandedPayloadLength);
+            if (graphLength > maximumSizeInBytes) {
+                // As with a payload which runs off the end of its buffer, this is an example of out of energy.
+                throw new OutOfEnergyException();
+            }
+            return isDictionaryFormat
+                    ? buildDictionaryGraph(payload, graphLength, dictionaryHeaderLength, dictionaryLength)
+                    : buildIndexedGraph(payload, graphLength, indexedHeaderLength);
+        }
+
+        private byte[] buildDictionaryGraph(ByteBuffer payload, int graphLength, int headerLength, int dictionaryLength) {
+            ByteBuffer graph = ByteBuffer.allocate(graphLength);
+            graph.put((byte) DICTIONARY_FORMAT_VERSION);
+            graph.putInt(headerLength);
+            graph.putInt(this.instanceCount);
+            for (int i = 0; i < this.instanceCount; ++i) {
+                graph.putInt(this.dictionaryClassIndices.get(this.instanceClasses[i]));
+                // The instance offsets are relative to the start of the payload, which begins with the dictionary.
+                graph.putInt(dictionaryLength + this.instanceOffsets[i]);
+            }
+            RuntimeAssertionError.assertTrue(headerLength == graph.position());
+            this.classNameDictionary.writeTo(graph);
+            graph.put(payload.array(), 0, payload.position());
+            return graph.array();
+        }
+
+        private byte[] buildIndexedGraph(ByteBuffer payload, int graphLength, int headerLength) {
+            ByteBuffer graph = ByteBuffer.allocate(graphLength);
+            graph.put((byte) INDEXED_FORMAT_VERSION);
+            graph.putInt(headerLength);
+            graph.putInt(this.utf8ClassNames.size());
+            for (byte[] utf8 : this.utf8ClassNames) {
+                // (the payload encoding already limits these to 255 bytes)
+                graph.put((byte) utf8.length);
+                graph.put(utf8);
+            }
+            graph.putInt(this.instanceCount);
+            // Expanding the class names written before an instance moves it by the bytes each of them gained.
+            int nextClassName = 0;
+            int expansion = 0;
+            for (int i = 0; i < this.instanceCount; ++i) {
+                while ((nextClassName < this.classNameCount) && (this.classNameOffsets[nextClassName] < this.instanceOffsets[i])) {
+                    expansion += getExpansion(this.classNameIndices[nextClassName]);
+                    nextClassName += 1;
+                }
+                graph.putInt(this.instanceClasses[i]);
+                graph.putInt(this.instanceOffsets[i] + expansion);
+            }
+            RuntimeAssertionError.assertTrue(headerLength == graph.position());
+            int copied = 0;
+            for (int i = 0; i < this.classNameCount; ++i) {
+                int offset = this.classNameOffsets[i];
+                int index = this.classNameIndices[i];
+                graph.put(payload.array(), copied, offset - copied);
+                byte[] utf8 = this.classNameDictionary.getUtf8Name(index);
+                RuntimeAssertionError.assertTrue(utf8.length <= 255);
+                graph.put((byte) utf8.length);
+                graph.put(utf8);
+                copied = offset + ClassNameDictionary.getVarintLength(index);
+            }
+            graph.put(payload.array(), copied, payload.position() - copied);
+            RuntimeAssertionError.assertTrue(graphLength == graph.position());
+            return graph.array();
+        }
+
+        private int getExpansion(int dictionaryIndex) {
+            return Byte.BYTES + this.classNameDictionary.getUtf8Name(dictionaryIndex).length - ClassNameDictionary.getVarintLength(dictionaryIndex);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.aion.avm.core.persistence;
+
+
+/**
+ * Implemented by anything which wants the ByteBufferObjectDeserializer to describe the layout of the instances it reads.
+ */
+public interface IGraphLayoutRecorder {
+    /**
+     * Called before reading the class name of an instance.
+     *
+     * @param readIndex The readIndex of the instance.
+     * @param offset The offset of its first byte.
+     */
+    void beginInstance(int readIndex, int offset);
+
+    /**
+     * Called when reading a REF_NORMAL reference.
+     *
+     * @param offset The offset of the 4-byte instance index.
+     * @param targetIndex The instance index.
+     */
+    void recordReference(int offset, int targetIndex);
+
+    /**
+     * Called when reading a REF_CLASS reference.
+     */
+    void recordClassReference();
+
+    /**
+     * Called after the instance has been read.
+     *
+     * @param offset The offset of the first byte after the instance.
+     */
+    void endInstance(int offset);
+}
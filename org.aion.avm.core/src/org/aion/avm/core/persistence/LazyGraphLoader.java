@@ -0,0 +1,121 @@
+package org.aion.avm.core.persistence;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import i.IInstanceLoader;
+import i.OutOfEnergyException;
+import i.RuntimeAssertionError;
+
+
+/**
+ * Populates the instances of a graph on demand, as opposed to all at once, when it is loaded.
+ * This requires a graph with an index (see GraphIndex), since the instances must be created without reading any of them (a legacy
+ * graph can only be walked by reading every instance, so it is always loaded eagerly).
+ * After the class statics are deserialized and all the instances are created, this loader is installed into every instance which we
+ * know will call "lazyLoad()" before its state is read or written, turning it into a stub.  Any other instance is populated immediately.
+ * Each stub is given its hashCode when it is installed (it is at a fixed position in the instance's bytes) so hashing never populates it.
+ * Each stub is then populated from its bytes in the stored graph the first time it is accessed, meaning that the cost of populating
+ * the graph is proportional to the number of instances actually touched by the call.
+ * 
+ * An instance is only made into a stub if its class is either an array wrapper or a user-defined class with no shadow JDK superclass
+ * (other than Object), since we know that the array wrappers and all user code call "lazyLoad()" before accessing their fields.  Other
+ * types (strings, enums, exceptions, and so on) have state we access from outside their own implementation, so they are always loaded.
+ * 
+ * Note that this has no impact on billing:  the caller still bills for the entire graph, when it is read, and lazy population is just
+ * an implementation detail.
+ */
+public class LazyGraphLoader implements IInstanceLoader {
+    private final ClassLoader dappLoader;
+    private final LoadedGraphImage image;
+    private final ByteBuffer buffer;
+    private final ByteBufferObjectDeserializer deserializer;
+    // Used for any instance whose references the image doesn't yet know (graphs in the indexed format are only described as they are read).
+    private final ByteBufferObjectDeserializer recordingDeserializer;
+    private final Method deserializeSelfMethod;
+    private final Map<Class<?>, Boolean> stubbableClasses;
+
+    public LazyGraphLoader(ClassLoader dappLoader, LoadedGraphImage image, List<Object> instances, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, ClassNameDictionary classNameDictionary) {
+        this.dappLoader = dappLoader;
+        this.image = image;
+        // We use our own view of the buffer since we will be jumping around within it, independent of anyone else.
+        this.buffer = ByteBuffer.wrap(image.getRawGraphData());
+        this.deserializer = new ByteBufferObjectDeserializer(this.buffer, instances, cache, resolver, classNameMapper, null, classNameDictionary);
+        this.recordingDeserializer = new ByteBufferObjectDeserializer(this.buffer, instances, cache, resolver, classNameMapper, image, classNameDictionary);
+        this.deserializeSelfMethod = cache.getDeserializeSelfMethod();
+        this.stubbableClasses = new IdentityHashMap<>();
+    }
+
+    /**
+     * Walks every instance in the image, either installing the receiver into it, as a stub, or populating it immediately.
+     */
+    public void installStubs() {
+        int instanceCount = this.image.getInstanceCount();
+        for (int readIndex = 0; readIndex < instanceCount; ++readIndex) {
+            s.java.lang.Object instance = (s.java.lang.Object) this.image.getInstance(readIndex);
+            if (isStubbableClass(instance.getClass())) {
+                instance.installInstanceLoader(this, readHashCode(readIndex));
+            } else {
+                loadInstance(instance, readIndex);
+            }
+        }
+    }
+
+    @Override
+    public void loadInstance(Object instance, int readIndex) {
+        RuntimeAssertionError.assertTrue(instance == this.image.getInstance(readIndex));
+        this.buffer.position(this.image.getInstanceStart(readIndex));
+        ByteBufferObjectDeserializer deserializer = this.image.hasRecordedReferences(readIndex)
+                ? this.deserializer
+                : this.recordingDeserializer;
+        try {
+            deserializer.beginInstance(readIndex);
+            // Read the class name, but just to advance the cursor.
+            deserializer.readClassName();
+            this.deserializeSelfMethod.invoke(instance, null, deserializer);
+            deserializer.endInstance();
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OutOfEnergyException) {
+                throw (OutOfEnergyException) cause;
+            } else {
+                // The data was already validated when it was stored, so anything else would be a bug.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            // Reflection errors can't happen since we set this up so we could access it.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        RuntimeAssertionError.assertTrue(this.buffer.position() == this.image.getInstanceEnd(readIndex));
+    }
+
+
+    private int readHashCode(int readIndex) {
+        // Every instance starts with its class name, followed by the hashCode written by the shadow Object at the root of its hierarchy.
+        this.buffer.position(this.image.getInstanceStart(readIndex));
+        this.deserializer.skipClassName();
+        return this.deserializer.readInt();
+    }
+
+    private boolean isStubbableClass(Class<?> clazz) {
+        Boolean isStubbable = this.stubbableClasses.get(clazz);
+        if (null == isStubbable) {
+            if (a.Array.class.isAssignableFrom(clazz)) {
+                isStubbable = Boolean.TRUE;
+            } else {
+                // Every class from here up to the shadow Object must have been defined by the user (and therefore loaded by the DApp's loader).
+                Class<?> walk = clazz;
+                while ((s.java.lang.Object.class != walk) && (this.dappLoader == walk.getClassLoader())) {
+                    walk = walk.getSuperclass();
+                }
+                isStubbable = (s.java.lang.Object.class == walk);
+            }
+            this.stubbableClasses.put(clazz, isStubbable);
+        }
+        return isStubbable;
+    }
+}
@@ -10,7 +10,7 @@ import org.objectweb.asm.Opcodes;
 
 
 /**
- * Walks the method code, replace prepending a call to "lazyLoad()" on any GETFIELD/PUTFIELD bytecodes.
+ * Walks the method code, prepending a call to "lazyLoad()" on any GETFIELD and the "markDirty()" write barrier on any PUTFIELD bytecodes.
  * Note that there are special-cases:
  * -"&lt;clinit&gt;" - no re-writing is done here since nothing visible at this point could be a stub (this
  *  visitor isn't created in those cases).
@@ -24,6 +24,8 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
     private static final String SHADOW_OBJECT_NAME = Helpers.fulllyQualifiedNameToInternalName(s.java.lang.Object.class.getName());
     private static final String LAZY_LOAD_NAME = "lazyLoad";
     private static final String LAZY_LOAD_DESCRIPTOR = "()V";
+    private static final String MARK_DIRTY_NAME = "markDirty";
+    private static final String MARK_DIRTY_DESCRIPTOR = "()V";
 
     private final StackThisTracker tracker;
     // The offset of the next instruction into the canSafelySkip array.  Usually, this is just bytecodes but labels, frames, and line number entries
@@ -147,7 +149,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
      * @param descriptor The type descriptor of the field to which the opcode is applied.
      */
     private void checkInjectLazyLoad(int opcode, String descriptor) {
-        // If this is a PUTFIELD or GETFIELD, we want to call "lazyLoad()":
+        // If this is a PUTFIELD, we want to call "markDirty()" and, if this is a GETFIELD, we want to call "lazyLoad()":
         // -PUTIFELD:  DUP2, POP, INVOKEVIRTUAL
         // -GETIFELD:  DUP, INVOKEVIRTUAL
         if ((Opcodes.PUTFIELD == opcode) && ((null == this.tracker) || !this.tracker.isThisTargetOfPut(this.frameOffset))) {
@@ -163,7 +165,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
                 // DUP: ... VAR1, VAR2, OBJECT, OBJECT (top)
                 super.visitInsn(Opcodes.DUP);
                 // INOKE: ... VAR1, VAR2, OBJECT (top)
-                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_NAME, LAZY_LOAD_DESCRIPTOR, false);
+                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, MARK_DIRTY_NAME, MARK_DIRTY_DESCRIPTOR, false);
                 // DUP_X2: ... OBJECT, VAR1, VAR2, OBJECT (top)
                 super.visitInsn(Opcodes.DUP_X2);
                 // POP: ... OBJECT, VAR1, VAR2 (top)
@@ -177,7 +179,7 @@ public class LazyLoadingMethodVisitor extends MethodVisitor {
                 // POP: ... OBJECT, VAR, OBJECT (top)
                 super.visitInsn(Opcodes.POP);
                 // INOKE: ... OBJECT, VAR (top)
-                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, LAZY_LOAD_NAME, LAZY_LOAD_DESCRIPTOR, false);
+                super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, SHADOW_OBJECT_NAME, MARK_DIRTY_NAME, MARK_DIRTY_DESCRIPTOR, false);
             }
         } else if ((Opcodes.GETFIELD == opcode) && ((null == this.tracker) || !this.tracker.isThisTargetOfGet(this.frameOffset))) {
             // Here, the stack looks like: ... OBJECT, (top)
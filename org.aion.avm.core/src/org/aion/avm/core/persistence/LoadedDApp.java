@@ -5,7 +5,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 
@@ -54,6 +56,8 @@ public class LoadedDApp {
     private static final Method SERIALIZE_SELF;
     private static final Method DESERIALIZE_SELF;
     private static final Field FIELD_READ_INDEX;
+    // A rough estimate of the memory each defined class retains beyond its bytecode (class metadata and the reflection caches we build).
+    private static final long ESTIMATED_BYTES_PER_DEFINED_CLASS = 4 * 1024L;
     
     static {
         try {
@@ -84,6 +88,12 @@ public class LoadedDApp {
     private long loadedBlockNum;
     private final ClassRenamer classRenamer;
     private final boolean preserveDebuggability;
+    // True if the DApp code was transformed with the "markDirty()" write barrier, meaning we can trust it to report all modifications.
+    private final boolean hasWriteBarriers;
+    // The format of the graph in storage (the graphs passed between reentrant frames are always in the legacy format).
+    private final int graphFormatVersion;
+    // The image of the graph loaded for the current top-level call, if incremental saving was requested (null, otherwise).
+    private LoadedGraphImage loadedGraphImage;
 
     /**
      * Creates the LoadedDApp to represent the classes related to DApp at address.
@@ -95,6 +105,21 @@ public class LoadedDApp {
      * @param preserveDebuggability True if we should preserve debuggability by not renaming classes.
      */
     public LoadedDApp(ClassLoader loader, Class<?>[] userClasses, Class<?> constantClass, String originalMainClassName, boolean preserveDebuggability) {
+        this(loader, userClasses, constantClass, originalMainClassName, preserveDebuggability, false, GraphIndex.LEGACY_FORMAT_VERSION);
+    }
+
+    /**
+     * Creates the LoadedDApp to represent the classes related to DApp at address.
+     * 
+     * @param loader The class loader to look up shape.
+     * @param userClasses The classes provided by the user.
+     * @param constantClass The class we generated to contain all constants.
+     * @param originalMainClassName The pre-translation name of the user's main class.
+     * @param preserveDebuggability True if we should preserve debuggability by not renaming classes.
+     * @param hasWriteBarriers True if the classes were transformed with the write barrier (required for incremental graph saving).
+     * @param graphFormatVersion The format in which the DApp's graph is stored (one of the GraphIndex format versions).
+     */
+    public LoadedDApp(ClassLoader loader, Class<?>[] userClasses, Class<?> constantClass, String originalMainClassName, boolean preserveDebuggability, boolean hasWriteBarriers, int graphFormatVersion) {
         this.loader = loader;
         // Note that the storage system defines the classes as being sorted alphabetically.
         this.sortedUserClasses = Arrays.stream(userClasses)
@@ -104,6 +129,11 @@ public class LoadedDApp {
         this.originalMainClassName = originalMainClassName;
         this.fieldCache = new SortedFieldCache(this.loader, SERIALIZE_SELF, DESERIALIZE_SELF, FIELD_READ_INDEX);
         this.preserveDebuggability = preserveDebuggability;
+        this.hasWriteBarriers = hasWriteBarriers;
+        RuntimeAssertionError.assertTrue((GraphIndex.LEGACY_FORMAT_VERSION == graphFormatVersion)
+                || (GraphIndex.INDEXED_FORMAT_VERSION == graphFormatVersion)
+                || (GraphIndex.DICTIONARY_FORMAT_VERSION == graphFormatVersion));
+        this.graphFormatVersion = graphFormatVersion;
 
         // Collect all of the user-defined classes, discarding any generated exception wrappers for them.
         // This information is to be handed off to the persistance layer.
@@ -136,6 +166,8 @@ public class LoadedDApp {
 
     /**
      * Requests that the Classes in the receiver be populated with data from the rawGraphData.
+     * The rawGraphData must be in the format the receiver's graph is stored in (a graph captured from a reentrant caller frame must
+     * instead be loaded with loadCallerGraph).
      * NOTE:  The caller is expected to manage billing - none of that is done in here.
      * 
      * @param internedClassMap The interned classes, in case class references need to be instantiated.
@@ -143,6 +175,27 @@ public class LoadedDApp {
      * @return The nextHashCode serialized within the graph.
      */
     public int loadEntireGraph(InternedClasses internedClassMap, byte[] rawGraphData) {
+        int nextHashCode = 0;
+        if (isIndexedFormat()) {
+            nextHashCode = loadIndexedGraph(internedClassMap, rawGraphData, false, false);
+        } else {
+            nextHashCode = loadCallerGraph(internedClassMap, rawGraphData);
+        }
+        return nextHashCode;
+    }
+
+    /**
+     * Populates the Classes in the receiver from the graph of a reentrant caller frame, as captured by captureStateAsCaller.
+     * Note that these graphs are always in the legacy format, no matter the format of the graph in storage.
+     * NOTE:  The caller is expected to manage billing - none of that is done in here.
+     * 
+     * @param internedClassMap The interned classes, in case class references need to be instantiated.
+     * @param rawGraphData The data from which to read the graph (note that this must encompass all and only a completely serialized graph.
+     * @return The nextHashCode serialized within the graph.
+     */
+    public int loadCallerGraph(InternedClasses internedClassMap, byte[] rawGraphData) {
+        // Any image we were holding no longer describes the objects reachable from our statics.
+        this.loadedGraphImage = null;
         ByteBuffer inputBuffer = ByteBuffer.wrap(rawGraphData);
         List<Object> existingObjectIndex = null;
         StandardGlobalResolver resolver = new StandardGlobalResolver(internedClassMap, this.loader);
@@ -151,6 +204,63 @@ public class LoadedDApp {
         return nextHashCode;
     }
 
+    /**
+     * Loads the graph, as loadEntireGraph, but also retains an image of the raw graph data so that saveGraphIncrementally can avoid
+     * re-encoding any instance which isn't modified before the save.
+     * This must only be used for a top-level (not reentrant) call and has no effect if the DApp code has no write barriers.
+     * NOTE:  The caller is expected to manage billing - none of that is done in here.
+     * 
+     * @param internedClassMap The interned classes, in case class references need to be instantiated.
+     * @param rawGraphData The data from which to read the graph (note that this must encompass all and only a completely serialized graph.
+     * @return The nextHashCode serialized within the graph.
+     */
+    public int loadEntireGraphForIncrementalSave(InternedClasses internedClassMap, byte[] rawGraphData) {
+        int nextHashCode = 0;
+        if (this.hasWriteBarriers && isIndexedFormat()) {
+            nextHashCode = loadIndexedGraph(internedClassMap, rawGraphData, false, true);
+        } else if (this.hasWriteBarriers) {
+            ByteBuffer inputBuffer = ByteBuffer.wrap(rawGraphData);
+            StandardGlobalResolver resolver = new StandardGlobalResolver(internedClassMap, this.loader);
+            StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
+            List<Object> loadedInstances = new ArrayList<>();
+            LoadedGraphImage.Builder imageBuilder = new LoadedGraphImage.Builder();
+            nextHashCode = Deserializer.deserializeEntireGraphAndNextHashCode(inputBuffer, null, resolver, this.fieldCache, classNameMapper, this.sortedUserClasses, this.constantClass, loadedInstances, imageBuilder);
+            this.loadedGraphImage = imageBuilder.build(rawGraphData, loadedInstances);
+        } else {
+            // We can't know what the code modifies so just load it normally (the save will fall back to serializing everything).
+            nextHashCode = loadEntireGraph(internedClassMap, rawGraphData);
+        }
+        return nextHashCode;
+    }
+
+    /**
+     * Loads the graph lazily:  the class statics are populated and every instance is created but most instances are left as stubs, only
+     * populated from the rawGraphData when they are first accessed (see LazyGraphLoader).
+     * If the DApp code has write barriers, the image of the graph is also retained so that saveGraphIncrementally can copy any stub
+     * which was never accessed.  Primitive arrays are copied without ever being populated but any other stub is populated by the save,
+     * since that is how its references are found.
+     * This is only possible for a graph with an index, since that is what tells us the class and location of each instance without reading
+     * them.  A graph in the legacy format can only be walked by deserializing every instance so it is loaded eagerly, as
+     * loadEntireGraphForIncrementalSave.
+     * This must only be used for a top-level (not reentrant) call.
+     * NOTE:  The caller is expected to manage billing - none of that is done in here.
+     * 
+     * @param internedClassMap The interned classes, in case class references need to be instantiated.
+     * @param rawGraphData The data from which to read the graph (note that this must encompass all and only a completely serialized graph.
+     * @return The nextHashCode serialized within the graph.
+     */
+    public int loadGraphLazily(InternedClasses internedClassMap, byte[] rawGraphData) {
+        int nextHashCode = 0;
+        if (isIndexedFormat()) {
+            // Without write barriers, we can't know which stubs were modified so the save will need to populate and re-encode everything.
+            nextHashCode = loadIndexedGraph(internedClassMap, rawGraphData, true, this.hasWriteBarriers);
+        } else {
+            // Finding the instances of a legacy graph already reads all of them so there is nothing to gain by leaving them as stubs.
+            nextHashCode = loadEntireGraphForIncrementalSave(internedClassMap, rawGraphData);
+        }
+        return nextHashCode;
+    }
+
     /**
      * Requests that the Classes in the receiver be walked and all referenced objects be serialized into a graph.
      * NOTE:  The caller is expected to manage billing - none of that is done in here.
@@ -160,16 +270,25 @@ public class LoadedDApp {
      * @return The enter serialized object graph.
      */
     public byte[] saveEntireGraph(int nextHashCode, int maximumSizeInBytes) {
-        ByteBuffer outputBuffer = ByteBuffer.allocate(maximumSizeInBytes);
-        List<Object> out_instanceIndex = null;
-        List<Integer> out_calleeToCallerIndexMap = null;
-        StandardGlobalResolver resolver = new StandardGlobalResolver(null, this.loader);
-        StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
-        Serializer.serializeEntireGraph(outputBuffer, out_instanceIndex, out_calleeToCallerIndexMap, resolver, this.fieldCache, classNameMapper, nextHashCode, this.sortedUserClasses, this.constantClass);
-        
-        byte[] finalBytes = new byte[outputBuffer.position()];
-        System.arraycopy(outputBuffer.array(), 0, finalBytes, 0, finalBytes.length);
-        return finalBytes;
+        return saveGraphForStorage(nextHashCode, maximumSizeInBytes, null, null);
+    }
+
+    /**
+     * Serializes the graph, as saveEntireGraph, but copies any instance not modified since loadEntireGraphForIncrementalSave from the
+     * retained image of the loaded graph.  The result is identical to what saveEntireGraph would return.
+     * Falls back to saveEntireGraph if there is no retained image (the graph wasn't loaded for incremental saving or was invalidated by
+     * a reentrant call).  In either case, the image is discarded.
+     * NOTE:  The caller is expected to manage billing - none of that is done in here.
+     * 
+     * @param nextHashCode The nextHashCode to serialize into the graph so that this can be resumed in the future.
+     * @param maximumSizeInBytes The size limit on the serialized graph size.
+     * @param dirtyInstances The readIndex of every instance reported as modified by the write barrier (null if there were none).
+     * @return The entire serialized object graph.
+     */
+    public byte[] saveGraphIncrementally(int nextHashCode, int maximumSizeInBytes, BitSet dirtyInstances) {
+        LoadedGraphImage image = this.loadedGraphImage;
+        this.loadedGraphImage = null;
+        return saveGraphForStorage(nextHashCode, maximumSizeInBytes, image, dirtyInstances);
     }
 
     public ReentrantGraph captureStateAsCaller(int nextHashCode, int maxGraphSize) {
@@ -185,17 +304,72 @@ public class LoadedDApp {
     }
 
     public void commitReentrantChanges(InternedClasses internedClassMap, ReentrantGraph callerState, ReentrantGraph calleeState) {
+        // The callee's changes are written directly into our objects, bypassing the write barrier, so the image can no longer be trusted.
+        this.loadedGraphImage = null;
         StandardGlobalResolver resolver = new StandardGlobalResolver(internedClassMap, this.loader);
         StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
         callerState.commitChangesToState(resolver, this.fieldCache, classNameMapper, this.sortedUserClasses, this.constantClass, calleeState);
     }
 
     public void revertToCallerState(InternedClasses internedClassMap, ReentrantGraph callerState) {
+        // Reverting writes directly into our objects, bypassing the write barrier, so the image can no longer be trusted.
+        this.loadedGraphImage = null;
         StandardGlobalResolver resolver = new StandardGlobalResolver(internedClassMap, this.loader);
         StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
         callerState.revertChangesToState(resolver, this.fieldCache, classNameMapper, this.sortedUserClasses, this.constantClass);
     }
 
+    private boolean isIndexedFormat() {
+        // (the dictionary format is also indexed)
+        return (GraphIndex.LEGACY_FORMAT_VERSION != this.graphFormatVersion);
+    }
+
+    private int loadIndexedGraph(InternedClasses internedClassMap, byte[] rawGraphData, boolean isLazy, boolean shouldRetainImage) {
+        ByteBuffer inputBuffer = ByteBuffer.wrap(rawGraphData);
+        StandardGlobalResolver resolver = new StandardGlobalResolver(internedClassMap, this.loader);
+        StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
+        GraphIndex index = GraphIndex.readHeader(inputBuffer);
+        ClassNameDictionary classNameDictionary = index.getClassNameDictionary();
+        List<Object> loadedInstances = new ArrayList<>(index.getInstanceCount());
+        int nextHashCode = Deserializer.deserializeIndexedStaticsAndCreateInstances(inputBuffer, index, resolver, this.fieldCache, classNameMapper, this.sortedUserClasses, this.constantClass, loadedInstances);
+        // The image learns where the references of each instance are as each instance is read so we only need it if we will read lazily or keep it.
+        LoadedGraphImage image = (isLazy || shouldRetainImage)
+                ? LoadedGraphImage.fromIndex(rawGraphData, loadedInstances, index)
+                : null;
+        if (isLazy) {
+            new LazyGraphLoader(this.loader, image, loadedInstances, resolver, this.fieldCache, classNameMapper, classNameDictionary).installStubs();
+        } else {
+            Deserializer.populateIndexedInstances(inputBuffer, loadedInstances, resolver, this.fieldCache, classNameMapper, image, classNameDictionary);
+        }
+        this.loadedGraphImage = shouldRetainImage
+                ? image
+                : null;
+        return nextHashCode;
+    }
+
+    private byte[] saveGraphForStorage(int nextHashCode, int maximumSizeInBytes, LoadedGraphImage image, BitSet dirtyInstances) {
+        ByteBuffer outputBuffer = ByteBuffer.allocate(maximumSizeInBytes);
+        StandardGlobalResolver resolver = new StandardGlobalResolver(null, this.loader);
+        StandardNameMapper classNameMapper = new StandardNameMapper(this.classRenamer);
+        GraphIndex.Builder indexBuilder = null;
+        if (GraphIndex.DICTIONARY_FORMAT_VERSION == this.graphFormatVersion) {
+            // (the graph is only stored in the dictionary format if that is smaller than the indexed format)
+            indexBuilder = new GraphIndex.Builder(true);
+        } else if (GraphIndex.INDEXED_FORMAT_VERSION == this.graphFormatVersion) {
+            indexBuilder = new GraphIndex.Builder();
+        }
+        Serializer.serializeEntireGraphForStorage(outputBuffer, image, dirtyInstances, indexBuilder, resolver, this.fieldCache, classNameMapper, nextHashCode, this.sortedUserClasses, this.constantClass);
+        
+        byte[] finalBytes = null;
+        if (null != indexBuilder) {
+            finalBytes = indexBuilder.buildGraph(outputBuffer, maximumSizeInBytes);
+        } else {
+            finalBytes = new byte[outputBuffer.position()];
+            System.arraycopy(outputBuffer.array(), 0, finalBytes, 0, finalBytes.length);
+        }
+        return finalBytes;
+    }
+
     /**
      * Attaches an IBlockchainRuntime instance to the Helper class (per contract) so DApp can
      * access blockchain related methods.
@@ -320,6 +494,7 @@ public class LoadedDApp {
      * Called before the DApp is about to be put into a cache.  This is so it can put itself into a "resumable" state.
      */
     public void cleanForCache() {
+        this.loadedGraphImage = null;
         Deserializer.cleanClassStatics(this.fieldCache, this.sortedUserClasses, this.constantClass);
     }
 
@@ -394,6 +569,24 @@ public class LoadedDApp {
         return loadedBlockNum;
     }
 
+    /**
+     * Estimates the memory retained by keeping this DApp loaded, for the purposes of bounding the DApp cache.
+     * This is the bytecode given to its class loader plus a fixed estimate for the metadata of each class it has defined (which also grows
+     * as array wrappers are generated).  The graph isn't included since the statics are cleared before the DApp is cached.
+     *
+     * @return The estimated weight, in bytes.
+     */
+    public long getCacheWeight() {
+        long bytecodeSize = 0L;
+        int definedClassCount = this.sortedUserClasses.length + 1;
+        if (this.loader instanceof AvmClassLoader) {
+            AvmClassLoader avmLoader = (AvmClassLoader) this.loader;
+            bytecodeSize = avmLoader.getBytecodeSize();
+            definedClassCount = avmLoader.getDefinedClassCount();
+        }
+        return bytecodeSize + ((long) definedClassCount * ESTIMATED_BYTES_PER_DEFINED_CLASS);
+    }
+
     private Set<String> fetchPreRenameSlashStyleJclExceptions() {
         Set<String> jclExceptions = new HashSet<>();
 
@@ -0,0 +1,308 @@
+package org.aion.avm.core.persistence;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import i.RuntimeAssertionError;
+
+
+/**
+ * A record of the serialized graph, as it was loaded at the beginning of a top-level call, describing where each instance was found in the
+ * raw data and where each of its instance references were encoded.
+ * When the graph is saved at the end of that call, any instance which was not reported as modified (via the "markDirty()" write barrier)
+ * can be copied directly from this image, only patching its instance references to their new indices, instead of being re-encoded.
+ * This is also what allows a graph to be loaded lazily (see LazyGraphLoader), since it tells us where to find each instance's data.
+ *
+ * The location of each instance is known up-front (either from the GraphIndex or from walking the graph) but the references of an
+ * instance are only known once that instance has been read, which may happen in any order (when lazily loading the graph).  An instance
+ * whose references haven't been recorded can't be copied from the image.  The exception is the primitive arrays:  we know they have no
+ * references so they can be copied without ever being read.
+ *
+ * The class name of an instance is always written again, since that may be encoded differently in the graph being saved (see
+ * ByteBufferObjectSerializer.canWriteInstanceFromImage()).
+ *
+ * Note that the resulting graph is byte-for-byte identical to what a full serialization would have produced, meaning that this has no
+ * impact on billing or the stored state:  it only avoids the cost of walking the fields of instances which did not change.
+ */
+public class LoadedGraphImage implements IGraphLayoutRecorder {
+    // These shadow JDK types modify their own state without passing through the write barrier, so they must always be re-encoded.
+    private static final String[] ALWAYS_ENCODED_SHADOW_CLASS_NAMES = {
+            s.java.lang.StringBuffer.class.getName(),
+            s.java.lang.StringBuilder.class.getName(),
+            s.java.lang.Throwable.class.getName(),
+    };
+    private static final int UNRECORDED = -1;
+
+    /**
+     * Creates the image of a graph in the indexed format, where the location of each instance is described by its header.
+     *
+     * @param rawGraphData The entire graph.
+     * @param instances The instances of the graph, in readIndex order.
+     * @param index The index read from the header of the graph.
+     * @return The image, with no references yet recorded.
+     */
+    public static LoadedGraphImage fromIndex(byte[] rawGraphData, List<Object> instances, GraphIndex index) {
+        int instanceCount = index.getInstanceCount();
+        int[] instanceStarts = new int[instanceCount];
+        int[] instanceEnds = new int[instanceCount];
+        for (int i = 0; i < instanceCount; ++i) {
+            instanceStarts[i] = index.getInstanceStart(i);
+            instanceEnds[i] = index.getInstanceEnd(i);
+        }
+        int[] firstReference = new int[instanceCount];
+        for (int i = 0; i < instanceCount; ++i) {
+            // (an empty range of references, at 0, since endReference is also 0)
+            firstReference[i] = isReferenceFreeClass(instances.get(i).getClass())
+                    ? 0
+                    : UNRECORDED;
+        }
+        boolean hasClassNameDictionary = (null != index.getClassNameDictionary());
+        return new LoadedGraphImage(rawGraphData, hasClassNameDictionary, instances, instanceStarts, instanceEnds, firstReference, new int[instanceCount], 0, new int[16], new int[16], new BitSet());
+    }
+
+    private static boolean isReferenceFreeClass(Class<?> clazz) {
+        return a.Array.class.isAssignableFrom(clazz) && !a.ObjectArray.class.isAssignableFrom(clazz);
+    }
+
+
+    private final byte[] rawGraphData;
+    // True if the class names in the graph are written as indices into its ClassNameDictionary, as opposed to inline.
+    private final boolean hasClassNameDictionary;
+    private final List<Object> instances;
+    // The offsets of the first byte (the class name) of each instance and the first byte after the end of that instance.
+    private final int[] instanceStarts;
+    private final int[] instanceEnds;
+    // The references of instance i are in [firstReference[i], endReference[i]) of referenceOffsets/referenceTargets (UNRECORDED if unknown).
+    private final int[] firstReference;
+    private final int[] endReference;
+    // The offset of the 4-byte instance index of each REF_NORMAL reference and the index it pointed to, when loaded.
+    private int referenceCount;
+    private int[] referenceOffsets;
+    private int[] referenceTargets;
+    // The readIndex of every instance which has a REF_CLASS reference (only known for instances whose references were recorded).
+    private final BitSet classReferencingInstances;
+    private final Map<Class<?>, Boolean> reusableClasses;
+    // The readIndex of the instance whose references are currently being recorded (UNRECORDED if we aren't recording).
+    private int recordingReadIndex;
+
+    private LoadedGraphImage(byte[] rawGraphData, boolean hasClassNameDictionary, List<Object> instances, int[] instanceStarts, int[] instanceEnds, int[] firstReference, int[] endReference, int referenceCount, int[] referenceOffsets, int[] referenceTargets, BitSet classReferencingInstances) {
+        this.rawGraphData = rawGraphData;
+        this.hasClassNameDictionary = hasClassNameDictionary;
+        this.instances = instances;
+        this.instanceStarts = instanceStarts;
+        this.instanceEnds = instanceEnds;
+        this.firstReference = firstReference;
+        this.endReference = endReference;
+        this.referenceCount = referenceCount;
+        this.referenceOffsets = referenceOffsets;
+        this.referenceTargets = referenceTargets;
+        this.classReferencingInstances = classReferencingInstances;
+        this.reusableClasses = new IdentityHashMap<>();
+        this.recordingReadIndex = UNRECORDED;
+    }
+
+    /**
+     * Determines if the given instance can be copied from the image, as opposed to being re-encoded.
+     *
+     * @param instance The instance about to be serialized.
+     * @param readIndex The readIndex of the instance.
+     * @param dirtyInstances The readIndex of every instance reported as modified (null if there were none).
+     * @return True if the encoding of this instance in the image is still correct (modulo its instance reference indices).
+     */
+    public boolean canReuseInstance(Object instance, int readIndex, BitSet dirtyInstances) {
+        return (readIndex >= 0)
+                && (readIndex < this.instances.size())
+                && (instance == this.instances.get(readIndex))
+                && (UNRECORDED != this.firstReference[readIndex])
+                && ((null == dirtyInstances) || !dirtyInstances.get(readIndex))
+                && isReusableClass(instance.getClass());
+    }
+
+    @Override
+    public void beginInstance(int readIndex, int offset) {
+        // The location is already known so we just start recording the references.
+        RuntimeAssertionError.assertTrue(UNRECORDED == this.recordingReadIndex);
+        RuntimeAssertionError.assertTrue(offset == this.instanceStarts[readIndex]);
+        this.recordingReadIndex = readIndex;
+        this.firstReference[readIndex] = this.referenceCount;
+    }
+
+    @Override
+    public void recordReference(int offset, int targetIndex) {
+        // We only care about references from instances (the statics are always re-encoded).
+        if (UNRECORDED != this.recordingReadIndex) {
+            if (this.referenceCount == this.referenceOffsets.length) {
+                this.referenceOffsets = Arrays.copyOf(this.referenceOffsets, 2 * this.referenceCount);
+                this.referenceTargets = Arrays.copyOf(this.referenceTargets, 2 * this.referenceCount);
+            }
+            this.referenceOffsets[this.referenceCount] = offset;
+            this.referenceTargets[this.referenceCount] = targetIndex;
+            this.referenceCount += 1;
+        }
+    }
+
+    @Override
+    public void recordClassReference() {
+        if (UNRECORDED != this.recordingReadIndex) {
+            this.classReferencingInstances.set(this.recordingReadIndex);
+        }
+    }
+
+    @Override
+    public void endInstance(int offset) {
+        RuntimeAssertionError.assertTrue(UNRECORDED != this.recordingReadIndex);
+        RuntimeAssertionError.assertTrue(offset == this.instanceEnds[this.recordingReadIndex]);
+        this.endReference[this.recordingReadIndex] = this.referenceCount;
+        this.recordingReadIndex = UNRECORDED;
+    }
+
+    public int getInstanceCount() {
+        return this.instances.size();
+    }
+
+    public Object getInstance(int readIndex) {
+        return this.instances.get(readIndex);
+    }
+
+    public byte[] getRawGraphData() {
+        return this.rawGraphData;
+    }
+
+    public int getInstanceStart(int readIndex) {
+        return this.instanceStarts[readIndex];
+    }
+
+    public int getInstanceEnd(int readIndex) {
+        return this.instanceEnds[readIndex];
+    }
+
+    /**
+     * @return The offset of the first byte after the class name of the instance (that is, the start of its fields).
+     */
+    public int getClassNameEnd(int readIndex) {
+        int start = this.instanceStarts[readIndex];
+        int end;
+        if (this.hasClassNameDictionary) {
+            ByteBuffer buffer = ByteBuffer.wrap(this.rawGraphData, start, this.instanceEnds[readIndex] - start);
+            ClassNameDictionary.readVarint(buffer);
+            end = buffer.position();
+        } else {
+            end = start + Byte.BYTES + (0xff & this.rawGraphData[start]);
+        }
+        return end;
+    }
+
+    public boolean hasClassNameDictionary() {
+        return this.hasClassNameDictionary;
+    }
+
+    public boolean hasClassReferences(int readIndex) {
+        return this.classReferencingInstances.get(readIndex);
+    }
+
+    public boolean hasRecordedReferences(int readIndex) {
+        return (UNRECORDED != this.firstReference[readIndex]);
+    }
+
+    public int getFirstReference(int readIndex) {
+        return this.firstReference[readIndex];
+    }
+
+    public int getEndReference(int readIndex) {
+        return this.endReference[readIndex];
+    }
+
+    public int getReferenceOffset(int reference) {
+        return this.referenceOffsets[reference];
+    }
+
+    public Object getReferenceTarget(int reference) {
+        return this.instances.get(this.referenceTargets[reference]);
+    }
+
+    private boolean isReusableClass(Class<?> clazz) {
+        Boolean isReusable = this.reusableClasses.get(clazz);
+        if (null == isReusable) {
+            isReusable = Boolean.TRUE;
+            for (Class<?> walk = clazz; (null != walk) && isReusable; walk = walk.getSuperclass()) {
+                for (String name : ALWAYS_ENCODED_SHADOW_CLASS_NAMES) {
+                    if (name.equals(walk.getName())) {
+                        isReusable = Boolean.FALSE;
+                    }
+                }
+            }
+            this.reusableClasses.put(clazz, isReusable);
+        }
+        return isReusable;
+    }
+
+
+    /**
+     * Populated by the ByteBufferObjectDeserializer as it walks the instances of a graph in the legacy format, in its pre-pass, in order to
+     * describe their layout (since there is no index describing where they are).
+     */
+    public static class Builder implements IGraphLayoutRecorder {
+        private int instanceCount;
+        private int[] instanceStarts = new int[16];
+        private int[] instanceEnds = new int[16];
+        private int[] firstReference = new int[16];
+        private int[] endReference = new int[16];
+        private int referenceCount;
+        private int[] referenceOffsets = new int[16];
+        private int[] referenceTargets = new int[16];
+        private boolean isInInstance;
+
+        @Override
+        public void beginInstance(int readIndex, int offset) {
+            RuntimeAssertionError.assertTrue(!this.isInInstance);
+            RuntimeAssertionError.assertTrue(readIndex == this.instanceCount);
+            if (this.instanceCount == this.instanceStarts.length) {
+                this.instanceStarts = Arrays.copyOf(this.instanceStarts, 2 * this.instanceCount);
+                this.instanceEnds = Arrays.copyOf(this.instanceEnds, 2 * this.instanceCount);
+                this.firstReference = Arrays.copyOf(this.firstReference, 2 * this.instanceCount);
+                this.endReference = Arrays.copyOf(this.endReference, 2 * this.instanceCount);
+            }
+            this.instanceStarts[this.instanceCount] = offset;
+            this.firstReference[this.instanceCount] = this.referenceCount;
+            this.isInInstance = true;
+        }
+
+        @Override
+        public void recordReference(int offset, int targetIndex) {
+            // We only care about references from instances (the statics are always re-encoded).
+            if (this.isInInstance) {
+                if (this.referenceCount == this.referenceOffsets.length) {
+                    this.referenceOffsets = Arrays.copyOf(this.referenceOffsets, 2 * this.referenceCount);
+                    this.referenceTargets = Arrays.copyOf(this.referenceTargets, 2 * this.referenceCount);
+                }
+                this.referenceOffsets[this.referenceCount] = offset;
+                this.referenceTargets[this.referenceCount] = targetIndex;
+                this.referenceCount += 1;
+            }
+        }
+
+        @Override
+        public void recordClassReference() {
+            // Legacy graphs have no dictionary and are always saved in the legacy format, so their class references are copied verbatim.
+        }
+
+        @Override
+        public void endInstance(int offset) {
+            RuntimeAssertionError.assertTrue(this.isInInstance);
+            this.instanceEnds[this.instanceCount] = offset;
+            this.endReference[this.instanceCount] = this.referenceCount;
+            this.instanceCount += 1;
+            this.isInInstance = false;
+        }
+
+        public LoadedGraphImage build(byte[] rawGraphData, List<Object> instances) {
+            RuntimeAssertionError.assertTrue(!this.isInInstance);
+            RuntimeAssertionError.assertTrue(this.instanceCount == instances.size());
+            return new LoadedGraphImage(rawGraphData, false, instances, this.instanceStarts, this.instanceEnds, this.firstReference, this.endReference, this.referenceCount, this.referenceOffsets, this.referenceTargets, new BitSet());
+        }
+    }
+}
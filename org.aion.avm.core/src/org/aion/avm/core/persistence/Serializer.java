@@ -6,6 +6,7 @@ import java.lang.reflect.Method;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
@@ -36,9 +37,36 @@ public class Serializer {
         serializeClassStatics(objectSerializer, cache, sortedRoots, constantClass);
         
         // Finally, we serialize the rest of the graph.
-        serializeGraphFromWorkQueue(out_instanceIndex, out_calleeToCallerIndexMap, objectSerializer, cache, toProcessQueue);
+        serializeGraphFromWorkQueue(out_instanceIndex, out_calleeToCallerIndexMap, objectSerializer, cache, toProcessQueue, null, null, null);
     }
 
+    /**
+     * Serializes the graph for storage, as the above, but optionally copying the encoding of any unmodified instance from the image of the
+     * graph as it was loaded and optionally describing the instances written in an index.
+     * The output is identical to what serializeEntireGraph would produce, provided that every modification since the load was reported
+     * via the write barrier.
+     * 
+     * @param image The image of the graph, recorded when it was loaded (null if every instance should be encoded).
+     * @param dirtyInstances The readIndex of every instance reported as modified since the load (null if there were none).
+     * @param indexBuilder Receives the location of every instance written, for the indexed or dictionary formats (null if using the legacy format).
+     */
+    public static void serializeEntireGraphForStorage(ByteBuffer outputBuffer, LoadedGraphImage image, BitSet dirtyInstances, GraphIndex.Builder indexBuilder, IGlobalResolver resolver, SortedFieldCache cache, IPersistenceNameMapper classNameMapper, int nextHashCode, Class<?>[] sortedRoots, Class<?> constantClass) {
+        // We define the storage as big-endian.
+        RuntimeAssertionError.assertTrue(ByteOrder.BIG_ENDIAN == outputBuffer.order());
+        
+        outputBuffer.putInt(nextHashCode);
+        Queue<Object> toProcessQueue = new LinkedList<>();
+        // When the dictionary is allowed, every class name (including those in the statics) is written against the dictionary of the index.
+        GraphIndex.Builder dictionaryIndexBuilder = ((null != indexBuilder) && indexBuilder.isDictionaryAllowed())
+                ? indexBuilder
+                : null;
+        ByteBufferObjectSerializer objectSerializer = new ByteBufferObjectSerializer(outputBuffer, toProcessQueue, cache, resolver, classNameMapper, dictionaryIndexBuilder);
+        
+        // The statics are always re-encoded (they are small and have no write barrier).
+        serializeClassStatics(objectSerializer, cache, sortedRoots, constantClass);
+        
+        serializeGraphFromWorkQueue(null, null, objectSerializer, cache, toProcessQueue, image, dirtyInstances, indexBuilder);
+    }
 
 
     private static void serializeClassStatics(ByteBufferObjectSerializer objectSerializer, SortedFieldCache cache, Class<?>[] sortedRoots, Class<?> constantClass) {
@@ -67,17 +95,35 @@ public class Serializer {
         serializeFieldsForClass(objectSerializer, fields);
     }
 
-    private static void serializeGraphFromWorkQueue(List<Object> out_instanceIndex, List<Integer> out_calleeToCallerIndexMap, ByteBufferObjectSerializer objectSerializer, SortedFieldCache cache, Queue<Object> toProcessQueue) {
+    private static void serializeGraphFromWorkQueue(List<Object> out_instanceIndex, List<Integer> out_calleeToCallerIndexMap, ByteBufferObjectSerializer objectSerializer, SortedFieldCache cache, Queue<Object> toProcessQueue, LoadedGraphImage image, BitSet dirtyInstances, GraphIndex.Builder indexBuilder) {
         Method serializeSelfMethod = cache.getSerializeSelfMethod();
         Field readIndexField = cache.getReadIndexField();
         
         try {
             while (!toProcessQueue.isEmpty()) {
                 Object instance = toProcessQueue.remove();
-                // We first need to serialize the class name.
-                String internalClassName = instance.getClass().getName();
-                objectSerializer.writeClassName(internalClassName);
-                serializeSelfMethod.invoke(instance, null, objectSerializer);
+                int imageReadIndex = (null != image)
+                        ? readIndexField.getInt(instance)
+                        : -1;
+                if (null != indexBuilder) {
+                    objectSerializer.recordInstanceInIndex(indexBuilder, instance);
+                }
+                boolean canReuse = (null != image) && image.canReuseInstance(instance, imageReadIndex, dirtyInstances) && objectSerializer.canWriteInstanceFromImage(image, imageReadIndex);
+                if (!canReuse && (instance instanceof s.java.lang.Object) && ((s.java.lang.Object) instance).isLazyLoadPending()) {
+                    // This is a stub of a lazily-loaded graph so it must be populated before we can read its state (which also records its
+                    // references in the image, so we may now be able to copy it).
+                    ((s.java.lang.Object) instance).lazyLoad();
+                    canReuse = (null != image) && image.canReuseInstance(instance, imageReadIndex, dirtyInstances) && objectSerializer.canWriteInstanceFromImage(image, imageReadIndex);
+                }
+                if (canReuse) {
+                    // This instance hasn't changed since it was loaded so we can copy its existing encoding.
+                    objectSerializer.writeInstanceFromImage(image, imageReadIndex);
+                } else {
+                    // We first need to serialize the class name.
+                    String internalClassName = instance.getClass().getName();
+                    objectSerializer.writeClassName(internalClassName);
+                    serializeSelfMethod.invoke(instance, null, objectSerializer);
+                }
                 if (null != out_instanceIndex) {
                     out_instanceIndex.add(instance);
                 } else if (null != out_calleeToCallerIndexMap) {
@@ -97,6 +143,9 @@ public class Serializer {
                 // This shouldn't happen but is distinct from reflection errors.
                 throw RuntimeAssertionError.unexpected(e);
             }
+        } catch (BufferOverflowException e) {
+            // This is if we run off the end of the buffer when copying from the image, which is an example of out of energy.
+            throw new OutOfEnergyException();
         } catch (IllegalAccessException | IllegalArgumentException e) {
             // Reflection errors can't happen since we set this up so we could access it.
             throw RuntimeAssertionError.unexpected(e);
@@ -14,7 +14,7 @@ import i.RuntimeAssertionError;
 
 /**
  * Caches field/method and general reflection data associated with a specific loaded contract.
- * In the future, we might store these in the SoftCache, along-side the code.
+ * In the future, we might store these in the DApp cache, along-side the code.
  */
 public class SortedFieldCache {
     private static final String CONSTANT_FIELD_PREFIX = "const_";
@@ -23,6 +23,7 @@ public class SortedFieldCache {
     private final Map<Class<?>, Field[]> constantFields;
     private final Map<Class<?>, Field[]> staticFields;
     private final Map<Class<?>, Field[]> instanceFields;
+    private final Map<Class<?>, Constructor<?>> deserializationConstructors;
     private final ClassLoader dappClassLoader;
     private final Method serializeSelf;
     private final Method deserializeSelf;
@@ -33,6 +34,7 @@ public class SortedFieldCache {
         this.constantFields = new HashMap<>();
         this.staticFields = new HashMap<>();
         this.instanceFields = new HashMap<>();
+        this.deserializationConstructors = new HashMap<>();
         this.dappClassLoader = dappClassLoader;
         this.serializeSelf = serializeSelf;
         this.deserializeSelf = deserializeSelf;
@@ -96,6 +98,10 @@ public class SortedFieldCache {
     }
 
     public Object getNewInstance(String internalClassName, int readIndex) {
+        return getNewInstance(getClassForInternalName(internalClassName), readIndex);
+    }
+
+    public Class<?> getClassForInternalName(String internalClassName) {
         Class<?> clazz = this.internalNameClasses.get(internalClassName);
         if (null == clazz) {
             try {
@@ -106,11 +112,19 @@ public class SortedFieldCache {
             }
             this.internalNameClasses.put(internalClassName, clazz);
         }
+        return clazz;
+    }
+
+    public Object getNewInstance(Class<?> clazz, int readIndex) {
         // We define the Void class, since we just need to define a constructor that the user can't hook
         // into (and their references to this would be mapped to shadow). 
         try {
-            Constructor<?> constructor = clazz.getConstructor(Void.class, int.class);
-            constructor.setAccessible(true);
+            Constructor<?> constructor = this.deserializationConstructors.get(clazz);
+            if (null == constructor) {
+                constructor = clazz.getConstructor(Void.class, int.class);
+                constructor.setAccessible(true);
+                this.deserializationConstructors.put(clazz, constructor);
+            }
             return constructor.newInstance((Void)null, readIndex);
         } catch (NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
             // We can't fail to find this since the type is datastore-safe.
@@ -0,0 +1,69 @@
+package org.aion.avm.core.profiling;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A node in the call tree of an ExecutionProfile:  one method, reached through the path of its ancestors.
+ * All the costs are "self" costs (what was spent in this method, excluding its callees) since that is what a flamegraph expects.
+ * Note that this is NOT thread-safe:  each ProfilingInstrumentation builds its own trees, which are only merged under the lock of the
+ * ExecutionProfile.
+ */
+final class CallNode {
+    public final String name;
+    private final Map<String, CallNode> children;
+
+    public long calls;
+    public long selfNanos;
+    public long selfEnergy;
+    public long selfAllocations;
+
+    public CallNode(String name) {
+        this.name = name;
+        this.children = new LinkedHashMap<>();
+    }
+
+    public CallNode child(String name) {
+        return this.children.computeIfAbsent(name, CallNode::new);
+    }
+
+    public Collection<CallNode> children() {
+        return this.children.values();
+    }
+
+    /**
+     * Adds the costs of the other tree (rooted at the same position as this one) into this one.
+     *
+     * @param other The root of the tree to merge into this one (not modified).
+     */
+    public void mergeFrom(CallNode other) {
+        this.calls += other.calls;
+        this.selfNanos += other.selfNanos;
+        this.selfEnergy += other.selfEnergy;
+        this.selfAllocations += other.selfAllocations;
+        for (CallNode otherChild : other.children.values()) {
+            child(otherChild.name).mergeFrom(otherChild);
+        }
+    }
+
+    public long valueOf(ExecutionProfile.Metric metric) {
+        long value = 0L;
+        switch (metric) {
+            case WALL_NANOS:
+                value = this.selfNanos;
+                break;
+            case ENERGY:
+                value = this.selfEnergy;
+                break;
+            case ALLOCATIONS:
+                value = this.selfAllocations;
+                break;
+            case CALLS:
+                value = this.calls;
+                break;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,147 @@
+package org.aion.avm.core.profiling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * The profile aggregated by all the ProfilingInstrumentation instances created by a ProfilingInstrumentationFactory.
+ * For every DApp which has run, this holds a call tree of its methods, each node recording how many times that call path was entered and
+ * the wall time, energy and allocations spent directly in it (excluding its callees).
+ * Costs spent in the DApp's frame outside of any of its methods (billing for the graph, for example) are recorded against the DApp itself.
+ * Note that transactions which fail are still profiled, since they still consumed the resources.
+ * This is thread-safe since the executor threads merge into it while something else may be reading it.
+ */
+public class ExecutionProfile {
+    /**
+     * The cost written as the value of each stack by writeFoldedStacks().
+     */
+    public enum Metric {
+        WALL_NANOS,
+        ENERGY,
+        ALLOCATIONS,
+        CALLS,
+    }
+
+    // Keyed by DApp name so the output is in a stable order.
+    private final Map<String, CallNode> rootsByDApp;
+
+    public ExecutionProfile() {
+        this.rootsByDApp = new TreeMap<>();
+    }
+
+    /**
+     * Merges the call tree built by a single DApp frame into the profile.
+     *
+     * @param dappName The name of the DApp which was running in the frame.
+     * @param frameRoot The root of the call tree built by the frame (the DApp itself).
+     */
+    synchronized void merge(String dappName, CallNode frameRoot) {
+        this.rootsByDApp.computeIfAbsent(dappName, CallNode::new).mergeFrom(frameRoot);
+    }
+
+    /**
+     * @return The names of all the DApps which have been profiled.
+     */
+    public synchronized List<String> getDAppNames() {
+        return new ArrayList<>(this.rootsByDApp.keySet());
+    }
+
+    /**
+     * Summarizes the profile of a single DApp by method, adding together the costs of every path through which the method was called.
+     *
+     * @param dappName The name of the DApp.
+     * @return The profile of each method (as "class.method") of the DApp (empty if it has not been profiled).
+     */
+    public synchronized Map<String, MethodProfile> getMethodProfiles(String dappName) {
+        Map<String, MethodProfile> profiles = new TreeMap<>();
+        CallNode root = this.rootsByDApp.get(dappName);
+        if (null != root) {
+            Map<String, CallNode> totals = new HashMap<>();
+            for (CallNode child : root.children()) {
+                sumByMethod(totals, child);
+            }
+            for (CallNode total : totals.values()) {
+                profiles.put(total.name, new MethodProfile(total.calls, total.selfNanos, total.selfEnergy, total.selfAllocations));
+            }
+        }
+        return Collections.unmodifiableMap(profiles);
+    }
+
+    /**
+     * Writes the profile in the "folded stacks" format read by flamegraph.pl (and most other flamegraph tools):  one line for each call
+     * path, with the DApp as the outermost frame, followed by the given metric for that path.
+     * For example:  "a025f4fd...;com.example.Main.main;com.example.Main.transfer 1400".
+     * Paths whose value is zero are not written.
+     *
+     * @param out Where to write the lines.
+     * @param metric The cost to write as the value of each path.
+     * @throws IOException If writing to out fails.
+     */
+    public synchronized void writeFoldedStacks(Appendable out, Metric metric) throws IOException {
+        for (CallNode root : this.rootsByDApp.values()) {
+            writeFoldedStacks(out, metric, new StringBuilder(), root);
+        }
+    }
+
+    /**
+     * Discards everything profiled so far.
+     */
+    public synchronized void clear() {
+        this.rootsByDApp.clear();
+    }
+
+
+    private static void sumByMethod(Map<String, CallNode> totals, CallNode node) {
+        CallNode total = totals.computeIfAbsent(node.name, CallNode::new);
+        total.calls += node.calls;
+        total.selfNanos += node.selfNanos;
+        total.selfEnergy += node.selfEnergy;
+        total.selfAllocations += node.selfAllocations;
+        for (CallNode child : node.children()) {
+            sumByMethod(totals, child);
+        }
+    }
+
+    private static void writeFoldedStacks(Appendable out, Metric metric, StringBuilder path, CallNode node) throws IOException {
+        int parentLength = path.length();
+        if (parentLength > 0) {
+            path.append(';');
+        }
+        // The format reserves ';' to separate frames and ' ' to separate the stack from its value.
+        path.append(node.name.replace(';', '_').replace(' ', '_'));
+
+        long value = node.valueOf(metric);
+        if (value > 0L) {
+            out.append(path).append(' ').append(Long.toString(value)).append('\n');
+        }
+        for (CallNode child : node.children()) {
+            writeFoldedStacks(out, metric, path, child);
+        }
+        path.setLength(parentLength);
+    }
+
+
+    /**
+     * The costs of a single method of a DApp, across every path through which it was called.
+     * Note that the wall time, energy and allocations exclude those of its callees.
+     */
+    public static final class MethodProfile {
+        public final long calls;
+        public final long wallNanos;
+        public final long energy;
+        public final long allocations;
+
+        public MethodProfile(long calls, long wallNanos, long energy, long allocations) {
+            this.calls = calls;
+            this.wallNanos = wallNanos;
+            this.energy = energy;
+            this.allocations = allocations;
+        }
+    }
+}
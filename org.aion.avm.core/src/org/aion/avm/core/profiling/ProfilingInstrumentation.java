@@ -0,0 +1,215 @@
+package org.aion.avm.core.profiling;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import i.CommonInstrumentation;
+import i.Helper;
+import i.IInstrumentation;
+import i.InternedClasses;
+import i.OutOfEnergyException;
+import i.PackageConstants;
+import org.aion.types.AionAddress;
+
+
+/**
+ * A CommonInstrumentation which also profiles the DApps running on its thread, merging what it finds into a shared ExecutionProfile
+ * whenever a DApp frame exits.
+ * It builds on the callouts the instrumented code already makes:
+ * -enterMethod/exitMethod (injected by the StackWatcherMethodAdapter) delimit each method call, which it identifies by walking the stack
+ * -enterCatchBlock unwinds the methods an exception passed through
+ * -chargeEnergy and getNextHashCodeAndIncrement (called for every new object) are attributed to the method currently running
+ * Note that walking the stack on every method entry is slow so this is only meant for diagnosing where a DApp spends its resources, never
+ * for running a node.
+ */
+public class ProfilingInstrumentation extends CommonInstrumentation {
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final String USER_METHOD_PREFIX = "avm_";
+    private static final String UNNAMED_DAPP = "<unnamed>";
+
+    /**
+     * Names the DApp frame most recently entered on this thread, if it is being profiled (does nothing, otherwise).
+     * This exists since IInstrumentation.enterNewFrame() only knows the class loader of the DApp, not its address.
+     * Note that this is called for every frame, profiled or not, so the address is only converted to its name when we are profiling.
+     *
+     * @param dappAddress The address of the DApp, whose string form is the name to record the frame's costs under.
+     */
+    public static void nameCurrentFrame(AionAddress dappAddress) {
+        IInstrumentation instrumentation = IInstrumentation.getCurrentThreadInstrumentation();
+        if (instrumentation instanceof ProfilingInstrumentation) {
+            ((ProfilingInstrumentation) instrumentation).currentProfile.dappName = dappAddress.toString();
+        }
+    }
+
+    private final ExecutionProfile profile;
+    // Mirrors the frame stack of the CommonInstrumentation.
+    private FrameProfile currentProfile;
+    private final Deque<FrameProfile> callerProfiles;
+
+    public ProfilingInstrumentation(ExecutionProfile profile) {
+        this.profile = profile;
+        this.callerProfiles = new ArrayDeque<>();
+    }
+
+    @Override
+    public void enterNewFrame(ClassLoader contractLoader, long energyLeft, int nextHashCode, InternedClasses classWrappers) {
+        super.enterNewFrame(contractLoader, energyLeft, nextHashCode, classWrappers);
+        if (null != this.currentProfile) {
+            this.callerProfiles.push(this.currentProfile);
+        }
+        this.currentProfile = new FrameProfile(contractLoader, System.nanoTime());
+    }
+
+    @Override
+    public void exitCurrentFrame() {
+        super.exitCurrentFrame();
+        long now = System.nanoTime();
+        FrameProfile returningProfile = this.currentProfile;
+        long frameNanos = returningProfile.exitFrame(now);
+        this.profile.merge(returningProfile.dappName, returningProfile.root());
+
+        this.currentProfile = this.callerProfiles.poll();
+        if (null != this.currentProfile) {
+            // The time spent in the callee DApp isn't spent in the method which called it.
+            this.currentProfile.addCalleeNanos(frameNanos);
+        }
+    }
+
+    @Override
+    public void chargeEnergy(long cost) throws OutOfEnergyException {
+        // We only attribute the energy once it is known to have been available.
+        super.chargeEnergy(cost);
+        this.currentProfile.top().selfEnergy += cost;
+    }
+
+    @Override
+    public int getNextHashCodeAndIncrement() {
+        this.currentProfile.top().selfAllocations += 1;
+        return super.getNextHashCodeAndIncrement();
+    }
+
+    @Override
+    public void enterMethod(int frameSize) {
+        super.enterMethod(frameSize);
+        FrameProfile frame = this.currentProfile;
+        frame.enterMethod(findEnteredMethod(frame.contractLoader), System.nanoTime());
+    }
+
+    @Override
+    public void exitMethod(int frameSize) {
+        super.exitMethod(frameSize);
+        this.currentProfile.exitMethod(System.nanoTime());
+    }
+
+    @Override
+    public void enterCatchBlock(int depth, int size) {
+        super.enterCatchBlock(depth, size);
+        // The methods the exception passed through never called exitMethod.
+        this.currentProfile.unwindTo(depth, System.nanoTime());
+    }
+
+
+    private static String findEnteredMethod(ClassLoader contractLoader) {
+        // The method calling enterMethod is the first one, below the Helper, defined by the DApp's loader.
+        StackWalker.StackFrame caller = STACK_WALKER.walk((frames) -> frames
+                .filter((frame) -> (frame.getDeclaringClass().getClassLoader() == contractLoader) && !Helper.RUNTIME_HELPER_NAME.equals(frame.getClassName()))
+                .findFirst()
+                .orElse(null));
+        String name = "<unknown>";
+        if (null != caller) {
+            String className = caller.getClassName();
+            if (className.startsWith(PackageConstants.kUserDotPrefix)) {
+                className = className.substring(PackageConstants.kUserDotPrefix.length());
+            }
+            String methodName = caller.getMethodName();
+            if (methodName.startsWith(USER_METHOD_PREFIX)) {
+                methodName = methodName.substring(USER_METHOD_PREFIX.length());
+            }
+            name = className + "." + methodName;
+        }
+        return name;
+    }
+
+
+    /**
+     * The profiling state of a single DApp frame:  the call tree built so far and the stack of methods currently running, where index 0 is
+     * the DApp itself and each method is at the depth the StackWatcher gives it.
+     */
+    private static final class FrameProfile {
+        private final ClassLoader contractLoader;
+        private String dappName;
+
+        private CallNode[] nodes;
+        private long[] enteredNanos;
+        // The time spent in the callees of each method running (so we can subtract it to find the self time).
+        private long[] calleeNanos;
+        private int depth;
+
+        public FrameProfile(ClassLoader contractLoader, long now) {
+            this.contractLoader = contractLoader;
+            this.dappName = UNNAMED_DAPP;
+            this.nodes = new CallNode[16];
+            this.enteredNanos = new long[16];
+            this.calleeNanos = new long[16];
+            this.depth = 0;
+
+            CallNode root = new CallNode(UNNAMED_DAPP);
+            root.calls = 1;
+            this.nodes[0] = root;
+            this.enteredNanos[0] = now;
+        }
+
+        public CallNode root() {
+            return this.nodes[0];
+        }
+
+        public CallNode top() {
+            return this.nodes[this.depth];
+        }
+
+        public void enterMethod(String name, long now) {
+            int newDepth = this.depth + 1;
+            if (newDepth == this.nodes.length) {
+                int newLength = 2 * this.nodes.length;
+                this.nodes = Arrays.copyOf(this.nodes, newLength);
+                this.enteredNanos = Arrays.copyOf(this.enteredNanos, newLength);
+                this.calleeNanos = Arrays.copyOf(this.calleeNanos, newLength);
+            }
+            CallNode node = this.nodes[this.depth].child(name);
+            node.calls += 1;
+            this.nodes[newDepth] = node;
+            this.enteredNanos[newDepth] = now;
+            this.calleeNanos[newDepth] = 0L;
+            this.depth = newDepth;
+        }
+
+        public void exitMethod(long now) {
+            // (an exitMethod we can't match is ignored rather than popping the DApp, itself)
+            if (this.depth > 0) {
+                long elapsed = now - this.enteredNanos[this.depth];
+                this.nodes[this.depth].selfNanos += elapsed - this.calleeNanos[this.depth];
+                this.nodes[this.depth] = null;
+                this.depth -= 1;
+                this.calleeNanos[this.depth] += elapsed;
+            }
+        }
+
+        public void unwindTo(int targetDepth, long now) {
+            while (this.depth > targetDepth) {
+                exitMethod(now);
+            }
+        }
+
+        public void addCalleeNanos(long nanos) {
+            this.calleeNanos[this.depth] += nanos;
+        }
+
+        public long exitFrame(long now) {
+            unwindTo(0, now);
+            long elapsed = now - this.enteredNanos[0];
+            this.nodes[0].selfNanos += elapsed - this.calleeNanos[0];
+            return elapsed;
+        }
+    }
+}
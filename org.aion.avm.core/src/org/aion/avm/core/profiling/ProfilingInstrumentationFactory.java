@@ -0,0 +1,34 @@
+package org.aion.avm.core.profiling;
+
+import i.IInstrumentation;
+import i.IInstrumentationFactory;
+
+
+/**
+ * Creates the ProfilingInstrumentation for every executor thread of an AVM, all of them merging into the same ExecutionProfile.
+ * Pass this to CommonAvmFactory.buildProfilingAvmInstanceForConfiguration() to profile the DApps an AVM runs.
+ */
+public class ProfilingInstrumentationFactory implements IInstrumentationFactory {
+    private final ExecutionProfile profile;
+
+    public ProfilingInstrumentationFactory() {
+        this.profile = new ExecutionProfile();
+    }
+
+    /**
+     * @return The profile of everything run by the instrumentation created by this factory.
+     */
+    public ExecutionProfile getProfile() {
+        return this.profile;
+    }
+
+    @Override
+    public IInstrumentation createInstrumentation() {
+        return new ProfilingInstrumentation(this.profile);
+    }
+
+    @Override
+    public void destroyInstrumentation(IInstrumentation instance) {
+        // Every frame has already been merged into the profile, as it exited.
+    }
+}
@@ -34,6 +34,8 @@ import org.aion.avm.core.ClassRenamer.ArrayType;
  *
  * A means of producing a deep copy of the hierarchy is also provided.
  *
+ * Once it is built, the hierarchy can be queried concurrently (the classes of a DApp are transformed in parallel).
+ *
  * This hierarchy only accepts post-rename classes!
  */
 public final class ClassHierarchy {
@@ -254,7 +256,8 @@ public final class ClassHierarchy {
      * @param class2 The second of the two classes to query.
      * @return The tightest common super class if one exists or else null if ambiguous.
      */
-    public String getTightestCommonSuperClass(String class1, String class2) {
+    public synchronized String getTightestCommonSuperClass(String class1, String class2) {
+        // Note that this is synchronized since it temporarily marks the nodes of the hierarchy (it is the only query which modifies them).
         if ((class1 == null) || (class2 == null)) {
             throw new NullPointerException("Cannot get the tightest super class of a null class: " + class1 + ", " + class2);
         }
@@ -1,29 +1,115 @@
 package org.aion.avm.core.types;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.attribute.FileTime;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
 
-import java.util.zip.ZipEntry;
-import org.aion.types.AionAddress;
 import org.aion.avm.core.dappreading.LoadedJar;
+import org.aion.avm.core.persistence.GraphIndex;
+
+import i.RuntimeAssertionError;
 
 
 /**
  * Represents the DApp code once it has been validated, transformed, and stripped of any code/data only required for the initial deployment call.
  * This is the form the module will take, in storage.
+ * It is stored as a code bundle (see createBundle()) but DApps deployed before code bundles existed were stored as a JAR, so both can be read.
  * All fields are public since this object is effectively an immutable struct.
  * See issue-134 for more details on this design.
  */
 public class ImmortalDappModule {
-    // Note that we currently limit the size of an in-memory JAR to 1 MiB.
-    private static final int MAX_JAR_BYTES = 1024 * 1024;
+    // Set in the manifest of any module whose code was transformed with the "markDirty()" write barrier (older modules don't have it).
+    private static final Attributes.Name WRITE_BARRIERS_ATTRIBUTE = new Attributes.Name("Avm-Write-Barriers");
+    // The format of the DApp's stored object graph (see GraphIndex), which is fixed when it is deployed (older modules don't have it).
+    private static final Attributes.Name GRAPH_FORMAT_ATTRIBUTE = new Attributes.Name("Avm-Graph-Format");
+    // The first 4 bytes of a code bundle ("AVMB"), which can't be confused with a JAR (those start with the ZIP signature, "PK").
+    private static final int BUNDLE_MAGIC = 0x41564D42;
+    private static final int BUNDLE_VERSION = 1;
+    private static final int BUNDLE_FLAG_WRITE_BARRIERS = 0x1;
+    // The fixed-size header:  magic, version, flags, graph format, main class name length (the name follows), class count.
+    private static final int BUNDLE_HEADER_BYTES = 6 * Integer.BYTES;
+    // Each entry of the class index is:  name offset, name length, bytecode offset, bytecode length.
+    private static final int BUNDLE_INDEX_ENTRY_BYTES = 4 * Integer.BYTES;
+
+    /**
+     * Reads the Dapp module from the code stored by the kernel, which is either a code bundle or (for older DApps) a JAR.
+     * 
+     * @param storedCode The stored code bytes.
+     * @return The module, or null if the contents were insufficient for a Dapp.
+     * @throws IOException An error occurred while reading the contents.
+     */
+    public static ImmortalDappModule readFromStoredCode(byte[] storedCode) throws IOException {
+        return isBundle(storedCode)
+                ? readFromBundle(ByteBuffer.wrap(storedCode))
+                : readFromJar(storedCode);
+    }
+
+    /**
+     * @param storedCode The stored code bytes.
+     * @return True if these bytes are a code bundle (as opposed to a JAR).
+     */
+    public static boolean isBundle(byte[] storedCode) {
+        return (storedCode.length >= Integer.BYTES) && (BUNDLE_MAGIC == ByteBuffer.wrap(storedCode).getInt(0));
+    }
+
+    /**
+     * Reads the Dapp module from a code bundle, starting at the current position of the given buffer (which is not modified).
+     * Since the bundle is only addressed through its index, the buffer can equally be a memory-mapped file.
+     * 
+     * @param bundle The buffer containing the bundle.
+     * @return The module, with its classes in alphabetical order.
+     * @throws IOException The buffer doesn't contain a well-formed code bundle.
+     */
+    public static ImmortalDappModule readFromBundle(ByteBuffer bundle) throws IOException {
+        try {
+            // All offsets in the bundle are relative to its start.
+            ByteBuffer view = bundle.slice();
+            if (BUNDLE_MAGIC != view.getInt()) {
+                throw new IOException("Not a code bundle");
+            }
+            int version = view.getInt();
+            if (BUNDLE_VERSION != version) {
+                throw new IOException("Unsupported code bundle version: " + version);
+            }
+            int flags = view.getInt();
+            int graphFormatVersion = view.getInt();
+            int mainClassLength = view.getInt();
+            String mainClass = new String(readBytes(view, view.position(), mainClassLength), StandardCharsets.UTF_8);
+            view.position(view.position() + mainClassLength);
+            int classCount = view.getInt();
+            int indexStart = view.position();
+
+            // The index is sorted by name so this map preserves the alphabetical order.
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i = 0; i < classCount; ++i) {
+                int entry = indexStart + (i * BUNDLE_INDEX_ENTRY_BYTES);
+                String name = new String(readBytes(view, view.getInt(entry), view.getInt(entry + Integer.BYTES)), StandardCharsets.UTF_8);
+                byte[] bytecode = readBytes(view, view.getInt(entry + 2 * Integer.BYTES), view.getInt(entry + 3 * Integer.BYTES));
+                classes.put(name, bytecode);
+            }
+            boolean hasWriteBarriers = (0 != (BUNDLE_FLAG_WRITE_BARRIERS & flags));
+            // To be a valid Dapp, this must have at least one class (the main class is always written).
+            return !classes.isEmpty()
+                    ? new ImmortalDappModule(classes, mainClass, hasWriteBarriers, graphFormatVersion)
+                    : null;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            // Offsets or lengths outside of the bundle.
+            throw new IOException("Malformed code bundle", e);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer view, int offset, int length) {
+        byte[] bytes = new byte[length];
+        view.duplicate().position(offset).get(bytes);
+        return bytes;
+    }
 
     /**
      * Reads the Dapp module from JAR bytes, in memory.
@@ -37,63 +123,83 @@ public class ImmortalDappModule {
         LoadedJar loadedJar = LoadedJar.fromBytes(jar);
         Map<String, byte[]> classes = loadedJar.classBytesByQualifiedNames;
         String mainClass = loadedJar.mainClassName;
+        boolean hasWriteBarriers = Boolean.parseBoolean(loadedJar.mainAttributes.getValue(WRITE_BARRIERS_ATTRIBUTE));
+        String graphFormat = loadedJar.mainAttributes.getValue(GRAPH_FORMAT_ATTRIBUTE);
+        int graphFormatVersion = (null != graphFormat)
+                ? Integer.parseInt(graphFormat)
+                : GraphIndex.LEGACY_FORMAT_VERSION;
         // To be a valid Dapp, this must specify a main class and have at least one class.
         return ((null != mainClass) && !classes.isEmpty())
-                ? new ImmortalDappModule(classes, mainClass)
+                ? new ImmortalDappModule(classes, mainClass, hasWriteBarriers, graphFormatVersion)
                 : null;
     }
 
     public static ImmortalDappModule fromImmortalClasses(Map<String, byte[]> classes, String mainClass)  {
-        return new ImmortalDappModule(classes, mainClass);
+        // Classes we are given directly are the output of our current transformation so they always have the write barrier.
+        // Similarly, they are being deployed so their graph will be stored in the current format.
+        return new ImmortalDappModule(classes, mainClass, true, GraphIndex.CURRENT_FORMAT_VERSION);
     }
 
 
     public final Map<String, byte[]> classes;
     public final String mainClass;
+    // True if the classes were transformed with the "markDirty()" write barrier (see AutomaticGraphVisitor).
+    public final boolean hasWriteBarriers;
+    // The format of the stored object graph (one of the GraphIndex format versions).
+    public final int graphFormatVersion;
 
-    private ImmortalDappModule(Map<String, byte[]> classes, String mainClass) {
+    private ImmortalDappModule(Map<String, byte[]> classes, String mainClass, boolean hasWriteBarriers, int graphFormatVersion) {
         this.classes = classes;
         this.mainClass = mainClass;
+        this.hasWriteBarriers = hasWriteBarriers;
+        this.graphFormatVersion = graphFormatVersion;
     }
 
     /**
-     * Create the in-memory JAR containing all the classes in this module.
+     * Create the code bundle containing all the classes in this module.
+     * Unlike the JAR, this is uncompressed and each class is found through a fixed-size index, so loading it is just a copy of each class.
+     * The classes are stored in alphabetical order (which is also the order of the index), so the bundle only depends on the module.
+     * 
+     * @return The bundle bytes.
      */
-    public byte[] createJar(AionAddress address, long blockTimeStamp) throws IOException {
-        // set jar file timestamp to block timestamp so the whole network is in agreement over this.
-        FileTime timestamp = FileTime.fromMillis(blockTimeStamp);
-
-        // manifest, we explicitly write it so that can can control its timestamps.
-        Manifest manifest = new Manifest();
-        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, this.mainClass);
-
-        ZipEntry manifestEntry = new ZipEntry(JarFile.MANIFEST_NAME);
-        manifestEntry.setLastModifiedTime(timestamp);
-        manifestEntry.setLastAccessTime(timestamp);
-        manifestEntry.setCreationTime(timestamp);
-
-        // Create a temporary memory location for this JAR.
-        ByteArrayOutputStream tempJarStream = new ByteArrayOutputStream(MAX_JAR_BYTES);
-
-        // create the jar file
-        try (JarOutputStream target = new JarOutputStream(tempJarStream)) {
-            // first, write the manifest file
-            target.putNextEntry(manifestEntry);
-            manifest.write(target);
-            target.closeEntry();
-
-            // add the classes
-            for (String clazz : this.classes.keySet()) {
-                JarEntry entry = new JarEntry(clazz.replace('.', '/') + ".class");
-                entry.setLastModifiedTime(timestamp);
-                entry.setLastAccessTime(timestamp);
-                entry.setCreationTime(timestamp);
-                target.putNextEntry(entry);
-                target.write(this.classes.get(clazz));
-                target.closeEntry();
-            }
+    public byte[] createBundle() {
+        List<String> sortedNames = new ArrayList<>(this.classes.keySet());
+        Collections.sort(sortedNames);
+        byte[] mainClassBytes = this.mainClass.getBytes(StandardCharsets.UTF_8);
+        byte[][] nameBytes = new byte[sortedNames.size()][];
+        int dataSize = 0;
+        for (int i = 0; i < nameBytes.length; ++i) {
+            nameBytes[i] = sortedNames.get(i).getBytes(StandardCharsets.UTF_8);
+            dataSize += nameBytes[i].length + this.classes.get(sortedNames.get(i)).length;
+        }
+        int indexStart = BUNDLE_HEADER_BYTES + mainClassBytes.length;
+        int dataStart = indexStart + (nameBytes.length * BUNDLE_INDEX_ENTRY_BYTES);
+
+        ByteBuffer buffer = ByteBuffer.allocate(dataStart + dataSize);
+        buffer.putInt(BUNDLE_MAGIC);
+        buffer.putInt(BUNDLE_VERSION);
+        buffer.putInt(this.hasWriteBarriers ? BUNDLE_FLAG_WRITE_BARRIERS : 0);
+        buffer.putInt(this.graphFormatVersion);
+        buffer.putInt(mainClassBytes.length);
+        buffer.put(mainClassBytes);
+        buffer.putInt(nameBytes.length);
+
+        // Write the index, then the data it points to (each name followed by its bytecode, in the same order).
+        int nextOffset = dataStart;
+        for (int i = 0; i < nameBytes.length; ++i) {
+            int bytecodeLength = this.classes.get(sortedNames.get(i)).length;
+            buffer.putInt(nextOffset);
+            buffer.putInt(nameBytes[i].length);
+            nextOffset += nameBytes[i].length;
+            buffer.putInt(nextOffset);
+            buffer.putInt(bytecodeLength);
+            nextOffset += bytecodeLength;
+        }
+        for (int i = 0; i < nameBytes.length; ++i) {
+            buffer.put(nameBytes[i]);
+            buffer.put(this.classes.get(sortedNames.get(i)));
         }
-        return tempJarStream.toByteArray();
+        RuntimeAssertionError.assertTrue(!buffer.hasRemaining());
+        return buffer.array();
     }
 }
@@ -188,11 +188,7 @@ public class Helpers {
      */
     public static Map<String, byte[]> mapIncludingHelperBytecode(Map<String, byte[]> inputMap, byte[] helperBytes) {
         // First, rename the helper class to the runtime helper name.
-        byte[] renamedBytes = new ClassToolchain.Builder(helperBytes, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG)
-                        .addNextVisitor(new ClassRenameVisitor(Helper.RUNTIME_HELPER_NAME))
-                        .addWriter(new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS))
-                        .build()
-                        .runAndGetBytecode();
+        byte[] renamedBytes = renameHelperBytecode(helperBytes);
         
         // Now, construct the map.
         Map<String, byte[]> modifiedMap = new HashMap<>(inputMap);
@@ -201,6 +197,34 @@ public class Helpers {
         return modifiedMap;
     }
 
+    /**
+     * The same as mapIncludingHelperBytecode(inputMap, loadDefaultHelperBytecode()) except that the default Helper is only renamed once
+     * per process, instead of on every call.  This is how every DApp is loaded so it is on the path of every cold load.
+     *
+     * @param inputMap The initial map of class names to bytecodes.
+     * @return The inputMap with the default Helper bytecode added.
+     */
+    public static Map<String, byte[]> mapIncludingDefaultHelperBytecode(Map<String, byte[]> inputMap) {
+        Map<String, byte[]> modifiedMap = new HashMap<>(inputMap);
+        // (the class loaders only read this so they can all share the same instance)
+        modifiedMap.put(Helper.RUNTIME_HELPER_NAME, RenamedDefaultHelper.BYTECODE);
+        modifiedMap.put(blockchainRuntimeClassName, blockchainRuntimeBytes);
+        return modifiedMap;
+    }
+
+    private static byte[] renameHelperBytecode(byte[] helperBytes) {
+        return new ClassToolchain.Builder(helperBytes, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG)
+                        .addNextVisitor(new ClassRenameVisitor(Helper.RUNTIME_HELPER_NAME))
+                        .addWriter(new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS))
+                        .build()
+                        .runAndGetBytecode();
+    }
+
+    // Holds the renamed default Helper, so that it is lazily (and safely) computed the first time it is needed.
+    private static class RenamedDefaultHelper {
+        public static final byte[] BYTECODE = renameHelperBytecode(loadDefaultHelperBytecode());
+    }
+
     public static byte[] loadDefaultHelperBytecode() {
         String helperName = Helper.class.getName();
         String helperResourcePath = Helpers.fulllyQualifiedNameToInternalName(helperName) + ".class";
@@ -133,6 +133,14 @@ public class TestingHelper implements IInstrumentation {
         throw RuntimeAssertionError.unreachable("Shouldn't be called in the testing code");
     }
     @Override
+    public void markLoadedInstanceDirty(int readIndex) {
+        throw RuntimeAssertionError.unreachable("Shouldn't be called in the testing code");
+    }
+    @Override
+    public java.util.BitSet getDirtyLoadedInstances() {
+        throw RuntimeAssertionError.unreachable("Shouldn't be called in the testing code");
+    }
+    @Override
     public boolean isLoadedByCurrentClassLoader(java.lang.Class userClass) {
         throw RuntimeAssertionError.unreachable("Not expected in this test");
     }
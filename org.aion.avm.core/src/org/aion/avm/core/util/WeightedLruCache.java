@@ -0,0 +1,201 @@
+package org.aion.avm.core.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import i.RuntimeAssertionError;
+
+
+/**
+ * A simple concurrent cache, bounded by the total weight of its values and evicting the least-recently used values first.
+ * Unlike a cache based on SoftReferences, the memory it retains is decided by its capacity, not by GC pressure.
+ * Values are checked out (removed) while they are in use and checked back in once they are no longer used, meaning that the order of
+ * check-in is the order of use.
+ * The weight of a value is computed when it is checked in, so it can change while the value is checked out.
+ * Several values can be checked in under the same key, forming a pool:  this way, concurrent users of the same key each check out their
+ * own value and all of them are kept once they are checked back in.  Each value in a pool is weighed and evicted on its own.
+ *
+ * @param <K> The key type (should have sensible hashCode() and equals() implementations).
+ * @param <V> The value type.
+ */
+public class WeightedLruCache<K, V> {
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    // The values checked in under each key, with the most-recently checked-in at the end.
+    private final HashMap<K, ArrayDeque<WeightedValue<K, V>>> pools;
+    // Every value in the pools, insertion-ordered so iteration starts at the least-recently checked-in value.
+    private final LinkedHashSet<WeightedValue<K, V>> lruOrder;
+    private long totalWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The maximum total weight of the values in the cache (0 means nothing is ever cached).
+     * @param weigher Computes the weight of a value when it is checked in (must not be negative).
+     */
+    public WeightedLruCache(long capacity, ToLongFunction<V> weigher) {
+        RuntimeAssertionError.assertTrue(capacity >= 0L);
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.pools = new HashMap<>();
+        this.lruOrder = new LinkedHashSet<>();
+    }
+
+    public synchronized V checkout(K key) {
+        ArrayDeque<WeightedValue<K, V>> pool = this.pools.get(key);
+        V value = null;
+        if (null != pool) {
+            // Prefer the most-recently used value in the pool, since the others are the ones we would rather evict.
+            WeightedValue<K, V> entry = pool.removeLast();
+            if (pool.isEmpty()) {
+                this.pools.remove(key);
+            }
+            this.lruOrder.remove(entry);
+            this.totalWeight -= entry.weight;
+            this.hitCount += 1;
+            value = entry.value;
+        } else {
+            this.missCount += 1;
+        }
+        return value;
+    }
+
+    public void checkin(K key, V value) {
+        // We compute the weight before synchronizing since it may not be cheap.
+        long weight = this.weigher.applyAsLong(value);
+        RuntimeAssertionError.assertTrue(weight >= 0L);
+        synchronized (this) {
+            if (weight > this.capacity) {
+                // This could never fit so just drop it, as though it were immediately evicted.
+                this.evictionCount += 1;
+            } else {
+                // If there is already a value for this key, it was checked in by a concurrent user, so we just add to the pool.
+                WeightedValue<K, V> entry = new WeightedValue<>(key, value, weight);
+                this.pools.computeIfAbsent(key, (k) -> new ArrayDeque<>()).addLast(entry);
+                this.lruOrder.add(entry);
+                this.totalWeight += weight;
+
+                // Evict the least-recently used values until we are back under capacity (this can't reach the new value since it fits).
+                Iterator<WeightedValue<K, V>> iterator = this.lruOrder.iterator();
+                while (this.totalWeight > this.capacity) {
+                    WeightedValue<K, V> eldest = iterator.next();
+                    iterator.remove();
+                    removeFromPool(eldest);
+                    this.evictionCount += 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the values for the given key, if there are any, without counting this as a hit or miss.
+     * This is used when the caller knows the values are stale.
+     *
+     * @param key The key to remove.
+     */
+    public synchronized void discard(K key) {
+        ArrayDeque<WeightedValue<K, V>> pool = this.pools.remove(key);
+        if (null != pool) {
+            for (WeightedValue<K, V> entry : pool) {
+                this.lruOrder.remove(entry);
+                this.totalWeight -= entry.weight;
+            }
+        }
+    }
+
+    /**
+     * Removes all the values matching the given condition, without counting them as evictions (this is used to invalidate values, not
+     * to make space).
+     *
+     * @param condition The condition to test each value.
+     */
+    public synchronized void removeValueIf(Predicate<V> condition) {
+        Iterator<WeightedValue<K, V>> iterator = this.lruOrder.iterator();
+        while (iterator.hasNext()) {
+            WeightedValue<K, V> entry = iterator.next();
+            if (condition.test(entry.value)) {
+                iterator.remove();
+                removeFromPool(entry);
+            }
+        }
+    }
+
+    /**
+     * @return A consistent snapshot of the counters and current size of the cache.
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(this.capacity, this.lruOrder.size(), this.totalWeight, this.hitCount, this.missCount, this.evictionCount);
+    }
+
+    private void removeFromPool(WeightedValue<K, V> entry) {
+        // (the caller already removed it from lruOrder)
+        ArrayDeque<WeightedValue<K, V>> pool = this.pools.get(entry.key);
+        // Note that WeightedValue uses identity equality so this removes exactly this entry.
+        pool.remove(entry);
+        if (pool.isEmpty()) {
+            this.pools.remove(entry.key);
+        }
+        this.totalWeight -= entry.weight;
+    }
+
+
+    private static class WeightedValue<K, V> {
+        public final K key;
+        public final V value;
+        public final long weight;
+        public WeightedValue(K key, V value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * The counters of a cache, since it was created.
+     */
+    public static final class Statistics {
+        public final long capacity;
+        // (each value in a pool counts as an entry)
+        public final int entryCount;
+        public final long totalWeight;
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+
+        public Statistics(long capacity, int entryCount, long totalWeight, long hitCount, long missCount, long evictionCount) {
+            this.capacity = capacity;
+            this.entryCount = entryCount;
+            this.totalWeight = totalWeight;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * @return The fraction of checkouts which found a value (0 if there were none).
+         */
+        public double getHitRate() {
+            long lookups = this.hitCount + this.missCount;
+            return (lookups > 0L)
+                    ? (double) this.hitCount / lookups
+                    : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics(entries: " + this.entryCount
+                    + ", weight: " + this.totalWeight + "/" + this.capacity
+                    + ", hits: " + this.hitCount
+                    + ", misses: " + this.missCount
+                    + ", evictions: " + this.evictionCount + ")";
+        }
+    }
+}
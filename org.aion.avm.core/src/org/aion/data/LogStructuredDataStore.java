@@ -0,0 +1,550 @@
+package org.aion.data;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import i.RuntimeAssertionError;
+
+
+/**
+ * An IDataStore which keeps every account in a single append-only log file, with an in-memory index of where the current version of
+ * everything is in the log.  Unlike DirectoryBackedDataStore, this doesn't slow down as accounts grow large:  a write is one append, a read
+ * is one positional read and listing the storage of an account doesn't touch the file system at all.
+ *
+ * Each record in the log is:  [body length (int)][CRC32 of body (int)][body].  On open, the log is replayed to rebuild the index and
+ * anything after the last complete and valid record (a write torn by a crash) is truncated away.
+ *
+ * Writes are only forced to disk (fsync) once syncIntervalBytes have been appended since the last sync, or when sync() or close() is called,
+ * so a crash of the machine (not just the process) can lose the writes since the last sync (but never corrupts earlier ones).
+ *
+ * Superseded records are left in the log as garbage until it is compacted:  this happens automatically once the garbage is both larger than
+ * minimumCompactionGarbageBytes and larger than the live data, or when compact() is called.  Compaction writes the live data to a new log
+ * and atomically replaces the old one with it.
+ *
+ * Note that this is not thread-safe and that only one instance may have the directory open at a time.
+ */
+public class LogStructuredDataStore implements IDataStore, Closeable {
+    public static final long DEFAULT_SYNC_INTERVAL_BYTES = 1024L * 1024L;
+    public static final long DEFAULT_MINIMUM_COMPACTION_GARBAGE_BYTES = 16L * 1024L * 1024L;
+
+    private static final String LOG_FILE_NAME = "store.log";
+    private static final String COMPACTION_FILE_NAME = "store.log.compacting";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    private static final byte RECORD_CREATE_ACCOUNT = 1;
+    private static final byte RECORD_DELETE_ACCOUNT = 2;
+    private static final byte RECORD_CODE = 3;
+    private static final byte RECORD_TRANSFORMED_CODE = 4;
+    private static final byte RECORD_GRAPH = 5;
+    private static final byte RECORD_BALANCE = 6;
+    private static final byte RECORD_NONCE = 7;
+    private static final byte RECORD_PUT_DATA = 8;
+    private static final byte RECORD_REMOVE_DATA = 9;
+
+    private final File directory;
+    private final long syncIntervalBytes;
+    private final long minimumCompactionGarbageBytes;
+
+    // These are all replaced when the log is re-opened after compaction.
+    private FileChannel log;
+    private long logSize;
+    private long unsyncedBytes;
+    private long garbageBytes;
+    private Map<ByteArrayWrapper, AccountIndex> accounts;
+
+    /**
+     * Opens the store in the given directory, creating it if it doesn't already exist, with the default sync and compaction policy.
+     *
+     * @param directory The directory which will contain the store.
+     */
+    public LogStructuredDataStore(File directory) {
+        this(directory, DEFAULT_SYNC_INTERVAL_BYTES, DEFAULT_MINIMUM_COMPACTION_GARBAGE_BYTES);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it doesn't already exist.
+     *
+     * @param directory The directory which will contain the store.
+     * @param syncIntervalBytes The number of bytes to append before the log is forced to disk.
+     * @param minimumCompactionGarbageBytes The number of bytes of superseded records required before we will automatically compact.
+     */
+    public LogStructuredDataStore(File directory, long syncIntervalBytes, long minimumCompactionGarbageBytes) {
+        if (syncIntervalBytes < 0L) {
+            throw new IllegalArgumentException("Sync interval cannot be negative");
+        }
+        if (minimumCompactionGarbageBytes < 0L) {
+            throw new IllegalArgumentException("Minimum compaction garbage cannot be negative");
+        }
+        this.directory = directory;
+        this.syncIntervalBytes = syncIntervalBytes;
+        this.minimumCompactionGarbageBytes = minimumCompactionGarbageBytes;
+        try {
+            Files.createDirectories(directory.toPath());
+            // A compaction which didn't complete never replaced the log so we can just discard it.
+            Files.deleteIfExists(new File(directory, COMPACTION_FILE_NAME).toPath());
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        openLog();
+    }
+
+    @Override
+    public IAccountStore openAccount(byte[] address) {
+        ByteArrayWrapper wrapper = new ByteArrayWrapper(address);
+        return this.accounts.containsKey(wrapper)
+                ? new LogStructuredAccountStore(wrapper)
+                : null;
+    }
+
+    @Override
+    public IAccountStore createAccount(byte[] address) {
+        ByteArrayWrapper wrapper = new ByteArrayWrapper(address);
+        IAccountStore created = null;
+        if (!this.accounts.containsKey(wrapper)) {
+            writeRecord(encodeRecord(RECORD_CREATE_ACCOUNT, address, null, null));
+            created = new LogStructuredAccountStore(wrapper);
+        }
+        return created;
+    }
+
+    @Override
+    public void deleteAccount(byte[] address) {
+        if (this.accounts.containsKey(new ByteArrayWrapper(address))) {
+            writeRecord(encodeRecord(RECORD_DELETE_ACCOUNT, address, null, null));
+        }
+    }
+
+    /**
+     * Forces everything appended to the log, so far, to disk.
+     */
+    public void sync() {
+        if (this.unsyncedBytes > 0L) {
+            try {
+                this.log.force(false);
+            } catch (IOException e) {
+                // This implementation doesn't handle exceptions.
+                throw RuntimeAssertionError.unexpected(e);
+            }
+            this.unsyncedBytes = 0L;
+        }
+    }
+
+    /**
+     * Rewrites the log so that it only contains the live data, removing all superseded records.
+     */
+    public void compact() {
+        Path compactionPath = new File(this.directory, COMPACTION_FILE_NAME).toPath();
+        try {
+            try (FileChannel compacted = FileChannel.open(compactionPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = 0L;
+                for (AccountIndex account : this.accounts.values()) {
+                    byte[] address = account.address.getData();
+                    position += appendRecord(compacted, position, encodeRecord(RECORD_CREATE_ACCOUNT, address, null, null));
+                    if (null != account.code) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_CODE, address, null, readValue(account.code)));
+                    }
+                    if (null != account.transformedCode) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_TRANSFORMED_CODE, address, null, readValue(account.transformedCode)));
+                    }
+                    if (null != account.graph) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_GRAPH, address, null, readValue(account.graph)));
+                    }
+                    if (0 != account.balanceRecordSize) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_BALANCE, address, null, account.balance.toByteArray()));
+                    }
+                    if (0 != account.nonceRecordSize) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_NONCE, address, null, encodeLong(account.nonce)));
+                    }
+                    for (Map.Entry<ByteArrayWrapper, ValueLocation> elt : account.storage.entrySet()) {
+                        position += appendRecord(compacted, position, encodeRecord(RECORD_PUT_DATA, address, elt.getKey().getData(), readValue(elt.getValue())));
+                    }
+                }
+                compacted.force(true);
+            }
+            this.log.close();
+            Files.move(compactionPath, new File(this.directory, LOG_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        // The new log is just replayed to build the new index.
+        openLog();
+    }
+
+    /**
+     * Syncs the log and closes the store.  After this call, uses of the receiver are undefined.
+     */
+    @Override
+    public void close() {
+        sync();
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+
+    private void openLog() {
+        Path logPath = new File(this.directory, LOG_FILE_NAME).toPath();
+        try {
+            this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.accounts = new LinkedHashMap<>();
+            this.garbageBytes = 0L;
+            this.logSize = replayLog();
+            // Anything after the last valid record is a torn write so drop it before we append after it.
+            this.log.truncate(this.logSize);
+            this.unsyncedBytes = 0L;
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+    }
+
+    private long replayLog() throws IOException {
+        long fileSize = this.log.size();
+        // Note that the stream reads from the channel's own position, which positional reads and writes never move.
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.log.position(0L))));
+        long position = 0L;
+        while (position < fileSize) {
+            byte[] body;
+            try {
+                int bodyLength = stream.readInt();
+                int checksum = stream.readInt();
+                if ((bodyLength <= 0) || (bodyLength > (fileSize - position - RECORD_HEADER_SIZE))) {
+                    break;
+                }
+                body = new byte[bodyLength];
+                stream.readFully(body);
+                if (checksum != checksum(body)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            applyRecord(position, body);
+            position += RECORD_HEADER_SIZE + body.length;
+        }
+        return position;
+    }
+
+    private void writeRecord(byte[] body) {
+        long recordPosition = this.logSize;
+        int recordSize;
+        try {
+            recordSize = appendRecord(this.log, recordPosition, body);
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        // We update the index the same way, whether the record was just written or is being replayed.
+        applyRecord(recordPosition, body);
+        this.logSize += recordSize;
+        this.unsyncedBytes += recordSize;
+        if (this.unsyncedBytes >= this.syncIntervalBytes) {
+            sync();
+        }
+        long liveBytes = this.logSize - this.garbageBytes;
+        if ((this.garbageBytes >= this.minimumCompactionGarbageBytes) && (this.garbageBytes > liveBytes)) {
+            compact();
+        }
+    }
+
+    private void applyRecord(long recordPosition, byte[] body) {
+        int recordSize = RECORD_HEADER_SIZE + body.length;
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte type = buffer.get();
+        ByteArrayWrapper address = new ByteArrayWrapper(readLengthPrefixed(buffer));
+        AccountIndex account = this.accounts.get(address);
+        if (RECORD_CREATE_ACCOUNT == type) {
+            RuntimeAssertionError.assertTrue(null == account);
+            account = new AccountIndex(address, recordSize);
+            this.accounts.put(address, account);
+        } else if (RECORD_DELETE_ACCOUNT == type) {
+            // Everything in the account, and the delete itself, is now garbage.
+            this.garbageBytes += account.getLiveBytes() + recordSize;
+            this.accounts.remove(address);
+        } else if (RECORD_PUT_DATA == type) {
+            ByteArrayWrapper key = new ByteArrayWrapper(readLengthPrefixed(buffer));
+            ValueLocation previous = account.storage.put(key, locateRemainder(recordPosition, buffer, recordSize));
+            this.garbageBytes += garbageSizeOf(previous);
+        } else if (RECORD_REMOVE_DATA == type) {
+            ByteArrayWrapper key = new ByteArrayWrapper(readLengthPrefixed(buffer));
+            ValueLocation previous = account.storage.remove(key);
+            this.garbageBytes += garbageSizeOf(previous) + recordSize;
+        } else if (RECORD_BALANCE == type) {
+            byte[] balance = new byte[buffer.remaining()];
+            buffer.get(balance);
+            this.garbageBytes += account.balanceRecordSize;
+            account.balance = new BigInteger(balance);
+            account.balanceRecordSize = recordSize;
+        } else if (RECORD_NONCE == type) {
+            this.garbageBytes += account.nonceRecordSize;
+            account.nonce = buffer.getLong();
+            account.nonceRecordSize = recordSize;
+        } else if (RECORD_CODE == type) {
+            this.garbageBytes += garbageSizeOf(account.code);
+            account.code = locateRemainder(recordPosition, buffer, recordSize);
+        } else if (RECORD_TRANSFORMED_CODE == type) {
+            this.garbageBytes += garbageSizeOf(account.transformedCode);
+            account.transformedCode = locateRemainder(recordPosition, buffer, recordSize);
+        } else if (RECORD_GRAPH == type) {
+            this.garbageBytes += garbageSizeOf(account.graph);
+            account.graph = locateRemainder(recordPosition, buffer, recordSize);
+        } else {
+            throw RuntimeAssertionError.unreachable("Unknown record type: " + type);
+        }
+    }
+
+    private byte[] readValue(ValueLocation location) {
+        if (null == location) {
+            return null;
+        }
+        byte[] value = new byte[location.valueLength];
+        ByteBuffer buffer = ByteBuffer.wrap(value);
+        try {
+            while (buffer.hasRemaining()) {
+                int read = this.log.read(buffer, location.valuePosition + buffer.position());
+                RuntimeAssertionError.assertTrue(read >= 0);
+            }
+        } catch (IOException e) {
+            // This implementation doesn't handle exceptions.
+            throw RuntimeAssertionError.unexpected(e);
+        }
+        return value;
+    }
+
+    private static int appendRecord(FileChannel channel, long position, byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt(checksum(body));
+        record.put(body);
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        return record.capacity();
+    }
+
+    private static byte[] encodeRecord(byte type, byte[] address, byte[] key, byte[] value) {
+        int size = Byte.BYTES
+                + Integer.BYTES + address.length
+                + ((null != key) ? (Integer.BYTES + key.length) : 0)
+                + ((null != value) ? value.length : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(type);
+        buffer.putInt(address.length);
+        buffer.put(address);
+        if (null != key) {
+            buffer.putInt(key.length);
+            buffer.put(key);
+        }
+        if (null != value) {
+            // The value is always last so its length is implied by the record length.
+            buffer.put(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] readLengthPrefixed(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+        return data;
+    }
+
+    private static ValueLocation locateRemainder(long recordPosition, ByteBuffer buffer, int recordSize) {
+        return new ValueLocation(recordPosition + RECORD_HEADER_SIZE + buffer.position(), buffer.remaining(), recordSize);
+    }
+
+    private static long garbageSizeOf(ValueLocation location) {
+        return (null != location)
+                ? location.recordSize
+                : 0L;
+    }
+
+    private static int checksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodeLong(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+
+
+    /**
+     * Where a value lives in the log, and the size of the record containing it (which becomes garbage once the value is superseded).
+     */
+    private static final class ValueLocation {
+        public final long valuePosition;
+        public final int valueLength;
+        public final int recordSize;
+
+        public ValueLocation(long valuePosition, int valueLength, int recordSize) {
+            this.valuePosition = valuePosition;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+
+    /**
+     * The in-memory index of a single account.  The balance and nonce are small enough that we just keep their values.
+     */
+    private static final class AccountIndex {
+        public final ByteArrayWrapper address;
+        public final int createRecordSize;
+        public ValueLocation code;
+        public ValueLocation transformedCode;
+        public ValueLocation graph;
+        public final Map<ByteArrayWrapper, ValueLocation> storage;
+        public BigInteger balance;
+        // 0 if the balance was never written.
+        public int balanceRecordSize;
+        public long nonce;
+        // 0 if the nonce was never written.
+        public int nonceRecordSize;
+
+        public AccountIndex(ByteArrayWrapper address, int createRecordSize) {
+            this.address = address;
+            this.createRecordSize = createRecordSize;
+            this.storage = new HashMap<>();
+            this.balance = BigInteger.ZERO;
+            this.nonce = 0L;
+        }
+
+        public long getLiveBytes() {
+            long liveBytes = this.createRecordSize
+                    + garbageSizeOf(this.code)
+                    + garbageSizeOf(this.transformedCode)
+                    + garbageSizeOf(this.graph)
+                    + this.balanceRecordSize
+                    + this.nonceRecordSize;
+            for (ValueLocation location : this.storage.values()) {
+                liveBytes += location.recordSize;
+            }
+            return liveBytes;
+        }
+    }
+
+
+    /**
+     * A view of one account in the store.  This looks up the account index on every call since compaction replaces the index.
+     */
+    private final class LogStructuredAccountStore implements IAccountStore {
+        private final ByteArrayWrapper address;
+
+        public LogStructuredAccountStore(ByteArrayWrapper address) {
+            this.address = address;
+        }
+
+        @Override
+        public byte[] getCode() {
+            return readValue(index().code);
+        }
+
+        @Override
+        public void setCode(byte[] code) {
+            write(RECORD_CODE, null, code);
+        }
+
+        @Override
+        public byte[] getTransformedCode() {
+            return readValue(index().transformedCode);
+        }
+
+        @Override
+        public void setTransformedCode(byte[] code) {
+            write(RECORD_TRANSFORMED_CODE, null, code);
+        }
+
+        @Override
+        public BigInteger getBalance() {
+            return index().balance;
+        }
+
+        @Override
+        public void setBalance(BigInteger balance) {
+            write(RECORD_BALANCE, null, balance.toByteArray());
+        }
+
+        @Override
+        public long getNonce() {
+            return index().nonce;
+        }
+
+        @Override
+        public void setNonce(long nonce) {
+            write(RECORD_NONCE, null, encodeLong(nonce));
+        }
+
+        @Override
+        public byte[] getData(byte[] key) {
+            return readValue(index().storage.get(new ByteArrayWrapper(key)));
+        }
+
+        @Override
+        public void setData(byte[] key, byte[] value) {
+            write(RECORD_PUT_DATA, key, value);
+        }
+
+        @Override
+        public void removeData(byte[] key) {
+            if (index().storage.containsKey(new ByteArrayWrapper(key))) {
+                write(RECORD_REMOVE_DATA, key, null);
+            }
+        }
+
+        @Override
+        public Map<ByteArrayWrapper, byte[]> getStorageEntries() {
+            Map<ByteArrayWrapper, byte[]> result = new HashMap<>();
+            for (Map.Entry<ByteArrayWrapper, ValueLocation> elt : index().storage.entrySet()) {
+                result.put(elt.getKey(), readValue(elt.getValue()));
+            }
+            return result;
+        }
+
+        @Override
+        public void setObjectGraph(byte[] data) {
+            write(RECORD_GRAPH, null, data);
+        }
+
+        @Override
+        public byte[] getObjectGraph() {
+            return readValue(index().graph);
+        }
+
+        private AccountIndex index() {
+            AccountIndex index = LogStructuredDataStore.this.accounts.get(this.address);
+            // Using an account after it was deleted is a usage error.
+            RuntimeAssertionError.assertTrue(null != index);
+            return index;
+        }
+
+        private void write(byte type, byte[] key, byte[] value) {
+            // Make sure the account still exists before we write anything referring to it.
+            index();
+            writeRecord(encodeRecord(type, this.address.getData(), key, value));
+        }
+    }
+}
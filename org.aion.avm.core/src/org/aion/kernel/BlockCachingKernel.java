@@ -0,0 +1,318 @@
+package org.aion.kernel;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.types.AionAddress;
+import org.aion.vm.api.interfaces.KernelInterface;
+
+
+/**
+ * A thread-safe cache of the state read from the kernel given to us by the node, for the duration of a single block.
+ * It sits between that kernel and the TransactionalKernel of each task in the block so that the executor threads can read the state the
+ * block needs from memory, instead of each making a synchronous call down to the node.
+ *
+ * Every read which misses the cache is read from the node's kernel and cached, for the rest of the block, so a task which is aborted and
+ * retried (or any later task reading the same account) doesn't read it again.  The cache can also be warmed by prefetch(), in one parallel
+ * pass, before the block starts executing.
+ * Every write is passed straight through to the node's kernel and then invalidates exactly the cached state it affects (a single storage
+ * key, or everything about an account which is created or deleted), so the reads through this kernel always see what the node would return.
+ *
+ * Since the executor threads read concurrently with the commits, a read which misses only caches what it read if no write was completed
+ * while it was reading (otherwise, it could cache the value from before that write, after the write invalidated it).
+ *
+ * The checks which the node may implement with special logic (accountNonceEquals(), accountBalanceIsAtLeast() and so on) are always
+ * delegated, unchanged.
+ */
+public class BlockCachingKernel implements KernelInterface {
+    private final KernelInterface parent;
+    private final Map<AionAddress, BigInteger> balances;
+    private final Map<AionAddress, BigInteger> nonces;
+    private final Map<AionAddress, CachedBytes> transformedCode;
+    private final Map<AionAddress, CachedBytes> objectGraphs;
+    private final Map<AionAddress, CachedBytes> code;
+    private final Map<AionAddress, Map<ByteArrayWrapper, CachedBytes>> storage;
+    // Incremented after every write, under the monitor, so that a read which misses can tell if it raced with a write.
+    private volatile long writeGeneration;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Creates a new, empty, cache over the given kernel.
+     *
+     * @param parent The kernel given to us by the node, for this block.
+     */
+    public BlockCachingKernel(KernelInterface parent) {
+        this.parent = parent;
+        this.balances = new ConcurrentHashMap<>();
+        this.nonces = new ConcurrentHashMap<>();
+        this.transformedCode = new ConcurrentHashMap<>();
+        this.objectGraphs = new ConcurrentHashMap<>();
+        this.code = new ConcurrentHashMap<>();
+        this.storage = new ConcurrentHashMap<>();
+        this.writeGeneration = 0L;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @return The number of reads served from the cache.
+     */
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return The number of reads which had to be read from the parent kernel (including those made by prefetch()).
+     */
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Reads the balance, nonce, transformed code and object graph of the given accounts from the parent kernel, in parallel, and caches
+     * them (anything already cached is not read again).
+     *
+     * @param addresses The accounts the block is expected to read (typically, the sender and recipient of each transaction).
+     */
+    public void prefetch(Collection<AionAddress> addresses) {
+        addresses.parallelStream().forEach((address) -> {
+            getBalance(address);
+            getNonce(address);
+            getTransformedCode(address);
+            getObjectGraph(address);
+        });
+    }
+
+    @Override
+    public KernelInterface makeChildKernelInterface() {
+        return new TransactionalKernel(this);
+    }
+
+    @Override
+    public void commit() {
+        this.parent.commit();
+    }
+
+    @Override
+    public void commitTo(KernelInterface target) {
+        this.parent.commitTo(target);
+    }
+
+    @Override
+    public void createAccount(AionAddress address) {
+        this.parent.createAccount(address);
+        invalidateAccount(address);
+    }
+
+    @Override
+    public boolean hasAccountState(AionAddress address) {
+        return this.parent.hasAccountState(address);
+    }
+
+    @Override
+    public byte[] getCode(AionAddress address) {
+        return readThrough(this.code, address, (key) -> new CachedBytes(this.parent.getCode(key))).bytes;
+    }
+
+    @Override
+    public void putCode(AionAddress address, byte[] code) {
+        this.parent.putCode(address, code);
+        invalidate(this.code, address);
+    }
+
+    @Override
+    public byte[] getTransformedCode(AionAddress address) {
+        return readThrough(this.transformedCode, address, (key) -> new CachedBytes(this.parent.getTransformedCode(key))).bytes;
+    }
+
+    @Override
+    public void setTransformedCode(AionAddress address, byte[] code) {
+        this.parent.setTransformedCode(address, code);
+        invalidate(this.transformedCode, address);
+    }
+
+    @Override
+    public void putObjectGraph(AionAddress address, byte[] graph) {
+        this.parent.putObjectGraph(address, graph);
+        invalidate(this.objectGraphs, address);
+    }
+
+    @Override
+    public byte[] getObjectGraph(AionAddress address) {
+        return readThrough(this.objectGraphs, address, (key) -> new CachedBytes(this.parent.getObjectGraph(key))).bytes;
+    }
+
+    @Override
+    public void putStorage(AionAddress address, byte[] key, byte[] value) {
+        this.parent.putStorage(address, key, value);
+        invalidate(this.storage.get(address), new ByteArrayWrapper(key));
+    }
+
+    @Override
+    public void removeStorage(AionAddress address, byte[] key) {
+        this.parent.removeStorage(address, key);
+        invalidate(this.storage.get(address), new ByteArrayWrapper(key));
+    }
+
+    @Override
+    public byte[] getStorage(AionAddress address, byte[] key) {
+        Map<ByteArrayWrapper, CachedBytes> accountStorage = this.storage.computeIfAbsent(address, (ignored) -> new ConcurrentHashMap<>());
+        return readThrough(accountStorage, new ByteArrayWrapper(key), (ignored) -> new CachedBytes(this.parent.getStorage(address, key))).bytes;
+    }
+
+    @Override
+    public void deleteAccount(AionAddress address) {
+        this.parent.deleteAccount(address);
+        invalidateAccount(address);
+    }
+
+    @Override
+    public BigInteger getBalance(AionAddress address) {
+        return readThrough(this.balances, address, this.parent::getBalance);
+    }
+
+    @Override
+    public void adjustBalance(AionAddress address, BigInteger delta) {
+        this.parent.adjustBalance(address, delta);
+        invalidate(this.balances, address);
+    }
+
+    @Override
+    public BigInteger getNonce(AionAddress address) {
+        return readThrough(this.nonces, address, this.parent::getNonce);
+    }
+
+    @Override
+    public void incrementNonce(AionAddress address) {
+        this.parent.incrementNonce(address);
+        invalidate(this.nonces, address);
+    }
+
+    @Override
+    public void deductEnergyCost(AionAddress address, BigInteger cost) {
+        this.parent.deductEnergyCost(address, cost);
+        invalidate(this.balances, address);
+    }
+
+    @Override
+    public void refundAccount(AionAddress address, BigInteger amount) {
+        this.parent.refundAccount(address, amount);
+        invalidate(this.balances, address);
+    }
+
+    @Override
+    public void payMiningFee(AionAddress address, BigInteger fee) {
+        this.parent.payMiningFee(address, fee);
+        invalidate(this.balances, address);
+    }
+
+    @Override
+    public byte[] getBlockHashByNumber(long blockNumber) {
+        return this.parent.getBlockHashByNumber(blockNumber);
+    }
+
+    @Override
+    public boolean accountNonceEquals(AionAddress address, BigInteger nonce) {
+        return this.parent.accountNonceEquals(address, nonce);
+    }
+
+    @Override
+    public boolean accountBalanceIsAtLeast(AionAddress address, BigInteger amount) {
+        return this.parent.accountBalanceIsAtLeast(address, amount);
+    }
+
+    @Override
+    public boolean isValidEnergyLimitForCreate(long energyLimit) {
+        return this.parent.isValidEnergyLimitForCreate(energyLimit);
+    }
+
+    @Override
+    public boolean isValidEnergyLimitForNonCreate(long energyLimit) {
+        return this.parent.isValidEnergyLimitForNonCreate(energyLimit);
+    }
+
+    @Override
+    public boolean destinationAddressIsSafeForThisVM(AionAddress address) {
+        return this.parent.destinationAddressIsSafeForThisVM(address);
+    }
+
+    @Override
+    public long getBlockNumber() {
+        return this.parent.getBlockNumber();
+    }
+
+    @Override
+    public long getBlockTimestamp() {
+        return this.parent.getBlockTimestamp();
+    }
+
+    @Override
+    public long getBlockEnergyLimit() {
+        return this.parent.getBlockEnergyLimit();
+    }
+
+    @Override
+    public long getBlockDifficulty() {
+        return this.parent.getBlockDifficulty();
+    }
+
+    @Override
+    public AionAddress getMinerAddress() {
+        return this.parent.getMinerAddress();
+    }
+
+
+    private <K, V> V readThrough(Map<K, V> cache, K key, Function<K, V> reader) {
+        V value = cache.get(key);
+        if (null != value) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+            long generation = this.writeGeneration;
+            value = reader.apply(key);
+            synchronized (this) {
+                // If a write completed while we were reading, we may have read the value it replaced, so we can't cache it.
+                if (generation == this.writeGeneration) {
+                    cache.putIfAbsent(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    private synchronized <K, V> void invalidate(Map<K, V> cache, K key) {
+        // (the storage of an account we never read from has no map)
+        if (null != cache) {
+            cache.remove(key);
+        }
+        this.writeGeneration += 1;
+    }
+
+    private synchronized void invalidateAccount(AionAddress address) {
+        this.balances.remove(address);
+        this.nonces.remove(address);
+        this.transformedCode.remove(address);
+        this.objectGraphs.remove(address);
+        this.code.remove(address);
+        this.storage.remove(address);
+        this.writeGeneration += 1;
+    }
+
+
+    /**
+     * Holds cached bytes so that we can also cache the fact that there are none (null).
+     */
+    private static final class CachedBytes {
+        public final byte[] bytes;
+
+        public CachedBytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
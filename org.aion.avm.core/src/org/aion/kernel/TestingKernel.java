@@ -74,7 +74,18 @@ public class TestingKernel implements KernelInterface {
      * @param block The top block of the current state of this kernel.
      */
     public TestingKernel(File onDiskRoot, TestingBlock block) {
-        this.dataStore = new DirectoryBackedDataStore(onDiskRoot);
+        this(new DirectoryBackedDataStore(onDiskRoot), block);
+    }
+
+    /**
+     * Creates an instance of the interface which is backed by the given data store (for example, a LogStructuredDataStore, for running
+     * with a realistic amount of state).
+     * 
+     * @param dataStore The store containing the current state of this kernel.
+     * @param block The top block of the current state of this kernel.
+     */
+    public TestingKernel(IDataStore dataStore, TestingBlock block) {
+        this.dataStore = dataStore;
         // Try to open the account, creating it if doesn't exist.
         IAccountStore premined = this.dataStore.openAccount(PREMINED_ADDRESS.toByteArray());
         if (null == premined) {
@@ -1,11 +1,8 @@
 package org.aion.kernel;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.function.Consumer;
 
 import org.aion.types.AionAddress;
 import org.aion.avm.core.types.Pair;
@@ -16,14 +13,15 @@ import org.aion.vm.api.interfaces.KernelInterface;
 /**
  * A transactional implementation of the KernelInterface which only writes back to its "parent" on commit.
  * 
- * This uses a relatively extensible pattern for its implementation, building a transaction log rather than its own actual direct implementation.
- * This means that changes to the interface should mostly just translate into a new kind of transaction log entry, in this implementation.
+ * Each write is applied to a cache, to answer reads, and recorded in a WriteSet, which coalesces the writes to each account and storage key
+ * so that the commit only writes the final state of each, in one batch.
+ * This means that changes to the interface should mostly just translate into a new kind of entry in the WriteSet, in this implementation.
  * Special attention needs to be paid to read-and-write operations (such as adjustBalance()) and anything involving deletes.
  */
 public class TransactionalKernel implements KernelInterface {
     private final KernelInterface parent;
     private final CachingKernel writeCache;
-    private final List<Consumer<KernelInterface>> writeLog;
+    private final WriteSet writeSet;
     private final Set<ByteArrayWrapper> deletedAccountProjection;
     private final Set<ByteArrayWrapper> cachedAccountBalances;
     private final Set<Pair<AionAddress, ByteArrayWrapper>> deletedStorageKeys;
@@ -38,7 +36,7 @@ public class TransactionalKernel implements KernelInterface {
     public TransactionalKernel(KernelInterface parent) {
         this.parent = parent;
         this.writeCache = new CachingKernel();
-        this.writeLog = new ArrayList<>();
+        this.writeSet = new WriteSet();
         this.deletedAccountProjection = new HashSet<>();
         this.cachedAccountBalances = new HashSet<>();
         this.blockDifficulty = parent.getBlockDifficulty();
@@ -56,13 +54,12 @@ public class TransactionalKernel implements KernelInterface {
 
     /**
      * Causes the changes enqueued in the receiver to be written back to the parent.
+     * If the parent is also a TransactionalKernel, this merges our writes into its own write-set, so they stay coalesced.
      * After this call, uses of the receiver are undefined.
      */
     @Override
     public void commit() {
-        for (Consumer<KernelInterface> mutation : this.writeLog) {
-            mutation.accept(this.parent);
-        }
+        this.writeSet.applyTo(this.parent);
     }
 
     /**
@@ -71,18 +68,20 @@ public class TransactionalKernel implements KernelInterface {
      */
     @Override
     public void commitTo(KernelInterface target) {
-        for (Consumer<KernelInterface> mutation : this.writeLog) {
-            mutation.accept(target);
-        }
+        this.writeSet.applyTo(target);
+    }
+
+    /**
+     * @return The writes made through the receiver, so far (this is a live view which must not be modified).
+     */
+    public WriteSet getWriteSet() {
+        return this.writeSet;
     }
 
     @Override
     public void createAccount(AionAddress address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.createAccount(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.createAccount(address);
+        this.writeSet.createAccount(address);
         this.deletedAccountProjection.remove(new ByteArrayWrapper(address.toByteArray()));
         // Say that we have this cached so we don't go back to any old version in the parent (even though it is unlikely we will create over delete).
         this.cachedAccountBalances.add(new ByteArrayWrapper(address.toByteArray()));
@@ -114,11 +113,8 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void putCode(AionAddress address, byte[] code) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.putCode(address, code);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.putCode(address, code);
+        this.writeSet.putCode(address, code);
     }
 
     @Override
@@ -135,20 +131,14 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void setTransformedCode(AionAddress address, byte[] bytes) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.setTransformedCode(address, bytes);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.setTransformedCode(address, bytes);
+        this.writeSet.setTransformedCode(address, bytes);
     }
 
     @Override
     public void putObjectGraph(AionAddress address, byte[] bytes) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.putObjectGraph(address, bytes);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.putObjectGraph(address, bytes);
+        this.writeSet.putObjectGraph(address, bytes);
     }
 
     @Override
@@ -162,14 +152,11 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void putStorage(AionAddress address, byte[] key, byte[] value) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.putStorage(address, key, value);
-        };
         if(deletedStorageKeys.contains(Pair.of(address, new ByteArrayWrapper(key)))){
             deletedStorageKeys.remove(Pair.of(address, new ByteArrayWrapper(key)));
         }
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.putStorage(address, key, value);
+        this.writeSet.putStorage(address, key, value);
     }
 
     @Override
@@ -186,11 +173,8 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void deleteAccount(AionAddress address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.deleteAccount(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.deleteAccount(address);
+        this.writeSet.deleteAccount(address);
         this.deletedAccountProjection.add(new ByteArrayWrapper(address.toByteArray()));
         this.cachedAccountBalances.remove(new ByteArrayWrapper(address.toByteArray()));
     }
@@ -224,11 +208,8 @@ public class TransactionalKernel implements KernelInterface {
         // If this was previously deleted, fake the lazy re-creation.
         this.deletedAccountProjection.remove(new ByteArrayWrapper(address.toByteArray()));
 
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.adjustBalance(address, delta);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.adjustBalance(address, delta);
+        this.writeSet.adjustBalance(address, delta);
     }
 
     @Override
@@ -245,11 +226,8 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void incrementNonce(AionAddress address) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.incrementNonce(address);
-        };
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.incrementNonce(address);
+        this.writeSet.incrementNonce(address);
     }
 
     @Override
@@ -305,12 +283,9 @@ public class TransactionalKernel implements KernelInterface {
 
     @Override
     public void removeStorage(AionAddress address, byte[] key) {
-        Consumer<KernelInterface> write = (kernel) -> {
-            kernel.removeStorage(address, key);
-        };
         deletedStorageKeys.add(Pair.of(address, new ByteArrayWrapper(key)));
-        write.accept(writeCache);
-        writeLog.add(write);
+        this.writeCache.removeStorage(address, key);
+        this.writeSet.removeStorage(address, key);
     }
 
     @Override
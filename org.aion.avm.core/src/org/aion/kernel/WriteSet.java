@@ -0,0 +1,220 @@
+package org.aion.kernel;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.types.AionAddress;
+import org.aion.vm.api.interfaces.KernelInterface;
+
+
+/**
+ * The writes made through a TransactionalKernel, coalesced per account and per storage key.
+ * Only the final value of each code, graph and storage key is kept, balance adjustments are summed and nonce increments are counted, so
+ * applying the write-set to a kernel costs one write per thing changed, no matter how many times it was written.
+ * Deleting an account discards all the writes to it, recorded before the delete, since they would be deleted anyway.
+ *
+ * The write-set can also be inspected (for example, to detect conflicts between transactions or to compare their effects).
+ * Accounts are reported in the order they were first written and storage keys in the order they were first written, within their account.
+ */
+public class WriteSet {
+    private final Map<AionAddress, AccountWrites> accounts;
+
+    public WriteSet() {
+        this.accounts = new LinkedHashMap<>();
+    }
+
+    public void createAccount(AionAddress address) {
+        lazyCreateAccountWrites(address).isCreated = true;
+    }
+
+    public void deleteAccount(AionAddress address) {
+        // Nothing written before the delete can survive it so we start again (apart from remembering to delete).
+        AccountWrites writes = new AccountWrites(address);
+        writes.isDeleted = true;
+        this.accounts.put(address, writes);
+    }
+
+    public void putCode(AionAddress address, byte[] code) {
+        lazyCreateAccountWrites(address).code = code;
+    }
+
+    public void setTransformedCode(AionAddress address, byte[] code) {
+        lazyCreateAccountWrites(address).transformedCode = code;
+    }
+
+    public void putObjectGraph(AionAddress address, byte[] graph) {
+        lazyCreateAccountWrites(address).objectGraph = graph;
+    }
+
+    public void putStorage(AionAddress address, byte[] key, byte[] value) {
+        lazyCreateAccountWrites(address).storage.put(new ByteArrayWrapper(key), value);
+    }
+
+    public void removeStorage(AionAddress address, byte[] key) {
+        // A null value describes the removal.
+        lazyCreateAccountWrites(address).storage.put(new ByteArrayWrapper(key), null);
+    }
+
+    public void adjustBalance(AionAddress address, BigInteger delta) {
+        AccountWrites writes = lazyCreateAccountWrites(address);
+        writes.balanceDelta = (null != writes.balanceDelta)
+                ? writes.balanceDelta.add(delta)
+                : delta;
+    }
+
+    public void incrementNonce(AionAddress address) {
+        lazyCreateAccountWrites(address).nonceIncrements += 1;
+    }
+
+    /**
+     * Applies the writes to the given kernel, in one pass.  The result is the same as applying every individual write, in order.
+     * Within each account, the writes are applied in the order:  delete, create, code, transformed code, graph, storage, balance, nonce.
+     *
+     * @param target The kernel to write to.
+     */
+    public void applyTo(KernelInterface target) {
+        for (AccountWrites writes : this.accounts.values()) {
+            AionAddress address = writes.address;
+            if (writes.isDeleted) {
+                target.deleteAccount(address);
+            }
+            if (writes.isCreated) {
+                target.createAccount(address);
+            }
+            if (null != writes.code) {
+                target.putCode(address, writes.code);
+            }
+            if (null != writes.transformedCode) {
+                target.setTransformedCode(address, writes.transformedCode);
+            }
+            if (null != writes.objectGraph) {
+                target.putObjectGraph(address, writes.objectGraph);
+            }
+            for (Map.Entry<ByteArrayWrapper, byte[]> elt : writes.storage.entrySet()) {
+                if (null != elt.getValue()) {
+                    target.putStorage(address, elt.getKey().getData(), elt.getValue());
+                } else {
+                    target.removeStorage(address, elt.getKey().getData());
+                }
+            }
+            // Note that we still apply a balance adjustment which summed to zero, since adjusting may implicitly create the account.
+            if (null != writes.balanceDelta) {
+                target.adjustBalance(address, writes.balanceDelta);
+            }
+            for (int i = 0; i < writes.nonceIncrements; ++i) {
+                target.incrementNonce(address);
+            }
+        }
+    }
+
+    /**
+     * @return True if nothing has been written.
+     */
+    public boolean isEmpty() {
+        return this.accounts.isEmpty();
+    }
+
+    /**
+     * @return The addresses of every account written, in the order they were first written.
+     */
+    public Set<AionAddress> getWrittenAddresses() {
+        return Collections.unmodifiableSet(this.accounts.keySet());
+    }
+
+    /**
+     * @param address An account address.
+     * @return The writes to the account or null, if it wasn't written.
+     */
+    public AccountWrites getAccountWrites(AionAddress address) {
+        return this.accounts.get(address);
+    }
+
+    /**
+     * @return The writes to every account written, in the order they were first written.
+     */
+    public Collection<AccountWrites> getAllAccountWrites() {
+        return Collections.unmodifiableCollection(this.accounts.values());
+    }
+
+    private AccountWrites lazyCreateAccountWrites(AionAddress address) {
+        return this.accounts.computeIfAbsent(address, AccountWrites::new);
+    }
+
+
+    /**
+     * The coalesced writes to a single account.
+     */
+    public static final class AccountWrites {
+        public final AionAddress address;
+        private boolean isDeleted;
+        private boolean isCreated;
+        private byte[] code;
+        private byte[] transformedCode;
+        private byte[] objectGraph;
+        // A null value means the key was removed.
+        private final Map<ByteArrayWrapper, byte[]> storage;
+        // Null if the balance was never adjusted (as opposed to adjusted by a total of 0).
+        private BigInteger balanceDelta;
+        private int nonceIncrements;
+
+        private AccountWrites(AionAddress address) {
+            this.address = address;
+            this.storage = new LinkedHashMap<>();
+        }
+
+        /**
+         * @return True if the account was deleted before any of the other writes.
+         */
+        public boolean isDeleted() {
+            return this.isDeleted;
+        }
+
+        public boolean isCreated() {
+            return this.isCreated;
+        }
+
+        /**
+         * @return The code written or null, if it wasn't written.
+         */
+        public byte[] getCode() {
+            return this.code;
+        }
+
+        /**
+         * @return The transformed code written or null, if it wasn't written.
+         */
+        public byte[] getTransformedCode() {
+            return this.transformedCode;
+        }
+
+        /**
+         * @return The object graph written or null, if it wasn't written.
+         */
+        public byte[] getObjectGraph() {
+            return this.objectGraph;
+        }
+
+        /**
+         * @return The final value of every storage key written, with null for a removed key.
+         */
+        public Map<ByteArrayWrapper, byte[]> getStorage() {
+            return Collections.unmodifiableMap(this.storage);
+        }
+
+        /**
+         * @return The total of the balance adjustments or null, if the balance wasn't adjusted.
+         */
+        public BigInteger getBalanceDelta() {
+            return this.balanceDelta;
+        }
+
+        public int getNonceIncrements() {
+            return this.nonceIncrements;
+        }
+    }
+}
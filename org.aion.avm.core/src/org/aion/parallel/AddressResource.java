@@ -21,10 +21,14 @@ class AddressResource {
 
     private TransactionTask ownedBy;
 
+    // The total time tasks have spent waiting to acquire this resource.
+    private long waitNanos;
+
     AddressResource(){
         this.waitingQueue = new PriorityQueue<>();
         this.isOwned = false;
         this.ownedBy = null;
+        this.waitNanos = 0L;
     }
 
     boolean addToWaitingQueue(TransactionTask task){
@@ -63,6 +67,14 @@ class AddressResource {
         return this.waitingQueue.peek();
     }
 
+    void addWaitNanos(long nanos){
+        this.waitNanos += nanos;
+    }
+
+    long getWaitNanos(){
+        return this.waitNanos;
+    }
+
     @Override
     public String toString() {
         String ret = super.toString().split("@")[1];
@@ -4,47 +4,67 @@ import i.RuntimeAssertionError;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.aion.types.AionAddress;
 
 /**
  * Used by executor threads to communicate with each other.
  * Executor threads can only acquire/release {@link AddressResource}, commit result through this monitor.
  * A new monitor will be created for each batch of transactions.
+ *
+ * There is no monitor-wide lock:  each {@link AddressResource} is guarded by its own monitor (so only tasks touching the same address
+ * contend) and the commit sequence is an atomic counter.
+ * A blocked executor thread parks and is only unparked when something it is waiting for changes:  the resource it is waiting on was
+ * released, its task was told to abort, or the commit counter reached the index of its task.  This avoids waking every executor thread
+ * on every release.
+ *
+ * The monitor also measures how long tasks wait for each address and for their turn to commit, for the block metrics.  The clock is only
+ * read when a task actually has to wait.
  */
 public class AddressResourceMonitor {
-    static boolean DEBUG = false;
-
     // Map for resource retrieval
-    private HashMap<AddressWrapper, AddressResource> resources;
+    private final ConcurrentHashMap<AddressWrapper, AddressResource> resources;
 
     // Ownership records for each task. It provide fast resource release.
-    private HashMap<TransactionTask, Set<AddressResource>> ownerships;
+    // (each set is only ever accessed by the thread running its task)
+    private final ConcurrentHashMap<TransactionTask, Set<AddressResource>> ownerships;
 
-    // Private monitor for safety
-    private final Object sync;
+    // The thread currently blocked on behalf of each task, by task index (a task only ever blocks in one place at a time).
+    private final ConcurrentHashMap<Integer, Thread> blockedThreads;
 
     // Commit counter used to serialize transaction commit
-    private int commitCounter;
+    private final AtomicInteger commitCounter;
+
+    // The total time tasks spent waiting for their turn to commit.
+    private final LongAdder commitWaitNanos;
 
     public AddressResourceMonitor()
     {
-        this.resources = new HashMap<>();
-        this.ownerships = new HashMap<>();
-        this.sync = new Object();
-        this.commitCounter = 0;
+        this.resources = new ConcurrentHashMap<>();
+        this.ownerships = new ConcurrentHashMap<>();
+        this.blockedThreads = new ConcurrentHashMap<>();
+        this.commitCounter = new AtomicInteger(0);
+        this.commitWaitNanos = new LongAdder();
     }
 
     /**
      * Reset the state of the address resource monitor.
      * This method will be called for each batch of transaction request.
+     * Note that no executor thread can be using the monitor while it is being reset.
      *
      */
     public void clear(){
-        synchronized (sync) {
-            this.resources.clear();
-            this.ownerships.clear();
-            this.commitCounter = 0;
-        }
+        this.resources.clear();
+        this.ownerships.clear();
+        this.blockedThreads.clear();
+        this.commitCounter.set(0);
+        this.commitWaitNanos.reset();
     }
 
     /**
@@ -62,78 +82,83 @@ public class AddressResourceMonitor {
      * @param task The requester task.
      */
     public void acquire(byte[] address, TransactionTask task){
-        synchronized (sync) {
-            AddressWrapper addressWrapper = new AddressWrapper(address);
-            AddressResource resource = getResource(addressWrapper);
+        AddressWrapper addressWrapper = new AddressWrapper(address);
+        AddressResource resource = this.resources.computeIfAbsent(addressWrapper, (key) -> new AddressResource());
 
-            // Add task to the waiting queue.
+        // Add task to the waiting queue.
+        TransactionTask abortedOwner = null;
+        synchronized (resource) {
             if (resource.addToWaitingQueue(task)) {
-                sync.notifyAll();
-            }
-
-            long startTime = 0;
-            long endTime = 0;
-
-            if (DEBUG) {
-                int holder = null != resource.getOwnedBy() ? resource.getOwnedBy().getIndex() : -1;
-                int nextOwner = null != resource.getNextOwner() ? resource.getNextOwner().getIndex() : -1;
-                System.out.println("Request " + task.getIndex() + " " + resource.toString() + " hold by " + holder +
-                        " nextOwner " + nextOwner + " locked " + resource.isOwned() + " inAbortState " + task.inAbortState());
-                startTime = System.nanoTime();
+                abortedOwner = resource.getOwnedBy();
             }
+        }
+        if (null != abortedOwner) {
+            // The owner must yield the resource to us so wake it up, if it is blocked anywhere.
+            wakeTask(abortedOwner);
+        }
 
-            // Resource res is granted to task iff
-            // res is not hold by other task && task is the next owner
-            while ((resource.isOwned() || !resource.isNextOwner(task)) && task != resource.getOwnedBy()
-                    && !task.inAbortState()){
-                try {
-                    sync.wait();
-                }catch (InterruptedException e){
-                    RuntimeAssertionError.unreachable("Waiting executor thread received interruption: ACQUIRE");
+        // Resource res is granted to task iff
+        // res is not hold by other task && task is the next owner
+        // Note that we register as blocked before checking, so any change after the check will unpark us (or leave the permit, if we
+        // haven't yet parked).
+        // We only read the clock if we actually need to wait, so uncontended acquires don't pay for the metrics.
+        boolean isAcquired = false;
+        long waitStartNanos = 0L;
+        this.blockedThreads.put(task.getIndex(), Thread.currentThread());
+        try {
+            while (!isAcquired && !task.inAbortState()) {
+                synchronized (resource) {
+                    if ((task == resource.getOwnedBy()) || (!resource.isOwned() && resource.isNextOwner(task))) {
+                        resource.setOwner(task);
+                        isAcquired = true;
+                    }
+                }
+                if (!isAcquired && !task.inAbortState()) {
+                    if (0L == waitStartNanos) {
+                        waitStartNanos = System.nanoTime();
+                    }
+                    parkUntilWoken("ACQUIRE");
                 }
             }
+        } finally {
+            this.blockedThreads.remove(task.getIndex());
+        }
 
-            if (!task.inAbortState()) {
-                if (DEBUG) {
-                    endTime = System.nanoTime();
-                    System.out.println("Acquire " + task.getIndex() + " " + resource.toString()
-                            + " waitingTime " + (endTime - startTime)/1000 + " \u00B5s");
-                }
-                resource.setOwner(task);
-                recordOwnership(resource, task);
-            }else{
-                if (DEBUG) {
-                    endTime = System.nanoTime();
-                    System.out.println("Abort   " + task.getIndex() + " " + resource.toString()
-                            + " waitingTime " + (endTime - startTime)/1000 + " \u00B5s");
-                }
+        if (0L != waitStartNanos) {
+            long waitNanos = System.nanoTime() - waitStartNanos;
+            synchronized (resource) {
+                resource.addWaitNanos(waitNanos);
             }
+        }
 
-            if (DEBUG) System.out.flush();
+        if (isAcquired) {
+            recordOwnership(resource, task);
         }
     }
 
     /**
      * Release all resource holding by given task.
      * Called by executor thread when the task finished/need restart.
+     * Only the task which is now first in line for each released resource is woken up.
      *
      * This method will not block.
      *
      * @param task The requesting task.
      */
     private void releaseResourcesForTask(TransactionTask task){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
-
         Set<AddressResource> toRemove = ownerships.remove(task);
         if (null != toRemove) {
             for (AddressResource resource : toRemove) {
-                resource.removeFromWaitingQueue(task);
-                if (task == resource.getOwnedBy()) {
-                    resource.setOwner(null);
+                TransactionTask nextOwner = null;
+                synchronized (resource) {
+                    resource.removeFromWaitingQueue(task);
+                    if (task == resource.getOwnedBy()) {
+                        resource.setOwner(null);
+                    }
+                    nextOwner = resource.getNextOwner();
                 }
-                if (DEBUG) {
-                    int nextOwner = null != resource.getNextOwner() ? resource.getNextOwner().getIndex() : -1;
-                    System.out.println("Release " + task.getIndex() + " " + resource.toString() + " nextOwner " + nextOwner);
+                if (null != nextOwner) {
+                    wakeTask(nextOwner);
                 }
             }
         }
@@ -157,48 +182,88 @@ public class AddressResourceMonitor {
     public boolean commitKernelForTask(TransactionTask task, boolean isRejected){
         boolean ret = false;
 
-        synchronized (sync){
-
-            while (this.commitCounter != task.getIndex() && !task.inAbortState()){
-                try {
-                    sync.wait();
-                }catch (InterruptedException e){
-                    RuntimeAssertionError.unreachable("Waiting executor thread received interruption: COMMIT");
+        // As with acquire, we register before checking so the commit before us can't miss us.
+        long waitStartNanos = 0L;
+        this.blockedThreads.put(task.getIndex(), Thread.currentThread());
+        try {
+            while (this.commitCounter.get() != task.getIndex() && !task.inAbortState()){
+                if (0L == waitStartNanos) {
+                    waitStartNanos = System.nanoTime();
                 }
+                parkUntilWoken("COMMIT");
             }
+        } finally {
+            this.blockedThreads.remove(task.getIndex());
+        }
+        if (0L != waitStartNanos) {
+            this.commitWaitNanos.add(System.nanoTime() - waitStartNanos);
+        }
 
-            if (!task.inAbortState()){
-                if (!isRejected) {
-                    task.getThisTransactionalKernel().commit();
-                    task.outputFlush();
-                }
-                this.commitCounter++;
-                ret = true;
+        // Note that a task can only be aborted by a task with a lower index so, once it is our turn, nobody can abort us.
+        if (!task.inAbortState()){
+            if (!isRejected) {
+                task.getThisTransactionalKernel().commit();
+                task.outputFlush();
             }
+            int nextToCommit = this.commitCounter.incrementAndGet();
+            ret = true;
 
-            releaseResourcesForTask(task);
-
-            // Only wake up others when all resources are released
-            sync.notifyAll();
+            // Only the task with the next index can be waiting to commit.
+            wakeTaskIndex(nextToCommit);
         }
 
+        releaseResourcesForTask(task);
+
         return ret;
     }
 
-    private AddressResource getResource(AddressWrapper addr){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
+    /**
+     * Note that only addresses where some task actually had to wait are included.
+     *
+     * @return The total time tasks in the current batch have spent waiting to acquire each address.
+     */
+    public Map<AionAddress, Long> getAcquireWaitNanosByAddress() {
+        Map<AionAddress, Long> waits = new HashMap<>();
+        for (Map.Entry<AddressWrapper, AddressResource> entry : this.resources.entrySet()) {
+            AddressResource resource = entry.getValue();
+            long waitNanos = 0L;
+            synchronized (resource) {
+                waitNanos = resource.getWaitNanos();
+            }
+            if (waitNanos > 0L) {
+                waits.put(new AionAddress(entry.getKey().getAddress()), waitNanos);
+            }
+        }
+        return waits;
+    }
+
+    /**
+     * @return The total time tasks in the current batch have spent waiting for their turn to commit.
+     */
+    public long getCommitWaitNanos() {
+        return this.commitWaitNanos.sum();
+    }
 
-        AddressResource ret = resources.get(addr);
-        if (null == ret){
-            ret = new AddressResource();
-            resources.put(addr, ret);
+    private void parkUntilWoken(String waitingIn) {
+        // Note that this can return spuriously (or due to a stale wake-up from an earlier wait) so the caller must re-check its condition.
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+            throw RuntimeAssertionError.unreachable("Waiting executor thread received interruption: " + waitingIn);
         }
-        return ret;
     }
 
-    private void recordOwnership(AddressResource res, TransactionTask task){
-        RuntimeAssertionError.assertTrue(Thread.holdsLock(sync));
+    private void wakeTask(TransactionTask task) {
+        wakeTaskIndex(task.getIndex());
+    }
+
+    private void wakeTaskIndex(int taskIndex) {
+        Thread blocked = this.blockedThreads.get(taskIndex);
+        if (null != blocked) {
+            LockSupport.unpark(blocked);
+        }
+    }
 
+    private void recordOwnership(AddressResource res, TransactionTask task){
         Set<AddressResource> entry = ownerships.get(task);
         if (null == entry){
             entry = new HashSet<>();
@@ -208,10 +273,6 @@ public class AddressResourceMonitor {
     }
 
     void testReleaseResourcesForTask(TransactionTask task){
-        synchronized (sync) {
-            releaseResourcesForTask(task);
-            sync.notifyAll();
-        }
+        releaseResourcesForTask(task);
     }
 }
-
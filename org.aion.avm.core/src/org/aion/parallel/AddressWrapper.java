@@ -13,6 +13,10 @@ class AddressWrapper {
         this.addr = addr;
     }
 
+    byte[] getAddress(){
+        return this.addr;
+    }
+
     @Override
     public int hashCode() {
         int code = 0;
@@ -0,0 +1,149 @@
+package org.aion.parallel;
+
+import i.RuntimeAssertionError;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.aion.avm.core.AvmTransaction;
+
+/**
+ * The static conflict graph of a block of transactions, built before any of them are executed.
+ *
+ * Every transaction needs the resources of its sender and destination addresses (see {@link AddressResourceMonitor}) so 2 transactions
+ * sharing either of these can't run concurrently without one of them being aborted or blocked.  Rather than discovering this at runtime,
+ * each task depends on the most recent task before it (in block order) which shares one of these addresses.  This makes each hot address
+ * a chain of tasks which is only handed to an executor thread one at a time while independent chains are handed to other threads.
+ *
+ * Only the addresses known up-front are considered:  any other address accessed at runtime (by a cross-call, for example) is still
+ * resolved speculatively, by the {@link AddressResourceMonitor}.
+ *
+ * Note that this is not thread-safe:  the caller is expected to provide its own synchronization.
+ */
+public class TransactionDependencyGraph {
+    /**
+     * Builds the graph of the given tasks from the sender and destination of each of their transactions.
+     *
+     * @param tasks The tasks of the block, in block order.
+     * @return The dependency graph of the tasks.
+     */
+    public static TransactionDependencyGraph fromTasks(TransactionTask[] tasks) {
+        TransactionDependencyGraph graph = new TransactionDependencyGraph(tasks);
+        Map<AddressWrapper, Integer> lastTaskForAddress = new HashMap<>();
+        for (int i = 0; i < tasks.length; ++i) {
+            AvmTransaction transaction = tasks[i].getTransaction();
+            AddressWrapper sender = new AddressWrapper(transaction.senderAddress.toByteArray());
+            AddressWrapper destination = new AddressWrapper(transaction.destinationAddress.toByteArray());
+            Integer senderPredecessor = lastTaskForAddress.put(sender, i);
+            Integer destinationPredecessor = lastTaskForAddress.put(destination, i);
+            if (sender.equals(destination)) {
+                // (a transaction sent to its sender only has the one predecessor - the second put just returned this task)
+                destinationPredecessor = null;
+            }
+            graph.addDependency(senderPredecessor, i);
+            // (both addresses may have last been used by the same task)
+            if ((null != destinationPredecessor) && !destinationPredecessor.equals(senderPredecessor)) {
+                graph.addDependency(destinationPredecessor, i);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Builds a graph where none of the given tasks depend on each other, meaning that they are all initially ready.
+     *
+     * @param tasks The tasks, in block order.
+     * @return The dependency graph of the tasks.
+     */
+    public static TransactionDependencyGraph withoutDependencies(TransactionTask[] tasks) {
+        return new TransactionDependencyGraph(tasks);
+    }
+
+
+    private final TransactionTask[] tasks;
+    // The number of predecessors of each task which haven't yet completed.
+    private final int[] pendingPredecessorCounts;
+    private final List<List<Integer>> successors;
+
+    private TransactionDependencyGraph(TransactionTask[] tasks) {
+        this.tasks = tasks;
+        this.pendingPredecessorCounts = new int[tasks.length];
+        this.successors = new ArrayList<>(tasks.length);
+        for (int i = 0; i < tasks.length; ++i) {
+            // The index of each task must be its position in the block.
+            RuntimeAssertionError.assertTrue(i == tasks[i].getIndex());
+            this.successors.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * @return The tasks which don't depend on any other task, in block order.
+     */
+    public List<TransactionTask> getInitiallyReadyTasks() {
+        List<TransactionTask> ready = new ArrayList<>();
+        for (int i = 0; i < this.tasks.length; ++i) {
+            if (0 == this.pendingPredecessorCounts[i]) {
+                ready.add(this.tasks[i]);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Records that the given task has completed (its results were committed), releasing the tasks which depend on it.
+     *
+     * @param task The task which completed.
+     * @return The tasks which became ready as a result of this completion, in block order.
+     */
+    public List<TransactionTask> completeTask(TransactionTask task) {
+        List<TransactionTask> ready = new ArrayList<>();
+        for (int successor : this.successors.get(task.getIndex())) {
+            this.pendingPredecessorCounts[successor] -= 1;
+            RuntimeAssertionError.assertTrue(this.pendingPredecessorCounts[successor] >= 0);
+            if (0 == this.pendingPredecessorCounts[successor]) {
+                ready.add(this.tasks[successor]);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Estimates how many of these tasks could run at once:  each task is placed one level after the deepest task it depends on and the
+     * estimate is the number of tasks on the widest level.  A block of independent tasks is a single level as wide as the block while a
+     * block where every task uses the same address has a width of 1.
+     *
+     * @return The estimated number of tasks which could run concurrently (at least 1, unless there are no tasks).
+     */
+    public int estimateWidth() {
+        int[] levels = new int[this.tasks.length];
+        int[] levelSizes = new int[this.tasks.length + 1];
+        int width = 0;
+        // Predecessors always have a lower index so this walks the tasks in a topological order.
+        for (int i = 0; i < this.tasks.length; ++i) {
+            levelSizes[levels[i]] += 1;
+            width = Math.max(width, levelSizes[levels[i]]);
+            for (int successor : this.successors.get(i)) {
+                levels[successor] = Math.max(levels[successor], levels[i] + 1);
+            }
+        }
+        return width;
+    }
+
+    /**
+     * @param task A task in the graph.
+     * @return The number of predecessors of the task which haven't yet completed.
+     */
+    public int getPendingPredecessorCount(TransactionTask task) {
+        return this.pendingPredecessorCounts[task.getIndex()];
+    }
+
+    private void addDependency(Integer predecessor, int successor) {
+        if (null != predecessor) {
+            // Successors are always added in block order so each list is sorted.
+            this.successors.get(predecessor).add(successor);
+            this.pendingPredecessorCounts[successor] += 1;
+        }
+    }
+}
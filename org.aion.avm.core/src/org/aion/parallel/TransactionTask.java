@@ -73,7 +73,7 @@ public class TransactionTask implements Comparable<TransactionTask>{
      */
     public void attachInstrumentationForThread() {
         RuntimeAssertionError.assertTrue(null == this.threadOwningTask);
-        this.threadOwningTask = IInstrumentation.attachedThreadInstrumentation.get();
+        this.threadOwningTask = IInstrumentation.getCurrentThreadInstrumentation();
         RuntimeAssertionError.assertTrue(null != this.threadOwningTask);
         if (this.abortState){
             threadOwningTask.setAbortState();
@@ -81,7 +81,7 @@ public class TransactionTask implements Comparable<TransactionTask>{
     }
 
     public void detachInstrumentationForThread() {
-        RuntimeAssertionError.assertTrue(IInstrumentation.attachedThreadInstrumentation.get() == this.threadOwningTask);
+        RuntimeAssertionError.assertTrue(IInstrumentation.getCurrentThreadInstrumentation() == this.threadOwningTask);
         this.threadOwningTask = null;
     }
 
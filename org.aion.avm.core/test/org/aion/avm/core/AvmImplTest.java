@@ -10,6 +10,7 @@ import org.aion.avm.core.dappreading.JarBuilder;
 import org.aion.avm.core.types.RawDappModule;
 import org.aion.avm.core.util.CodeAndArguments;
 import org.aion.avm.core.util.Helpers;
+import org.aion.avm.core.util.WeightedLruCache;
 import org.aion.avm.userlib.abi.ABIDecoder;
 import org.aion.avm.userlib.abi.ABIStreamingEncoder;
 
@@ -26,6 +27,7 @@ import org.aion.kernel.TestingBlock;
 import org.aion.kernel.TestingKernel;
 import org.aion.kernel.TestingTransaction;
 import org.aion.vm.api.interfaces.KernelInterface;
+import org.aion.vm.api.interfaces.SimpleFuture;
 import org.aion.vm.api.interfaces.TransactionResult;
 import org.aion.vm.api.interfaces.TransactionInterface;
 import org.junit.BeforeClass;
@@ -37,8 +39,13 @@ import legacy_examples.avmstartuptest.MainClass;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -285,7 +292,7 @@ public class AvmImplTest {
         long codeInstantiationOfDeploymentFee = BillingRules.getDeploymentFee(1, jar.length);
         // Note that the only <clinit> is in the generated constants class, which is free.
         long clinitCost = 0L;
-        long initialStorageCost = 222;
+        long initialStorageCost = 255;
         long transactionCost = basicCost + codeInstantiationOfDeploymentFee + clinitCost + initialStorageCost;
         assertEquals(transactionCost, ((AvmTransactionResult) result1).getEnergyUsed());
         assertEquals(energyLimit - transactionCost, result1.getEnergyRemaining());
@@ -301,8 +308,9 @@ public class AvmImplTest {
         long costOfBlocks = 51l + 31l + 321l;
         //reentrant call cost including code block cost
         long costOfRuntimeCall = 51l + 31l + 61l + (100 + 630);
-        // All persistence load/store cost (note that this is a reentrant call): (2 reads at 74, 2 writes at 222)
-        long runStorageCost = 74 + 74 + 222 + 222;
+        // All persistence load/store cost (note that this is a reentrant call): (2 reads and 2 writes:  the graph in storage is 85/255 and the
+        // reentrant caller state, which doesn't use the class name dictionary or index, is 74/222)
+        long runStorageCost = 85 + 74 + 255 + 222;
         // runtime cost of the initial call
         long runtimeCost = 100 + 100 + 600 + 100 + 100 + 5000 + 620;
         transactionCost = runtimeCost + tx2.getTransactionCost() + costOfBlocks + costOfRuntimeCall + runStorageCost;
@@ -328,6 +336,184 @@ public class AvmImplTest {
         avm.shutdown();
     }
 
+    @Test
+    public void testDAppCacheStatistics() {
+        byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
+        byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        byte[] argData = encodeNoArgCall("callSelfForNull");
+
+        // With the default capacity, the DApp loaded by the first call is still cached for the call in the next block.
+        TestingKernel kernel = new TestingKernel(block);
+        AvmImpl avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), new AvmConfiguration());
+        AionAddress contractAddr = createDApp(kernel, avm, txData);
+        callDAppVoid(kernel, avm, contractAddr, argData);
+        kernel.generateBlock();
+        callDAppVoid(kernel, avm, contractAddr, argData);
+        WeightedLruCache.Statistics statistics = avm.getDAppCacheStatistics();
+        assertEquals(1L, statistics.hitCount);
+        assertEquals(1L, statistics.missCount);
+        assertEquals(0L, statistics.evictionCount);
+        assertEquals(1, statistics.entryCount);
+        assertTrue(statistics.totalWeight > 0L);
+        avm.shutdown();
+
+        // With a capacity of 0, every call needs to reload the DApp.
+        kernel = new TestingKernel(block);
+        AvmConfiguration configuration = new AvmConfiguration();
+        configuration.dappCacheCapacity = 0L;
+        avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), configuration);
+        contractAddr = createDApp(kernel, avm, txData);
+        callDAppVoid(kernel, avm, contractAddr, argData);
+        kernel.generateBlock();
+        callDAppVoid(kernel, avm, contractAddr, argData);
+        statistics = avm.getDAppCacheStatistics();
+        assertEquals(0L, statistics.hitCount);
+        assertEquals(2L, statistics.missCount);
+        assertEquals(2L, statistics.evictionCount);
+        assertEquals(0, statistics.entryCount);
+        avm.shutdown();
+
+        // The cache is discarded by the shutdown so there is nothing left to report.
+        statistics = avm.getDAppCacheStatistics();
+        assertEquals(0L, statistics.hitCount);
+        assertEquals(0L, statistics.missCount);
+        assertEquals(0, statistics.entryCount);
+    }
+
+    @Test
+    public void testDeterministicTransformation() {
+        // The classes are transformed in parallel but the stored code must not depend on the scheduling so it must match what a sequential
+        // transformation produces (the userlib bundled with the DApp also makes the transformation generate exception wrappers).
+        byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
+        RawDappModule rawDapp = RawDappModule.readFromJar(jar, false);
+        Map<String, byte[]> sequential = DAppCreator.transformClasses(rawDapp.classes, rawDapp.classHierarchyForest, rawDapp.classHierarchy, rawDapp.classRenamer, false, false);
+        assertTrue(sequential.size() > rawDapp.classes.size());
+
+        // (we repeat the parallel transformation since any difference depends on how the classes happen to be scheduled)
+        for (int i = 0; i < 10; ++i) {
+            Map<String, byte[]> parallel = DAppCreator.transformClasses(rawDapp.classes, rawDapp.classHierarchyForest, rawDapp.classHierarchy, rawDapp.classRenamer, false, true);
+            assertEquals(sequential.keySet(), parallel.keySet());
+            for (Map.Entry<String, byte[]> elt : sequential.entrySet()) {
+                assertArrayEquals(elt.getKey(), elt.getValue(), parallel.get(elt.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void testBlockMetrics() {
+        byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
+        byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        TestingKernel kernel = new TestingKernel(block);
+        AvmImpl avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), new AvmConfiguration());
+        
+        // The deployment loads, initializes and saves the DApp.
+        AionAddress contractAddr = createDApp(kernel, avm, txData);
+        BlockMetrics deployMetrics = avm.getBlockMetrics();
+        assertEquals(1, deployMetrics.getTransactionCount());
+        assertEquals(0, deployMetrics.getTotalAbortCount());
+        assertTrue(deployMetrics.getLoadNanos() > 0L);
+        assertTrue(deployMetrics.getExecuteNanos() > 0L);
+        assertTrue(deployMetrics.getSaveNanos() > 0L);
+        
+        // A block of calls from the same sender is run in order, so none of them should need to abort.
+        BigInteger nonce = kernel.getNonce(deployer);
+        TestingTransaction[] transactions = new TestingTransaction[8];
+        for (int i = 0; i < transactions.length; ++i) {
+            transactions[i] = TestingTransaction.call(deployer, contractAddr, nonce.add(BigInteger.valueOf(i)), BigInteger.ZERO, encodeNoArgCall("callSelfForNull"), 2_000_000L, 1L);
+        }
+        TransactionResult[] results = runBlock(kernel, avm, transactions);
+        for (TransactionResult result : results) {
+            assertTrue(result.getResultCode().isSuccess());
+        }
+        BlockMetrics callMetrics = avm.getBlockMetrics();
+        assertEquals(transactions.length, callMetrics.getTransactionCount());
+        assertEquals(0, callMetrics.getTotalAbortCount());
+        assertTrue(callMetrics.getLoadNanos() > 0L);
+        assertTrue(callMetrics.getExecuteNanos() > 0L);
+        assertTrue(callMetrics.getSaveNanos() > 0L);
+        avm.shutdown();
+    }
+
+    @Test
+    public void testBlockStateCacheMetrics() {
+        byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
+        byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        TestingKernel kernel = new TestingKernel(block);
+        AvmConfiguration configuration = new AvmConfiguration();
+        configuration.enableBlockStateCache = true;
+        AvmImpl avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), configuration);
+        AionAddress contractAddr = createDApp(kernel, avm, txData);
+        
+        // Each call reads the state of the contract written by the one before it, and the state the block already read.
+        BigInteger nonce = kernel.getNonce(deployer);
+        TestingTransaction[] transactions = new TestingTransaction[8];
+        for (int i = 0; i < transactions.length; ++i) {
+            transactions[i] = TestingTransaction.call(deployer, contractAddr, nonce.add(BigInteger.valueOf(i)), BigInteger.ZERO, encodeNoArgCall("callSelfForNull"), 2_000_000L, 1L);
+        }
+        TransactionResult[] results = runBlock(kernel, avm, transactions);
+        for (TransactionResult result : results) {
+            assertTrue(result.getResultCode().isSuccess());
+        }
+        BlockMetrics metrics = avm.getBlockMetrics();
+        assertTrue(metrics.getStateCacheHits() > 0L);
+        assertTrue(metrics.getStateCacheMisses() > 0L);
+        avm.shutdown();
+    }
+
+    @Test
+    public void testPipelinedBlocks() throws InterruptedException {
+        byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
+        byte[] txData = new CodeAndArguments(jar, new byte[0]).encodeToBytes();
+        TestingKernel kernel = new TestingKernel(block);
+        AvmImpl avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), new AvmConfiguration());
+        AionAddress contractAddr = createDApp(kernel, avm, txData);
+        
+        // Submit 2 blocks without waiting for the first:  the nonces of the second block are only valid once the first has committed.
+        final int blockSize = 4;
+        BigInteger nonce = kernel.getNonce(deployer);
+        CountDownLatch completedBlocks = new CountDownLatch(2);
+        List<TransactionResult> results = Collections.synchronizedList(new ArrayList<>());
+        // The callback runs on the AVM's threads, so a failure is handed back for this thread to rethrow.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ITransactionResultCallback callback = new ITransactionResultCallback() {
+            @Override
+            public void resultAvailable(int transactionIndex, TransactionResult result) {
+                results.add(result);
+            }
+            @Override
+            public void blockCompleted() {
+                completedBlocks.countDown();
+            }
+            @Override
+            public void executionFailed(Throwable throwable) {
+                failure.set(throwable);
+                // Release the waiting test (the failed block will never complete).
+                while (completedBlocks.getCount() > 0L) {
+                    completedBlocks.countDown();
+                }
+            }
+        };
+        for (int blockNumber = 0; blockNumber < 2; ++blockNumber) {
+            TestingTransaction[] transactions = new TestingTransaction[blockSize];
+            for (int i = 0; i < transactions.length; ++i) {
+                transactions[i] = TestingTransaction.call(deployer, contractAddr, nonce, BigInteger.ZERO, encodeNoArgCall("callSelfForNull"), 2_000_000L, 1L);
+                nonce = nonce.add(BigInteger.ONE);
+            }
+            avm.runPipelined(kernel, transactions, callback);
+        }
+        assertTrue(completedBlocks.await(60, TimeUnit.SECONDS));
+        if (null != failure.get()) {
+            throw new AssertionError("Pipelined execution failed", failure.get());
+        }
+        
+        assertEquals(2 * blockSize, results.size());
+        for (TransactionResult result : results) {
+            assertTrue(result.getResultCode().isSuccess());
+        }
+        assertEquals(nonce, kernel.getNonce(deployer));
+        avm.shutdown();
+    }
+
     @Test
     public void testRecursiveHashCode() {
         byte[] jar = JarBuilder.buildJarForMainAndClassesAndUserlib(ReentrantCrossCallResource.class);
@@ -736,6 +922,15 @@ public class AvmImplTest {
         return callDAppInteger(kernel, avm, contractAddr, nearData);
     }
 
+    private TransactionResult[] runBlock(KernelInterface kernel, AvmImpl avm, TestingTransaction[] transactions) {
+        SimpleFuture<TransactionResult>[] futures = avm.run(kernel, transactions);
+        TransactionResult[] results = new TransactionResult[futures.length];
+        for (int i = 0; i < futures.length; ++i) {
+            results[i] = futures[i].get();
+        }
+        return results;
+    }
+
     private AionAddress createDApp(KernelInterface kernel, AvmImpl avm, byte[] createData) {
         TransactionResult result1 = createDAppCanFail(kernel, avm, createData);
         assertEquals(AvmTransactionResult.Code.SUCCESS, result1.getResultCode());
@@ -46,7 +46,7 @@ public class ConstantBillingTest {
 
         long basicTransactionCost = BillingRules.getBasicTransactionCost(tx.getData());
         long deploymentFee = BillingRules.getDeploymentFee(1, jar.length);
-        long storageFee = 141;
+        long storageFee = 198;
 
         long cost = basicTransactionCost + deploymentFee + clinitCost + storageFee;
 
@@ -1,14 +1,21 @@
 package org.aion.avm.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import i.RuntimeAssertionError;
 import org.aion.types.AionAddress;
 import org.aion.avm.core.util.Helpers;
 import org.aion.kernel.AvmTransactionResult;
+import org.aion.parallel.TransactionDependencyGraph;
 import org.aion.parallel.TransactionTask;
 import org.aion.vm.api.interfaces.SimpleFuture;
 import org.aion.vm.api.interfaces.TransactionInterface;
@@ -18,6 +25,8 @@ import org.junit.Test;
 
 
 public class HandoffMonitorTest {
+    private static final AtomicLong nextCompletionNumber = new AtomicLong(0L);
+
     @Test
     public void startupShutdown() {
         MonitorThread thread = new MonitorThread(null);
@@ -184,6 +193,232 @@ public class HandoffMonitorTest {
         }
     }
 
+    @Test
+    public void dependentTasksHandedOutInOrder() {
+        final int threadCount = 4;
+        Set<Thread> executorThreads = new HashSet<>();
+        for (int i = 0; i < threadCount; i++){
+            executorThreads.add(new MonitorThread(null));
+        }
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads);
+        for (Thread t: executorThreads){
+            ((MonitorThread) t).startAgainstMonitor(monitor);
+        }
+
+        // All of these transactions use the same address so each one can only be handed out once the previous one has completed.
+        FakeTransaction[] transactions = new FakeTransaction[32];
+        for (int i = 0; i < transactions.length; i++){
+            transactions[i] = new FakeTransaction();
+        }
+        TransactionTask[] tasks = wrapTransactionInTasks(transactions);
+        SimpleFuture<TransactionResult>[] results = monitor.sendTransactionsAsynchronously(tasks, TransactionDependencyGraph.fromTasks(tasks), threadCount);
+
+        long previousCompletion = 0L;
+        for (int i = 0; i < results.length; i++){
+            FakeResult result = (FakeResult) results[i].get();
+            Assert.assertTrue(result.completionNumber > previousCompletion);
+            previousCompletion = result.completionNumber;
+        }
+
+        monitor.stopAndWaitForShutdown();
+        for (Thread t: executorThreads){
+            Assert.assertFalse(t.isAlive());
+        }
+    }
+
+    @Test
+    public void limitedActiveThreads() {
+        final int threadCount = 4;
+        Set<Thread> executorThreads = new HashSet<>();
+        for (int i = 0; i < threadCount; i++){
+            executorThreads.add(new MonitorThread(null));
+        }
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads);
+        for (Thread t: executorThreads){
+            ((MonitorThread) t).startAgainstMonitor(monitor);
+        }
+
+        // Even though these are independent, only one thread is active so it must run all of them.
+        FakeTransaction[] transactions = new FakeTransaction[16];
+        for (int i = 0; i < transactions.length; i++){
+            transactions[i] = new FakeTransaction();
+        }
+        TransactionTask[] tasks = wrapTransactionInTasks(transactions);
+        SimpleFuture<TransactionResult>[] results = monitor.sendTransactionsAsynchronously(tasks, TransactionDependencyGraph.withoutDependencies(tasks), 1);
+        Set<Thread> verifySet = new HashSet<>();
+        for (int i = 0; i < results.length; i++){
+            verifySet.add(((FakeResult) results[i].get()).executor);
+        }
+        Assert.assertEquals(1, verifySet.size());
+
+        // The next block can use all of them again.
+        tasks = wrapTransactionInTasks(transactions);
+        results = monitor.sendTransactionsAsynchronously(tasks, TransactionDependencyGraph.withoutDependencies(tasks), threadCount);
+        for (int i = 0; i < results.length; i++){
+            results[i].get();
+        }
+
+        monitor.stopAndWaitForShutdown();
+        for (Thread t: executorThreads){
+            Assert.assertFalse(t.isAlive());
+        }
+    }
+
+    @Test
+    public void pipelinedBlocks() throws InterruptedException {
+        final int threadCount = 4;
+        final int blockCount = 3;
+        final int blockSize = 16;
+        Set<Thread> executorThreads = new HashSet<>();
+        for (int i = 0; i < threadCount; i++){
+            executorThreads.add(new MonitorThread(null));
+        }
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads);
+        for (Thread t: executorThreads){
+            ((MonitorThread) t).startAgainstMonitor(monitor);
+        }
+
+        // Submit all the blocks up-front, recording when each block starts and the order its results are delivered.
+        CountDownLatch completedBlocks = new CountDownLatch(blockCount);
+        long[] completionNumberAtStart = new long[blockCount];
+        List<List<Integer>> deliveredIndices = new ArrayList<>();
+        List<List<Long>> deliveredCompletionNumbers = new ArrayList<>();
+        for (int block = 0; block < blockCount; block++){
+            FakeTransaction[] transactions = new FakeTransaction[blockSize];
+            for (int i = 0; i < transactions.length; i++){
+                transactions[i] = new FakeTransaction();
+            }
+            TransactionTask[] tasks = wrapTransactionInTasks(transactions);
+            List<Integer> indices = Collections.synchronizedList(new ArrayList<>());
+            List<Long> completionNumbers = Collections.synchronizedList(new ArrayList<>());
+            deliveredIndices.add(indices);
+            deliveredCompletionNumbers.add(completionNumbers);
+            final int thisBlock = block;
+            monitor.submitTransactions(tasks, TransactionDependencyGraph.withoutDependencies(tasks), () -> {
+                completionNumberAtStart[thisBlock] = nextCompletionNumber.get();
+                return threadCount;
+            }, new ITransactionResultCallback() {
+                @Override
+                public void resultAvailable(int transactionIndex, TransactionResult result) {
+                    indices.add(transactionIndex);
+                    completionNumbers.add(((FakeResult) result).completionNumber);
+                }
+                @Override
+                public void blockCompleted() {
+                    completedBlocks.countDown();
+                }
+                @Override
+                public void executionFailed(Throwable throwable) {
+                    Assert.fail();
+                }
+            });
+        }
+        Assert.assertTrue(completedBlocks.await(30, TimeUnit.SECONDS));
+
+        List<Integer> expectedIndices = new ArrayList<>();
+        for (int i = 0; i < blockSize; i++){
+            expectedIndices.add(i);
+        }
+        for (int block = 0; block < blockCount; block++){
+            // Each block's results are delivered in order.
+            Assert.assertEquals(expectedIndices, deliveredIndices.get(block));
+            // Each block only starts once every task of the previous block has completed.
+            if (block > 0) {
+                long lastCompletionOfPrevious = Collections.max(deliveredCompletionNumbers.get(block - 1));
+                Assert.assertTrue(completionNumberAtStart[block] >= lastCompletionOfPrevious);
+            }
+        }
+
+        monitor.stopAndWaitForShutdown();
+        for (Thread t: executorThreads){
+            Assert.assertFalse(t.isAlive());
+        }
+    }
+
+    @Test
+    public void startActionRunsOutsideTheLock() throws InterruptedException, BrokenBarrierException {
+        // The barrier holds the first task until the second block is queued behind it.
+        CyclicBarrier firstTaskBarrier = new CyclicBarrier(2);
+        MonitorThread thread = new MonitorThread(firstTaskBarrier);
+        Set<Thread> executorThreads = new HashSet<>();
+        executorThreads.add(thread);
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads);
+        thread.startAgainstMonitor(monitor);
+
+        // The second block's start action is run by the executor thread which completes the first block and blocks until we release it.
+        CountDownLatch secondStartEntered = new CountDownLatch(1);
+        CountDownLatch secondStartReleased = new CountDownLatch(1);
+        boolean[] secondStartTimedOut = new boolean[1];
+        CountDownLatch[] completedBlocks = new CountDownLatch[] {new CountDownLatch(1), new CountDownLatch(1), new CountDownLatch(1)};
+        TransactionTask[] firstTasks = wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()});
+        monitor.submitTransactions(firstTasks, TransactionDependencyGraph.withoutDependencies(firstTasks), () -> 1, new CompletionCallback(completedBlocks[0]));
+        TransactionTask[] secondTasks = wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()});
+        monitor.submitTransactions(secondTasks, TransactionDependencyGraph.withoutDependencies(secondTasks), () -> {
+            secondStartEntered.countDown();
+            try {
+                secondStartTimedOut[0] = !secondStartReleased.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Assert.fail();
+            }
+            return 1;
+        }, new CompletionCallback(completedBlocks[1]));
+        firstTaskBarrier.await();
+        Assert.assertTrue(secondStartEntered.await(30, TimeUnit.SECONDS));
+
+        // While it runs, the results of the first block are still delivered and another block can still be submitted.
+        Assert.assertTrue(completedBlocks[0].await(30, TimeUnit.SECONDS));
+        TransactionTask[] thirdTasks = wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()});
+        monitor.submitTransactions(thirdTasks, TransactionDependencyGraph.withoutDependencies(thirdTasks), () -> 1, new CompletionCallback(completedBlocks[2]));
+        secondStartReleased.countDown();
+
+        Assert.assertTrue(completedBlocks[1].await(30, TimeUnit.SECONDS));
+        Assert.assertTrue(completedBlocks[2].await(30, TimeUnit.SECONDS));
+        Assert.assertFalse(secondStartTimedOut[0]);
+        monitor.stopAndWaitForShutdown();
+        Assert.assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void failedStartActionIsRolledBack() throws InterruptedException {
+        MonitorThread thread = new MonitorThread(null);
+        Set<Thread> executorThreads = new HashSet<>();
+        executorThreads.add(thread);
+        HandoffMonitor monitor = new HandoffMonitor(executorThreads);
+        thread.startAgainstMonitor(monitor);
+
+        // A block whose start action fails is reported to the submitter and leaves nothing behind.
+        TransactionTask[] failedTasks = wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()});
+        boolean didFail = false;
+        try {
+            monitor.submitTransactions(failedTasks, TransactionDependencyGraph.withoutDependencies(failedTasks), () -> {
+                throw new IllegalStateException("start failed");
+            }, new CompletionCallback(new CountDownLatch(1)));
+        } catch (IllegalStateException e) {
+            didFail = true;
+        }
+        Assert.assertTrue(didFail);
+        didFail = false;
+        try {
+            monitor.sendTransactionsAsynchronously(failedTasks, TransactionDependencyGraph.withoutDependencies(failedTasks), () -> {
+                throw new IllegalStateException("start failed");
+            });
+        } catch (IllegalStateException e) {
+            didFail = true;
+        }
+        Assert.assertTrue(didFail);
+
+        // So the next blocks still run.
+        CountDownLatch completed = new CountDownLatch(1);
+        TransactionTask[] tasks = wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()});
+        monitor.submitTransactions(tasks, TransactionDependencyGraph.withoutDependencies(tasks), () -> 1, new CompletionCallback(completed));
+        Assert.assertTrue(completed.await(30, TimeUnit.SECONDS));
+        SimpleFuture<TransactionResult>[] results = monitor.sendTransactionsAsynchronously(wrapTransactionInTasks(new FakeTransaction[] {new FakeTransaction()}));
+        results[0].get();
+
+        monitor.stopAndWaitForShutdown();
+        Assert.assertFalse(thread.isAlive());
+    }
+
     private class MonitorThread extends Thread {
         private final CyclicBarrier firstTaskBarrier;
         private HandoffMonitor monitor;
@@ -217,12 +452,34 @@ public class HandoffMonitorTest {
         }
     }
 
+    private static class CompletionCallback implements ITransactionResultCallback {
+        private final CountDownLatch completed;
+
+        public CompletionCallback(CountDownLatch completed) {
+            this.completed = completed;
+        }
+        @Override
+        public void resultAvailable(int transactionIndex, TransactionResult result) {
+        }
+        @Override
+        public void blockCompleted() {
+            this.completed.countDown();
+        }
+        @Override
+        public void executionFailed(Throwable throwable) {
+            Assert.fail();
+        }
+    }
+
     private class FakeResult extends AvmTransactionResult {
         public Thread executor;
+        // The order in which the results were created, across all threads.
+        public long completionNumber;
 
         public FakeResult(Thread t){
             super(0, 0);
             this.executor = t;
+            this.completionNumber = nextCompletionNumber.incrementAndGet();
         }
     }
 
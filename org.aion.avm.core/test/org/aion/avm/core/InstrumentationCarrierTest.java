@@ -0,0 +1,101 @@
+package org.aion.avm.core;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.aion.avm.core.classloading.AvmClassLoader;
+import org.aion.avm.core.util.Helpers;
+import i.CommonInstrumentation;
+import i.IInstrumentation;
+import i.IRuntimeSetup;
+import i.InstrumentationCarrierThread;
+import i.InstrumentationHelpers;
+import i.InternedClasses;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Checks that the shadow JDK charges the same energy, and computes the same result, whether it finds the instrumentation of the current
+ * thread in an InstrumentationCarrierThread (as the AVM's executor threads are) or in the ThreadLocal.
+ * (the cost of each lookup is measured by InstrumentationLookupBenchmark, in org.aion.avm.benchmark)
+ */
+public class InstrumentationCarrierTest {
+    private final static int COUNT = 1_000;
+    private final static long ENERGY_LIMIT = 100_000_000_000L;
+
+    @Test
+    public void carrierAndThreadLocalChargeTheSame() throws Throwable {
+        // Force the initialization of the NodeEnvironment singleton.
+        Assert.assertNotNull(NodeEnvironment.singleton);
+        Map<String, byte[]> classAndHelper = Helpers.mapIncludingHelperBytecode(Collections.emptyMap(), Helpers.loadDefaultHelperBytecode());
+        AvmClassLoader loader = NodeEnvironment.singleton.createInvocationClassLoader(classAndHelper);
+
+        Workload threadLocal = runOnThread(new Workload(loader), false);
+        Workload carrier = runOnThread(new Workload(loader), true);
+
+        // Where we find the instrumentation must never change what is charged.
+        Assert.assertEquals(threadLocal.energyUsed, carrier.energyUsed);
+        Assert.assertEquals(threadLocal.result, carrier.result);
+    }
+
+
+    private static Workload runOnThread(Workload workload, boolean isCarrier) throws Throwable {
+        Thread thread = isCarrier
+                ? new InstrumentationCarrierThread("Carrier") {
+                    @Override
+                    public void run() {
+                        workload.run();
+                    }}
+                : new Thread(workload, "Plain");
+        thread.start();
+        thread.join();
+        if (null != workload.backgroundThrowable) {
+            throw workload.backgroundThrowable;
+        }
+        return workload;
+    }
+
+
+    private static class Workload implements Runnable {
+        private final AvmClassLoader loader;
+        public long energyUsed;
+        public int result;
+        public Throwable backgroundThrowable;
+
+        public Workload(AvmClassLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public void run() {
+            IInstrumentation instrumentation = new CommonInstrumentation();
+            InstrumentationHelpers.attachThread(instrumentation);
+            IRuntimeSetup runtimeSetup = Helpers.getSetupForLoader(this.loader);
+            InstrumentationHelpers.pushNewStackFrame(runtimeSetup, this.loader, ENERGY_LIMIT, 1, new InternedClasses());
+            try {
+                this.result = runShadowCalls();
+                this.energyUsed = ENERGY_LIMIT - instrumentation.energyLeft();
+            } catch (Throwable t) {
+                this.backgroundThrowable = t;
+            } finally {
+                InstrumentationHelpers.popExistingStackFrame(runtimeSetup);
+                InstrumentationHelpers.detachThread(instrumentation);
+            }
+        }
+
+        private static int runShadowCalls() {
+            // These are the kinds of calls a contract makes very frequently, each of which needs the instrumentation (at least) to charge energy.
+            s.java.lang.String string = new s.java.lang.String("instrumentation");
+            s.java.math.BigInteger modulus = s.java.math.BigInteger.avm_valueOf(1_000_000_007L);
+            s.java.math.BigInteger accumulator = s.java.math.BigInteger.avm_valueOf(1L);
+            int checksum = 0;
+            for (int i = 0; i < COUNT; ++i) {
+                s.java.lang.String copy = new s.java.lang.String(string);
+                checksum += copy.avm_charAt(i % copy.avm_length()) + copy.avm_hashCode();
+                accumulator = accumulator.avm_multiply(s.java.math.BigInteger.avm_valueOf(i + 2)).avm_add(accumulator).avm_mod(modulus);
+            }
+            return checksum + accumulator.avm_hashCode();
+        }
+    }
+}
@@ -164,7 +164,7 @@ public class KeyValueStoreTest {
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         assertArrayEquals(new byte[0], txResult.getReturnData());
         long deleteZeroCost = txResult.getEnergyUsed();
-        assertEquals(51680L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage, deleteZeroCost);
+        assertEquals(50000L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage, deleteZeroCost);
         kernel.generateBlock();
 
         // zero -> nonzero
@@ -174,7 +174,7 @@ public class KeyValueStoreTest {
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         assertArrayEquals(new byte[0], txResult.getReturnData());
         long setStorageCost = txResult.getEnergyUsed();
-        assertEquals(55007L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_setStorage + StorageFees.WRITE_PRICE_PER_BYTE * value.length, setStorageCost);
+        assertEquals(53327L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_setStorage + StorageFees.WRITE_PRICE_PER_BYTE * value.length, setStorageCost);
         kernel.generateBlock();
 
         // nonzero -> nonzero
@@ -184,7 +184,7 @@ public class KeyValueStoreTest {
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         assertArrayEquals(new byte[0], txResult.getReturnData());
         long modifyStorageCost = txResult.getEnergyUsed();
-        assertEquals(55007L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage + StorageFees.WRITE_PRICE_PER_BYTE * value.length, modifyStorageCost);
+        assertEquals(53327L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage + StorageFees.WRITE_PRICE_PER_BYTE * value.length, modifyStorageCost);
         // set storage cost 20000 + linear factor cost, modify storage cost 5000
         assertEquals(15000L, setStorageCost - modifyStorageCost);
         kernel.generateBlock();
@@ -195,7 +195,7 @@ public class KeyValueStoreTest {
         txResult = (AvmTransactionResult) avm.run(kernel, new TestingTransaction[] {tx})[0].get();
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         long getStorageCost = txResult.getEnergyUsed();
-        assertEquals(49283L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_getStorage + StorageFees.READ_PRICE_PER_BYTE * value.length, getStorageCost);
+        assertEquals(47603L + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_getStorage + StorageFees.READ_PRICE_PER_BYTE * value.length, getStorageCost);
         kernel.generateBlock();
 
         // nonzero -> zero
@@ -205,7 +205,7 @@ public class KeyValueStoreTest {
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         assertArrayEquals(new byte[0], txResult.getReturnData());
         long deleteStorageCost = txResult.getEnergyUsed();
-        assertEquals(51680 + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage - RuntimeMethodFeeSchedule.BlockchainRuntime_avm_deleteStorage_refund, deleteStorageCost);
+        assertEquals(50000 + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage - RuntimeMethodFeeSchedule.BlockchainRuntime_avm_deleteStorage_refund, deleteStorageCost);
         // both deletion cost 5000, but deleting a non-zero value gets 20000 refund
         assertEquals(15000L, deleteZeroCost - deleteStorageCost);
         kernel.generateBlock();
@@ -217,7 +217,7 @@ public class KeyValueStoreTest {
         assertEquals(Code.SUCCESS, txResult.getResultCode());
         assertArrayEquals(null, txResult.getReturnData());
         long getZeroCost = txResult.getEnergyUsed();
-        assertEquals(49283 + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_getStorage, getZeroCost);
+        assertEquals(47603 + RuntimeMethodFeeSchedule.BlockchainRuntime_avm_getStorage, getZeroCost);
         assertEquals(value.length * StorageFees.READ_PRICE_PER_BYTE, getStorageCost - getZeroCost);
     }
 
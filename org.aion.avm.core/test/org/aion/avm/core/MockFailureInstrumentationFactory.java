@@ -105,6 +105,14 @@ public class MockFailureInstrumentationFactory implements IInstrumentationFactor
                 underlying.bootstrapOnly();
             }
             @Override
+            public void markLoadedInstanceDirty(int readIndex) {
+                underlying.markLoadedInstanceDirty(readIndex);
+            }
+            @Override
+            public java.util.BitSet getDirtyLoadedInstances() {
+                return underlying.getDirtyLoadedInstances();
+            }
+            @Override
             public boolean isLoadedByCurrentClassLoader(java.lang.Class userClass) { return underlying.isLoadedByCurrentClassLoader(userClass); }
         };
     }
@@ -0,0 +1,98 @@
+package org.aion.avm.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.aion.avm.core.types.ClassInformation;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class NodeEnvironmentSnapshotTest {
+    private static final byte[] RUNTIME_HASH = new byte[] {1, 2, 3, 4};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        NodeEnvironmentSnapshot snapshot = createSnapshot();
+        Path path = new File(this.folder.getRoot(), "snapshot").toPath();
+        snapshot.write(path, RUNTIME_HASH);
+
+        NodeEnvironmentSnapshot read = NodeEnvironmentSnapshot.readIfValid(path, RUNTIME_HASH);
+        Assert.assertNotNull(read);
+        Assert.assertEquals(snapshot.generatedShadowJDK.keySet(), read.generatedShadowJDK.keySet());
+        Assert.assertArrayEquals(snapshot.generatedShadowJDK.get("s.java.lang.ArithmeticException"), read.generatedShadowJDK.get("s.java.lang.ArithmeticException"));
+        Assert.assertEquals(snapshot.runtimeObjectSizes, read.runtimeObjectSizes);
+        Assert.assertEquals(snapshot.runtimeClassInfos, read.runtimeClassInfos);
+        Assert.assertEquals(snapshot.methodDescriptors, read.methodDescriptors);
+        // Only the snapshot itself is left (the temporary file was moved into place).
+        Assert.assertEquals(1, this.folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testStaleRuntime() throws IOException {
+        Path path = new File(this.folder.getRoot(), "snapshot").toPath();
+        createSnapshot().write(path, RUNTIME_HASH);
+
+        Assert.assertNull(NodeEnvironmentSnapshot.readIfValid(path, new byte[] {1, 2, 3, 5}));
+    }
+
+    @Test
+    public void testMissingOrCorrupt() throws IOException {
+        Path path = new File(this.folder.getRoot(), "snapshot").toPath();
+        Assert.assertNull(NodeEnvironmentSnapshot.readIfValid(path, RUNTIME_HASH));
+
+        createSnapshot().write(path, RUNTIME_HASH);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        Assert.assertNull(NodeEnvironmentSnapshot.readIfValid(path, RUNTIME_HASH));
+    }
+
+    @Test
+    public void testDamagedContents() throws IOException {
+        Path path = new File(this.folder.getRoot(), "snapshot").toPath();
+        createSnapshot().write(path, RUNTIME_HASH);
+
+        // The snapshot is still well-formed (the last byte is in the last method descriptor) but it isn't what was written.
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] += 1;
+        Files.write(path, bytes);
+        Assert.assertNull(NodeEnvironmentSnapshot.readIfValid(path, RUNTIME_HASH));
+    }
+
+    @Test
+    public void testHashRuntimeJars() {
+        // JUnit is loaded from a jar but the tests themselves are not, so there is nothing to validate a snapshot against.
+        byte[] hash = NodeEnvironmentSnapshot.hashRuntimeJars(Test.class);
+        Assert.assertEquals(32, hash.length);
+        Assert.assertArrayEquals(hash, NodeEnvironmentSnapshot.hashRuntimeJars(Test.class, Assert.class));
+        Assert.assertNull(NodeEnvironmentSnapshot.hashRuntimeJars(Test.class, NodeEnvironmentSnapshotTest.class));
+    }
+
+
+    private static NodeEnvironmentSnapshot createSnapshot() {
+        Map<String, byte[]> generatedShadowJDK = new HashMap<>();
+        generatedShadowJDK.put("s.java.lang.ArithmeticException", new byte[] {5, 6, 7});
+        generatedShadowJDK.put("e.s.java.lang.Throwable", new byte[0]);
+        Map<String, Integer> runtimeObjectSizes = new HashMap<>();
+        runtimeObjectSizes.put("s/java/lang/Object", 24);
+        Set<ClassInformation> runtimeClassInfos = new HashSet<>();
+        runtimeClassInfos.add(ClassInformation.postRenameInfoFor(false, "s.java.lang.Integer", "s.java.lang.Number", new String[] {"s.java.lang.Comparable"}));
+        runtimeClassInfos.add(ClassInformation.postRenameInfoFor(true, "s.java.lang.Comparable", null, null));
+        Map<String, List<String>> methodDescriptors = new HashMap<>();
+        methodDescriptors.put("java/lang/Integer", Arrays.asList("intValue()I", "toString()Ljava/lang/String;"));
+        return new NodeEnvironmentSnapshot(generatedShadowJDK, runtimeObjectSizes, runtimeClassInfos, methodDescriptors);
+    }
+}
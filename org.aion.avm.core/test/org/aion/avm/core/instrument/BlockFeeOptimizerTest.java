@@ -0,0 +1,99 @@
+package org.aion.avm.core.instrument;
+
+import org.aion.avm.core.ClassToolchain;
+import org.aion.avm.core.NodeEnvironment;
+import org.aion.avm.core.classloading.AvmClassLoader;
+import org.aion.avm.core.util.Helpers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Tests that the BlockFeeOptimizer reduces the number of charges without changing the total charged, by running the same methods with and
+ * without it.
+ */
+public class BlockFeeOptimizerTest {
+    private Class<?> perBlockClass;
+    private Class<?> optimizedClass;
+
+    @Before
+    public void setup() throws Exception {
+        String className = LoopMeteringTestResource.class.getName();
+        byte[] raw = Helpers.loadRequiredResourceAsBytes(className.replaceAll("\\.", "/") + ".class");
+        this.perBlockClass = loadMetered(className, raw, false);
+        this.optimizedClass = loadMetered(className, raw, true);
+    }
+
+    @Test
+    public void testCountedLoop() throws Exception {
+        for (int bound : new int[] {-5, 0, 1, 2, 1000}) {
+            int optimizedCharges = compareCharges("sumTo", bound);
+            // The whole loop is charged once (plus the block before it and the return).
+            Assert.assertEquals(3, optimizedCharges);
+        }
+    }
+
+    @Test
+    public void testConstantBound() throws Exception {
+        for (int start : new int[] {-1000, -1, 0, 999, 1000, Integer.MAX_VALUE}) {
+            Assert.assertEquals(3, compareCharges("sumToConstant", start));
+        }
+    }
+
+    @Test
+    public void testLoopsNotHoisted() throws Exception {
+        // A call or a branch in the body means that we must charge each iteration.
+        int bound = 10;
+        Assert.assertTrue(compareCharges("sumWithCall", bound) > bound);
+        Assert.assertTrue(compareCharges("sumWithEarlyExit", bound) > bound);
+        // (this one takes the early exit)
+        compareCharges("sumWithEarlyExit", 1000);
+    }
+
+    @Test
+    public void testStraightLineMerge() throws Exception {
+        // The block which falls into the try can't throw, so it is charged with the try, but the division can throw so the jump over the
+        // catch isn't (each path saves 1 charge).
+        Assert.assertEquals(3, compareCharges("divideOrDefault", 4));
+        Assert.assertEquals(3, compareCharges("divideOrDefault", 0));
+    }
+
+
+    private int compareCharges(String methodName, int argument) throws Exception {
+        ClassMeteringTest.TestEnergy.totalCost = 0;
+        ClassMeteringTest.TestEnergy.totalCharges = 0;
+        Object expectedResult = this.perBlockClass.getMethod(methodName, int.class).invoke(null, argument);
+        long expectedCost = ClassMeteringTest.TestEnergy.totalCost;
+        int perBlockCharges = ClassMeteringTest.TestEnergy.totalCharges;
+
+        ClassMeteringTest.TestEnergy.totalCost = 0;
+        ClassMeteringTest.TestEnergy.totalCharges = 0;
+        Method method = this.optimizedClass.getMethod(methodName, int.class);
+        Assert.assertEquals(expectedResult, method.invoke(null, argument));
+        Assert.assertEquals(expectedCost, ClassMeteringTest.TestEnergy.totalCost);
+        int optimizedCharges = ClassMeteringTest.TestEnergy.totalCharges;
+        Assert.assertTrue(optimizedCharges <= perBlockCharges);
+        return optimizedCharges;
+    }
+
+    private static Class<?> loadMetered(String className, byte[] raw, boolean optimizeCharges) throws Exception {
+        byte[] metered = new ClassToolchain.Builder(raw, ClassReader.SKIP_DEBUG)
+                .addNextVisitor(new ClassMetering(null, optimizeCharges))
+                .addWriter(new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS))
+                .build()
+                .runAndGetBytecode();
+        Map<String, byte[]> classes = new HashMap<>();
+        classes.put(className, metered);
+        byte[] stubBytecode = Helpers.loadRequiredResourceAsBytes(ClassMeteringTest.HelperStub.CLASS_NAME + ".class");
+        Map<String, byte[]> classesAndHelper = Helpers.mapIncludingHelperBytecode(classes, stubBytecode);
+        AvmClassLoader loader = NodeEnvironment.singleton.createInvocationClassLoader(classesAndHelper);
+        return loader.loadClass(className);
+    }
+}
@@ -0,0 +1,56 @@
+package org.aion.avm.core.instrument;
+
+
+/**
+ * Note that this class is just used as a resource by BlockFeeOptimizerTest.
+ */
+public class LoopMeteringTestResource {
+    public static int sumTo(int bound) {
+        int sum = 0;
+        for (int i = 0; i < bound; ++i) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    public static long sumToConstant(int start) {
+        long sum = 0;
+        for (int i = start; i < 1000; ++i) {
+            sum += (i * 3) ^ (sum >> 2);
+        }
+        return sum;
+    }
+
+    public static int sumWithCall(int bound) {
+        int sum = 0;
+        for (int i = 0; i < bound; ++i) {
+            sum += square(i);
+        }
+        return sum;
+    }
+
+    public static int sumWithEarlyExit(int bound) {
+        int sum = 0;
+        for (int i = 0; i < bound; ++i) {
+            if (sum > 100) {
+                break;
+            }
+            sum += i;
+        }
+        return sum;
+    }
+
+    public static int divideOrDefault(int value) {
+        int adjusted = value + 1;
+        try {
+            adjusted = 100 / value;
+        } catch (ArithmeticException e) {
+            adjusted = -adjusted;
+        }
+        return adjusted;
+    }
+
+    private static int square(int value) {
+        return value * value;
+    }
+}
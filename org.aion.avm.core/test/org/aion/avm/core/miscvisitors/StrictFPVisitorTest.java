@@ -1,5 +1,6 @@
 package org.aion.avm.core.miscvisitors;
 
+import java.io.IOException;
 import java.math.BigInteger;
 
 import org.aion.types.AionAddress;
@@ -8,7 +9,7 @@ import org.aion.avm.core.AvmImpl;
 import org.aion.avm.core.CommonAvmFactory;
 import org.aion.avm.core.blockchainruntime.EmptyCapabilities;
 import org.aion.avm.core.dappreading.JarBuilder;
-import org.aion.avm.core.dappreading.LoadedJar;
+import org.aion.avm.core.types.ImmortalDappModule;
 import org.aion.avm.core.util.CodeAndArguments;
 import org.aion.avm.core.util.Helpers;
 import org.aion.kernel.TestingBlock;
@@ -57,9 +58,9 @@ public class StrictFPVisitorTest {
     }
 
     @Test
-    public void testAccessFlag() {
-        LoadedJar jar = LoadedJar.fromBytes(kernel.getTransformedCode(dappAddress));
-        for (byte[] klass : jar.classBytesByQualifiedNames.values()) {
+    public void testAccessFlag() throws IOException {
+        ImmortalDappModule dapp = ImmortalDappModule.readFromStoredCode(kernel.getTransformedCode(dappAddress));
+        for (byte[] klass : dapp.classes.values()) {
             ClassReader reader = new ClassReader(klass);
             ClassNode node = new ClassNode();
             reader.accept(node, ClassReader.SKIP_FRAMES);
@@ -8,6 +8,8 @@ package org.aion.avm.core.persistence;
  */
 public class AutomaticGraphVisitorTargetSecondary {
     public int value;
+    public long total;
+    public AutomaticGraphVisitorTargetSecondary next;
     
     public AutomaticGraphVisitorTargetSecondary(int initial) {
         // This non-empty constructor is to verify what happens when we create an empty one, later.
@@ -1,9 +1,13 @@
 package org.aion.avm.core.persistence;
 
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
 
 import org.aion.avm.core.SimpleAvm;
 import org.aion.avm.core.classloading.AvmClassLoader;
+import i.IObjectSerializer;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -14,12 +18,14 @@ public class AutomaticGraphVisitorTest {
     private SimpleAvm avm;
     private Class<?> primaryClass;
     private Class<?> secondaryClass;
+    private AvmClassLoader loader;
 
     @Before
     public void setup() throws Exception {
         boolean preserveDebuggability = false;
         this.avm = new SimpleAvm(1_000_000L, preserveDebuggability, AutomaticGraphVisitorTargetPrimary.class, AutomaticGraphVisitorTargetSecondary.class);
         AvmClassLoader loader = avm.getClassLoader();
+        this.loader = loader;
         
         this.primaryClass = loader.loadUserClassByOriginalName(AutomaticGraphVisitorTargetPrimary.class.getName(), preserveDebuggability);
         this.secondaryClass = loader.loadUserClassByOriginalName(AutomaticGraphVisitorTargetSecondary.class.getName(), preserveDebuggability);
@@ -68,4 +74,35 @@ public class AutomaticGraphVisitorTest {
         this.secondaryClass.getMethod("avm_setValue", int.class).invoke(secondary, 1);
         Assert.assertEquals(1, this.secondaryClass.getDeclaredField("avm_value").getInt(secondary));
     }
+
+    @Test
+    public void generatedPersistenceMatchesReflection() throws Exception {
+        // The persistence methods are declared directly on the user class.
+        Assert.assertNotNull(this.secondaryClass.getDeclaredMethod("serializeSelf", Class.class, IObjectSerializer.class));
+        
+        s.java.lang.Object secondary = (s.java.lang.Object) this.secondaryClass.getConstructor(int.class).newInstance(5);
+        this.secondaryClass.getDeclaredField("avm_total").setLong(secondary, 6L);
+        this.secondaryClass.getDeclaredField("avm_next").set(secondary, secondary);
+        SortedFieldCache cache = new SortedFieldCache(this.loader, null, null, null);
+        StandardGlobalResolver resolver = new StandardGlobalResolver(null, this.loader);
+        
+        // The generated serializer must produce exactly what the reflective walk would have.
+        ByteBuffer generated = ByteBuffer.allocate(64);
+        secondary.serializeSelf(null, new ByteBufferObjectSerializer(generated, new LinkedList<>(), cache, resolver, null));
+        ByteBuffer reflective = ByteBuffer.allocate(64);
+        ByteBufferObjectSerializer reflectiveSerializer = new ByteBufferObjectSerializer(reflective, new LinkedList<>(), cache, resolver, null);
+        reflectiveSerializer.writeInt(secondary.internalHashcode());
+        reflectiveSerializer.automaticallySerializeToRoot(s.java.lang.Object.class, secondary);
+        Assert.assertTrue(generated.position() > 0);
+        Assert.assertArrayEquals(Arrays.copyOf(reflective.array(), reflective.position()), Arrays.copyOf(generated.array(), generated.position()));
+        
+        // The generated deserializer must read it back.
+        s.java.lang.Object copy = (s.java.lang.Object) this.secondaryClass.getConstructor(Void.class, int.class).newInstance(null, s.java.lang.Object.NEW_INSTANCE_READ_INDEX);
+        generated.flip();
+        copy.deserializeSelf(null, new ByteBufferObjectDeserializer(generated, Arrays.asList(copy), cache, resolver, null));
+        Assert.assertEquals(secondary.internalHashcode(), copy.internalHashcode());
+        Assert.assertEquals(5, this.secondaryClass.getDeclaredField("avm_value").getInt(copy));
+        Assert.assertEquals(6L, this.secondaryClass.getDeclaredField("avm_total").getLong(copy));
+        Assert.assertSame(copy, this.secondaryClass.getDeclaredField("avm_next").get(copy));
+    }
 }
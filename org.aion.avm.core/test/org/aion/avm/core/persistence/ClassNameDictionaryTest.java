@@ -0,0 +1,101 @@
+package org.aion.avm.core.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ClassNameDictionaryTest {
+    @Test
+    public void varintBoundaries() {
+        int[] values = { 0, 1, 0x7f, 0x80, 0x3fff, 0x4000, Integer.MAX_VALUE };
+        int[] lengths = { 1, 1, 1, 2, 2, 3, 5 };
+        for (int i = 0; i < values.length; ++i) {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            ClassNameDictionary.writeVarint(buffer, values[i]);
+            Assert.assertEquals(lengths[i], buffer.position());
+            Assert.assertEquals(lengths[i], ClassNameDictionary.getVarintLength(values[i]));
+            buffer.flip();
+            Assert.assertEquals(values[i], ClassNameDictionary.readVarint(buffer));
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void roundTripKeepsFirstOccurrenceOrder() {
+        ClassNameDictionary dictionary = new ClassNameDictionary();
+        Assert.assertEquals(0, dictionary.getOrAddIndex("a.B"));
+        Assert.assertEquals(1, dictionary.getOrAddIndex("a.C"));
+        Assert.assertEquals(0, dictionary.getOrAddIndex("a.B"));
+        Assert.assertEquals(2, dictionary.getOrAddIndex("a.D"));
+        
+        ByteBuffer buffer = ByteBuffer.allocate(dictionary.getEncodedLength());
+        dictionary.writeTo(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        ClassNameDictionary read = ClassNameDictionary.readFrom(buffer);
+        Assert.assertEquals(3, read.size());
+        Assert.assertEquals("a.B", read.getName(0));
+        Assert.assertEquals("a.C", read.getName(1));
+        Assert.assertEquals("a.D", read.getName(2));
+    }
+
+    @Test
+    public void payloadSavingsCountOnlyPayloadNames() {
+        ClassNameDictionary dictionary = new ClassNameDictionary();
+        // Only the names written in the payload count:  each saves its inline length byte and name, less its varint index.
+        dictionary.getOrAddIndex("a.B");
+        Assert.assertEquals(0, dictionary.getPayloadSavings());
+        Assert.assertEquals(0, dictionary.getOrAddIndexForPayload("a.B"));
+        Assert.assertEquals(3, dictionary.getPayloadSavings());
+        Assert.assertEquals(1, dictionary.getOrAddIndexForPayload("a.CD"));
+        Assert.assertEquals(3 + 4, dictionary.getPayloadSavings());
+    }
+
+    @Test
+    public void graphOnlyUsesDictionaryWhenSmaller() {
+        // Each name used once costs a byte more in the dictionary format (its dictionary entry is the size of the inline name, plus its index)
+        // while the dictionary format saves 3 bytes of header (a varint count, instead of the int count of the class table), so 3 distinct
+        // names are a tie, which goes to the indexed format.
+        byte[] distinct = buildGraphNaming("a.B", "a.C", "a.D");
+        Assert.assertEquals(GraphIndex.INDEXED_FORMAT_VERSION, distinct[0]);
+        ByteBuffer buffer = ByteBuffer.wrap(distinct);
+        GraphIndex index = GraphIndex.readHeader(buffer);
+        Assert.assertNull(index.getClassNameDictionary());
+        Assert.assertEquals(0, index.getClassCount());
+        Assert.assertEquals(0, index.getInstanceCount());
+        // The payload has the names inline.
+        Assert.assertEquals(7, buffer.getInt());
+        for (String name : new String[] {"a.B", "a.C", "a.D"}) {
+            byte[] utf8 = new byte[buffer.get()];
+            buffer.get(utf8);
+            Assert.assertEquals(name, new String(utf8, StandardCharsets.UTF_8));
+        }
+        Assert.assertFalse(buffer.hasRemaining());
+        
+        // Repeating a name makes the dictionary smaller.
+        byte[] repeated = buildGraphNaming("a.B", "a.B", "a.B");
+        Assert.assertEquals(GraphIndex.DICTIONARY_FORMAT_VERSION, repeated[0]);
+        buffer = ByteBuffer.wrap(repeated);
+        index = GraphIndex.readHeader(buffer);
+        Assert.assertEquals(1, index.getClassNameDictionary().size());
+        Assert.assertEquals(7, buffer.getInt());
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertEquals(0, ClassNameDictionary.readVarint(buffer));
+        }
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+
+    private static byte[] buildGraphNaming(String... names) {
+        GraphIndex.Builder builder = new GraphIndex.Builder(true);
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.putInt(7);
+        for (String name : names) {
+            ClassNameDictionary.writeVarint(payload, builder.addPayloadClassName(name, payload.position()));
+        }
+        return builder.buildGraph(payload, 64);
+    }
+}
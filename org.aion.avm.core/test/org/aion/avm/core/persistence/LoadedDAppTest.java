@@ -1,6 +1,9 @@
 package org.aion.avm.core.persistence;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Map;
 
@@ -12,6 +15,7 @@ import i.IInstrumentation;
 import i.IRuntimeSetup;
 import i.InstrumentationHelpers;
 import i.InternedClasses;
+import i.OutOfEnergyException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -512,6 +516,319 @@ public class LoadedDAppTest {
         Assert.assertTrue(s.java.lang.Byte.avm_TYPE == LoadedDAppTarget.s_nine);
     }
 
+    /**
+     * Verify that an incremental save copies any instance not reported by the write barrier from the loaded graph, by modifying one
+     * without calling the barrier (which a transformed DApp could never do).
+     */
+    @Test
+    public void incrementalSaveCopiesUnmodifiedInstances() {
+        ReflectionStructureCodecTarget.s_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 5;
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.LEGACY_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // Reload the graph and change the leaf, without telling the write barrier.
+        clearStaticState();
+        dapp.loadEntireGraphForIncrementalSave(new InternedClasses(), original);
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 6;
+        
+        // The incremental save should still see the original encoding while the full save sees the change.
+        Assert.assertNull(this.instrumentation.getDirtyLoadedInstances());
+        byte[] incremental = dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, this.instrumentation.getDirtyLoadedInstances());
+        Assert.assertArrayEquals(original, incremental);
+        Assert.assertFalse(Arrays.equals(original, dapp.saveEntireGraph(1, MAX_GRAPH_SIZE)));
+    }
+
+    /**
+     * Verify that an incremental save re-encodes the instances reported by the write barrier and correctly re-indexes the references
+     * within the instances it copies, when the traversal order changes.
+     */
+    @Test
+    public void incrementalSaveMatchesFullSave() {
+        ReflectionStructureCodecTarget.s_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_five = 1;
+        ReflectionStructureCodecTarget.s_nine.i_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 2;
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.LEGACY_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // Reload the graph and swap the order of the instances:  the root is re-encoded but the first instance only needs a new index for its reference.
+        clearStaticState();
+        dapp.loadEntireGraphForIncrementalSave(new InternedClasses(), original);
+        ReflectionStructureCodecTarget first = ReflectionStructureCodecTarget.s_nine;
+        ReflectionStructureCodecTarget second = first.i_nine;
+        ReflectionStructureCodecTarget.s_nine = second;
+        second.markDirty();
+        second.i_nine = first;
+        
+        BitSet dirty = this.instrumentation.getDirtyLoadedInstances();
+        Assert.assertEquals(1, dirty.cardinality());
+        Assert.assertTrue(dirty.get(1));
+        byte[] incremental = dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, dirty);
+        byte[] full = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        Assert.assertFalse(Arrays.equals(original, full));
+        Assert.assertArrayEquals(full, incremental);
+    }
+
+
+    @Test
+    public void lazyLoadPopulatesStubsOnDemand() {
+        LoadedDAppTarget.s_nine = new a.ByteArray(new byte[] {1, 2, 3});
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {LoadedDAppTarget.class}, EmptyConstantClass.class, LoadedDAppTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.DICTIONARY_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // The array is left as a stub, when loaded, and can be saved without populating it.
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        a.ByteArray array = (a.ByteArray) LoadedDAppTarget.s_nine;
+        Assert.assertTrue(array.isLazyLoadPending());
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+        Assert.assertTrue(array.isLazyLoadPending());
+        
+        // Reading the array populates it.
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        array = (a.ByteArray) LoadedDAppTarget.s_nine;
+        Assert.assertEquals(3, array.length());
+        Assert.assertFalse(array.isLazyLoadPending());
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, array.getUnderlying());
+        
+        // Writing to a stub populates it before the write so the rest of its contents are preserved.
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        array = (a.ByteArray) LoadedDAppTarget.s_nine;
+        array.set(0, (byte)5);
+        Assert.assertArrayEquals(new byte[] {5, 2, 3}, array.getUnderlying());
+        BitSet dirty = this.instrumentation.getDirtyLoadedInstances();
+        byte[] incremental = dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, dirty);
+        byte[] full = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        Assert.assertFalse(Arrays.equals(original, full));
+        Assert.assertArrayEquals(full, incremental);
+    }
+
+    /**
+     * Verify that the instances a call never touches are never deserialized:  they remain stubs through the load and, for primitive arrays
+     * (which we know have no references to record), the incremental save, which copies them from the stored graph.
+     */
+    @Test
+    public void lazyLoadNeverDeserializesUntouchedInstances() {
+        a.ByteArray touched = new a.ByteArray(new byte[] {1, 2, 3});
+        a.ByteArray untouched = new a.ByteArray(new byte[] {4, 5, 6});
+        LoadedDAppTarget.s_nine = new a.ObjectArray(new Object[] {touched, untouched});
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {LoadedDAppTarget.class}, EmptyConstantClass.class, LoadedDAppTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.DICTIONARY_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // Nothing is deserialized by the load, itself.
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        a.ObjectArray root = (a.ObjectArray) LoadedDAppTarget.s_nine;
+        Assert.assertTrue(root.isLazyLoadPending());
+        
+        // Reading through the root only populates what we read.
+        a.ByteArray loadedTouched = (a.ByteArray) root.get(0);
+        a.ByteArray loadedUntouched = (a.ByteArray) root.get(1);
+        Assert.assertFalse(root.isLazyLoadPending());
+        Assert.assertEquals(2, loadedTouched.get(1));
+        Assert.assertFalse(loadedTouched.isLazyLoadPending());
+        Assert.assertTrue(loadedUntouched.isLazyLoadPending());
+        
+        // The save doesn't populate it, either.
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, this.instrumentation.getDirtyLoadedInstances()));
+        Assert.assertTrue(loadedUntouched.isLazyLoadPending());
+    }
+
+    /**
+     * Verify that a graph in the legacy format is loaded eagerly, even when lazy loading is requested, since it has no index.
+     */
+    @Test
+    public void lazyLoadOfLegacyGraphIsEager() {
+        LoadedDAppTarget.s_nine = new a.ByteArray(new byte[] {1, 2, 3});
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {LoadedDAppTarget.class}, EmptyConstantClass.class, LoadedDAppTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.LEGACY_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        a.ByteArray array = (a.ByteArray) LoadedDAppTarget.s_nine;
+        Assert.assertFalse(array.isLazyLoadPending());
+        Assert.assertArrayEquals(new byte[] {1, 2, 3}, array.getUnderlying());
+        // The image is still retained for the incremental save.
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+    }
+
+    @Test
+    public void lazyLoadPopulatesIndexedArrayStubsOnRead() {
+        a.IntArray stored = new a.IntArray(new int[] {1, 2, 3});
+        LoadedDAppTarget.s_nine = stored;
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {LoadedDAppTarget.class}, EmptyConstantClass.class, LoadedDAppTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.INDEXED_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // The stubs of the indexed format are empty so any access populates them (but they are given their hashCode up-front).
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        a.IntArray array = (a.IntArray) LoadedDAppTarget.s_nine;
+        Assert.assertTrue(array.isLazyLoadPending());
+        Assert.assertEquals(stored.internalHashcode(), array.internalHashcode());
+        Assert.assertTrue(array.isLazyLoadPending());
+        Assert.assertEquals(2, array.get(1));
+        Assert.assertFalse(array.isLazyLoadPending());
+        
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        array = (a.IntArray) LoadedDAppTarget.s_nine;
+        Assert.assertEquals(3, array.length());
+        Assert.assertFalse(array.isLazyLoadPending());
+        
+        clearStaticState();
+        LoadedDAppTarget.s_nine = null;
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        array = (a.IntArray) LoadedDAppTarget.s_nine;
+        array.set(2, 5);
+        Assert.assertFalse(array.isLazyLoadPending());
+        Assert.assertArrayEquals(new int[] {1, 2, 5}, array.getUnderlying());
+    }
+
+    /**
+     * Verify that the indexed format is just the legacy encoding of the graph behind an index header, that the header counts against the
+     * size limit, and that it can be loaded in a single pass.
+     */
+    @Test
+    public void indexedGraphWrapsLegacyGraph() {
+        ReflectionStructureCodecTarget.s_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_five = 1;
+        ReflectionStructureCodecTarget.s_nine.i_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 2;
+        
+        LoadedDApp legacyDApp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.LEGACY_FORMAT_VERSION);
+        LoadedDApp indexedDApp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.INDEXED_FORMAT_VERSION);
+        byte[] legacy = legacyDApp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        byte[] indexed = indexedDApp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        Assert.assertArrayEquals(legacy, Arrays.copyOfRange(indexed, indexed.length - legacy.length, indexed.length));
+        // The payload alone fits in the legacy graph's size but the header is stored with it, so the graph doesn't.
+        boolean didFail = false;
+        try {
+            indexedDApp.saveEntireGraph(1, legacy.length);
+        } catch (OutOfEnergyException e) {
+            didFail = true;
+        }
+        Assert.assertTrue(didFail);
+        
+        GraphIndex index = GraphIndex.readHeader(ByteBuffer.wrap(indexed));
+        Assert.assertEquals(1, index.getClassCount());
+        Assert.assertEquals(2, index.getInstanceCount());
+        
+        // Loading and saving the graph must produce the same graph.
+        clearStaticState();
+        indexedDApp.loadEntireGraph(new InternedClasses(), indexed);
+        Assert.assertEquals(1, ReflectionStructureCodecTarget.s_nine.i_five);
+        Assert.assertEquals(2, ReflectionStructureCodecTarget.s_nine.i_nine.i_five);
+        Assert.assertArrayEquals(indexed, indexedDApp.saveEntireGraph(1, MAX_GRAPH_SIZE));
+    }
+
+    /**
+     * Verify that the incremental and lazy paths produce the same indexed graph as a full save.
+     */
+    @Test
+    public void indexedGraphIncrementalAndLazySaves() {
+        ReflectionStructureCodecTarget.s_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_five = 1;
+        ReflectionStructureCodecTarget.s_nine.i_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 2;
+        
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.INDEXED_FORMAT_VERSION);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // An unchanged graph is copied back out, either way.
+        clearStaticState();
+        dapp.loadEntireGraphForIncrementalSave(new InternedClasses(), original);
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+        clearStaticState();
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+        
+        // Swapping the order of the instances changes both the payload and the index.
+        clearStaticState();
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        ReflectionStructureCodecTarget first = ReflectionStructureCodecTarget.s_nine;
+        ReflectionStructureCodecTarget second = first.i_nine;
+        ReflectionStructureCodecTarget.s_nine = second;
+        second.markDirty();
+        second.i_nine = first;
+        
+        BitSet dirty = this.instrumentation.getDirtyLoadedInstances();
+        byte[] incremental = dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, dirty);
+        byte[] full = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        Assert.assertFalse(Arrays.equals(original, full));
+        Assert.assertArrayEquals(full, incremental);
+    }
+
+    /**
+     * Verify that the dictionary format writes each class name once, making the billable graph smaller, and that the incremental and lazy
+     * paths produce the same graph as a full save.
+     */
+    @Test
+    public void dictionaryGraphWritesClassNamesOnce() {
+        ReflectionStructureCodecTarget.s_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_five = 1;
+        ReflectionStructureCodecTarget.s_nine.i_nine = new ReflectionStructureCodecTarget();
+        ReflectionStructureCodecTarget.s_nine.i_nine.i_five = 2;
+        
+        LoadedDApp legacyDApp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.LEGACY_FORMAT_VERSION);
+        LoadedDApp dapp = new LoadedDApp(this.loader, new Class<?>[] {ReflectionStructureCodecTarget.class}, EmptyConstantClass.class, ReflectionStructureCodecTarget.class.getName(), this.preserveDebuggability, true, GraphIndex.DICTIONARY_FORMAT_VERSION);
+        byte[] legacy = legacyDApp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        byte[] original = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        
+        // The class name is written once, in the dictionary, instead of once per instance.
+        GraphIndex index = GraphIndex.readHeader(ByteBuffer.wrap(original));
+        Assert.assertEquals(1, index.getClassNameDictionary().size());
+        Assert.assertEquals(2, index.getInstanceCount());
+        // (each instance's length-prefixed name becomes a 1-byte index, and the dictionary is a 1-byte count and one length-prefixed name,
+        // after a header of the version, its length, the instance count and the class and offset of each instance)
+        int nameLength = index.getClassNameDictionary().getName(0).length();
+        int headerLength = 1 + 4 + 4 + (2 * (4 + 4));
+        Assert.assertEquals(headerLength + legacy.length - (2 * (1 + nameLength)) + 2 + (1 + 1 + nameLength), original.length);
+        
+        // Loading and saving the graph must produce the same graph, whichever way it is loaded.
+        clearStaticState();
+        dapp.loadEntireGraph(new InternedClasses(), original);
+        Assert.assertEquals(1, ReflectionStructureCodecTarget.s_nine.i_five);
+        Assert.assertEquals(2, ReflectionStructureCodecTarget.s_nine.i_nine.i_five);
+        Assert.assertArrayEquals(original, dapp.saveEntireGraph(1, MAX_GRAPH_SIZE));
+        clearStaticState();
+        dapp.loadEntireGraphForIncrementalSave(new InternedClasses(), original);
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+        clearStaticState();
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        Assert.assertArrayEquals(original, dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, null));
+        
+        // Swapping the order of the instances still produces the same graph, whether copying from the image or not.
+        clearStaticState();
+        dapp.loadGraphLazily(new InternedClasses(), original);
+        ReflectionStructureCodecTarget first = ReflectionStructureCodecTarget.s_nine;
+        ReflectionStructureCodecTarget second = first.i_nine;
+        ReflectionStructureCodecTarget.s_nine = second;
+        second.markDirty();
+        second.i_nine = first;
+        
+        BitSet dirty = this.instrumentation.getDirtyLoadedInstances();
+        byte[] incremental = dapp.saveGraphIncrementally(1, MAX_GRAPH_SIZE, dirty);
+        byte[] full = dapp.saveEntireGraph(1, MAX_GRAPH_SIZE);
+        Assert.assertFalse(Arrays.equals(original, full));
+        Assert.assertArrayEquals(full, incremental);
+    }
 
     private static void clearStaticState() {
         ReflectionStructureCodecTarget.s_one = false;
@@ -542,6 +859,7 @@ public class LoadedDAppTest {
         LoadedDAppTarget.s_six = 0.0f;
         LoadedDAppTarget.s_seven = 0;
         LoadedDAppTarget.s_eight = 0.0d;
+        LoadedDAppTarget.s_nine = null;
     }
 
 
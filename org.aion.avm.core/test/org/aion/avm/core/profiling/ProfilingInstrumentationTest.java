@@ -0,0 +1,122 @@
+package org.aion.avm.core.profiling;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.aion.avm.core.AvmConfiguration;
+import org.aion.avm.core.AvmImpl;
+import org.aion.avm.core.BillingRules;
+import org.aion.avm.core.CommonAvmFactory;
+import org.aion.avm.core.blockchainruntime.EmptyCapabilities;
+import org.aion.avm.core.dappreading.JarBuilder;
+import org.aion.avm.core.util.CodeAndArguments;
+import org.aion.avm.core.util.Helpers;
+import org.aion.avm.userlib.abi.ABIStreamingEncoder;
+import org.aion.kernel.AvmTransactionResult;
+import org.aion.kernel.TestingBlock;
+import org.aion.kernel.TestingKernel;
+import org.aion.kernel.TestingTransaction;
+import org.aion.types.AionAddress;
+import org.aion.vm.api.interfaces.TransactionResult;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ProfilingInstrumentationTest {
+    private static final String MAIN = ProfilingTarget.class.getName() + ".main";
+    private static final String LEAF = ProfilingTarget.class.getName() + ".leaf";
+    private static final String ALLOCATE = ProfilingTarget.class.getName() + ".allocate";
+    private static final String THROWER = ProfilingTarget.class.getName() + ".thrower";
+    private static final String DEEP_THROWER = ProfilingTarget.class.getName() + ".deepThrower";
+
+    private TestingKernel kernel;
+    private ProfilingInstrumentationFactory factory;
+    private AvmImpl avm;
+    private AionAddress dappAddress;
+
+    @Before
+    public void setup() {
+        TestingBlock block = new TestingBlock(new byte[32], 1, Helpers.randomAddress(), System.currentTimeMillis(), new byte[0]);
+        this.kernel = new TestingKernel(block);
+        this.factory = new ProfilingInstrumentationFactory();
+        this.avm = CommonAvmFactory.buildProfilingAvmInstanceForConfiguration(new EmptyCapabilities(), new AvmConfiguration(), this.factory);
+
+        byte[] jar = new CodeAndArguments(JarBuilder.buildJarForMainAndClassesAndUserlib(ProfilingTarget.class), null).encodeToBytes();
+        TestingTransaction create = TestingTransaction.create(TestingKernel.PREMINED_ADDRESS, this.kernel.getNonce(TestingKernel.PREMINED_ADDRESS), BigInteger.ZERO, jar, 5_000_000L, 1L);
+        TransactionResult createResult = this.avm.run(this.kernel, new TestingTransaction[] {create})[0].get();
+        Assert.assertEquals(AvmTransactionResult.Code.SUCCESS, createResult.getResultCode());
+        this.dappAddress = new AionAddress(createResult.getReturnData());
+    }
+
+    @After
+    public void tearDown() {
+        this.avm.shutdown();
+    }
+
+    @Test
+    public void profileCountsCallsAndCostsByMethod() {
+        // Deployment is profiled under the same DApp but doesn't run main.
+        this.factory.getProfile().clear();
+        callWork(10);
+        callWork(10);
+
+        Assert.assertEquals(1, this.factory.getProfile().getDAppNames().size());
+        Map<String, ExecutionProfile.MethodProfile> methods = this.factory.getProfile().getMethodProfiles(this.dappAddress.toString());
+        Assert.assertEquals(2, methods.get(MAIN).calls);
+        Assert.assertEquals(2 * 11, methods.get(LEAF).calls);
+        Assert.assertEquals(2, methods.get(ALLOCATE).calls);
+        Assert.assertEquals(2, methods.get(THROWER).calls);
+        Assert.assertEquals(2, methods.get(DEEP_THROWER).calls);
+
+        Assert.assertTrue(methods.get(MAIN).energy > 0L);
+        Assert.assertTrue(methods.get(LEAF).energy > 0L);
+        // The array and its 5 objects.
+        Assert.assertTrue(methods.get(ALLOCATE).allocations >= 2 * 6);
+        Assert.assertTrue(methods.get(MAIN).wallNanos > 0L);
+    }
+
+    @Test
+    public void exceptionsUnwindTheMethodsTheyPassThrough() throws Exception {
+        this.factory.getProfile().clear();
+        callWork(3);
+
+        StringBuilder folded = new StringBuilder();
+        this.factory.getProfile().writeFoldedStacks(folded, ExecutionProfile.Metric.CALLS);
+        String dapp = this.dappAddress.toString();
+        String lines = folded.toString();
+        Assert.assertTrue(lines, lines.contains(dapp + ";" + MAIN + " 1\n"));
+        Assert.assertTrue(lines, lines.contains(dapp + ";" + MAIN + ";" + THROWER + ";" + DEEP_THROWER + " 1\n"));
+        // Once the exception is caught, the call after it is back under main (not under the methods the exception unwound).
+        Assert.assertTrue(lines, lines.contains(dapp + ";" + MAIN + ";" + LEAF + " 4\n"));
+        Assert.assertFalse(lines, lines.contains(DEEP_THROWER + ";"));
+    }
+
+    @Test
+    public void foldedEnergyAddsUpToTheEnergyChargedInTheFrame() throws Exception {
+        this.factory.getProfile().clear();
+        long energyUsed = callWork(10);
+
+        StringBuilder folded = new StringBuilder();
+        this.factory.getProfile().writeFoldedStacks(folded, ExecutionProfile.Metric.ENERGY);
+        long total = 0L;
+        for (String line : folded.toString().split("\n")) {
+            total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+        }
+        // Everything except the basic cost of the transaction (billed before the DApp's frame is entered) is charged in the frame.
+        Assert.assertEquals(energyUsed - BillingRules.getBasicTransactionCost(workData(10)), total);
+    }
+
+
+    private long callWork(int iterations) {
+        TestingTransaction call = TestingTransaction.call(TestingKernel.PREMINED_ADDRESS, this.dappAddress, this.kernel.getNonce(TestingKernel.PREMINED_ADDRESS), BigInteger.ZERO, workData(iterations), 2_000_000L, 1L);
+        TransactionResult result = this.avm.run(this.kernel, new TestingTransaction[] {call})[0].get();
+        Assert.assertEquals(AvmTransactionResult.Code.SUCCESS, result.getResultCode());
+        return ((AvmTransactionResult) result).getEnergyUsed();
+    }
+
+    private static byte[] workData(int iterations) {
+        return new ABIStreamingEncoder().encodeOneString("work").encodeOneInteger(iterations).toBytes();
+    }
+}
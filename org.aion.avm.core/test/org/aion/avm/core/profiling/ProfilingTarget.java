@@ -0,0 +1,49 @@
+package org.aion.avm.core.profiling;
+
+import avm.Blockchain;
+import org.aion.avm.userlib.abi.ABIDecoder;
+
+public class ProfilingTarget {
+    private static Object[] retained;
+
+    public static byte[] main() {
+        ABIDecoder decoder = new ABIDecoder(Blockchain.getData());
+        String method = decoder.decodeMethodName();
+
+        if (method.equals("work")) {
+            int iterations = decoder.decodeOneInteger();
+            int sum = 0;
+            for (int i = 0; i < iterations; ++i) {
+                sum += leaf(i);
+            }
+            allocate(5);
+            try {
+                thrower(sum);
+            } catch (IllegalStateException e) {
+                // Expected - we only want the exception to unwind the methods it passes through.
+            }
+            leaf(sum);
+        }
+
+        return null;
+    }
+
+    public static int leaf(int value) {
+        return value * 2;
+    }
+
+    public static void allocate(int count) {
+        retained = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            retained[i] = new Object();
+        }
+    }
+
+    public static void thrower(int value) {
+        deepThrower(value);
+    }
+
+    public static void deepThrower(int value) {
+        throw new IllegalStateException();
+    }
+}
@@ -315,6 +315,14 @@ public class ClassShadowingTest {
             this.realImplementation.bootstrapOnly();
         }
         @Override
+        public void markLoadedInstanceDirty(int readIndex) {
+            this.realImplementation.markLoadedInstanceDirty(readIndex);
+        }
+        @Override
+        public java.util.BitSet getDirtyLoadedInstances() {
+            return this.realImplementation.getDirtyLoadedInstances();
+        }
+        @Override
         public boolean isLoadedByCurrentClassLoader(java.lang.Class userClass) { return this.realImplementation.isLoadedByCurrentClassLoader(userClass); }
     }
 }
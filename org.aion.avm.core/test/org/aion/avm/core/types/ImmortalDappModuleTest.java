@@ -0,0 +1,118 @@
+package org.aion.avm.core.types;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.aion.avm.core.persistence.GraphIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ImmortalDappModuleTest {
+    @Test
+    public void testBundleRoundTrip() throws IOException {
+        ImmortalDappModule module = ImmortalDappModule.fromImmortalClasses(createClasses("b.Second", "a.First", "c.Third"), "a.First");
+        byte[] bundle = module.createBundle();
+        Assert.assertTrue(ImmortalDappModule.isBundle(bundle));
+
+        ImmortalDappModule read = ImmortalDappModule.readFromStoredCode(bundle);
+        Assert.assertEquals("a.First", read.mainClass);
+        Assert.assertTrue(read.hasWriteBarriers);
+        Assert.assertEquals(GraphIndex.CURRENT_FORMAT_VERSION, read.graphFormatVersion);
+        // The classes come back in alphabetical order.
+        Assert.assertEquals(Arrays.asList("a.First", "b.Second", "c.Third"), new ArrayList<>(read.classes.keySet()));
+        for (Map.Entry<String, byte[]> elt : module.classes.entrySet()) {
+            Assert.assertArrayEquals(elt.getValue(), read.classes.get(elt.getKey()));
+        }
+    }
+
+    @Test
+    public void testBundleFromOffset() throws IOException {
+        // The bundle can be read from within a larger buffer (as would be the case for a memory-mapped file).
+        byte[] bundle = ImmortalDappModule.fromImmortalClasses(createClasses("a.First"), "a.First").createBundle();
+        ByteBuffer buffer = ByteBuffer.allocate(bundle.length + 16);
+        buffer.position(8);
+        buffer.put(bundle);
+        buffer.position(8);
+
+        ImmortalDappModule read = ImmortalDappModule.readFromBundle(buffer);
+        Assert.assertEquals("a.First", read.mainClass);
+        Assert.assertEquals(1, read.classes.size());
+        // The buffer isn't modified.
+        Assert.assertEquals(8, buffer.position());
+    }
+
+    @Test
+    public void testBundleIsDeterministic() {
+        // The bundle doesn't depend on the order the classes were given in.
+        Map<String, byte[]> classes = createClasses("a.First", "b.Second");
+        Map<String, byte[]> reversed = new LinkedHashMap<>();
+        reversed.put("b.Second", classes.get("b.Second"));
+        reversed.put("a.First", classes.get("a.First"));
+        byte[] bundle1 = ImmortalDappModule.fromImmortalClasses(classes, "a.First").createBundle();
+        byte[] bundle2 = ImmortalDappModule.fromImmortalClasses(reversed, "a.First").createBundle();
+        Assert.assertArrayEquals(bundle1, bundle2);
+    }
+
+    @Test
+    public void testReadLegacyJar() throws IOException {
+        // DApps deployed before code bundles existed are stored as a JAR.
+        ImmortalDappModule module = ImmortalDappModule.fromImmortalClasses(createClasses("a.First", "b.Second"), "a.First");
+        byte[] jar = createLegacyJar(module);
+        Assert.assertFalse(ImmortalDappModule.isBundle(jar));
+
+        ImmortalDappModule read = ImmortalDappModule.readFromStoredCode(jar);
+        Assert.assertEquals("a.First", read.mainClass);
+        Assert.assertTrue(read.hasWriteBarriers);
+        Assert.assertEquals(GraphIndex.CURRENT_FORMAT_VERSION, read.graphFormatVersion);
+        Assert.assertArrayEquals(module.classes.get("b.Second"), read.classes.get("b.Second"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedBundle() throws IOException {
+        byte[] bundle = ImmortalDappModule.fromImmortalClasses(createClasses("a.First"), "a.First").createBundle();
+        ImmortalDappModule.readFromStoredCode(Arrays.copyOf(bundle, bundle.length - 1));
+    }
+
+
+    private static Map<String, byte[]> createClasses(String... names) {
+        // The module doesn't interpret the bytecode so any distinct bytes will do.
+        Map<String, byte[]> classes = new HashMap<>();
+        for (int i = 0; i < names.length; ++i) {
+            byte[] bytecode = new byte[10 + i];
+            Arrays.fill(bytecode, (byte) (i + 1));
+            classes.put(names[i], bytecode);
+        }
+        return classes;
+    }
+
+    private static byte[] createLegacyJar(ImmortalDappModule module) throws IOException {
+        // This is the layout the module was stored in before code bundles:  the class files, with the module's flags in the manifest.
+        Manifest manifest = new Manifest();
+        Attributes mainAttributes = manifest.getMainAttributes();
+        mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        mainAttributes.put(Attributes.Name.MAIN_CLASS, module.mainClass);
+        mainAttributes.put(new Attributes.Name("Avm-Write-Barriers"), Boolean.toString(module.hasWriteBarriers));
+        mainAttributes.put(new Attributes.Name("Avm-Graph-Format"), Integer.toString(module.graphFormatVersion));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream stream = new JarOutputStream(bytes, manifest)) {
+            for (Map.Entry<String, byte[]> entry : module.classes.entrySet()) {
+                stream.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                stream.write(entry.getValue());
+                stream.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
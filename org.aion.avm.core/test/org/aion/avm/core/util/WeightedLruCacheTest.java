@@ -0,0 +1,145 @@
+package org.aion.avm.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class WeightedLruCacheTest {
+    @Test
+    public void testCheckoutRemoves() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(1024L, (value) -> value.length);
+        byte[] element1 = new byte[64];
+        cache.checkin("element1", element1);
+        Assert.assertEquals(element1, cache.checkout("element1"));
+        Assert.assertNull(cache.checkout("element1"));
+
+        WeightedLruCache.Statistics statistics = cache.getStatistics();
+        Assert.assertEquals(1L, statistics.hitCount);
+        Assert.assertEquals(1L, statistics.missCount);
+        Assert.assertEquals(0L, statistics.evictionCount);
+        Assert.assertEquals(0, statistics.entryCount);
+        Assert.assertEquals(0L, statistics.totalWeight);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(300L, (value) -> value.length);
+        cache.checkin("a", new byte[100]);
+        cache.checkin("b", new byte[100]);
+        cache.checkin("c", new byte[100]);
+        // Using "a" makes "b" the least-recently used.
+        cache.checkin("a", cache.checkout("a"));
+        cache.checkin("d", new byte[100]);
+
+        Assert.assertNull(cache.checkout("b"));
+        Assert.assertNotNull(cache.checkout("a"));
+        Assert.assertNotNull(cache.checkout("c"));
+        Assert.assertNotNull(cache.checkout("d"));
+        Assert.assertEquals(1L, cache.getStatistics().evictionCount);
+    }
+
+    @Test
+    public void testEvictByWeight() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(300L, (value) -> value.length);
+        cache.checkin("a", new byte[100]);
+        cache.checkin("b", new byte[100]);
+        cache.checkin("c", new byte[100]);
+        // This needs the space of 2 of the others.
+        cache.checkin("big", new byte[200]);
+
+        WeightedLruCache.Statistics statistics = cache.getStatistics();
+        Assert.assertEquals(2L, statistics.evictionCount);
+        Assert.assertEquals(2, statistics.entryCount);
+        Assert.assertEquals(300L, statistics.totalWeight);
+        Assert.assertNotNull(cache.checkout("c"));
+        Assert.assertNotNull(cache.checkout("big"));
+    }
+
+    @Test
+    public void testPool() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(1024L, (value) -> value.length);
+        byte[] older = new byte[10];
+        byte[] newer = new byte[20];
+        // 2 concurrent users of the same key check in their own values, so both are kept.
+        cache.checkin("a", older);
+        cache.checkin("a", newer);
+        Assert.assertEquals(2, cache.getStatistics().entryCount);
+        Assert.assertEquals(30L, cache.getStatistics().totalWeight);
+
+        // The most-recently used is handed out first.
+        Assert.assertEquals(newer, cache.checkout("a"));
+        Assert.assertEquals(older, cache.checkout("a"));
+        Assert.assertNull(cache.checkout("a"));
+
+        WeightedLruCache.Statistics statistics = cache.getStatistics();
+        Assert.assertEquals(2L, statistics.hitCount);
+        Assert.assertEquals(1L, statistics.missCount);
+        Assert.assertEquals(0L, statistics.totalWeight);
+    }
+
+    @Test
+    public void testEvictFromPool() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(300L, (value) -> value.length);
+        byte[] pooled = new byte[100];
+        cache.checkin("a", new byte[100]);
+        cache.checkin("b", new byte[100]);
+        cache.checkin("a", pooled);
+        // Only the least-recently used value of "a" is evicted, not the whole pool.
+        cache.checkin("c", new byte[100]);
+
+        Assert.assertEquals(1L, cache.getStatistics().evictionCount);
+        Assert.assertEquals(pooled, cache.checkout("a"));
+        Assert.assertNull(cache.checkout("a"));
+        Assert.assertNotNull(cache.checkout("b"));
+        Assert.assertNotNull(cache.checkout("c"));
+    }
+
+    @Test
+    public void testDiscardPool() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(1024L, (value) -> value.length);
+        cache.checkin("a", new byte[10]);
+        cache.checkin("a", new byte[10]);
+        cache.checkin("b", new byte[10]);
+        cache.discard("a");
+
+        Assert.assertEquals(1, cache.getStatistics().entryCount);
+        Assert.assertEquals(10L, cache.getStatistics().totalWeight);
+        Assert.assertNull(cache.checkout("a"));
+    }
+
+    @Test
+    public void testTooHeavy() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(300L, (value) -> value.length);
+        cache.checkin("a", new byte[100]);
+        // This can never fit so it is dropped without evicting anything else.
+        cache.checkin("huge", new byte[301]);
+
+        Assert.assertNull(cache.checkout("huge"));
+        Assert.assertNotNull(cache.checkout("a"));
+        Assert.assertEquals(1L, cache.getStatistics().evictionCount);
+    }
+
+    @Test
+    public void testDisabled() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(0L, (value) -> value.length);
+        cache.checkin("a", new byte[1]);
+        Assert.assertNull(cache.checkout("a"));
+        Assert.assertEquals(0, cache.getStatistics().entryCount);
+    }
+
+    @Test
+    public void testRemoveValueIf() {
+        WeightedLruCache<String, byte[]> cache = new WeightedLruCache<>(1024L, (value) -> value.length);
+        cache.checkin("small", new byte[10]);
+        cache.checkin("large", new byte[100]);
+        cache.removeValueIf((value) -> value.length > 50);
+        cache.discard("small");
+
+        WeightedLruCache.Statistics statistics = cache.getStatistics();
+        // Neither invalidation nor discarding counts as eviction.
+        Assert.assertEquals(0L, statistics.evictionCount);
+        Assert.assertEquals(0, statistics.entryCount);
+        Assert.assertEquals(0L, statistics.totalWeight);
+        Assert.assertEquals(0L, statistics.hitCount + statistics.missCount);
+    }
+}
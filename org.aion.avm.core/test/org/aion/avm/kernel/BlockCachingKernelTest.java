@@ -0,0 +1,135 @@
+package org.aion.avm.kernel;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.aion.types.AionAddress;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.BlockCachingKernel;
+import org.aion.kernel.TestingKernel;
+import org.aion.kernel.TransactionalKernel;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class BlockCachingKernelTest {
+    @Test
+    public void testPrefetchedReads() {
+        TestingKernel base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        byte[] code = Helpers.randomBytes(32);
+        byte[] graph = Helpers.randomBytes(32);
+        base.adjustBalance(address, BigInteger.TEN);
+        base.incrementNonce(address);
+        base.setTransformedCode(address, code);
+        base.putObjectGraph(address, graph);
+        AionAddress empty = Helpers.randomAddress();
+
+        BlockCachingKernel cache = new BlockCachingKernel(base);
+        cache.prefetch(Arrays.asList(address, empty));
+
+        // Change the base, behind the back of the cache, to prove that the reads are served from the cache.
+        base.adjustBalance(address, BigInteger.ONE);
+        base.incrementNonce(address);
+        base.putObjectGraph(address, Helpers.randomBytes(32));
+        base.setTransformedCode(empty, Helpers.randomBytes(32));
+        Assert.assertEquals(BigInteger.TEN, cache.getBalance(address));
+        Assert.assertEquals(BigInteger.ONE, cache.getNonce(address));
+        Assert.assertArrayEquals(code, cache.getTransformedCode(address));
+        Assert.assertArrayEquals(graph, cache.getObjectGraph(address));
+        // The absence of state is also cached.
+        Assert.assertNull(cache.getTransformedCode(empty));
+        Assert.assertNull(cache.getObjectGraph(empty));
+        Assert.assertEquals(BigInteger.ZERO, cache.getBalance(empty));
+    }
+
+    @Test
+    public void testWritesInvalidate() {
+        TestingKernel base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        base.adjustBalance(address, BigInteger.TEN);
+        base.putObjectGraph(address, Helpers.randomBytes(32));
+
+        BlockCachingKernel cache = new BlockCachingKernel(base);
+        cache.prefetch(Collections.singleton(address));
+
+        // A transaction committed through the cache writes to the base and we then read what it wrote.
+        TransactionalKernel transaction = new TransactionalKernel(cache);
+        byte[] graph = Helpers.randomBytes(32);
+        transaction.adjustBalance(address, BigInteger.ONE);
+        transaction.incrementNonce(address);
+        transaction.putObjectGraph(address, graph);
+        transaction.commit();
+        Assert.assertEquals(BigInteger.valueOf(11L), base.getBalance(address));
+        Assert.assertEquals(BigInteger.valueOf(11L), cache.getBalance(address));
+        Assert.assertEquals(BigInteger.ONE, cache.getNonce(address));
+        Assert.assertArrayEquals(graph, cache.getObjectGraph(address));
+
+        // Deleting the account invalidates everything about it.
+        cache.prefetch(Collections.singleton(address));
+        cache.deleteAccount(address);
+        Assert.assertEquals(BigInteger.ZERO, cache.getBalance(address));
+        Assert.assertEquals(BigInteger.ZERO, cache.getNonce(address));
+        Assert.assertNull(cache.getObjectGraph(address));
+    }
+
+    @Test
+    public void testReadThroughAndCounters() {
+        TestingKernel base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] key2 = Helpers.randomBytes(32);
+        byte[] value = Helpers.randomBytes(32);
+        base.putStorage(address, key1, value);
+        base.putStorage(address, key2, value);
+
+        BlockCachingKernel cache = new BlockCachingKernel(base);
+        Assert.assertArrayEquals(value, cache.getStorage(address, key1));
+        Assert.assertArrayEquals(value, cache.getStorage(address, key2));
+        Assert.assertNull(cache.getCode(address));
+        Assert.assertEquals(0L, cache.getHitCount());
+        Assert.assertEquals(3L, cache.getMissCount());
+
+        // Reading again is served from the cache (including the absence of code).
+        Assert.assertArrayEquals(value, cache.getStorage(address, key1));
+        Assert.assertNull(cache.getCode(address));
+        Assert.assertEquals(2L, cache.getHitCount());
+
+        // Writing one key only invalidates that key.
+        byte[] newValue = Helpers.randomBytes(32);
+        cache.putStorage(address, key1, newValue);
+        Assert.assertArrayEquals(newValue, cache.getStorage(address, key1));
+        Assert.assertArrayEquals(value, cache.getStorage(address, key2));
+        Assert.assertEquals(3L, cache.getHitCount());
+        Assert.assertEquals(4L, cache.getMissCount());
+        cache.removeStorage(address, key2);
+        Assert.assertNull(cache.getStorage(address, key2));
+    }
+
+    @Test
+    public void testReadRacingWrite() {
+        AionAddress address = Helpers.randomAddress();
+        BlockCachingKernel[] cache = new BlockCachingKernel[1];
+        TestingKernel base = new TestingKernel() {
+            private boolean isFirstRead = true;
+            @Override
+            public BigInteger getBalance(AionAddress address) {
+                BigInteger balance = super.getBalance(address);
+                if (this.isFirstRead) {
+                    // Commit a write after we read the balance but before the cache has a chance to cache what we read.
+                    this.isFirstRead = false;
+                    cache[0].adjustBalance(address, BigInteger.ONE);
+                }
+                return balance;
+            }
+        };
+        cache[0] = new BlockCachingKernel(base);
+
+        // The first read sees the balance from before the write but the cache must not keep it.
+        Assert.assertEquals(BigInteger.ZERO, cache[0].getBalance(address));
+        Assert.assertEquals(BigInteger.ONE, cache[0].getBalance(address));
+        Assert.assertEquals(BigInteger.ONE, cache[0].getBalance(address));
+        Assert.assertEquals(1L, cache[0].getHitCount());
+    }
+}
@@ -7,6 +7,8 @@ import org.aion.types.AionAddress;
 import org.aion.avm.core.util.Helpers;
 import org.aion.kernel.TestingKernel;
 import org.aion.kernel.TransactionalKernel;
+import org.aion.kernel.WriteSet;
+import org.aion.avm.core.util.ByteArrayWrapper;
 import org.aion.vm.api.interfaces.KernelInterface;
 import org.junit.Assert;
 import org.junit.Test;
@@ -130,4 +132,91 @@ public class TransactionalKernelTest {
         transaction.commit();
         Assert.assertEquals(BigInteger.TWO, base.getBalance(address));
     }
+    @Test
+    public void testWriteSetCoalesces() {
+        KernelInterface base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        byte[] key = Helpers.randomBytes(32);
+        byte[] finalValue = Helpers.randomBytes(32);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.putStorage(address, key, Helpers.randomBytes(32));
+        transaction.removeStorage(address, key);
+        transaction.putStorage(address, key, finalValue);
+        transaction.adjustBalance(address, BigInteger.TEN);
+        transaction.adjustBalance(address, BigInteger.TWO.negate());
+        transaction.incrementNonce(address);
+        transaction.incrementNonce(address);
+
+        // Only the final state of each thing written is kept.
+        WriteSet writeSet = transaction.getWriteSet();
+        Assert.assertEquals(1, writeSet.getWrittenAddresses().size());
+        WriteSet.AccountWrites writes = writeSet.getAccountWrites(address);
+        Assert.assertEquals(1, writes.getStorage().size());
+        Assert.assertArrayEquals(finalValue, writes.getStorage().get(new ByteArrayWrapper(key)));
+        Assert.assertEquals(BigInteger.valueOf(8L), writes.getBalanceDelta());
+        Assert.assertEquals(2, writes.getNonceIncrements());
+        Assert.assertFalse(writes.isDeleted());
+        Assert.assertNull(writes.getCode());
+
+        transaction.commit();
+        Assert.assertArrayEquals(finalValue, base.getStorage(address, key));
+        Assert.assertEquals(BigInteger.valueOf(8L), base.getBalance(address));
+        Assert.assertEquals(BigInteger.TWO, base.getNonce(address));
+    }
+
+    @Test
+    public void testWriteSetDeleteDiscardsEarlierWrites() {
+        KernelInterface base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] key2 = Helpers.randomBytes(32);
+        byte[] value = Helpers.randomBytes(32);
+        base.putStorage(address, key1, value);
+
+        TransactionalKernel transaction = new TransactionalKernel(base);
+        transaction.putStorage(address, key1, Helpers.randomBytes(32));
+        transaction.adjustBalance(address, BigInteger.TEN);
+        transaction.deleteAccount(address);
+        transaction.putStorage(address, key2, value);
+
+        WriteSet.AccountWrites writes = transaction.getWriteSet().getAccountWrites(address);
+        Assert.assertTrue(writes.isDeleted());
+        Assert.assertEquals(1, writes.getStorage().size());
+        Assert.assertNull(writes.getBalanceDelta());
+
+        transaction.commit();
+        Assert.assertNull(base.getStorage(address, key1));
+        Assert.assertArrayEquals(value, base.getStorage(address, key2));
+        Assert.assertEquals(BigInteger.ZERO, base.getBalance(address));
+    }
+
+    @Test
+    public void testCommitIntoParentTransaction() {
+        KernelInterface base = new TestingKernel();
+        AionAddress address = Helpers.randomAddress();
+        byte[] key = Helpers.randomBytes(32);
+        byte[] value1 = Helpers.randomBytes(32);
+        byte[] value2 = Helpers.randomBytes(32);
+
+        TransactionalKernel parent = new TransactionalKernel(base);
+        parent.putStorage(address, key, value1);
+        parent.adjustBalance(address, BigInteger.ONE);
+        TransactionalKernel child = parent.makeChildKernelInterface();
+        child.putStorage(address, key, value2);
+        child.adjustBalance(address, BigInteger.TEN);
+        child.commit();
+
+        // The child's writes are merged into those of the parent.
+        WriteSet.AccountWrites writes = parent.getWriteSet().getAccountWrites(address);
+        Assert.assertEquals(1, writes.getStorage().size());
+        Assert.assertArrayEquals(value2, writes.getStorage().get(new ByteArrayWrapper(key)));
+        Assert.assertEquals(BigInteger.valueOf(11L), writes.getBalanceDelta());
+        Assert.assertArrayEquals(value2, parent.getStorage(address, key));
+        Assert.assertNull(base.getStorage(address, key));
+
+        parent.commit();
+        Assert.assertArrayEquals(value2, base.getStorage(address, key));
+        Assert.assertEquals(BigInteger.valueOf(11L), base.getBalance(address));
+    }
 }
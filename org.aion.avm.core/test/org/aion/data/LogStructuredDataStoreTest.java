@@ -0,0 +1,178 @@
+package org.aion.data;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.aion.avm.core.util.ByteArrayWrapper;
+import org.aion.avm.core.util.Helpers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+
+public class LogStructuredDataStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSmallAccount() throws Exception {
+        File storage = folder.newFolder();
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+
+        byte[] address1 = Helpers.randomBytes(32);
+        byte[] code1 = Helpers.randomBytes(100);
+        byte[] key1 = Helpers.randomBytes(32);
+        byte[] value1 = Helpers.randomBytes(100);
+        IAccountStore account1 = store.createAccount(address1);
+        Assert.assertNull(store.createAccount(address1));
+        Assert.assertEquals(BigInteger.ZERO, account1.getBalance());
+        Assert.assertNull(account1.getCode());
+        account1.setTransformedCode(code1);
+        account1.setBalance(BigInteger.ONE);
+        account1.setNonce(2L);
+        account1.setData(key1, value1);
+
+        // Overwrite a key to see that we can observe the update.
+        byte[] value1_2 = Helpers.randomBytes(100);
+        account1.setData(key1, value1_2);
+        Assert.assertTrue(Arrays.equals(value1_2, account1.getData(key1)));
+
+        // Add and remove keys and see that we can read all of these from the account testing method.
+        byte[] key2 = Helpers.randomBytes(32);
+        byte[] value2 = Helpers.randomBytes(50);
+        account1.setData(key2, value2);
+        byte[] key3 = Helpers.randomBytes(32);
+        account1.setData(key3, Helpers.randomBytes(50));
+        account1.removeData(key3);
+        Assert.assertNull(account1.getData(key3));
+        Map<ByteArrayWrapper, byte[]> testing = account1.getStorageEntries();
+        Assert.assertEquals(2, testing.size());
+        Assert.assertTrue(Arrays.equals(value1_2, testing.get(new ByteArrayWrapper(key1))));
+        Assert.assertTrue(Arrays.equals(value2, testing.get(new ByteArrayWrapper(key2))));
+        store.close();
+
+        // Everything is in the single log file and is seen when it is re-opened.
+        Assert.assertEquals(1, storage.listFiles().length);
+        store = new LogStructuredDataStore(storage);
+        account1 = store.openAccount(address1);
+        Assert.assertTrue(Arrays.equals(code1, account1.getTransformedCode()));
+        Assert.assertEquals(BigInteger.ONE, account1.getBalance());
+        Assert.assertEquals(2L, account1.getNonce());
+        Assert.assertTrue(Arrays.equals(value1_2, account1.getData(key1)));
+        Assert.assertEquals(2, account1.getStorageEntries().size());
+
+        // Make sure that the delete is also persisted.
+        store.deleteAccount(address1);
+        Assert.assertNull(store.openAccount(address1));
+        store.close();
+        store = new LogStructuredDataStore(storage);
+        Assert.assertNull(store.openAccount(address1));
+        store.close();
+    }
+
+    @Test
+    public void testTornWrite() throws Exception {
+        File storage = folder.newFolder();
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] key = Helpers.randomBytes(32);
+        byte[] value = Helpers.randomBytes(100);
+        store.createAccount(address).setData(key, value);
+        store.openAccount(address).setData(key, Helpers.randomBytes(100));
+        store.close();
+
+        // Cut the last record in half, as a crash in the middle of writing it would.
+        File log = storage.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 50);
+        }
+        long truncatedLength = log.length();
+
+        // We should see the state before the torn write and the torn part should be discarded so that new writes are readable.
+        store = new LogStructuredDataStore(storage);
+        IAccountStore account = store.openAccount(address);
+        Assert.assertTrue(Arrays.equals(value, account.getData(key)));
+        Assert.assertTrue(log.length() < truncatedLength);
+        byte[] key2 = Helpers.randomBytes(32);
+        account.setData(key2, value);
+        store.close();
+        store = new LogStructuredDataStore(storage);
+        Assert.assertTrue(Arrays.equals(value, store.openAccount(address).getData(key2)));
+        store.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        File storage = folder.newFolder();
+        // Compact as soon as the garbage out-weighs the live data.
+        LogStructuredDataStore store = new LogStructuredDataStore(storage, LogStructuredDataStore.DEFAULT_SYNC_INTERVAL_BYTES, 0L);
+        byte[] address = Helpers.randomBytes(32);
+        byte[] deletedAddress = Helpers.randomBytes(32);
+        IAccountStore account = store.createAccount(address);
+        store.createAccount(deletedAddress).setData(Helpers.randomBytes(32), Helpers.randomBytes(1000));
+        store.deleteAccount(deletedAddress);
+        byte[] key = Helpers.randomBytes(32);
+        byte[] value = null;
+        for (int i = 0; i < 1000; ++i) {
+            value = Helpers.randomBytes(1000);
+            account.setData(key, value);
+            account.setNonce(i);
+        }
+
+        // The log can never be much more than twice the live data (the overwritten values are gone).
+        File log = new File(storage, "store.log");
+        Assert.assertTrue(log.length() < 3 * 1000);
+        Assert.assertTrue(Arrays.equals(value, account.getData(key)));
+        Assert.assertEquals(999L, account.getNonce());
+
+        // An explicit compaction leaves only the live data.
+        store.compact();
+        long compactedLength = log.length();
+        store.compact();
+        Assert.assertEquals(compactedLength, log.length());
+        store.close();
+
+        store = new LogStructuredDataStore(storage);
+        account = store.openAccount(address);
+        Assert.assertNull(store.openAccount(deletedAddress));
+        Assert.assertTrue(Arrays.equals(value, account.getData(key)));
+        Assert.assertEquals(999L, account.getNonce());
+        store.close();
+    }
+
+    @Test
+    public void testLargeAccount() throws Exception {
+        File storage = folder.newFolder();
+        LogStructuredDataStore store = new LogStructuredDataStore(storage);
+        byte[] address = Helpers.randomBytes(32);
+        IAccountStore account = store.createAccount(address);
+        int keyCount = 20_000;
+        for (int i = 0; i < keyCount; ++i) {
+            account.setData(keyFor(i), keyFor(i + 1));
+        }
+        store.close();
+
+        store = new LogStructuredDataStore(storage);
+        account = store.openAccount(address);
+        Assert.assertEquals(keyCount, account.getStorageEntries().size());
+        for (int i = 0; i < keyCount; ++i) {
+            Assert.assertTrue(Arrays.equals(keyFor(i + 1), account.getData(keyFor(i))));
+        }
+        store.close();
+    }
+
+
+    private static byte[] keyFor(int i) {
+        byte[] key = new byte[32];
+        key[0] = (byte) (i >> 24);
+        key[1] = (byte) (i >> 16);
+        key[2] = (byte) (i >> 8);
+        key[3] = (byte) i;
+        return key;
+    }
+}
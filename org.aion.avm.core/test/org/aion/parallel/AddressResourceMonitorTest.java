@@ -1,6 +1,14 @@
 package org.aion.parallel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.TestingKernel;
+import org.aion.kernel.TransactionalKernel;
+import org.junit.Assert;
 import org.junit.Test;
 
 public class AddressResourceMonitorTest {
@@ -208,4 +216,48 @@ public class AddressResourceMonitorTest {
         t2.join();
     }
 
+    class TestThread9 extends TestThread{
+        private final int index;
+        private final byte[] address;
+        private final List<Integer> commitOrder;
+
+        public TestThread9(AddressResourceMonitor monitor, int index, byte[] address, List<Integer> commitOrder){
+            super(monitor);
+            this.index = index;
+            this.address = address;
+            this.commitOrder = commitOrder;
+        }
+
+        public void run(){
+            // The kernel is only requested when the task commits so we use that to record the commit order.
+            TransactionalKernel kernel = new TransactionalKernel(new TestingKernel());
+            TransactionTask task = new TransactionTask(null, null, index, Helpers.ZERO_ADDRESS) {
+                @Override
+                public TransactionalKernel getThisTransactionalKernel() {
+                    commitOrder.add(index);
+                    return kernel;
+                }
+            };
+            monitor.acquire(address, task);
+            Assert.assertTrue(monitor.commitKernelForTask(task, false));
+        }
+    }
+
+    @Test
+    public void testCommitOrderWithoutContention() throws InterruptedException{
+        AddressResourceMonitor monitor = new AddressResourceMonitor();
+        List<Integer> commitOrder = Collections.synchronizedList(new ArrayList<>());
+        byte[][] addresses = {addr1, addr2, addr3, addr4};
+
+        // Start the tasks in reverse order, each using its own address, so every task but the first must wait for its commit slot.
+        TestThread9[] threads = new TestThread9[addresses.length];
+        for (int i = threads.length - 1; i >= 0; --i) {
+            threads[i] = new TestThread9(monitor, i, addresses[i], commitOrder);
+            threads[i].start();
+        }
+        for (TestThread9 thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3), commitOrder);
+    }
 }
@@ -163,6 +163,50 @@ public class AvmParallelTest {
         avm.shutdown();
     }
 
+    @Test
+    public void statePrefetchTest(){
+        byte[] code = JarBuilder.buildJarForMainAndClassesAndUserlib(TestContract.class);
+
+        TestingKernel kernel = new TestingKernel(block);
+        AvmConfiguration configuration = new AvmConfiguration();
+        configuration.enableStatePrefetch = true;
+        AvmImpl avm = CommonAvmFactory.buildAvmInstanceForConfiguration(new EmptyCapabilities(), configuration);
+
+        AionAddress usr1 = new AionAddress(Helpers.hexStringToBytes("1111111111111111111111111111111111111111111111111111111111111111"));
+        AionAddress usr2 = new AionAddress(Helpers.hexStringToBytes("2222222222222222222222222222222222222222222222222222222222222222"));
+        AionAddress usr3 = new AionAddress(Helpers.hexStringToBytes("3333333333333333333333333333333333333333333333333333333333333333"));
+
+        TestingTransaction t0 = TestingTransaction.call(preminedAddress, usr1, BigInteger.ZERO, BigInteger.valueOf(5_000_000), new byte[0], 100000L, 1);
+        TestingTransaction t1 = TestingTransaction.call(preminedAddress, usr2, BigInteger.ONE, BigInteger.valueOf(5_000_000), new byte[0], 100000L, 1);
+        TestingTransaction t2 = TestingTransaction.call(preminedAddress, usr3, BigInteger.TWO, BigInteger.valueOf(15_000_000), new byte[0], 100000L, 1);
+        TestingTransaction t3 = TestingTransaction.create(usr3, BigInteger.ZERO, BigInteger.ZERO, new CodeAndArguments(code, null).encodeToBytes(), 10_000_000L, 1);
+
+        // Each block reads the state written by the previous one, through its own prefetched cache.
+        TestingTransaction[] batch = new TestingTransaction[]{t0, t1, t2, t3};
+        SimpleFuture<TransactionResult>[] results = avm.run(kernel, batch);
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertTrue(f.get().getResultCode().isSuccess());
+        }
+        AionAddress contractAddr = new AionAddress(results[3].get().getReturnData());
+
+        byte[] args = encodeNoArgsMethodCall("doTransfer");
+        byte[] args2 = encodeNoArgsMethodCall("addValue");
+        t0 = TestingTransaction.call(preminedAddress, contractAddr, BigInteger.valueOf(3), BigInteger.valueOf(5_000_000), args2, 100000L, 1);
+        t1 = TestingTransaction.call(usr1, contractAddr, BigInteger.ZERO, BigInteger.ZERO, args, 200000L, 1);
+        t2 = TestingTransaction.call(usr2, contractAddr, BigInteger.ZERO, BigInteger.ZERO, args, 200000L, 1);
+        t3 = TestingTransaction.call(usr3, contractAddr, BigInteger.ONE, BigInteger.ZERO, args, 200000L, 1);
+
+        batch = new TestingTransaction[]{t0, t1, t2, t3};
+        results = avm.run(kernel, batch);
+        for (SimpleFuture<TransactionResult> f : results){
+            Assert.assertTrue(f.get().getResultCode().isSuccess());
+        }
+        Assert.assertEquals(BigInteger.valueOf(5_000_000 - 3 * 1000), kernel.getBalance(contractAddr));
+        Assert.assertEquals(BigInteger.TWO, kernel.getNonce(usr3));
+
+        avm.shutdown();
+    }
+
     /**
      * This test attempts to transfer to 100 users and then from those to 1 user.  This will cause heavy abort behaviour because this is a data hazard.
      */
@@ -0,0 +1,108 @@
+package org.aion.parallel;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.aion.avm.core.AvmTransaction;
+import org.aion.avm.core.util.Helpers;
+import org.aion.kernel.TestingTransaction;
+import org.aion.types.AionAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class TransactionDependencyGraphTest {
+    private static final AionAddress EXCHANGE = Helpers.randomAddress();
+    private static final AionAddress USER1 = Helpers.randomAddress();
+    private static final AionAddress USER2 = Helpers.randomAddress();
+    private static final AionAddress USER3 = Helpers.randomAddress();
+    private static final AionAddress USER4 = Helpers.randomAddress();
+
+    @Test
+    public void testIndependentTransactions() {
+        TransactionTask[] tasks = createTasks(new AionAddress[][] {
+                {USER1, USER2},
+                {USER3, USER4},
+        });
+        TransactionDependencyGraph graph = TransactionDependencyGraph.fromTasks(tasks);
+        Assert.assertEquals(2, graph.estimateWidth());
+        Assert.assertEquals(Arrays.asList(tasks[0], tasks[1]), graph.getInitiallyReadyTasks());
+        Assert.assertEquals(Collections.emptyList(), graph.completeTask(tasks[1]));
+        Assert.assertEquals(Collections.emptyList(), graph.completeTask(tasks[0]));
+    }
+
+    @Test
+    public void testHotAddressChain() {
+        // Every user sends to the same exchange so these can only run one at a time, in order.
+        TransactionTask[] tasks = createTasks(new AionAddress[][] {
+                {USER1, EXCHANGE},
+                {USER2, EXCHANGE},
+                {USER3, EXCHANGE},
+        });
+        TransactionDependencyGraph graph = TransactionDependencyGraph.fromTasks(tasks);
+        Assert.assertEquals(1, graph.estimateWidth());
+        Assert.assertEquals(Collections.singletonList(tasks[0]), graph.getInitiallyReadyTasks());
+        Assert.assertEquals(Collections.singletonList(tasks[1]), graph.completeTask(tasks[0]));
+        Assert.assertEquals(Collections.singletonList(tasks[2]), graph.completeTask(tasks[1]));
+        Assert.assertEquals(Collections.emptyList(), graph.completeTask(tasks[2]));
+    }
+
+    @Test
+    public void testJoinedChains() {
+        // 2 independent chains which are joined by the last transaction.
+        TransactionTask[] tasks = createTasks(new AionAddress[][] {
+                {USER1, USER2},
+                {USER3, USER4},
+                {USER2, USER1},
+                {USER1, USER3},
+        });
+        TransactionDependencyGraph graph = TransactionDependencyGraph.fromTasks(tasks);
+        Assert.assertEquals(Arrays.asList(tasks[0], tasks[1]), graph.getInitiallyReadyTasks());
+        Assert.assertEquals(2, graph.estimateWidth());
+        // (task 2 only depends on task 0, even though it shares both addresses with it)
+        Assert.assertEquals(1, graph.getPendingPredecessorCount(tasks[2]));
+        Assert.assertEquals(2, graph.getPendingPredecessorCount(tasks[3]));
+
+        Assert.assertEquals(Collections.emptyList(), graph.completeTask(tasks[1]));
+        Assert.assertEquals(Collections.singletonList(tasks[2]), graph.completeTask(tasks[0]));
+        Assert.assertEquals(Collections.singletonList(tasks[3]), graph.completeTask(tasks[2]));
+    }
+
+    @Test
+    public void testSelfTransfer() {
+        TransactionTask[] tasks = createTasks(new AionAddress[][] {
+                {USER1, USER1},
+                {USER1, USER1},
+        });
+        TransactionDependencyGraph graph = TransactionDependencyGraph.fromTasks(tasks);
+        Assert.assertEquals(Collections.singletonList(tasks[0]), graph.getInitiallyReadyTasks());
+        Assert.assertEquals(1, graph.getPendingPredecessorCount(tasks[1]));
+        Assert.assertEquals(Collections.singletonList(tasks[1]), graph.completeTask(tasks[0]));
+    }
+
+    @Test
+    public void testWithoutDependencies() {
+        TransactionTask[] tasks = createTasks(new AionAddress[][] {
+                {USER1, EXCHANGE},
+                {USER2, EXCHANGE},
+        });
+        TransactionDependencyGraph graph = TransactionDependencyGraph.withoutDependencies(tasks);
+        List<TransactionTask> ready = graph.getInitiallyReadyTasks();
+        Assert.assertEquals(Arrays.asList(tasks[0], tasks[1]), ready);
+    }
+
+
+    private static TransactionTask[] createTasks(AionAddress[][] senderDestinationPairs) {
+        TransactionTask[] tasks = new TransactionTask[senderDestinationPairs.length];
+        for (int i = 0; i < tasks.length; ++i) {
+            AionAddress sender = senderDestinationPairs[i][0];
+            AionAddress destination = senderDestinationPairs[i][1];
+            TestingTransaction transaction = TestingTransaction.call(sender, destination, BigInteger.ZERO, BigInteger.ZERO, new byte[0], 1L, 1L);
+            // (we don't consult the capabilities since there is no creation)
+            tasks[i] = new TransactionTask(null, AvmTransaction.from(null, transaction), i, sender);
+        }
+        return tasks;
+    }
+}
@@ -33,6 +33,6 @@ public abstract class Array extends Object implements Cloneable, IArray {
      * @param cost The energy cost to charge the current DApp.
      */
     static protected void chargeEnergy(long cost){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(cost);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(cost);
     }
 }
@@ -5,7 +5,7 @@ import java.util.Arrays;
 
 import org.aion.avm.RuntimeMethodFeeSchedule;
 
-public class BooleanArray extends Array {
+public final class BooleanArray extends Array {
 
     private boolean[] underlying;
 
@@ -26,23 +26,24 @@ public class BooleanArray extends Array {
 
     @Override
     public int length() {
-        lazyLoad();
-        return this.underlying.length;
+        return loadedUnderlying().length;
     }
 
     public boolean get(int idx) {
-        lazyLoad();
-        return this.underlying[idx];
+        return loadedUnderlying()[idx];
     }
 
     public void set(int idx, boolean val) {
-        lazyLoad();
+        // New instances never need the write barrier (only loaded instances, including stubs, have a non-negative readIndex).
+        if (this.readIndex >= 0) {
+            markDirty();
+        }
         this.underlying[idx] = val;
     }
 
     @Override
     public IObject avm_clone() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.ByteArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.ByteArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
         lazyLoad();
         return new BooleanArray(Arrays.copyOf(underlying, underlying.length));
     }
@@ -70,7 +71,7 @@ public class BooleanArray extends Array {
     //========================================================
 
     public BooleanArray(int c) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.ByteArray_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.ByteArray_avm_constructor);
         this.underlying = new boolean[c];
     }
 
@@ -80,27 +81,42 @@ public class BooleanArray extends Array {
     }
 
     public boolean[] getUnderlying() {
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        markDirty();
         this.underlying = (boolean[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public java.lang.Object getAsObject(int idx){
-        lazyLoad();
-        return this.underlying[idx];
+        return loadedUnderlying()[idx];
+    }
+
+    @Override
+    protected void discardStateForStub() {
+        this.underlying = null;
+    }
+
+    /**
+     * The fast path of our accessors:  a stub never has an underlying array (see discardStateForStub()), so we only need to lazyLoad()
+     * when we see null.
+     */
+    private boolean[] loadedUnderlying() {
+        boolean[] underlying = this.underlying;
+        if (null == underlying) {
+            lazyLoad();
+            underlying = this.underlying;
+        }
+        return underlying;
     }
 
     //========================================================
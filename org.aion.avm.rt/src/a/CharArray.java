@@ -5,7 +5,7 @@ import java.util.Arrays;
 
 import org.aion.avm.RuntimeMethodFeeSchedule;
 
-public class CharArray extends Array {
+public final class CharArray extends Array {
 
     private char[] underlying;
 
@@ -26,23 +26,24 @@ public class CharArray extends Array {
 
     @Override
     public int length() {
-        lazyLoad();
-        return this.underlying.length;
+        return loadedUnderlying().length;
     }
 
     public char get(int idx) {
-        lazyLoad();
-        return this.underlying[idx];
+        return loadedUnderlying()[idx];
     }
 
     public void set(int idx, char val) {
-        lazyLoad();
+        // New instances never need the write barrier (only loaded instances, including stubs, have a non-negative readIndex).
+        if (this.readIndex >= 0) {
+            markDirty();
+        }
         this.underlying[idx] = val;
     }
 
     @Override
     public IObject avm_clone() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.CharArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.CharArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
         lazyLoad();
         return new CharArray(Arrays.copyOf(underlying, underlying.length));
     }
@@ -58,7 +59,7 @@ public class CharArray extends Array {
     //========================================================
 
     public CharArray(int c) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.CharArray_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.CharArray_avm_constructor);
         this.underlying = new char[c];
     }
 
@@ -68,27 +69,42 @@ public class CharArray extends Array {
     }
 
     public char[] getUnderlying() {
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        markDirty();
         this.underlying = (char[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public java.lang.Object getAsObject(int idx){
-        lazyLoad();
-        return this.underlying[idx];
+        return loadedUnderlying()[idx];
+    }
+
+    @Override
+    protected void discardStateForStub() {
+        this.underlying = null;
+    }
+
+    /**
+     * The fast path of our accessors:  a stub never has an underlying array (see discardStateForStub()), so we only need to lazyLoad()
+     * when we see null.
+     */
+    private char[] loadedUnderlying() {
+        char[] underlying = this.underlying;
+        if (null == underlying) {
+            lazyLoad();
+            underlying = this.underlying;
+        }
+        return underlying;
     }
 
     //========================================================
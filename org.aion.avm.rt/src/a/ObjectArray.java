@@ -31,25 +31,28 @@ public class ObjectArray extends Array implements IObjectArray {
         return new ObjectArray(size);
     }
 
+    // Note that the accessors are final since this class is subclassed by the generated wrappers (of arrays of arrays and of reference types)
+    // so that every call to them, from any of those types, is still monomorphic.
     @Override
-    public int length() {
-        lazyLoad();
-        return this.underlying.length;
+    public final int length() {
+        return loadedUnderlying().length;
     }
 
-    public Object get(int idx) {
-        lazyLoad();
-        return this.underlying[idx];
+    public final Object get(int idx) {
+        return loadedUnderlying()[idx];
     }
 
-    public void set(int idx, Object val) {
-        lazyLoad();
+    public final void set(int idx, Object val) {
+        // New instances never need the write barrier (only loaded instances, including stubs, have a non-negative readIndex).
+        if (this.readIndex >= 0) {
+            markDirty();
+        }
         this.underlying[idx] = val;
     }
 
     @Override
     public IObject avm_clone() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_clone + RuntimeMethodFeeSchedule.RT_METHOD_FEE_FACTOR * length());
         lazyLoad();
         return new ObjectArray(Arrays.copyOf(underlying, underlying.length));
     }
@@ -65,12 +68,12 @@ public class ObjectArray extends Array implements IObjectArray {
     //========================================================
 
     public ObjectArray(int c) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_constructor);
         this.underlying = new Object[c];
     }
 
     public ObjectArray(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_constructor_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.ObjectArray_avm_constructor_1);
     };
 
     public ObjectArray(Object[] underlying) {
@@ -79,27 +82,42 @@ public class ObjectArray extends Array implements IObjectArray {
     }
 
     public Object[] getUnderlying() {
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public void setUnderlyingAsObject(java.lang.Object u){
         RuntimeAssertionError.assertTrue(null != u);
-        lazyLoad();
+        markDirty();
         this.underlying = (Object[]) u;
     }
 
     @Override
     public java.lang.Object getUnderlyingAsObject(){
-        lazyLoad();
-        return underlying;
+        return loadedUnderlying();
     }
 
     @Override
     public java.lang.Object getAsObject(int idx){
-        lazyLoad();
-        return this.underlying[idx];
+        return loadedUnderlying()[idx];
+    }
+
+    @Override
+    protected void discardStateForStub() {
+        this.underlying = null;
+    }
+
+    /**
+     * The fast path of our accessors:  a stub never has an underlying array (see discardStateForStub()), so we only need to lazyLoad()
+     * when we see null.
+     */
+    private Object[] loadedUnderlying() {
+        Object[] underlying = this.underlying;
+        if (null == underlying) {
+            lazyLoad();
+            underlying = this.underlying;
+        }
+        return underlying;
     }
 
     //========================================================
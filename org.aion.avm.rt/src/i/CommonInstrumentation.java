@@ -257,6 +257,20 @@ public class CommonInstrumentation implements IInstrumentation {
         throw RuntimeAssertionError.unreachable("NOT a bootstrap IInstrumentation");
     }
 
+    @Override
+    public void markLoadedInstanceDirty(int readIndex) {
+        // We lazily create the set since most frames only modify a small part of their graph, if anything.
+        if (null == this.currentFrame.dirtyLoadedInstances) {
+            this.currentFrame.dirtyLoadedInstances = new BitSet();
+        }
+        this.currentFrame.dirtyLoadedInstances.set(readIndex);
+    }
+
+    @Override
+    public BitSet getDirtyLoadedInstances() {
+        return this.currentFrame.dirtyLoadedInstances;
+    }
+
     @Override
     public boolean isLoadedByCurrentClassLoader(Class userClass) {
         // If this is the same classloader, they will both be obviously the same instance.
@@ -312,5 +326,8 @@ public class CommonInstrumentation implements IInstrumentation {
 
         // Set forceExitState to non-null to re-throw at the entry to every block (forces the contract to exit).
         private AvmThrowable forceExitState;
+
+        // The readIndex of every instance, loaded from storage for this frame, which was modified (null until the first modification).
+        private BitSet dirtyLoadedInstances;
     }
 }
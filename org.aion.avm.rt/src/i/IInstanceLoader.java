@@ -0,0 +1,16 @@
+package i;
+
+
+/**
+ * Installed into instance stubs by the persistence layer, when a graph is loaded lazily, so that each stub can request that its state
+ * be read from storage the first time it is accessed (see s.java.lang.Object.lazyLoad()).
+ */
+public interface IInstanceLoader {
+    /**
+     * Populates the given stub from the stored graph.
+     * 
+     * @param instance The stub to populate.
+     * @param readIndex The readIndex of the stub, in the stored graph.
+     */
+    void loadInstance(Object instance, int readIndex);
+}
@@ -1,5 +1,7 @@
 package i;
 
+import java.util.BitSet;
+
 
 /**
  * The interface required to support the Helper injected class which provides the global callout points from within
@@ -11,6 +13,20 @@ public interface IInstrumentation {
     // The instrumentation instance associated with the given thread and also installed into the Helper of the currently-running DApp.
     public static final ThreadLocal<IInstrumentation> attachedThreadInstrumentation = new ThreadLocal<>();
 
+    /**
+     * Returns the instrumentation attached to the current thread (by InstrumentationHelpers.attachThread()).
+     * This is called on entry to almost every shadow JDK method so, on an InstrumentationCarrierThread, it reads the field of the thread
+     * instead of looking up the ThreadLocal.
+     *
+     * @return The instrumentation attached to the current thread (null if there isn't one).
+     */
+    public static IInstrumentation getCurrentThreadInstrumentation() {
+        Thread thread = Thread.currentThread();
+        return (thread instanceof InstrumentationCarrierThread)
+                ? ((InstrumentationCarrierThread) thread).attachedInstrumentation
+                : attachedThreadInstrumentation.get();
+    }
+
     void enterNewFrame(ClassLoader contractLoader, long energyLeft, int nextHashCode, InternedClasses classWrappers);
     void exitCurrentFrame();
 
@@ -51,6 +67,21 @@ public interface IInstrumentation {
     
     void bootstrapOnly();
 
+    /**
+     * Called by the write barrier (s.java.lang.Object.markDirty()) when an instance which was loaded from storage, in the current frame,
+     * is about to be modified.
+     * 
+     * @param readIndex The index of the instance within the graph loaded for the current frame (always non-negative).
+     */
+    void markLoadedInstanceDirty(int readIndex);
+
+    /**
+     * Returns the set of instances, by readIndex, reported as modified within the current frame.
+     * 
+     * @return The readIndex of every loaded instance modified in the current frame (null if none were).
+     */
+    BitSet getDirtyLoadedInstances();
+
     /**
      * @return id the class has been loaded by the classloader associated to stackFrame
      */
@@ -0,0 +1,18 @@
+package i;
+
+
+/**
+ * A thread which carries the instrumentation attached to it in a field, so that the shadow JDK (which needs it in almost every method, to
+ * charge energy) can find it without looking up the IInstrumentation.attachedThreadInstrumentation ThreadLocal.
+ * The AVM's executor threads are carriers.  Any other thread still works, via the ThreadLocal.
+ *
+ * The field is only ever accessed from the thread itself, by InstrumentationHelpers.attachThread()/detachThread() and
+ * IInstrumentation.getCurrentThreadInstrumentation().
+ */
+public class InstrumentationCarrierThread extends Thread {
+    IInstrumentation attachedInstrumentation;
+
+    public InstrumentationCarrierThread(String name) {
+        super(name);
+    }
+}
@@ -8,10 +8,19 @@ public class InstrumentationHelpers {
     public static void attachThread(IInstrumentation instrumentation) {
         RuntimeAssertionError.assertTrue(null == IInstrumentation.attachedThreadInstrumentation.get());
         IInstrumentation.attachedThreadInstrumentation.set(instrumentation);
+        // We also keep the ThreadLocal up-to-date on a carrier so that either can be used to find the instrumentation.
+        Thread thread = Thread.currentThread();
+        if (thread instanceof InstrumentationCarrierThread) {
+            ((InstrumentationCarrierThread) thread).attachedInstrumentation = instrumentation;
+        }
     }
     public static void detachThread(IInstrumentation instrumentation) {
         RuntimeAssertionError.assertTrue(instrumentation == IInstrumentation.attachedThreadInstrumentation.get());
         IInstrumentation.attachedThreadInstrumentation.remove();
+        Thread thread = Thread.currentThread();
+        if (thread instanceof InstrumentationCarrierThread) {
+            ((InstrumentationCarrierThread) thread).attachedInstrumentation = null;
+        }
     }
 
     public static void pushNewStackFrame(IRuntimeSetup runtimeSetup, ClassLoader contractLoader, long energyLeft, int nextHashCode, InternedClasses classWrappers) {
@@ -31,7 +31,7 @@ public final class Address extends Object {
      * @param raw The raw bytes representing the address.
      */
     public Address(ByteArray raw) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_constructor);
         if (null == raw) {
             throw new NullPointerException();
         }
@@ -44,7 +44,7 @@ public final class Address extends Object {
      * @return The raw bytes underneath the address.
      */
     public ByteArray avm_toByteArray() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_unwrap);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_unwrap);
         lazyLoad();
         byte[] copy = copyOfInternal();
         return new ByteArray(copy);
@@ -52,21 +52,21 @@ public final class Address extends Object {
 
     @Override
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_hashCode);
         
         return internalHashCode();
     }
 
     @Override
     public boolean avm_equals(IObject obj) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_equals);
 
         return internalEquals(obj);
     }
 
     @Override
     public String avm_toString() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Address_avm_toString);
         lazyLoad();
         return toHexString(this.internalArray);
     }
@@ -16,24 +16,24 @@ public final class Result extends Object {
     private ByteArray returnData;
 
     public Result(boolean success, ByteArray returnData) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_constructor);
         this.success = success;
         this.returnData = returnData;
     }
 
     public boolean avm_isSuccess() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_isSuccess);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_isSuccess);
         return success;
     }
 
     public ByteArray avm_getReturnData() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_getReturnData);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_getReturnData);
         return returnData;
     }
 
     @Override
     public String avm_toString() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_toString);
         lazyLoad();
         return  new String("success:" + this.success + ", returnData:" + toHexString(this.returnData.getUnderlying()));
     }
@@ -54,7 +54,7 @@ public final class Result extends Object {
 
     @Override
     public boolean avm_equals(IObject obj) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_equals);
 
         boolean isEqual = this == obj;
         if (!isEqual && (obj instanceof Result)) {
@@ -77,7 +77,7 @@ public final class Result extends Object {
 
     @Override
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Result_avm_hashCode);
         lazyLoad();
         // Just a really basic implementation.
         int code = 0;
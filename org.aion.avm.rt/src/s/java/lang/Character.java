@@ -10,7 +10,7 @@ import i.ShadowClassConstantId;
 public final class Character extends Object implements Serializable, Comparable<Character> {
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     public static final int avm_MIN_RADIX = 2;
@@ -30,30 +30,30 @@ public final class Character extends Object implements Serializable, Comparable<
     }
 
     public static Character avm_valueOf(char c) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_valueOf);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_valueOf);
         return new Character(c);
     }
 
     public char avm_charValue() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_charValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_charValue);
         lazyLoad();
         return v;
     }
 
     @Override
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_hashCode);
         lazyLoad();
         return internalHashCode(v);
     }
 
     public static int avm_hashCode(char value) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_hashCode_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_hashCode_1);
         return internalHashCode(value);
     }
 
     public boolean avm_equals(IObject obj) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_equals);
         boolean isEqual = false;
         if (obj instanceof Character) {
             Character other = (Character) obj;
@@ -69,85 +69,85 @@ public final class Character extends Object implements Serializable, Comparable<
     }
 
     public String avm_toString() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toString);
         lazyLoad();
         return new String(java.lang.Character.toString(this.v));
     }
 
     public static String avm_toString(char c) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toString_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toString_1);
         return new String(java.lang.Character.toString(c));
     }
 
     public static boolean avm_isLowerCase(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLowerCase);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLowerCase);
         return java.lang.Character.isLowerCase(ch);
     }
 
     public static boolean avm_isUpperCase(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isUpperCase);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isUpperCase);
         return java.lang.Character.isUpperCase(ch);
     }
 
     public static boolean avm_isDigit(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isDigit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isDigit);
         return java.lang.Character.isDigit(ch);
     }
 
     public static boolean avm_isLetter(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLetter);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLetter);
         return java.lang.Character.isLetter(ch);
     }
 
     public static boolean avm_isLetterOrDigit(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLetterOrDigit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isLetterOrDigit);
         return java.lang.Character.isLetterOrDigit(ch);
     }
 
     public static char avm_toLowerCase(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toLowerCase);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toLowerCase);
         return java.lang.Character.toLowerCase(ch);
     }
 
     public static char avm_toUpperCase(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toUpperCase);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_toUpperCase);
         return java.lang.Character.toUpperCase(ch);
     }
 
     public static int avm_digit(char ch, int radix){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_digit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_digit);
         return java.lang.Character.digit(ch, radix);
     }
 
     public static int avm_getNumericValue(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_getNumericValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_getNumericValue);
         return java.lang.Character.getNumericValue(ch);
     }
 
     public static boolean avm_isSpaceChar(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isSpaceChar);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isSpaceChar);
         return java.lang.Character.isSpaceChar(ch);
     }
 
     public static boolean avm_isWhitespace(char ch){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isWhitespace);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_isWhitespace);
         return java.lang.Character.isWhitespace(ch);
     }
 
     public static char avm_forDigit(int digit, int radix) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_forDigit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_forDigit);
         return java.lang.Character.forDigit(digit, radix);
     }
 
     public int avm_compareTo(Character anotherCharacter) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_compareTo);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_compareTo);
         lazyLoad();
         anotherCharacter.lazyLoad();
         return this.v - anotherCharacter.v;
     }
 
     public static int avm_compare(char x, char y) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_compare);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Character_avm_compare);
         return x - y;
     }
 
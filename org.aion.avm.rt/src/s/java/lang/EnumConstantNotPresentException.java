@@ -10,7 +10,7 @@ import i.IInstrumentation;
 public class EnumConstantNotPresentException extends RuntimeException {
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     private Class<? extends Enum> enumType;
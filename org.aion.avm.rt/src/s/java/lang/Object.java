@@ -11,7 +11,7 @@ import org.aion.avm.RuntimeMethodFeeSchedule;
 public class Object extends java.lang.Object implements IObject {
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
     public static final int NEW_INSTANCE_READ_INDEX = -1;
 
@@ -20,8 +20,12 @@ public class Object extends java.lang.Object implements IObject {
     // The readIndex is only used in cases of reentrant calls (this is the serialization index of the instance in the caller frame when serialized for the reentrant call).
     public final int readIndex;
 
+    // Non-null only while this instance is a stub of a lazily-loaded graph:  the loader which will populate it on first access.
+    // Note that this isn't an "avm_" field so it isn't part of the billed object size.
+    private IInstanceLoader instanceLoader;
+
     public Object() {
-        this.hashCode = IInstrumentation.attachedThreadInstrumentation.get().getNextHashCodeAndIncrement();
+        this.hashCode = IInstrumentation.getCurrentThreadInstrumentation().getNextHashCodeAndIncrement();
         this.readIndex = NEW_INSTANCE_READ_INDEX;
     }
 
@@ -55,31 +59,31 @@ public class Object extends java.lang.Object implements IObject {
 
     @Override
     public Class<?> avm_getClass() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_getClass);
-        return IInstrumentation.attachedThreadInstrumentation.get().wrapAsClass(this.getClass());
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_getClass);
+        return IInstrumentation.getCurrentThreadInstrumentation().wrapAsClass(this.getClass());
     }
 
     @Override
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_hashCode);
         return internalHashcode();
     }
 
     @Override
     public boolean avm_equals(IObject obj) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_equals);
         // By default, we are only instance-equal.
         return (this == obj);
     }
 
     protected IObject avm_clone() throws CloneNotSupportedException {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_clone);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_clone);
         throw new CloneNotSupportedException();
     }
 
     @Override
     public String avm_toString() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.Object_avm_toString);
         //using the public facing method since the user can override this
         return new String(ClassNameExtractor.getOriginalClassName(getClass().getName()) + "@" + java.lang.Integer.toHexString(avm_hashCode()));
     }
@@ -101,10 +105,62 @@ public class Object extends java.lang.Object implements IObject {
     /**
      * The call which causes this instance to become loaded.
      * Note that this is final since the protected "deserializeSelf" should be over-ridden.
+     * Note that the array wrappers only call this when they find their underlying array is null, since a stub never has one.
      */
     public final void lazyLoad() {
-        // This now does nothing - will be removed later if we are certain we don't want the lazy loading.
-        // It was originally how the lazy loading system worked when we had the incremental loading design.
+        // This is a no-op unless we are a stub which hasn't yet been populated.
+        IInstanceLoader loader = this.instanceLoader;
+        if (null != loader) {
+            // Clear the loader before populating so that we are never loaded twice.
+            this.instanceLoader = null;
+            loader.loadInstance(this, this.readIndex);
+        }
+    }
+
+    /**
+     * Called by the persistence layer to turn a freshly-created instance into a stub which will be populated, by the given loader, the first
+     * time lazyLoad() is called.
+     * 
+     * @param loader The loader which can populate this instance from the stored graph.
+     * @param hashCode The hashCode stored for this instance (installed up-front so that hashing a stub doesn't need to populate it).
+     */
+    public final void installInstanceLoader(IInstanceLoader loader, int hashCode) {
+        RuntimeAssertionError.assertTrue(this.readIndex >= 0);
+        this.hashCode = hashCode;
+        this.instanceLoader = loader;
+        discardStateForStub();
+    }
+
+    /**
+     * Called when this instance becomes a stub, to drop any state it may already have been given (it is all re-read when it is populated).
+     * The array wrappers use this to maintain that a stub never has an underlying array, so their accessors only need to check for null
+     * before calling lazyLoad().
+     */
+    protected void discardStateForStub() {
+        // By default, we have no state to drop (our hashCode is installed with the loader).
+    }
+
+    /**
+     * @return True if this is a stub which has not yet been populated.
+     */
+    public final boolean isLazyLoadPending() {
+        return (null != this.instanceLoader);
+    }
+
+    /**
+     * The write barrier:  called before any modification of the receiver's persistent state.
+     * AutomaticGraphVisitor injects this ahead of every PUTFIELD (except those on "this" in a constructor) and our mutable shadow types
+     * (the array wrappers, for example) call it directly before changing their contents.
+     * Only instances loaded from storage are tracked, since these are the only ones the persistence layer could avoid re-encoding.
+     * Note that this is final since the persistence layer depends on it being a complete record of modifications.
+     */
+    public final void markDirty() {
+        // A stub must be populated before it is modified, or the modification would be overwritten when it is finally loaded.
+        lazyLoad();
+        // New instances and constants have a negative readIndex so they never need to be reported.
+        if (this.readIndex >= 0) {
+            IInstrumentation.getCurrentThreadInstrumentation().markLoadedInstanceDirty(this.readIndex);
+        }
     }
 
     public void deserializeSelf(java.lang.Class<?> firstRealImplementation, IObjectDeserializer deserializer) {
@@ -128,7 +184,7 @@ public class Object extends java.lang.Object implements IObject {
     }
 
     public int internalHashcode(){
-        lazyLoad();
+        // Note that this never needs to lazyLoad() since a stub is given its hashCode when it is installed.
         return this.hashCode;
     }
 }
@@ -9,7 +9,7 @@ import org.aion.avm.RuntimeMethodFeeSchedule;
 public final class System extends Object{
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     private System() {
@@ -19,7 +19,7 @@ public final class System extends Object{
                                      IObject dest, int destPos,
                                      int length)
     {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.System_avm_arraycopy + length);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.System_avm_arraycopy + length);
         if(src == null || dest == null){
             throw new NullPointerException();
         } else if (!((src instanceof Array) && (dest instanceof Array))){
@@ -14,146 +14,146 @@ import org.aion.avm.RuntimeMethodFeeSchedule;
 public class BigDecimal extends Number implements Comparable<BigDecimal>{
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     public BigDecimal(String val){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_4);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_4);
         v = new java.math.BigDecimal(val.getUnderlying());
     }
 
     public BigDecimal(String val, MathContext mc){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_5);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_5);
         v = new java.math.BigDecimal(val.getUnderlying(), mc.getUnderlying());
     }
 
     public BigDecimal(double val){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_6);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_6);
         v = new java.math.BigDecimal(val);
     }
 
     public BigDecimal(double val, MathContext mc) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_7);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_7);
         v = new java.math.BigDecimal(val, mc.getUnderlying());
     }
 
     public BigDecimal(int val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_12);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_12);
         v = new java.math.BigDecimal(val);
     }
 
     public BigDecimal(int val, MathContext mc) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_13);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_13);
         v = new java.math.BigDecimal(val, mc.getUnderlying());
     }
 
     public BigDecimal(long val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_14);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_14);
         v = new java.math.BigDecimal(val);
     }
 
     public BigDecimal(long val, MathContext mc) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_15);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_constructor_15);
         v = new java.math.BigDecimal(val, mc.getUnderlying());
     }
 
     public static BigDecimal avm_valueOf(long val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_valueOf_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_valueOf_1);
         return new BigDecimal(java.math.BigDecimal.valueOf(val));
     }
 
     public static BigDecimal avm_valueOf(double val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_valueOf_2);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_valueOf_2);
         return new BigDecimal(java.math.BigDecimal.valueOf(val));
     }
 
     public int avm_compareTo(BigDecimal val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_compareTo);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_compareTo);
         lazyLoad();
         val.lazyLoad();
         return v.compareTo(val.v);
     }
 
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_hashCode);
         lazyLoad();
         return v.hashCode();
     }
 
     public String avm_toString(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toString);
         lazyLoad();
         return new String(v.toString());
     }
 
     public String avm_toPlainString(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toPlainString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toPlainString);
         lazyLoad();
         return new String(v.toPlainString());
     }
 
     public BigInteger avm_toBigInteger() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toBigInteger);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toBigInteger);
         lazyLoad();
         return new BigInteger(v.toBigInteger());
     }
 
     public BigInteger avm_toBigIntegerExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toBigIntegerExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_toBigIntegerExact);
         lazyLoad();
         return new BigInteger(v.toBigIntegerExact());
     }
 
     public long avm_longValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_longValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_longValue);
         lazyLoad();
         return v.longValue();
     }
 
     public long avm_longValueExact(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_longValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_longValueExact);
         lazyLoad();
         return v.longValueExact();
     }
 
     public int avm_intValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_intValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_intValue);
         lazyLoad();
         return v.intValue();
     }
 
     public int avm_intValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_intValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_intValueExact);
         lazyLoad();
         return v.intValueExact();
     }
 
     public short avm_shortValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_shortValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_shortValueExact);
         lazyLoad();
         return v.shortValueExact();
     }
 
     public byte avm_byteValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_byteValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_byteValueExact);
         lazyLoad();
         return v.byteValueExact();
     }
 
     public float avm_floatValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_floatValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_floatValue);
         lazyLoad();
         return v.floatValue();
     }
 
     public double avm_doubleValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_doubleValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_doubleValue);
         lazyLoad();
         return v.doubleValue();
     }
 
     public boolean avm_equals(IObject x) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigDecimal_avm_equals);
         if (x == this) {
             return true;
         }
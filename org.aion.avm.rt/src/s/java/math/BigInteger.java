@@ -11,11 +11,11 @@ import org.aion.avm.RuntimeMethodFeeSchedule;
 public class BigInteger extends Number implements Comparable<BigInteger> {
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     public BigInteger(ByteArray val, int off, int len) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor);
         setUnderlying(new java.math.BigInteger(val.getUnderlying(), off, len));
     }
 
@@ -24,7 +24,7 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     }
 
     public BigInteger(int signum, ByteArray magnitude, int off, int len) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor_2);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor_2);
         setUnderlying(new java.math.BigInteger(signum, magnitude.getUnderlying(), off, len));
     }
 
@@ -33,7 +33,7 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     }
 
     public BigInteger(String val, int radix) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor_4);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_constructor_4);
         setUnderlying(new java.math.BigInteger(val.getUnderlying(), radix));
     }
 
@@ -42,7 +42,7 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     }
 
     public static BigInteger avm_valueOf(long val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_valueOf);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_valueOf);
         return new BigInteger(java.math.BigInteger.valueOf(val));
     }
 
@@ -55,80 +55,80 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     public static final BigInteger avm_TEN = new BigInteger(java.math.BigInteger.TEN, new ConstantToken(ShadowClassConstantId.BigInteger_avm_TEN));
 
     public BigInteger avm_add(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_add);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_add);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.add(val.v));
     }
 
     public BigInteger avm_subtract(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_subtract);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_subtract);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.subtract(val.v));
     }
 
     public BigInteger avm_multiply(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_multiply);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_multiply);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.multiply(val.v));
     }
 
     public BigInteger avm_divide(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_divide);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_divide);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.divide(val.v));
     }
 
     public BigInteger avm_remainder(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_remainder);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_remainder);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.remainder(val.v));
     }
 
     public BigInteger avm_sqrt() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_sqrt);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_sqrt);
         lazyLoad();
         return new BigInteger(v.sqrt());
     }
 
     public BigInteger avm_gcd(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_gcd);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_gcd);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.gcd(val.v));
     }
 
     public BigInteger avm_abs() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_abs);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_abs);
         lazyLoad();
         return new BigInteger(v.abs());
     }
 
     public BigInteger avm_negate() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_negate);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_negate);
         lazyLoad();
         return new BigInteger(v.negate());
     }
 
     public int avm_signum() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_signum);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_signum);
         lazyLoad();
         return v.signum();
     }
 
     public BigInteger avm_mod(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_mod);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_mod);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.mod(val.v));
     }
 
     public BigInteger avm_modPow(BigInteger exponent, BigInteger m) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_modPow);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_modPow);
         lazyLoad();
         exponent.lazyLoad();
         m.lazyLoad();
@@ -136,115 +136,115 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     }
 
     public BigInteger avm_modInverse(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_modInverse);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_modInverse);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.modInverse(val.v));
     }
 
     public BigInteger avm_shiftLeft(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shiftLeft);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shiftLeft);
         verifyBitLength(n);
         lazyLoad();
         return new BigInteger(v.shiftLeft(n));
     }
 
     public BigInteger avm_shiftRight(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shiftRight);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shiftRight);
         verifyBitLength(n);
         lazyLoad();
         return new BigInteger(v.shiftRight(n));
     }
 
     public BigInteger avm_and(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_and);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_and);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.and(val.v));
     }
 
     public BigInteger avm_or(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_or);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_or);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.or(val.v));
     }
 
     public BigInteger avm_xor(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_xor);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_xor);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.xor(val.v));
     }
 
     public BigInteger avm_not() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_not);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_not);
         lazyLoad();
         return new BigInteger(v.not());
     }
 
     public BigInteger avm_andNot(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_andNot);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_andNot);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.andNot(val.v));
     }
 
     public boolean avm_testBit(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_testBit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_testBit);
         verifyBitLength(n);
         lazyLoad();
         return v.testBit(n);
     }
 
     public BigInteger avm_setBit(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_setBit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_setBit);
         verifyBitLength(n);
         lazyLoad();
         return new BigInteger(v.setBit(n));
     }
 
     public BigInteger avm_clearBit(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_clearBit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_clearBit);
         verifyBitLength(n);
         lazyLoad();
         return new BigInteger(v.clearBit(n));
     }
 
     public BigInteger avm_flipBit(int n) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_flipBit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_flipBit);
         verifyBitLength(n);
         lazyLoad();
         return new BigInteger(v.flipBit(n));
     }
 
     public int avm_getLowestSetBit() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_getLowestSetBit);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_getLowestSetBit);
         lazyLoad();
         return v.getLowestSetBit();
     }
 
     public int avm_bitLength() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_bitLength);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_bitLength);
         lazyLoad();
         return v.bitLength();
     }
 
     public int avm_bitCount() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_bitCount);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_bitCount);
         lazyLoad();
         return v.bitCount();
     }
 
     public int avm_compareTo(BigInteger val) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_compareTo);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_compareTo);
         lazyLoad();
         val.lazyLoad();
         return v.compareTo(val.v);
     }
 
     public boolean avm_equals(IObject x) {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_equals);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_equals);
         if (x == this)
             return true;
 
@@ -258,87 +258,87 @@ public class BigInteger extends Number implements Comparable<BigInteger> {
     }
 
     public BigInteger avm_min(BigInteger val){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_min);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_min);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.min(val.v));
     }
 
     public BigInteger avm_max(BigInteger val){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_max);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_max);
         lazyLoad();
         val.lazyLoad();
         return new BigInteger(v.max(val.v));
     }
 
     public int avm_hashCode() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_hashCode);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_hashCode);
         lazyLoad();
         return v.hashCode();
     }
 
     public String avm_toString(int radix){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toString);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toString);
         lazyLoad();
         return new String(v.toString(radix));
     }
 
     public String avm_toString(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toString_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toString_1);
         lazyLoad();
         return new String(v.toString());
     }
 
     public ByteArray avm_toByteArray() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toByteArray);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_toByteArray);
         lazyLoad();
         return new ByteArray(v.toByteArray());
     }
 
     public int avm_intValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_intValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_intValue);
         lazyLoad();
         return v.intValue();
     }
 
     public long avm_longValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_longValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_longValue);
         lazyLoad();
         return v.longValue();
     }
 
     public float avm_floatValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_floatValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_floatValue);
         lazyLoad();
         return v.floatValue();
     }
 
     public double avm_doubleValue(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_doubleValue);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_doubleValue);
         lazyLoad();
         return v.doubleValue();
     }
 
     public long avm_longValueExact(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_longValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_longValueExact);
         lazyLoad();
         return v.longValueExact();
     }
 
     public int avm_intValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_intValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_intValueExact);
         lazyLoad();
         return v.intValueExact();
     }
 
     public short avm_shortValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shortValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_shortValueExact);
         lazyLoad();
         return v.shortValueExact();
     }
 
     public byte avm_byteValueExact() {
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_byteValueExact);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.BigInteger_avm_byteValueExact);
         lazyLoad();
         return v.byteValueExact();
     }
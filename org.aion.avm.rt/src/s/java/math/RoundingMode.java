@@ -16,7 +16,7 @@ import org.aion.avm.RuntimeMethodFeeSchedule;
 public final class RoundingMode extends Enum<RoundingMode>{
     static {
         // Shadow classes MUST be loaded during bootstrap phase.
-        IInstrumentation.attachedThreadInstrumentation.get().bootstrapOnly();
+        IInstrumentation.getCurrentThreadInstrumentation().bootstrapOnly();
     }
 
     public static final RoundingMode avm_UP;
@@ -48,17 +48,17 @@ public final class RoundingMode extends Enum<RoundingMode>{
     }
 
     public static IObjectArray avm_values(){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_values);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_values);
         return (ObjectArray) avm_$VALUES.clone();
     }
 
     public static RoundingMode avm_valueOf(String request){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_valueOf);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_valueOf);
         return internalValueOf(request);
     }
 
     public static RoundingMode avm_valueOf(int idx){
-        IInstrumentation.attachedThreadInstrumentation.get().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_valueOf_1);
+        IInstrumentation.getCurrentThreadInstrumentation().chargeEnergy(RuntimeMethodFeeSchedule.RoundingMode_avm_valueOf_1);
         if (idx > 7 || idx < 0){
             throw new IllegalArgumentException("argument out of range");
         }else{
@@ -90,6 +90,14 @@ public class TestInstrumentation implements IInstrumentation {
         // These tests aren't using the NodeEnvironment to bootstrap the JCL so we need to handle that case.
     }
 
+    @Override
+    public void markLoadedInstanceDirty(int readIndex) {
+        throw RuntimeAssertionError.unreachable("Not expected in this test");
+    }
+    @Override
+    public java.util.BitSet getDirtyLoadedInstances() {
+        throw RuntimeAssertionError.unreachable("Not expected in this test");
+    }
     @Override
     public boolean isLoadedByCurrentClassLoader(java.lang.Class userClass) {
         throw RuntimeAssertionError.unreachable("Not expected in this test");
@@ -22,6 +22,9 @@ public class RevertAndInvalidTest {
 
     private static Address dappAddress;
 
+    // The graph is in the dictionary format:  version 3, 9-byte header, no instances, then the payload:  an empty dictionary and the statics.
+    private static final byte[] EXPECTED_GRAPH = new byte[]{3, 0,0,0,9, 0,0,0,0, 0, 0,0,0,1, 0,0,0,0};
+
     @BeforeClass
     public static void setup() {
         dappAddress = deploy();
@@ -41,8 +44,8 @@ public class RevertAndInvalidTest {
         assertTrue(energyLimit > txResult.getEnergyUsed());
         assertTrue(0 < txResult.getEnergyRemaining());
 
-        // Next hash code is 1 and the value is unchanged at 0.
-        assertArrayEquals(new byte[]{0,0,0,1, 0,0,0,0}, avmRule.kernel.getObjectGraph(new AionAddress(dappAddress.toByteArray())));
+        // The index header describes no instances, next hash code is 1 and the value is unchanged at 0.
+        assertArrayEquals(EXPECTED_GRAPH, avmRule.kernel.getObjectGraph(new AionAddress(dappAddress.toByteArray())));
     }
 
     @Test
@@ -53,7 +56,7 @@ public class RevertAndInvalidTest {
         assertEquals(energyLimit, txResult.getEnergyUsed());
         assertEquals(0, txResult.getEnergyRemaining());
 
-        // Next hash code is 1 and the value is unchanged at 0.
-        assertArrayEquals(new byte[]{0,0,0,1, 0,0,0,0}, avmRule.kernel.getObjectGraph(new AionAddress(dappAddress.toByteArray())));
+        // The index header describes no instances, next hash code is 1 and the value is unchanged at 0.
+        assertArrayEquals(EXPECTED_GRAPH, avmRule.kernel.getObjectGraph(new AionAddress(dappAddress.toByteArray())));
     }
 }
@@ -39,7 +39,7 @@ public class StorageEnergyTest {
         txDataMethodArguments = ABIUtil.encodeMethodArguments("resetStorage");
         resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
-        Assert.assertEquals(58303 - 58303 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
+        Assert.assertEquals(57739 - 57739 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
 
     /**
@@ -54,7 +54,7 @@ public class StorageEnergyTest {
         txDataMethodArguments = ABIUtil.encodeMethodArguments("resetStorageSelfDestruct");
         resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
-        Assert.assertEquals(65168 - 65168 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
+        Assert.assertEquals(64604 - 64604 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
 
     /**
@@ -65,7 +65,7 @@ public class StorageEnergyTest {
         byte[] txDataMethodArguments = ABIUtil.encodeMethodArguments("putStorageSameKey");
         AvmRule.ResultWrapper resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
-        Assert.assertEquals(35281 + 74 * 5 +
+        Assert.assertEquals(34717 + 74 * 5 +
                 RuntimeMethodFeeSchedule.BlockchainRuntime_avm_setStorage +
                 4 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage + 500, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
@@ -85,7 +85,7 @@ public class StorageEnergyTest {
         resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
         // cost before the refund is processed
-        Assert.assertEquals(37271 + 29 * 5
+        Assert.assertEquals(36707 + 29 * 5
                 + 5 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage
                 - RuntimeMethodFeeSchedule.BlockchainRuntime_avm_deleteStorage_refund, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
@@ -105,7 +105,7 @@ public class StorageEnergyTest {
         resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
         // cost before the refund is processed
-        long executionCost = 61934 + 29 * 5 +
+        long executionCost = 61370 + 29 * 5 +
                 5 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage;
         Assert.assertEquals(executionCost - executionCost / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
@@ -119,7 +119,7 @@ public class StorageEnergyTest {
         byte[] txDataMethodArguments = ABIUtil.encodeMethodArguments("reentrantCallAfterPut", dappAddr, data);
         AvmRule.ResultWrapper resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getReceiptStatus().isSuccess());
-        long costWithoutResettingStorage = 164702;
+        long costWithoutResettingStorage = 164138;
         long executionCost = costWithoutResettingStorage + 29 * 5 +
                 5 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_resetStorage;
         Assert.assertEquals(executionCost - 5 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_deleteStorage_refund, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
@@ -155,7 +155,7 @@ public class StorageEnergyTest {
         txDataMethodArguments = ABIUtil.encodeMethodArguments("reentrantReset", newContract, data);
         resultWrapper = avmRule.call(from, dappAddr, BigInteger.ZERO, txDataMethodArguments, energyLimit, energyPrice);
         Assert.assertTrue(resultWrapper.getTransactionResult().getResultCode().isSuccess());
-        Assert.assertEquals(114832 - 114832 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
+        Assert.assertEquals(113704 - 113704 / 2, energyLimit - resultWrapper.getTransactionResult().getEnergyRemaining());
     }
 
     @Test
@@ -166,7 +166,7 @@ public class StorageEnergyTest {
 
         long basicTransactionCost = BillingRules.getBasicTransactionCost(jar);
         long deploymentCost = BillingRules.getDeploymentFee(1, jar.length);
-        long totalCost = basicTransactionCost + deploymentCost + 1097;
+        long totalCost = basicTransactionCost + deploymentCost + 1127;
 
         Assert.assertEquals(totalCost +
             3 * RuntimeMethodFeeSchedule.BlockchainRuntime_avm_setStorage +
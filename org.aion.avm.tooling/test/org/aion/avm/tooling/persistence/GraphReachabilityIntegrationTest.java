@@ -46,8 +46,8 @@ public class GraphReachabilityIntegrationTest {
         // Run test.
         long modify_basicCost = adjustBasicCost(21708L);
         long modify_miscCharges = 95L + 300L + 100L + 37234L + 65L + 29L + 85L;
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
         long modify_storageCharges = readCost + writeCost;
@@ -81,12 +81,17 @@ public class GraphReachabilityIntegrationTest {
                 + 95L + 100L + 37234L + 65L + 29L + 85L
                 + 100L + 60L + 100L + 23L + 29L + 23L
                 ;
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
-        // 2 reads/writes of the same cost.
-        long run_storageCharges = 2 * readCost + 2 * writeCost;
+        // The copy of the graph passed to a reentrant frame doesn't use the class name dictionary so it is larger than the graph in storage.
+        int reentrantGraphSizeBefore = 4950;
+        int reentrantGraphSizeAfter = 4946;
+        int reentrantReadCost = StorageFees.READ_PRICE_PER_BYTE * reentrantGraphSizeBefore;
+        int reentrantWriteCost = StorageFees.WRITE_PRICE_PER_BYTE * reentrantGraphSizeAfter;
+        // 1 read/write of the graph in storage and 1 read/write of the reentrant frame's copy.
+        long run_storageCharges = readCost + writeCost + reentrantReadCost + reentrantWriteCost;
 
         // This number is an adjustment factor for the cost changes associated with the various ABI improvements
         // TODO (AKI-120): Get rid of this number, by adjusting the precise measures in the factors above
@@ -118,12 +123,17 @@ public class GraphReachabilityIntegrationTest {
             + 95L + 100L + 37234L + 65L + 29L + 85L
             + 100L + 60L + 100L + 23L + 29L + 23L
             ;
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
-        // 2 reads/writes of the same cost.
-        long run_storageCharges = 2 * readCost + 2 * writeCost;
+        // The copy of the graph passed to a reentrant frame doesn't use the class name dictionary so it is larger than the graph in storage.
+        int reentrantGraphSizeBefore = 4950;
+        int reentrantGraphSizeAfter = 4946;
+        int reentrantReadCost = StorageFees.READ_PRICE_PER_BYTE * reentrantGraphSizeBefore;
+        int reentrantWriteCost = StorageFees.WRITE_PRICE_PER_BYTE * reentrantGraphSizeAfter;
+        // 1 read/write of the graph in storage and 1 read/write of the reentrant frame's copy.
+        long run_storageCharges = readCost + writeCost + reentrantReadCost + reentrantWriteCost;
 
         // This number is an adjustment factor for the cost changes associated with the various ABI improvements
         // TODO (AKI-120): Get rid of this number, by adjusting the precise measures in the factors above
@@ -151,12 +161,17 @@ public class GraphReachabilityIntegrationTest {
                 + 95L + 100L + 37234L + 194L + 63L
                 + 100L + 60L + 100L + 23L
                 ;
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
-        // 2 reads/writes of the same cost.
-        long run_storageCharges = 2 * readCost + 2 * writeCost;
+        // The copy of the graph passed to a reentrant frame doesn't use the class name dictionary so it is larger than the graph in storage.
+        int reentrantGraphSizeBefore = 4950;
+        int reentrantGraphSizeAfter = 4946;
+        int reentrantReadCost = StorageFees.READ_PRICE_PER_BYTE * reentrantGraphSizeBefore;
+        int reentrantWriteCost = StorageFees.WRITE_PRICE_PER_BYTE * reentrantGraphSizeAfter;
+        // 1 read/write of the graph in storage and 1 read/write of the reentrant frame's copy.
+        long run_storageCharges = readCost + writeCost + reentrantReadCost + reentrantWriteCost;
 
         // This number is an adjustment factor for the cost changes associated with the various ABI improvements
         // TODO (AKI-120): Get rid of this number, by adjusting the precise measures in the factors above
@@ -194,12 +209,17 @@ public class GraphReachabilityIntegrationTest {
                 + 100L + 60L + 100L + 23L
                 + 100L + 60L + 100L + 23L
                 ;
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
-        // 3 reads/writes of the same cost.
-        long run_storageCharges = 3 * readCost + 3 * writeCost;
+        // The copy of the graph passed to a reentrant frame doesn't use the class name dictionary so it is larger than the graph in storage.
+        int reentrantGraphSizeBefore = 4950;
+        int reentrantGraphSizeAfter = 4946;
+        int reentrantReadCost = StorageFees.READ_PRICE_PER_BYTE * reentrantGraphSizeBefore;
+        int reentrantWriteCost = StorageFees.WRITE_PRICE_PER_BYTE * reentrantGraphSizeAfter;
+        // 1 read/write of the graph in storage and 1 read/write of each of the 2 reentrant frames' copies.
+        long run_storageCharges = readCost + writeCost + 2 * reentrantReadCost + 2 * reentrantWriteCost;
 
         // This number is an adjustment factor for the cost changes associated with the various ABI improvements
         // TODO (AKI-120): Get rid of this number, by adjusting the precise measures in the factors above
@@ -248,8 +268,8 @@ public class GraphReachabilityIntegrationTest {
         long assertionStatus = 100L;
         long clinit2 = 3L + 31L;
         long miscCharges = basicCost + codeInstantiationOfDeploymentFee + clinit + assertionStatus + clinit2;
-        // One write of 13563L.
-        long storageCharges = 13563L;
+        // One write of 13260L.
+        long storageCharges = 13260L;
 
         // This number is an adjustment factor for the cost changes associated with the various ABI improvements
         // TODO (AKI-120): Get rid of this number, by adjusting the precise measures in the factors above
@@ -294,8 +314,8 @@ public class GraphReachabilityIntegrationTest {
         } else {
             miscCharges += 23L;
         }
-        int graphSizeBefore = 4950;
-        int graphSizeAfter = 4946;
+        int graphSizeBefore = 4606;
+        int graphSizeAfter = 4602;
         long storageCharges = before
                 ? (StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore) + (StorageFees.WRITE_PRICE_PER_BYTE * graphSizeBefore)
                 : (StorageFees.READ_PRICE_PER_BYTE * graphSizeAfter) + (StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter);
@@ -310,8 +330,8 @@ public class GraphReachabilityIntegrationTest {
 
         long basicCost = adjustBasicCost(21644L);
         long miscCharges = 95L + 300L + 100L + 37234L + 716L + 63L + 63L + 63L + 63L + 63L;
-        int graphSizeBefore = 4521;
-        int graphSizeAfter = 4950;
+        int graphSizeBefore = 4420;
+        int graphSizeAfter = 4606;
         int readCost = StorageFees.READ_PRICE_PER_BYTE * graphSizeBefore;
         int writeCost = StorageFees.WRITE_PRICE_PER_BYTE * graphSizeAfter;
         long storageCharges = readCost + writeCost;